@@ -5,19 +5,19 @@ import java.util.logging.Logger;
 
 import com.auth0.jwt.interfaces.DecodedJWT;
 import com.google.cloud.datastore.Datastore;
-import com.google.cloud.datastore.DatastoreOptions;
 import com.google.cloud.datastore.Entity;
 import com.google.cloud.datastore.Key;
 import com.google.cloud.datastore.KeyFactory;
 
 import constants.AccountConstants;
+import persistence.DatastoreGateway;
 
 /**
  * Utility class for JWT authentication and user validation
  */
 public class AuthTokenUtil {
     private static final Logger LOG = Logger.getLogger(AuthTokenUtil.class.getName());
-    private static final Datastore datastore = DatastoreOptions.getDefaultInstance().getService();
+    private static final Datastore datastore = DatastoreGateway.get();
     private static final KeyFactory userKeyFactory = datastore.newKeyFactory().setKind(AccountConstants.USER);
 
     /**
@@ -32,14 +32,9 @@ public class AuthTokenUtil {
         }
 
         try {
-            if (!JWTToken.validateJWT(token)) {
-                LOG.warning("Invalid JWT token");
-                return null;
-            }
-
-            DecodedJWT decodedJWT = JWTToken.extractJWT(token);
+            DecodedJWT decodedJWT = VerifiedTokenCache.verify(token);
             if (decodedJWT == null) {
-                LOG.warning("Failed to decode JWT token");
+                LOG.warning("Invalid JWT token");
                 return null;
             }
 
@@ -63,8 +58,7 @@ public class AuthTokenUtil {
         }
 
         try {
-            Key userKey = userKeyFactory.newKey(username);
-            Entity user = datastore.get(userKey);
+            Entity user = UserCache.get(username, AuthTokenUtil::loadUser);
             
             if (user == null) {
                 LOG.warning("User not found in database: " + username);
@@ -86,6 +80,62 @@ public class AuthTokenUtil {
         }
     }
 
+    /**
+     * Claims-only validation: trusts the role and state carried by the token and only checks
+     * that the token version is still current, without loading the User entity
+     * @param token JWT token string
+     * @param requiredRole required role for access (can be null to skip role check)
+     * @return principal if valid and authorized, null otherwise
+     */
+    public static UserPrincipal validateTokenClaims(String token, List<String> requiredRole) {
+        if (token == null || token.trim().isEmpty()) {
+            return null;
+        }
+
+        try {
+            DecodedJWT jwt = VerifiedTokenCache.verify(token);
+            if (jwt == null) {
+                LOG.warning("Invalid JWT token");
+                return null;
+            }
+
+            String username = jwt.getSubject();
+            String role = jwt.getClaim("role").asString();
+            String versionClaim = jwt.getClaim(AccountConstants.CLAIM_TOKEN_VERSION).asString();
+            long tokenVersion = versionClaim != null ? Long.parseLong(versionClaim) : 0L;
+
+            if (tokenVersion != TokenVersionStore.getVersion(username)) {
+                LOG.warning("Stale token for user: " + username);
+                return null;
+            }
+
+            if (requiredRole != null && !requiredRole.contains(role)) {
+                LOG.warning("User " + username + " does not have required role: " + requiredRole);
+                return null;
+            }
+
+            return new UserPrincipal(username, role, jwt.getClaim("state").asString(),
+                    jwt.getClaim("profile").asString(), tokenVersion);
+        } catch (Exception e) {
+            LOG.warning("Error validating token claims: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the full User entity for an already authenticated principal
+     * @param username username of the principal
+     * @return user entity, null if it no longer exists
+     */
+    public static Entity getUserEntity(String username) {
+        return UserCache.get(username, AuthTokenUtil::loadUser);
+    }
+
+    private static Entity loadUser(String username) {
+        Key userKey = userKeyFactory.newKey(username);
+        return datastore.get(userKey);
+    }
+
     /**
      * Extracts token from Authorization header
      * @param authHeader Authorization header value
@@ -1,5 +1,6 @@
 package auth;
 
+import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.PrivateKey;
@@ -22,59 +23,34 @@ public class JWTConfig {
     }
 
     // === CONFIGURATION ===
-    public static final String ISSUER = "adc-server";  
+    public static final String ISSUER = "adc-server";
     public static final AlgorithmType ALGORITHM = AlgorithmType.HS256;
     public static final String HMAC_SECRET = "change-me-to-a-secure-random-string";
     public static final long EXPIRATION_TIME = 1000 * 60 * 60 * 2; // 2 hours
 
-    // === KEYS ===
-    private static PrivateKey privateKey;
-    private static PublicKey publicKey;
+    // === KEY SET (RSA / EC only) ===
+    public static final long KEY_ROTATION_INTERVAL = 1000L * 60 * 60 * 24 * 7; // 7 days
+    // A key keeps verifying, from the moment it is rotated out, until the last token it signed has expired.
+    // Instances cache the signing key for a few minutes, so they may still sign with it shortly after rotation.
+    public static final long KEY_RETENTION = EXPIRATION_TIME + 1000L * 60 * 15;
 
-    static {
-        try {
-            switch (ALGORITHM) {
-                case RS256, RS384, RS512 -> {
-                    int keySize = switch (ALGORITHM) {
-                        case RS256 -> 2048;
-                        case RS384 -> 3072;
-                        case RS512 -> 4096;
-                        default -> throw new IllegalStateException("Unexpected RSA algorithm");
-                    };
-                    KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
-                    kpg.initialize(keySize);
-                    KeyPair kp = kpg.generateKeyPair();
-                    privateKey = kp.getPrivate();
-                    publicKey = kp.getPublic();
-                }
-
-                case ES256, ES384, ES512 -> {
-                    String curve = switch (ALGORITHM) {
-                        case ES256 -> "secp256r1";
-                        case ES384 -> "secp384r1";
-                        case ES512 -> "secp521r1";
-                        default -> throw new IllegalStateException("Unexpected EC algorithm");
-                    };
-                    KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
-                    kpg.initialize(new ECGenParameterSpec(curve));
-                    KeyPair kp = kpg.generateKeyPair();
-                    privateKey = kp.getPrivate();
-                    publicKey = kp.getPublic();
-                }
+    // Only HMAC has a process-wide algorithm, RSA/EC algorithms come from JWTKeyStore per kid
+    private static final Algorithm hmacAlgorithm = isAsymmetric() ? null : buildAlgorithm(ALGORITHM, null, null);
 
-                // HMAC needs no key generation
-                case HS256, HS384, HS512 -> {
-                    // No-op
-                }
-            }
-        } catch (Exception e) {
-            throw new RuntimeException("Error initializing keys for JWT algorithm: " + ALGORITHM, e);
-        }
+    public static boolean isAsymmetric() {
+        return ALGORITHM != AlgorithmType.HS256 && ALGORITHM != AlgorithmType.HS384 && ALGORITHM != AlgorithmType.HS512;
     }
 
     // === ALGORITHM FACTORY ===
     public static Algorithm getJWTAlgorithm() {
-        return switch (ALGORITHM) {
+        return isAsymmetric() ? JWTKeyStore.signingKey().algorithm() : hmacAlgorithm;
+    }
+
+    /**
+     * Builds the algorithm for a key pair. The private key may be null for verify-only use.
+     */
+    public static Algorithm buildAlgorithm(AlgorithmType type, PublicKey publicKey, PrivateKey privateKey) {
+        return switch (type) {
             case HS256 -> Algorithm.HMAC256(HMAC_SECRET);
             case HS384 -> Algorithm.HMAC384(HMAC_SECRET);
             case HS512 -> Algorithm.HMAC512(HMAC_SECRET);
@@ -87,12 +63,34 @@ public class JWTConfig {
         };
     }
 
-    // === Optional functions ===
-    public static PrivateKey getPrivateKey() {
-        return privateKey;
+    // === KEY GENERATION ===
+    public static String keyFamily(AlgorithmType type) {
+        return switch (type) {
+            case RS256, RS384, RS512 -> "RSA";
+            case ES256, ES384, ES512 -> "EC";
+            default -> throw new IllegalStateException("No key pair for HMAC algorithm: " + type);
+        };
     }
 
-    public static PublicKey getPublicKey() {
-        return publicKey;
+    /**
+     * Generates a key pair for the configured algorithm. Only called when rotating the key set,
+     * never on instance startup.
+     */
+    public static KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator kpg = KeyPairGenerator.getInstance(keyFamily(ALGORITHM));
+            switch (ALGORITHM) {
+                case RS256 -> kpg.initialize(2048);
+                case RS384 -> kpg.initialize(3072);
+                case RS512 -> kpg.initialize(4096);
+                case ES256 -> kpg.initialize(new ECGenParameterSpec("secp256r1"));
+                case ES384 -> kpg.initialize(new ECGenParameterSpec("secp384r1"));
+                case ES512 -> kpg.initialize(new ECGenParameterSpec("secp521r1"));
+                default -> throw new IllegalStateException("Unexpected algorithm: " + ALGORITHM);
+            }
+            return kpg.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error generating keys for JWT algorithm: " + ALGORITHM, e);
+        }
     }
 }
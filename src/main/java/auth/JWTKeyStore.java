@@ -0,0 +1,327 @@
+package auth;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.google.cloud.datastore.Blob;
+import com.google.cloud.datastore.BlobValue;
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.QueryResults;
+import com.google.cloud.datastore.StructuredQuery.OrderBy;
+import com.google.cloud.datastore.Transaction;
+
+import constants.AccountConstants;
+import persistence.DatastoreGateway;
+
+/**
+ * RSA/EC signing keys shared by every instance through Datastore.
+ * Each key is a JWTKey entity named by its kid, and the JWTKeySet "current" entity points at the one used for signing.
+ * Instances only read keys; a new pair is generated by whichever instance first finds the current key due for
+ * rotation (or no key at all on the very first deploy), guarded by a transaction on the JWTKeySet entity.
+ */
+public class JWTKeyStore {
+    private static final Logger LOG = Logger.getLogger(JWTKeyStore.class.getName());
+    private static final Datastore datastore = DatastoreGateway.get();
+    private static final com.google.cloud.datastore.KeyFactory jwtKeyFactory = datastore.newKeyFactory()
+            .setKind(AccountConstants.JWT_KEY);
+    private static final Key keySetKey = datastore.newKeyFactory().setKind(AccountConstants.JWT_KEY_SET)
+            .newKey(AccountConstants.JK_CURRENT);
+
+    // How long an instance keeps signing with its cached key before re-reading the key set
+    private static final long REFRESH_MILLIS = 5 * 60 * 1000;
+    private static final long ROTATION_CHECK_MINUTES = 60;
+    // A kid missing from the key set reloads it at most this often, whatever the number of distinct kids seen
+    private static final long UNKNOWN_KID_RELOAD_MILLIS = 10_000;
+    // Keys loaded into the key set, newest first; older ones are refused
+    private static final int MAX_VERIFIERS = 1_000;
+
+    public record SigningKey(String kid, Algorithm algorithm, long createdAt) {
+    }
+
+    private record KeyVerifier(JWTVerifier verifier, long retiresAt) {
+    }
+
+    /**
+     * Verifiers of every key that can still have valid tokens, by kid
+     * @param loadedAt when the keys were read, or last attempted if the read failed
+     */
+    private record KeySet(Map<String, KeyVerifier> verifiers, long loadedAt) {
+    }
+
+    private static final Object keySetLock = new Object();
+    private static volatile KeySet keySet;
+    private static final Object signingLock = new Object();
+    private static volatile SigningKey signingKey;
+    private static volatile long signingKeyLoadedAt;
+
+    private static ScheduledExecutorService scheduler;
+
+    private JWTKeyStore() {
+    }
+
+    /**
+     * Returns the key new tokens are signed with, re-reading the key set every few minutes
+     * @return current signing key
+     */
+    public static SigningKey signingKey() {
+        SigningKey key = signingKey;
+        if (key != null && System.currentTimeMillis() - signingKeyLoadedAt < REFRESH_MILLIS) {
+            return key;
+        }
+        synchronized (signingLock) {
+            if (signingKey != null && System.currentTimeMillis() - signingKeyLoadedAt < REFRESH_MILLIS) {
+                return signingKey;
+            }
+            SigningKey loaded = loadCurrentKey();
+            if (loaded == null) {
+                rotateIfDue();
+                loaded = loadCurrentKey();
+            }
+            if (loaded == null) {
+                throw new IllegalStateException("No JWT signing key available");
+            }
+            signingKey = loaded;
+            signingKeyLoadedAt = System.currentTimeMillis();
+            return loaded;
+        }
+    }
+
+    /**
+     * Returns a verifier for the key with the given id. Kids are only resolved against the key set, which is
+     * re-read every few minutes; an unknown kid re-reads it early, but only once per short interval, so forged
+     * headers cannot make the instance read Datastore per request.
+     * @param kid key id from the token header
+     * @return verifier, or null if the key is unknown or retired
+     */
+    public static JWTVerifier verifierFor(String kid) {
+        if (kid == null || kid.isEmpty()) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        KeySet keys = keySet;
+        if (keys == null || now - keys.loadedAt() >= REFRESH_MILLIS
+                || (!keys.verifiers().containsKey(kid) && now - keys.loadedAt() >= UNKNOWN_KID_RELOAD_MILLIS)) {
+            keys = reloadKeySet(keys);
+        }
+        KeyVerifier key = keys.verifiers().get(kid);
+        return key != null && key.retiresAt() > now ? key.verifier() : null;
+    }
+
+    /**
+     * Reads the keys that are still within their retention, unless another thread already replaced the given set
+     * @param seen key set the caller found stale, null if none was loaded yet
+     * @return current key set
+     */
+    private static KeySet reloadKeySet(KeySet seen) {
+        synchronized (keySetLock) {
+            if (keySet != seen) {
+                return keySet;
+            }
+            long now = System.currentTimeMillis();
+            try {
+                QueryResults<Entity> results = datastore.run(Query.newEntityQueryBuilder()
+                        .setKind(AccountConstants.JWT_KEY)
+                        .setOrderBy(OrderBy.desc(AccountConstants.JK_CREATED))
+                        .setLimit(MAX_VERIFIERS)
+                        .build());
+                Map<String, KeyVerifier> verifiers = new HashMap<>();
+                while (results.hasNext()) {
+                    Entity entity = results.next();
+                    // The signing key has no retirement time until it is rotated out, and retention lasts hours after that
+                    long retiresAt = entity.contains(AccountConstants.JK_RETIRED)
+                            ? entity.getLong(AccountConstants.JK_RETIRED) + JWTConfig.KEY_RETENTION
+                            : Long.MAX_VALUE;
+                    if (retiresAt > now) {
+                        JWTVerifier verifier = JWT.require(toAlgorithm(entity, false)).withIssuer(JWTConfig.ISSUER)
+                                .build();
+                        verifiers.put(entity.getKey().getName(), new KeyVerifier(verifier, retiresAt));
+                    }
+                }
+                keySet = new KeySet(Map.copyOf(verifiers), now);
+            } catch (RuntimeException e) {
+                if (seen == null) {
+                    throw e;
+                }
+                // Keep verifying with the keys already known and retry after the short interval
+                LOG.warning("JWT key set not reloaded: " + e.getMessage());
+                keySet = new KeySet(seen.verifiers(), now - REFRESH_MILLIS + UNKNOWN_KID_RELOAD_MILLIS);
+            }
+            return keySet;
+        }
+    }
+
+    /**
+     * Creates a new signing key if the current one is older than the rotation interval, and records when the
+     * previous one was rotated out. Safe to call from every instance: only one commit wins per rotation.
+     */
+    public static void rotateIfDue() {
+        long now = System.currentTimeMillis();
+        Entity current = datastore.get(keySetKey);
+        if (current != null && now - current.getLong(AccountConstants.JK_CREATED) < JWTConfig.KEY_ROTATION_INTERVAL) {
+            return;
+        }
+
+        // Key generation is slow (RSA especially), so it happens before the transaction is opened
+        KeyPair pair = JWTConfig.generateKeyPair();
+        String kid = UUID.randomUUID().toString();
+
+        Transaction txn = datastore.newTransaction();
+        try {
+            Entity latest = txn.get(keySetKey);
+            if (latest != null && now - latest.getLong(AccountConstants.JK_CREATED) < JWTConfig.KEY_ROTATION_INTERVAL) {
+                txn.rollback();
+                return;
+            }
+            Entity key = Entity.newBuilder(jwtKeyFactory.newKey(kid))
+                    .set(AccountConstants.JK_ALGORITHM, JWTConfig.ALGORITHM.name())
+                    .set(AccountConstants.JK_PUBLIC_KEY, unindexed(pair.getPublic().getEncoded()))
+                    .set(AccountConstants.JK_PRIVATE_KEY, unindexed(pair.getPrivate().getEncoded()))
+                    .set(AccountConstants.JK_CREATED, now)
+                    .build();
+            Entity keySet = Entity.newBuilder(keySetKey)
+                    .set(AccountConstants.JK_CURRENT_KID, kid)
+                    .set(AccountConstants.JK_CREATED, now)
+                    .build();
+            txn.put(key, keySet);
+            if (latest != null) {
+                Entity previous = txn.get(jwtKeyFactory.newKey(latest.getString(AccountConstants.JK_CURRENT_KID)));
+                if (previous != null) {
+                    txn.put(Entity.newBuilder(previous).set(AccountConstants.JK_RETIRED, now).build());
+                }
+            }
+            txn.commit();
+            LOG.info("Rotated JWT signing key, new kid: " + kid);
+        } catch (Exception e) {
+            LOG.warning("JWT key rotation not applied: " + e.getMessage());
+        } finally {
+            if (txn.isActive()) {
+                txn.rollback();
+            }
+        }
+    }
+
+    /**
+     * Deletes keys that can no longer have valid tokens signed with them. The current key is never deleted.
+     * Keys older than the current one that have no retirement time (rotated out before it was recorded) are
+     * given one now, so they are kept for a full retention period.
+     */
+    public static void purgeRetiredKeys() {
+        Entity keySet = datastore.get(keySetKey);
+        if (keySet == null) {
+            return;
+        }
+        String currentKid = keySet.getString(AccountConstants.JK_CURRENT_KID);
+        long currentCreated = keySet.getLong(AccountConstants.JK_CREATED);
+        long now = System.currentTimeMillis();
+        long cutoff = now - JWTConfig.KEY_RETENTION;
+
+        // One key per rotation interval, kept for a few hours after it: the kind stays small
+        QueryResults<Entity> results = datastore.run(Query.newEntityQueryBuilder()
+                .setKind(AccountConstants.JWT_KEY)
+                .build());
+        List<Key> retired = new ArrayList<>();
+        while (results.hasNext()) {
+            Entity entity = results.next();
+            if (entity.getKey().getName().equals(currentKid)) {
+                continue;
+            }
+            if (!entity.contains(AccountConstants.JK_RETIRED)) {
+                if (entity.getLong(AccountConstants.JK_CREATED) < currentCreated) {
+                    datastore.put(Entity.newBuilder(entity).set(AccountConstants.JK_RETIRED, now).build());
+                }
+            } else if (entity.getLong(AccountConstants.JK_RETIRED) < cutoff) {
+                retired.add(entity.getKey());
+            }
+        }
+        if (!retired.isEmpty()) {
+            datastore.delete(retired.toArray(new Key[0]));
+            LOG.info("Purged " + retired.size() + " retired JWT keys");
+        }
+    }
+
+    /**
+     * Starts the periodic rotation check. The first run is jittered so instances started together
+     * do not all race for the same rotation.
+     */
+    public static synchronized void startRotation() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "jwt-key-rotation");
+            t.setDaemon(true);
+            return t;
+        });
+        long initialDelay = ThreadLocalRandom.current().nextLong(1, ROTATION_CHECK_MINUTES + 1);
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                rotateIfDue();
+                purgeRetiredKeys();
+            } catch (Exception e) {
+                LOG.warning("JWT key rotation check failed: " + e.getMessage());
+            }
+        }, initialDelay, ROTATION_CHECK_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public static synchronized void stopRotation() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private static SigningKey loadCurrentKey() {
+        Entity keySet = datastore.get(keySetKey);
+        if (keySet == null) {
+            return null;
+        }
+        String kid = keySet.getString(AccountConstants.JK_CURRENT_KID);
+        Entity entity = datastore.get(jwtKeyFactory.newKey(kid));
+        if (entity == null) {
+            LOG.severe("JWT key set points at missing key: " + kid);
+            return null;
+        }
+        return new SigningKey(kid, toAlgorithm(entity, true), entity.getLong(AccountConstants.JK_CREATED));
+    }
+
+    private static Algorithm toAlgorithm(Entity entity, boolean withPrivateKey) {
+        JWTConfig.AlgorithmType type = JWTConfig.AlgorithmType.valueOf(entity.getString(AccountConstants.JK_ALGORITHM));
+        try {
+            KeyFactory keyFactory = KeyFactory.getInstance(JWTConfig.keyFamily(type));
+            PublicKey publicKey = keyFactory.generatePublic(
+                    new X509EncodedKeySpec(entity.getBlob(AccountConstants.JK_PUBLIC_KEY).toByteArray()));
+            PrivateKey privateKey = withPrivateKey
+                    ? keyFactory.generatePrivate(
+                            new PKCS8EncodedKeySpec(entity.getBlob(AccountConstants.JK_PRIVATE_KEY).toByteArray()))
+                    : null;
+            return JWTConfig.buildAlgorithm(type, publicKey, privateKey);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error decoding JWT key " + entity.getKey().getName(), e);
+        }
+    }
+
+    private static BlobValue unindexed(byte[] bytes) {
+        return BlobValue.newBuilder(Blob.copyFrom(bytes)).setExcludeFromIndexes(true).build();
+    }
+}
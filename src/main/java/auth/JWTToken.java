@@ -4,6 +4,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.logging.Logger;
 
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.JWTCreator;
@@ -14,8 +15,18 @@ import com.auth0.jwt.interfaces.DecodedJWT;
 
 public class JWTToken {
 
+    private static final Logger LOG = Logger.getLogger(JWTToken.class.getName());
+
     public static String createJWT(String username, String role, Map<String, Object> extraClaims) {
-        Algorithm alg = JWTConfig.getJWTAlgorithm();
+        Algorithm alg;
+        String kid = null;
+        if (JWTConfig.isAsymmetric()) {
+            JWTKeyStore.SigningKey signingKey = JWTKeyStore.signingKey();
+            alg = signingKey.algorithm();
+            kid = signingKey.kid();
+        } else {
+            alg = JWTConfig.getJWTAlgorithm();
+        }
         long nowMillis = System.currentTimeMillis();
         Date now = new Date(nowMillis);
         Date exp = new Date(nowMillis + JWTConfig.EXPIRATION_TIME);
@@ -24,6 +35,9 @@ public class JWTToken {
         header.put("typ", "ADC-JWT-Type");
         header.put("alg", alg.getName());
         header.put("ref", "session-token");
+        if (kid != null) {
+            header.put("kid", kid);
+        }
 
         JWTCreator.Builder builder = JWT.create()
             .withHeader(header)
@@ -46,29 +60,46 @@ public class JWTToken {
         return builder.sign(alg);
     }
 
+    // Shared HMAC verifier, JWTVerifier is thread-safe and reusable. RSA/EC verifiers are cached per kid in JWTKeyStore
+    private static final JWTVerifier hmacVerifier = JWTConfig.isAsymmetric() ? null
+        : JWT.require(JWTConfig.getJWTAlgorithm())
+            .withIssuer(JWTConfig.ISSUER)
+            .build();
+
     public static boolean validateJWT(String token) {
-        try {
-            Algorithm alg = JWTConfig.getJWTAlgorithm();
-            JWTVerifier verifier = JWT.require(alg)
-                .withIssuer(JWTConfig.ISSUER)
-                .build();
-            DecodedJWT jwt = verifier.verify(token);
-            Date now = new Date();
-            return !jwt.getNotBefore().after(now) && !jwt.getExpiresAt().before(now);
-        } catch (JWTVerificationException e) {
-            System.err.println("JWT inválido: " + e.getMessage());
-            return false;
-        }
+        return verifyJWT(token) != null;
     }
 
     public static DecodedJWT extractJWT(String token) {
+        return verifyJWT(token);
+    }
+
+    /**
+     * Verifies signature, issuer and time window in a single pass.
+     * RSA/EC tokens are checked against the key named by their kid header
+     * @param token JWT token string
+     * @return decoded token if valid, null otherwise
+     */
+    public static DecodedJWT verifyJWT(String token) {
         try {
-            Algorithm alg = JWTConfig.getJWTAlgorithm();
-            JWTVerifier verifier = JWT.require(alg)
-                .withIssuer(JWTConfig.ISSUER)
-                .build();
-            return verifier.verify(token);
+            DecodedJWT jwt;
+            if (JWTConfig.isAsymmetric()) {
+                DecodedJWT unverified = JWT.decode(token);
+                JWTVerifier verifier = JWTKeyStore.verifierFor(unverified.getKeyId());
+                if (verifier == null) {
+                    return null;
+                }
+                jwt = verifier.verify(unverified);
+            } else {
+                jwt = hmacVerifier.verify(token);
+            }
+            Date now = new Date();
+            if (jwt.getNotBefore().after(now) || jwt.getExpiresAt().before(now)) {
+                return null;
+            }
+            return jwt;
         } catch (JWTVerificationException e) {
+            LOG.fine("JWT inválido: " + e.getMessage());
             return null;
         }
     }
@@ -0,0 +1,222 @@
+package auth;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyFactory;
+import com.google.cloud.datastore.KeyQuery;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.QueryResults;
+import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+
+import constants.AccountConstants;
+import persistence.DatastoreGateway;
+
+/**
+ * Revoked token ids (jti), persisted in Datastore until the token would have expired anyway.
+ * Every instance keeps a Bloom filter of the list, so a token that was never revoked is cleared
+ * in memory; only a filter hit is confirmed with a key lookup.
+ * A background task adds newly revoked ids every few seconds and rebuilds the filter hourly to drop expired ones.
+ * Until the first filter is built every id is looked up directly.
+ */
+public class RevokedTokenStore {
+    private static final Logger LOG = Logger.getLogger(RevokedTokenStore.class.getName());
+    private static final Datastore datastore = DatastoreGateway.get();
+    private static final KeyFactory revokedKeyFactory = datastore.newKeyFactory().setKind(AccountConstants.REVOKED_TOKEN);
+
+    private static final long REFRESH_SECONDS = 10;
+    private static final long REBUILD_MINUTES = 60;
+    private static final int MIN_CAPACITY = 10_000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    // Results of confirmed lookups, so a revoked token replayed in a loop costs one read
+    private static final int MAX_CONFIRMED = 10_000;
+    // Ids a lookup found not revoked, so a false positive does not cost a read on every request. Kept no longer
+    // than the refresh interval, the delay other instances already have in seeing a revocation.
+    private static final long NOT_REVOKED_TTL_MILLIS = REFRESH_SECONDS * 1000;
+    private static final int MAX_NOT_REVOKED = 10_000;
+
+    private record Snapshot(BloomFilter filter, int capacity, int size, long watermark) {
+    }
+
+    private static final ConcurrentHashMap<String, Long> confirmedRevoked = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Long> confirmedNotRevoked = new ConcurrentHashMap<>();
+    private static volatile Snapshot snapshot;
+    private static ScheduledExecutorService scheduler;
+
+    private RevokedTokenStore() {
+    }
+
+    /**
+     * Whether a token id was revoked. Never touches Datastore unless the Bloom filter reports a hit
+     * (or before the first filter is built).
+     * @param jti token id
+     * @return true if the token was revoked
+     */
+    public static boolean isRevoked(String jti) {
+        if (jti == null) {
+            return false;
+        }
+        Snapshot current = snapshot;
+        if (current != null && !current.filter().mightContain(jti)) {
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        Long expiresAt = confirmedRevoked.get(jti);
+        if (expiresAt != null) {
+            return expiresAt > now;
+        }
+        Long checkedUntil = confirmedNotRevoked.get(jti);
+        if (checkedUntil != null && checkedUntil > now) {
+            return false;
+        }
+
+        Entity entity = datastore.get(revokedKeyFactory.newKey(jti));
+        if (entity == null) {
+            if (confirmedNotRevoked.size() >= MAX_NOT_REVOKED) {
+                confirmedNotRevoked.entrySet().removeIf(e -> e.getValue() <= now);
+            }
+            confirmedNotRevoked.put(jti, now + NOT_REVOKED_TTL_MILLIS);
+            return false;
+        }
+        if (confirmedRevoked.size() >= MAX_CONFIRMED) {
+            confirmedRevoked.entrySet().removeIf(e -> e.getValue() <= now);
+        }
+        confirmedRevoked.put(jti, entity.getLong(AccountConstants.RT_EXPIRES_AT));
+        return true;
+    }
+
+    /**
+     * Revokes a token until its expiration. Takes effect on this instance immediately
+     * and on the others at their next refresh.
+     * @param jti token id
+     * @param expiresAt token expiration in epoch millis
+     */
+    public static void revoke(String jti, long expiresAt) {
+        long now = System.currentTimeMillis();
+        Entity entity = Entity.newBuilder(revokedKeyFactory.newKey(jti))
+                .set(AccountConstants.RT_REVOKED_AT, now)
+                .set(AccountConstants.RT_EXPIRES_AT, expiresAt)
+                .build();
+        datastore.put(entity);
+        Snapshot current = snapshot;
+        if (current != null) {
+            current.filter().put(jti);
+        }
+        confirmedRevoked.put(jti, expiresAt);
+        confirmedNotRevoked.remove(jti);
+    }
+
+    /**
+     * Builds the first filter and starts the background refresh. If the first build fails, requests keep looking
+     * ids up directly and the next refresh retries it.
+     */
+    public static synchronized void startRefresh() {
+        if (scheduler != null) {
+            return;
+        }
+        try {
+            rebuild();
+        } catch (Exception e) {
+            LOG.warning("Revoked token filter not built at startup: " + e.getMessage());
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "revoked-token-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (Exception e) {
+                LOG.warning("Revoked token refresh failed: " + e.getMessage());
+            }
+        }, REFRESH_SECONDS, REFRESH_SECONDS, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                rebuild();
+            } catch (Exception e) {
+                LOG.warning("Revoked token rebuild failed: " + e.getMessage());
+            }
+        }, REBUILD_MINUTES, REBUILD_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public static synchronized void stopRefresh() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Adds ids revoked since the last refresh to the current filter
+     */
+    private static void refresh() {
+        Snapshot current = snapshot;
+        if (current == null || current.size() > current.capacity()) {
+            rebuild();
+            return;
+        }
+
+        KeyQuery query = Query.newKeyQueryBuilder()
+                .setKind(AccountConstants.REVOKED_TOKEN)
+                .setFilter(PropertyFilter.ge(AccountConstants.RT_REVOKED_AT, current.watermark()))
+                .build();
+        long startedAt = System.currentTimeMillis();
+        QueryResults<Key> results = datastore.run(query);
+        int added = 0;
+        while (results.hasNext()) {
+            current.filter().put(results.next().getName());
+            added++;
+        }
+        // The next query overlaps this one by a few seconds, re-adding an id is harmless
+        snapshot = new Snapshot(current.filter(), current.capacity(), current.size() + added, startedAt - 5_000);
+    }
+
+    /**
+     * Builds a fresh filter from the ids that have not expired yet and deletes the expired ones
+     */
+    private static synchronized void rebuild() {
+        long now = System.currentTimeMillis();
+
+        KeyQuery liveQuery = Query.newKeyQueryBuilder()
+                .setKind(AccountConstants.REVOKED_TOKEN)
+                .setFilter(PropertyFilter.gt(AccountConstants.RT_EXPIRES_AT, now))
+                .build();
+        List<String> live = new ArrayList<>();
+        QueryResults<Key> results = datastore.run(liveQuery);
+        while (results.hasNext()) {
+            live.add(results.next().getName());
+        }
+
+        int capacity = Math.max(MIN_CAPACITY, live.size() * 2);
+        BloomFilter filter = new BloomFilter(capacity, FALSE_POSITIVE_RATE);
+        live.forEach(filter::put);
+        snapshot = new Snapshot(filter, capacity, live.size(), now - 5_000);
+        confirmedRevoked.entrySet().removeIf(e -> e.getValue() <= now);
+        confirmedNotRevoked.entrySet().removeIf(e -> e.getValue() <= now);
+
+        KeyQuery expiredQuery = Query.newKeyQueryBuilder()
+                .setKind(AccountConstants.REVOKED_TOKEN)
+                .setFilter(PropertyFilter.le(AccountConstants.RT_EXPIRES_AT, now))
+                .build();
+        List<Key> expired = new ArrayList<>();
+        QueryResults<Key> expiredResults = datastore.run(expiredQuery);
+        while (expiredResults.hasNext()) {
+            expired.add(expiredResults.next());
+        }
+        // Datastore accepts at most 500 keys per delete
+        for (int i = 0; i < expired.size(); i += 500) {
+            datastore.delete(expired.subList(i, Math.min(i + 500, expired.size())).toArray(new Key[0]));
+        }
+        LOG.info("Revoked token filter rebuilt: " + live.size() + " live, " + expired.size() + " expired removed");
+    }
+}
@@ -0,0 +1,46 @@
+package auth;
+
+import constants.AccountConstants;
+
+/**
+ * Account roles as an enum, so role requirements can be compiled into EnumSets
+ */
+public enum Role {
+    SYSADMIN(AccountConstants.SYSTEM_ADMIN_ROLE),
+    SYSBO(AccountConstants.SYSTEM_BACKOFFICE_ROLE),
+    SMBO(AccountConstants.SHEET_MANAGER_BACKOFFICE),
+    SGVBO(AccountConstants.SHEET_GENERAL_VIEWER_BACKOFFICE),
+    SDVBO(AccountConstants.SHEET_DETAILED_VIEWER_BACKOFFICE),
+    PRBO(AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE),
+    PO(AccountConstants.PARTNER_OPERATOR),
+    ADLU(AccountConstants.ADHERENT_LANDOWNER_USER),
+    RU(AccountConstants.REGISTERED_USER),
+    VU(AccountConstants.VIEWER_USER);
+
+    private final String code;
+
+    Role(String code) {
+        this.code = code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * Maps a stored role code to its enum value
+     * @param code role code as stored in Datastore
+     * @return matching role, null if unknown
+     */
+    public static Role fromCode(String code) {
+        if (code == null) {
+            return null;
+        }
+        for (Role role : values()) {
+            if (role.code.equals(code)) {
+                return role;
+            }
+        }
+        return null;
+    }
+}
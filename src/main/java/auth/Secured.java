@@ -0,0 +1,16 @@
+package auth;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a resource method as requiring an authenticated caller.
+ * An empty value accepts any role; otherwise the caller's role must be listed.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Secured {
+    Role[] value() default {};
+}
@@ -0,0 +1,38 @@
+package auth;
+
+import java.security.Principal;
+
+import jakarta.ws.rs.core.SecurityContext;
+
+/**
+ * Security context exposing the principal resolved from the request's bearer token
+ */
+public class TokenSecurityContext implements SecurityContext {
+    private final UserPrincipal principal;
+    private final boolean secure;
+
+    public TokenSecurityContext(UserPrincipal principal, boolean secure) {
+        this.principal = principal;
+        this.secure = secure;
+    }
+
+    @Override
+    public Principal getUserPrincipal() {
+        return principal;
+    }
+
+    @Override
+    public boolean isUserInRole(String role) {
+        return role != null && role.equals(principal.getRole());
+    }
+
+    @Override
+    public boolean isSecure() {
+        return secure;
+    }
+
+    @Override
+    public String getAuthenticationScheme() {
+        return "Bearer";
+    }
+}
@@ -0,0 +1,95 @@
+package auth;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.DatastoreException;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyFactory;
+import com.google.cloud.datastore.Transaction;
+
+import constants.AccountConstants;
+import persistence.DatastoreGateway;
+
+/**
+ * Per-user token version, kept in its own small kind so claims-only checks never load the User entity.
+ * Bumping the version revokes every token issued before the bump.
+ */
+public class TokenVersionStore {
+    private static final Logger LOG = Logger.getLogger(TokenVersionStore.class.getName());
+    private static final Datastore datastore = DatastoreGateway.get();
+    private static final KeyFactory versionKeyFactory = datastore.newKeyFactory().setKind(AccountConstants.TOKEN_VERSION);
+
+    // Other instances see a bump after at most this long
+    private static final long TTL_MILLIS = 15_000;
+    private static final int MAX_ENTRIES = 10_000;
+
+    private static final ConcurrentHashMap<String, CachedVersion> cache = new ConcurrentHashMap<>();
+
+    private record CachedVersion(long version, long expiresAt) {
+    }
+
+    private TokenVersionStore() {
+    }
+
+    /**
+     * Returns the current token version of a user (0 if it was never bumped)
+     * @param username user key name
+     * @return current token version
+     */
+    public static long getVersion(String username) {
+        long now = System.currentTimeMillis();
+        CachedVersion cached = cache.get(username);
+        if (cached != null && cached.expiresAt() > now) {
+            return cached.version();
+        }
+
+        return readVersion(username);
+    }
+
+    /**
+     * Reads the token version from Datastore, bypassing the cache, and refreshes the cached entry.
+     * Used when issuing a token: a version cached before a bump on another instance would be embedded in the new
+     * token, which is then rejected as soon as the cache catches up.
+     * @param username user key name
+     * @return current token version
+     */
+    public static long readVersion(String username) {
+        long now = System.currentTimeMillis();
+        // Lookups by key are strongly consistent
+        Entity entity = datastore.get(versionKeyFactory.newKey(username));
+        long version = entity == null ? 0L : entity.getLong(AccountConstants.TV_VERSION);
+
+        if (cache.size() >= MAX_ENTRIES) {
+            cache.entrySet().removeIf(e -> e.getValue().expiresAt() <= now);
+        }
+        cache.put(username, new CachedVersion(version, now + TTL_MILLIS));
+        return version;
+    }
+
+    /**
+     * Increments the token version of a user, revoking all tokens issued so far
+     * @param username user key name
+     * @throws DatastoreException if the version could not be written, in which case no token was revoked
+     */
+    public static void bump(String username) {
+        Key key = versionKeyFactory.newKey(username);
+        Transaction txn = datastore.newTransaction();
+        try {
+            Entity current = txn.get(key);
+            long next = (current == null ? 0L : current.getLong(AccountConstants.TV_VERSION)) + 1;
+            txn.put(Entity.newBuilder(key).set(AccountConstants.TV_VERSION, next).build());
+            txn.commit();
+            cache.remove(username);
+        } catch (DatastoreException e) {
+            LOG.severe("Error bumping token version for " + username + ": " + e.getMessage());
+            throw e;
+        } finally {
+            if (txn.isActive()) {
+                txn.rollback();
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package auth;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import com.google.cloud.datastore.Entity;
+
+/**
+ * Bounded in-process cache of User entities used by token validation.
+ * Entries expire after a short TTL and are dropped explicitly whenever a user is written.
+ */
+public class UserCache {
+    private static final long TTL_MILLIS = 30_000; // 30 seconds
+    private static final int MAX_ENTRIES = 5_000;
+
+    private static final ConcurrentHashMap<String, CachedUser> cache = new ConcurrentHashMap<>();
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+
+    private record CachedUser(Entity user, long expiresAt) {
+    }
+
+    private UserCache() {
+    }
+
+    /**
+     * Returns the cached user, loading it on a miss
+     * @param username user key name
+     * @param loader loads the entity from Datastore (may return null)
+     * @return user entity, null if it does not exist
+     */
+    public static Entity get(String username, Function<String, Entity> loader) {
+        long now = System.currentTimeMillis();
+        CachedUser cached = cache.get(username);
+        if (cached != null && cached.expiresAt() > now) {
+            hits.increment();
+            return cached.user();
+        }
+
+        misses.increment();
+        Entity user = loader.apply(username);
+        if (user == null) {
+            cache.remove(username);
+            return null;
+        }
+
+        if (cache.size() >= MAX_ENTRIES) {
+            cache.entrySet().removeIf(e -> e.getValue().expiresAt() <= now);
+            if (cache.size() >= MAX_ENTRIES) {
+                cache.clear();
+            }
+        }
+        cache.put(username, new CachedUser(user, now + TTL_MILLIS));
+        return user;
+    }
+
+    /**
+     * Drops a user from the cache, must be called after any write to that user
+     * @param username user key name
+     */
+    public static void invalidate(String username) {
+        if (username != null) {
+            cache.remove(username);
+        }
+    }
+
+    public static long getHits() {
+        return hits.sum();
+    }
+
+    public static long getMisses() {
+        return misses.sum();
+    }
+
+    public static int size() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,47 @@
+package auth;
+
+import java.security.Principal;
+
+/**
+ * Authenticated caller as described by the claims of a verified JWT
+ */
+public class UserPrincipal implements Principal {
+    private final String username;
+    private final String role;
+    private final String state;
+    private final String profile;
+    private final long tokenVersion;
+
+    public UserPrincipal(String username, String role, String state, String profile, long tokenVersion) {
+        this.username = username;
+        this.role = role;
+        this.state = state;
+        this.profile = profile;
+        this.tokenVersion = tokenVersion;
+    }
+
+    @Override
+    public String getName() {
+        return username;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public long getTokenVersion() {
+        return tokenVersion;
+    }
+}
@@ -0,0 +1,88 @@
+package auth;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+
+/**
+ * In-process cache of already verified JWTs, keyed by the SHA-256 digest of the token.
+ * Entries live until the token's own expiration, so a cached token never outlives its exp claim.
+ * Revocation is checked on every call, cached or not, against the in-memory filter of RevokedTokenStore.
+ * When the cache is full, a new token replaces one of a small sample of entries, the expired ones first and
+ * otherwise the one expiring soonest, so a full cache costs the same per miss as an empty one.
+ */
+public class VerifiedTokenCache {
+    private static final int MAX_ENTRIES = 10_000;
+    // Entries looked at to make room for a new one
+    private static final int EVICTION_SAMPLE = 8;
+
+    private static final ConcurrentHashMap<String, CachedToken> cache = new ConcurrentHashMap<>();
+
+    private record CachedToken(DecodedJWT jwt, long expiresAt) {
+    }
+
+    private VerifiedTokenCache() {
+    }
+
+    /**
+     * Returns the decoded token, verifying it only when it is not already cached
+     * @param token JWT token string
+     * @return decoded token if valid, null otherwise
+     */
+    public static DecodedJWT verify(String token) {
+        String digest = DigestUtils.sha256Hex(token);
+        long now = System.currentTimeMillis();
+
+        CachedToken cached = cache.get(digest);
+        if (cached != null) {
+            if (cached.expiresAt() > now) {
+                return RevokedTokenStore.isRevoked(cached.jwt().getId()) ? null : cached.jwt();
+            }
+            cache.remove(digest, cached);
+            return null;
+        }
+
+        DecodedJWT jwt = JWTToken.verifyJWT(token);
+        if (jwt == null || RevokedTokenStore.isRevoked(jwt.getId())) {
+            return null;
+        }
+
+        if (cache.size() >= MAX_ENTRIES) {
+            evictSample(now);
+        }
+        cache.put(digest, new CachedToken(jwt, jwt.getExpiresAt().getTime()));
+        return jwt;
+    }
+
+    /**
+     * Drops a token from the cache (e.g. on logout)
+     * @param token JWT token string
+     */
+    public static void invalidate(String token) {
+        if (token != null) {
+            cache.remove(DigestUtils.sha256Hex(token));
+        }
+    }
+
+    private static void evictSample(long now) {
+        Map.Entry<String, CachedToken> soonest = null;
+        boolean removed = false;
+        Iterator<Map.Entry<String, CachedToken>> entries = cache.entrySet().iterator();
+        for (int i = 0; i < EVICTION_SAMPLE && entries.hasNext(); i++) {
+            Map.Entry<String, CachedToken> entry = entries.next();
+            if (entry.getValue().expiresAt() <= now) {
+                entries.remove();
+                removed = true;
+            } else if (soonest == null || entry.getValue().expiresAt() < soonest.getValue().expiresAt()) {
+                soonest = entry;
+            }
+        }
+        if (!removed && soonest != null) {
+            cache.remove(soonest.getKey(), soonest.getValue());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.locationtech.proj4j.CRSFactory;
+import org.locationtech.proj4j.CoordinateTransform;
+import org.locationtech.proj4j.CoordinateTransformFactory;
+import org.locationtech.proj4j.ProjCoordinate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import geo.Geodesy;
+import net.sf.geographiclib.Geodesic;
+import net.sf.geographiclib.PolygonArea;
+
+/**
+ * Vertices per second of parcel area computation, before and after the shared Geodesy service.
+ * "per-vertex" is the code stopActivity and calculateTotalArea used to run: two CRSFactory lookups and a new
+ * CoordinateTransform for every vertex. "area" calls Geodesy.area per polygon, "areas" one Geodesy.areas batch.
+ * Each mode runs warmup rounds first, then the best of the measured rounds is reported, and the areas of
+ * every mode are checked against the per-vertex ones.
+ *
+ * Usage: java benchmarks.GeodesyBenchmark [polygons] [verticesPerPolygon] [rounds]
+ * Defaults: 2000 polygons of 64 vertices, 5 rounds. The per-vertex mode only runs over the first 100 polygons.
+ */
+public class GeodesyBenchmark {
+
+	private static final int LEGACY_POLYGONS = 100;
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	public static void main(String[] args) {
+		int polygons = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int vertices = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		List<JsonNode> geometries = new ArrayList<>();
+		for (int i = 0; i < polygons; i++) {
+			geometries.add(polygon(i, vertices));
+		}
+		List<JsonNode> legacyGeometries = geometries.subList(0, Math.min(LEGACY_POLYGONS, polygons));
+		Geodesy geodesy = Geodesy.get();
+
+		System.out.printf("polygons=%d vertices=%d rounds=%d%n", polygons, vertices, rounds);
+		double[] expected = run("per-vertex", legacyGeometries, vertices, rounds, list -> {
+			double[] areas = new double[list.size()];
+			for (int i = 0; i < areas.length; i++) {
+				areas[i] = legacyArea(list.get(i));
+			}
+			return areas;
+		});
+		double[] single = run("area", geometries, vertices, rounds, list -> {
+			double[] areas = new double[list.size()];
+			for (int i = 0; i < areas.length; i++) {
+				areas[i] = geodesy.area(list.get(i));
+			}
+			return areas;
+		});
+		double[] batch = run("areas", geometries, vertices, rounds, list -> geodesy.areas(list, Geodesy.PT_TM06));
+
+		System.out.printf("max relative difference to per-vertex: area=%.2e areas=%.2e%n",
+				maxDifference(expected, single), maxDifference(expected, batch));
+	}
+
+	private interface AreaFunction {
+		double[] apply(List<JsonNode> geometries);
+	}
+
+	private static double[] run(String mode, List<JsonNode> geometries, int vertices, int rounds, AreaFunction function) {
+		double[] areas = null;
+		for (int i = 0; i < 2; i++) {
+			areas = function.apply(geometries);
+		}
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < rounds; i++) {
+			long start = System.nanoTime();
+			areas = function.apply(geometries);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		long totalVertices = (long) geometries.size() * (vertices + 1);
+		System.out.printf("%-10s polygons=%-6d time=%9.2fms vertices/s=%,14.0f%n",
+				mode, geometries.size(), best / 1e6, totalVertices / (best / 1e9));
+		return areas;
+	}
+
+	// The code the resources ran before Geodesy, kept verbatim as the baseline
+	private static double legacyArea(JsonNode node) {
+		PolygonArea polygon = new PolygonArea(Geodesic.WGS84, false);
+		for (JsonNode point : node.path("coordinates").get(0)) {
+			ProjCoordinate src = new ProjCoordinate(point.get(0).asDouble(), point.get(1).asDouble());
+			CoordinateTransform transform = new CoordinateTransformFactory().createTransform(
+					new CRSFactory().createFromParameters("PT-TM06",
+							"+proj=tmerc +lat_0=39.66825833333333 +lon_0=-8.13190611111111 +k=1.0 "
+									+ "+x_0=200000 +y_0=300000 +ellps=GRS80 +units=m +no_defs"),
+					new CRSFactory().createFromName("epsg:4326"));
+			ProjCoordinate dst = new ProjCoordinate();
+			transform.transform(src, dst);
+			polygon.AddPoint(dst.y, dst.x);
+		}
+		return Math.abs(polygon.Compute().area) / 10000;
+	}
+
+	private static double maxDifference(double[] expected, double[] actual) {
+		double max = 0;
+		for (int i = 0; i < expected.length; i++) {
+			max = Math.max(max, Math.abs(actual[i] - expected[i]) / expected[i]);
+		}
+		return max;
+	}
+
+	// Roughly circular parcels of about 1ha, laid out on a grid in PT-TM06 coordinates
+	private static ObjectNode polygon(int i, int vertices) {
+		double cx = -20_000 + (i % 100) * 200.0;
+		double cy = 50_000 + (i / 100) * 200.0;
+		ObjectNode geometry = mapper.createObjectNode();
+		geometry.put("type", "Polygon");
+		ArrayNode ring = geometry.putArray("coordinates").addArray();
+		for (int v = 0; v <= vertices; v++) {
+			double angle = 2 * Math.PI * (v % vertices) / vertices;
+			ring.addArray().add(cx + 56 * Math.cos(angle)).add(cy + 56 * Math.sin(angle));
+		}
+		return geometry;
+	}
+}
@@ -0,0 +1,75 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import security.PasswordHasher;
+import security.PasswordHashingService;
+
+/**
+ * Open-loop login benchmark: fires password verifications at a fixed rate through
+ * PasswordHashingService and reports latency percentiles measured from the scheduled
+ * start time (so queueing delay is not hidden).
+ *
+ * Usage: java benchmarks.LoginLatencyBenchmark [loginsPerSecond] [seconds] [requestThreads]
+ * Defaults match one App Engine instance: 20 logins/s for 30s over 50 request threads.
+ */
+public class LoginLatencyBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int rate = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+		int requestThreads = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+		String password = "benchmark-password";
+		String stored = PasswordHasher.hashPassword(password);
+
+		ExecutorService requests = Executors.newFixedThreadPool(requestThreads);
+		List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger rejected = new AtomicInteger();
+
+		long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+		long start = System.nanoTime();
+		int total = rate * seconds;
+
+		for (int i = 0; i < total; i++) {
+			long scheduled = start + i * intervalNanos;
+			long wait = scheduled - System.nanoTime();
+			if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+			requests.execute(() -> {
+				try {
+					PasswordHashingService.verify(password, stored);
+					latencies.add(System.nanoTime() - scheduled);
+				} catch (PasswordHashingService.OverloadedException e) {
+					rejected.incrementAndGet();
+				}
+			});
+		}
+
+		requests.shutdown();
+		requests.awaitTermination(5, TimeUnit.MINUTES);
+
+		List<Long> sorted = new ArrayList<>(latencies);
+		Collections.sort(sorted);
+		System.out.printf("iterations=%d rate=%d/s duration=%ds requestThreads=%d%n",
+				PasswordHasher.ITERATIONS, rate, seconds, requestThreads);
+		System.out.printf("completed=%d rejected=%d%n", sorted.size(), rejected.get());
+		if (!sorted.isEmpty()) {
+			System.out.printf("p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms%n",
+					percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+					sorted.get(sorted.size() - 1) / 1e6);
+		}
+	}
+
+	private static double percentile(List<Long> sorted, double p) {
+		int index = (int) Math.ceil(p * sorted.size()) - 1;
+		return sorted.get(Math.max(0, index)) / 1e6;
+	}
+}
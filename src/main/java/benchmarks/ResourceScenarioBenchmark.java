@@ -0,0 +1,216 @@
+package benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.cloud.datastore.Entity;
+
+import auth.TokenSecurityContext;
+import auth.UserPrincipal;
+import constants.AccountConstants;
+import constants.ExecutionSheetConstants;
+import constants.WorkSheetConstants;
+import dto.WorkSheetData;
+import jakarta.ws.rs.core.Response;
+import jobs.ExecutionSheetJobs;
+import jobs.Jobs;
+import jobs.WorkSheetJobs;
+import persistence.DatastoreGateway;
+import persistence.DatastoreMetrics;
+import persistence.InMemoryDatastore;
+import resources.ExecutionSheetResource;
+import resources.WorkSheetResource;
+
+/**
+ * Scenario benchmark of WorkSheetResource and ExecutionSheetResource against an in-memory Datastore.
+ * Seeds worksheets (and their parcels) through createWorkSheet, creates their execution sheets, then
+ * times the read endpoints on random worksheets. Reports latency percentiles and Datastore RPCs per call,
+ * so the numbers can be compared before and after a change without a cloud project.
+ *
+ * Usage: java benchmarks.ResourceScenarioBenchmark [parcels] [worksheets] [iterations] [latencyMs] [jitterMs]
+ * Defaults: 10000 parcels over 20 worksheets, 100 iterations per read scenario, no injected latency.
+ * A latency of a few ms per RPC makes per-row queries stand out the way they do in production.
+ */
+public class ResourceScenarioBenchmark {
+
+	private static final String[] OPERATION_CODES = { "OP1", "OP2", "OP3" };
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	public static void main(String[] args) throws Exception {
+		int parcels = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+		int worksheets = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+		long latencyMs = args.length > 3 ? Long.parseLong(args[3]) : 0;
+		long jitterMs = args.length > 4 ? Long.parseLong(args[4]) : 0;
+
+		InMemoryDatastore memory = new InMemoryDatastore(Duration.ofMillis(latencyMs), Duration.ofMillis(jitterMs));
+		DatastoreGateway.setDelegate(memory.asDatastore());
+		WorkSheetJobs.register();
+		ExecutionSheetJobs.register();
+
+		UserPrincipal manager = new UserPrincipal("benchmark", AccountConstants.SHEET_MANAGER_BACKOFFICE,
+				AccountConstants.ACTIVE_STATE, AccountConstants.PRIVATE_PROFILE, 0);
+		WorkSheetResource workSheets = withUser(new WorkSheetResource(), manager);
+		ExecutionSheetResource executionSheets = withUser(new ExecutionSheetResource(), manager);
+
+		System.out.printf("parcels=%d worksheets=%d iterations=%d latency=%dms jitter=%dms%n",
+				parcels, worksheets, iterations, latencyMs, jitterMs);
+
+		int perWorksheet = parcels / worksheets;
+		List<Long> createWs = new ArrayList<>();
+		List<Long> createEs = new ArrayList<>();
+		for (int w = 1; w <= worksheets; w++) {
+			byte[] data = mapper.writeValueAsBytes(worksheet(w, (w - 1) * perWorksheet, perWorksheet));
+			long wsId = w;
+			createWs.add(timed("createWorkSheet",
+					() -> workSheets.createWorkSheet(new ByteArrayInputStream(data))));
+			createEs.add(timed("createExecutionSheet", () -> executionSheets.createExecutionSheet(wsId)));
+		}
+		report("createWorkSheet", createWs);
+		report("createExecutionSheet", createEs);
+		// Execution parcels are created by jobs on the local queue
+		long drainStart = System.nanoTime();
+		for (int w = 1; w <= worksheets; w++) {
+			awaitJob(ExecutionSheetJobs.createParcelsJobId("execution_" + w));
+		}
+		System.out.printf("executionsheet jobs drained in %.1f ms%n", (System.nanoTime() - drainStart) / 1e6);
+		System.out.printf("seeded %s=%d %s=%d %s=%d%n",
+				WorkSheetConstants.WS_PROP, memory.count(WorkSheetConstants.WS_PROP),
+				ExecutionSheetConstants.EXEC_OPERATION, memory.count(ExecutionSheetConstants.EXEC_OPERATION),
+				ExecutionSheetConstants.EXEC_PARCEL, memory.count(ExecutionSheetConstants.EXEC_PARCEL));
+
+		scenario("visualizeDetailedWorkSheet", iterations,
+				() -> workSheets.visualizeDetailedWorkSheet(randomWorksheet(worksheets)));
+		scenario("listWorkSheets", iterations, () -> workSheets.listWorkSheets(50, null));
+		scenario("listExecutionSheets", iterations, () -> executionSheets.listExecutionSheets(50, null));
+		scenario("getOperationStatus", iterations, () -> executionSheets.getOperationStatus(
+				"execution_" + randomWorksheet(worksheets) + "_" + OPERATION_CODES[0]));
+		scenario("getExecutionSheetStatus", iterations,
+				() -> executionSheets.getOperationStatus("execution_" + randomWorksheet(worksheets)));
+		scenario("getWorksheetOperations", iterations,
+				() -> executionSheets.getWorksheetOperations("execution_" + randomWorksheet(worksheets)));
+	}
+
+	private static void awaitJob(String id) throws InterruptedException {
+		long deadline = System.nanoTime() + Duration.ofMinutes(5).toNanos();
+		while (true) {
+			Entity job = Jobs.get(id);
+			if (job != null && Jobs.isFinished(job)) {
+				if (!job.getString(Jobs.STATUS).equals(Jobs.STATUS_DONE)) {
+					throw new IllegalStateException("Job " + id + " failed: " + job.getString(Jobs.ERROR));
+				}
+				return;
+			}
+			if (System.nanoTime() > deadline) {
+				throw new IllegalStateException("Job " + id + " did not finish");
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	private static void scenario(String name, int iterations, Supplier<Response> call) {
+		DatastoreMetrics.reset();
+		List<Long> latencies = new ArrayList<>();
+		for (int i = 0; i < iterations; i++) {
+			latencies.add(timed(name, call));
+		}
+		report(name, latencies);
+	}
+
+	private static long timed(String name, Supplier<Response> call) {
+		DatastoreMetrics.setEndpoint(name);
+		long start = System.nanoTime();
+		try {
+			Response response = call.get();
+			if (response.getStatus() >= 400) {
+				throw new IllegalStateException(name + " answered " + response.getStatus() + ": " + response.getEntity());
+			}
+			return System.nanoTime() - start;
+		} finally {
+			DatastoreMetrics.clearEndpoint();
+		}
+	}
+
+	private static void report(String name, List<Long> latencies) {
+		long rpcs = 0;
+		long entities = 0;
+		for (Map<String, Object> row : DatastoreMetrics.snapshot()) {
+			if (name.equals(row.get("endpoint"))) {
+				rpcs += (Long) row.get("calls");
+				entities += (Long) row.get("entitiesRead");
+			}
+		}
+		List<Long> sorted = new ArrayList<>(latencies);
+		Collections.sort(sorted);
+		System.out.printf("%-28s n=%-5d p50=%8.2fms p90=%8.2fms p99=%8.2fms max=%8.2fms rpcs/call=%.1f reads/call=%.1f%n",
+				name, sorted.size(), percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+				sorted.get(sorted.size() - 1) / 1e6, (double) rpcs / sorted.size(), (double) entities / sorted.size());
+	}
+
+	private static double percentile(List<Long> sorted, double p) {
+		int index = (int) Math.ceil(p * sorted.size()) - 1;
+		return sorted.get(Math.max(0, index)) / 1e6;
+	}
+
+	private static long randomWorksheet(int worksheets) {
+		return ThreadLocalRandom.current().nextInt(1, worksheets + 1);
+	}
+
+	private static WorkSheetData worksheet(long id, int firstParcel, int parcels) {
+		WorkSheetData.Metadata metadata = new WorkSheetData.Metadata();
+		metadata.id = id;
+		metadata.starting_date = "2025-01-01";
+		metadata.finishing_date = "2025-12-31";
+		metadata.issue_date = "2024-12-01";
+		metadata.award_date = "2024-12-15";
+		metadata.issuing_user_id = 1;
+		metadata.service_provider_id = 1;
+		metadata.posa_code = "POSA" + id;
+		metadata.posa_description = "Benchmark POSA";
+		metadata.posp_code = "POSP" + id;
+		metadata.posp_description = "Benchmark POSP";
+		metadata.aigp = List.of("AIGP" + id);
+		metadata.operations = new ArrayList<>();
+		for (String code : OPERATION_CODES) {
+			metadata.operations.add(new WorkSheetData.Operation(code, "Benchmark " + code, 100.0));
+		}
+
+		List<WorkSheetData.Feature> features = new ArrayList<>();
+		for (int i = firstParcel; i < firstParcel + parcels; i++) {
+			WorkSheetData.Properties properties = new WorkSheetData.Properties("AIGP" + id, "rp_" + i, i, i);
+			features.add(new WorkSheetData.Feature("Feature", properties, square(i)));
+		}
+		return new WorkSheetData("FeatureCollection", null, metadata, features);
+	}
+
+	// 100m squares laid out on a grid, in projected (metre) coordinates
+	private static ObjectNode square(int i) {
+		double x = -100_000 + (i % 100) * 150.0;
+		double y = -100_000 + (i / 100) * 150.0;
+		ObjectNode geometry = mapper.createObjectNode();
+		geometry.put("type", "Polygon");
+		ArrayNode ring = geometry.putArray("coordinates").addArray();
+		double[][] corners = { { x, y }, { x + 100, y }, { x + 100, y + 100 }, { x, y + 100 }, { x, y } };
+		for (double[] corner : corners) {
+			ring.addArray().add(corner[0]).add(corner[1]);
+		}
+		return geometry;
+	}
+
+	private static <T> T withUser(T resource, UserPrincipal user) throws ReflectiveOperationException {
+		Field field = resource.getClass().getDeclaredField("securityContext");
+		field.setAccessible(true);
+		field.set(resource, new TokenSecurityContext(user, true));
+		return resource;
+	}
+}
@@ -0,0 +1,165 @@
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.ListValue;
+import com.google.cloud.datastore.LongValue;
+import com.google.cloud.datastore.StringValue;
+
+import auth.TokenSecurityContext;
+import auth.UserPrincipal;
+import constants.AccountConstants;
+import constants.WorkSheetConstants;
+import jakarta.ws.rs.core.Response;
+import persistence.DatastoreGateway;
+import persistence.InMemoryDatastore;
+import resources.WorkSheetResource;
+
+/**
+ * Throughput of one instance serving blocking requests on platform threads versus virtual threads.
+ * Each request is WorkSheetResource.visualizeDetailedWorkSheet against an in-memory Datastore whose RPCs
+ * sleep like real ones, so requests spend most of their time blocked, as they do in production.
+ *
+ * Platform mode serves requests from a fixed pool, one thread per concurrent request, as the servlet
+ * container does. Virtual mode (terrawatch.server.virtualThreads) starts a virtual thread per request and
+ * caps in-flight requests with a semaphore. For each concurrency level the benchmark reports requests/s,
+ * latency percentiles, peak platform threads and heap used, so modes can be compared at equal memory.
+ *
+ * Usage: java benchmarks.VirtualThreadThroughputBenchmark [requests] [rpcLatencyMs] [concurrency...]
+ * Defaults: 5000 requests per run, 10ms per RPC, concurrency 50 (the App Engine cap), 200 and 1000.
+ */
+public class VirtualThreadThroughputBenchmark {
+
+	private static final long WORKSHEET_ID = 1;
+	private static final int PARCELS = 100;
+
+	public static void main(String[] args) throws Exception {
+		int requests = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		long rpcLatencyMs = args.length > 1 ? Long.parseLong(args[1]) : 10;
+		List<Integer> levels = new ArrayList<>();
+		for (int i = 2; i < args.length; i++) {
+			levels.add(Integer.parseInt(args[i]));
+		}
+		if (levels.isEmpty()) {
+			levels = List.of(50, 200, 1000);
+		}
+
+		InMemoryDatastore memory = new InMemoryDatastore();
+		DatastoreGateway.setDelegate(memory.asDatastore());
+		seed(memory.asDatastore());
+		memory.setLatency(Duration.ofMillis(rpcLatencyMs), Duration.ZERO);
+
+		UserPrincipal manager = new UserPrincipal("benchmark", AccountConstants.SHEET_MANAGER_BACKOFFICE,
+				AccountConstants.ACTIVE_STATE, AccountConstants.PRIVATE_PROFILE, 0);
+		WorkSheetResource resource = new WorkSheetResource();
+		Field field = WorkSheetResource.class.getDeclaredField("securityContext");
+		field.setAccessible(true);
+		field.set(resource, new TokenSecurityContext(manager, true));
+
+		System.out.printf("requests=%d rpcLatency=%dms%n", requests, rpcLatencyMs);
+		// Warm up class loading and JIT before measuring
+		run(resource, "warmup", Executors.newFixedThreadPool(50), 50, 500, false);
+		for (int concurrency : levels) {
+			run(resource, "platform", Executors.newFixedThreadPool(concurrency), concurrency, requests, true);
+			run(resource, "virtual", Executors.newVirtualThreadPerTaskExecutor(), concurrency, requests, true);
+		}
+	}
+
+	private static void run(WorkSheetResource resource, String mode, ExecutorService executor, int concurrency,
+			int requests, boolean print) throws InterruptedException {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		MemoryMXBean heap = ManagementFactory.getMemoryMXBean();
+		System.gc();
+		threads.resetPeakThreadCount();
+		long heapBefore = heap.getHeapMemoryUsage().getUsed();
+
+		Semaphore inFlight = new Semaphore(concurrency);
+		List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger failures = new AtomicInteger();
+		long start = System.nanoTime();
+		for (int i = 0; i < requests; i++) {
+			inFlight.acquire();
+			executor.execute(() -> {
+				long begin = System.nanoTime();
+				try {
+					Response response = resource.visualizeDetailedWorkSheet(WORKSHEET_ID);
+					if (response.getStatus() >= 400) {
+						failures.incrementAndGet();
+					}
+				} catch (RuntimeException e) {
+					failures.incrementAndGet();
+				} finally {
+					latencies.add(System.nanoTime() - begin);
+					inFlight.release();
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.MINUTES);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long heapAfter = heap.getHeapMemoryUsage().getUsed();
+
+		if (!print) {
+			return;
+		}
+		List<Long> sorted = new ArrayList<>(latencies);
+		Collections.sort(sorted);
+		System.out.printf("%-8s concurrency=%-5d throughput=%8.1f req/s p50=%7.1fms p99=%7.1fms "
+				+ "failures=%d peakPlatformThreads=%d heapDelta=%dMB%n",
+				mode, concurrency, requests / seconds, percentile(sorted, 0.50), percentile(sorted, 0.99),
+				failures.get(), threads.getPeakThreadCount(), (heapAfter - heapBefore) / (1024 * 1024));
+	}
+
+	private static double percentile(List<Long> sorted, double p) {
+		int index = (int) Math.ceil(p * sorted.size()) - 1;
+		return sorted.get(Math.max(0, index)) / 1e6;
+	}
+
+	private static void seed(Datastore datastore) {
+		datastore.put(Entity.newBuilder(datastore.newKeyFactory().setKind(WorkSheetConstants.WORKSHEET).newKey(WORKSHEET_ID))
+				.set(WorkSheetConstants.WS_STARTING_DATE, "2025-01-01")
+				.set(WorkSheetConstants.WS_FINISHING_DATE, "2025-12-31")
+				.set(WorkSheetConstants.WS_ISSUE_DATE, "2024-12-01")
+				.set(WorkSheetConstants.WS_AWARD_DATE, "2024-12-15")
+				.set(WorkSheetConstants.WS_SERVICE_PROVIDER_ID, 1L)
+				.set(WorkSheetConstants.WS_ISSUING_USER_ID, 1L)
+				.set(WorkSheetConstants.WS_POSA_CODE, "POSA")
+				.set(WorkSheetConstants.WS_POSA_DESCRIPTION, "Benchmark POSA")
+				.set(WorkSheetConstants.WS_POSP_CODE, "POSP")
+				.set(WorkSheetConstants.WS_POSP_DESCRIPTION, "Benchmark POSP")
+				.set(WorkSheetConstants.WS_CREATED_AT, "2024-12-01")
+				.set(WorkSheetConstants.WS_AIGP, ListValue.of(StringValue.of("AIGP")))
+				.build());
+		datastore.put(Entity.newBuilder(datastore.newKeyFactory().setKind(WorkSheetConstants.WS_OPERATION)
+				.newKey(WORKSHEET_ID + "_OP1"))
+				.set(WorkSheetConstants.WS_OP_WSID, WORKSHEET_ID)
+				.set(WorkSheetConstants.WS_OP_OPC, "OP1")
+				.set(WorkSheetConstants.WS_OP_OPD, "Benchmark OP1")
+				.set(WorkSheetConstants.WS_OP_AHA, 10.0)
+				.build());
+		for (int i = 0; i < PARCELS; i++) {
+			datastore.put(Entity.newBuilder(datastore.newKeyFactory().setKind(WorkSheetConstants.WS_PROP).newKey("rp_" + i))
+					.set(WorkSheetConstants.WS_P_AIGP, "AIGP")
+					.set(WorkSheetConstants.WS_P_PID, (long) i)
+					.set(WorkSheetConstants.WS_P_UIID, (long) i)
+					.set(WorkSheetConstants.WS_P_GEOMETRY, StringValue.newBuilder("{\"type\":\"Point\",\"coordinates\":[0,0]}")
+							.setExcludeFromIndexes(true).build())
+					.set(WorkSheetConstants.WS_P_WSW, ListValue.of(LongValue.of(WORKSHEET_ID)))
+					.build());
+		}
+	}
+}
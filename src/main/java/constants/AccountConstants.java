@@ -55,6 +55,27 @@ public final class AccountConstants {
     public static final String DS_STATE = "user_state";
     // Keystores
     public static final String USER = "User";
+    public static final String TOKEN_VERSION = "TokenVersion";
+    public static final String JWT_KEY = "JWTKey";
+    public static final String JWT_KEY_SET = "JWTKeySet";
+    public static final String REVOKED_TOKEN = "RevokedToken";
+
+    // Token version
+    public static final String TV_VERSION = "version";
+    public static final String CLAIM_TOKEN_VERSION = "tokenVersion";
+
+    // JWT signing keys
+    public static final String JK_ALGORITHM = "algorithm";
+    public static final String JK_PUBLIC_KEY = "public_key";
+    public static final String JK_PRIVATE_KEY = "private_key";
+    public static final String JK_CREATED = "created";
+    public static final String JK_RETIRED = "retired";
+    public static final String JK_CURRENT_KID = "current_kid";
+    public static final String JK_CURRENT = "current";
+
+    // Revoked tokens
+    public static final String RT_REVOKED_AT = "revoked_at";
+    public static final String RT_EXPIRES_AT = "expires_at";
 
     private AccountConstants() {
     }
@@ -24,6 +24,8 @@ public final class ExecutionSheetConstants {
     public static final String EO_TOTAL_AREA_PERCENT    = "totalAreaPercent";
     public static final String EO_END_DATETIME          = "endDateTime";
     public static final String EO_OBSERVATIONS          = "observations";
+    public static final String EO_COVERED_AREA_HA       = "coveredAreaHa";
+    public static final String EO_IMPLEMENT_WIDTH       = "implementWidth";
 
     // ParcelOperationData 
     public static final String EP_OPERATION_ID  		= "operationId";
@@ -35,6 +37,7 @@ public final class ExecutionSheetConstants {
     public static final String EP_OPERATORS 			= "operators";
     public static final String EP_OBSERVATIONS			= "observations";
     public static final String EP_GPS_PATH              = "gpsPath";
+    public static final String EP_COVERED_AREA_HA       = "coveredAreaHa";
     
     //Status
     public static final String EP_STATUS_PA 			= "POR_ATRIBUIR";
@@ -51,6 +54,7 @@ public final class ExecutionSheetConstants {
     public static final String EA_OBSERVATIONS          = "observations";
     public static final String EA_GPS_PATH              = "gpsPath";
     public static final String EA_PHOTO_URLS            = "photoUrls";
+    public static final String EA_TRACK_POINTS          = "trackPoints";
 
     private ExecutionSheetConstants() {}
 }
\ No newline at end of file
@@ -20,6 +20,7 @@ public final class WorkSheetConstants {
 	public static final String WS_POSP_DESCRIPTION = "posp_description";
 	public static final String WS_CREATED_AT = "created_at";
 	public static final String WS_AIGP = "aigp";
+	public static final String WS_IMPORTING = "importing";
 	
 	//Worksheet Operation Attributes
 	public static final String WS_OP_WSID =  "worksheet_id";
@@ -33,6 +34,26 @@ public final class WorkSheetConstants {
 	public static final String WS_P_UIID = "UI_id";
 	public static final String WS_P_GEOMETRY = "geometry";
 	public static final String WS_P_WSW = "worksheets_worked";
+	public static final String WS_P_CRS = "crs";
+	public static final String WS_P_AREA_HA = "area_ha";
+	public static final String WS_P_BBOX = "bbox";
+	public static final String WS_P_CENTROID = "centroid";
+	public static final String WS_P_GEOMETRY_WGS84 = "geometry_wgs84";
+	
+	//Import Attributes
+	public static final String WS_IMPORT = "WorkSheetImport";
+	public static final String WS_I_STATUS = "status";
+	public static final String WS_I_USER = "user";
+	public static final String WS_I_FEATURES = "features_committed";
+	public static final String WS_I_PARCELS = "parcels_created";
+	public static final String WS_I_AREA_HA = "area_ha_created";
+	public static final String WS_I_ERROR = "error";
+	public static final String WS_I_UPDATED_AT = "updated_at";
+	public static final String WS_I_CREATED_AT = "created_at";
+	public static final String WS_I_FINGERPRINT = "fingerprint";
+	public static final String WS_I_STATUS_RUNNING = "RUNNING";
+	public static final String WS_I_STATUS_FAILED = "FAILED";
+	public static final String WS_I_STATUS_DONE = "DONE";
 			
 	private WorkSheetConstants() {}
 
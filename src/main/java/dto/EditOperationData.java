@@ -4,6 +4,7 @@ public class EditOperationData {
 
     public String operationId;
     public String observations;
+    public Double implementWidth;
 
     public EditOperationData() {
 
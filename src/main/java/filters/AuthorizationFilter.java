@@ -0,0 +1,66 @@
+package filters;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Map;
+
+import auth.AuthTokenUtil;
+import auth.Role;
+import auth.TokenSecurityContext;
+import auth.UserPrincipal;
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+
+/**
+ * Resolves the caller once per request and checks it against the roles compiled for the matched method.
+ * Instances are created at startup by {@link SecuredFeature}, one per @Secured resource method.
+ */
+@Priority(Priorities.AUTHENTICATION)
+public class AuthorizationFilter implements ContainerRequestFilter {
+
+	private static final String MESSAGE_INVALID_TOKEN = "Invalid or expired token.";
+	private static final String MESSAGE_INVALID_PERMISSION = "Permission denied.";
+
+	private final EnumSet<Role> allowedRoles;
+
+	public AuthorizationFilter(EnumSet<Role> allowedRoles) {
+		this.allowedRoles = allowedRoles;
+	}
+
+	@Override
+	public void filter(ContainerRequestContext requestContext) throws IOException {
+		// Principal may already be resolved for this request, never authenticate twice
+		UserPrincipal principal = requestContext.getSecurityContext().getUserPrincipal() instanceof UserPrincipal p ? p : null;
+
+		if (principal == null) {
+			String token = AuthTokenUtil.extractTokenFromHeader(requestContext.getHeaderString(HttpHeaders.AUTHORIZATION));
+			principal = AuthTokenUtil.validateTokenClaims(token, null);
+			if (principal == null) {
+				requestContext.abortWith(error(Status.UNAUTHORIZED, MESSAGE_INVALID_TOKEN));
+				return;
+			}
+			boolean secure = requestContext.getSecurityContext().isSecure();
+			requestContext.setSecurityContext(new TokenSecurityContext(principal, secure));
+		}
+
+		if (!allowedRoles.isEmpty()) {
+			Role role = Role.fromCode(principal.getRole());
+			if (role == null || !allowedRoles.contains(role)) {
+				requestContext.abortWith(error(Status.FORBIDDEN, MESSAGE_INVALID_PERMISSION));
+			}
+		}
+	}
+
+	private static Response error(Status status, String message) {
+		return Response.status(status)
+				.entity(Map.of("message", message))
+				.type(MediaType.APPLICATION_JSON)
+				.build();
+	}
+}
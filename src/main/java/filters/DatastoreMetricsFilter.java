@@ -0,0 +1,41 @@
+package filters;
+
+import java.io.IOException;
+
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.ext.Provider;
+import persistence.DatastoreMetrics;
+
+/**
+ * Tags every Datastore call made while serving a request with the resource method that handles it.
+ * Runs before authentication so token checks are attributed to the endpoint as well.
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION - 100)
+public class DatastoreMetricsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+	@Context
+	private ResourceInfo resourceInfo;
+
+	@Override
+	public void filter(ContainerRequestContext requestContext) throws IOException {
+		if (resourceInfo.getResourceMethod() != null) {
+			DatastoreMetrics.setEndpoint(resourceInfo.getResourceClass().getSimpleName() + "."
+					+ resourceInfo.getResourceMethod().getName());
+		} else {
+			DatastoreMetrics.setEndpoint(requestContext.getMethod() + " " + requestContext.getUriInfo().getPath());
+		}
+	}
+
+	@Override
+	public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException {
+		DatastoreMetrics.clearEndpoint();
+	}
+}
@@ -0,0 +1,33 @@
+package filters;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import auth.Role;
+import auth.Secured;
+import jakarta.ws.rs.container.DynamicFeature;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.FeatureContext;
+import jakarta.ws.rs.ext.Provider;
+
+/**
+ * Binds an {@link AuthorizationFilter} to every @Secured resource method at startup,
+ * with the method's role list already compiled into an EnumSet.
+ */
+@Provider
+public class SecuredFeature implements DynamicFeature {
+
+	@Override
+	public void configure(ResourceInfo resourceInfo, FeatureContext context) {
+		Method method = resourceInfo.getResourceMethod();
+		Secured secured = method.getAnnotation(Secured.class);
+		if (secured == null) {
+			return;
+		}
+
+		EnumSet<Role> allowed = EnumSet.noneOf(Role.class);
+		allowed.addAll(Arrays.asList(secured.value()));
+		context.register(new AuthorizationFilter(allowed));
+	}
+}
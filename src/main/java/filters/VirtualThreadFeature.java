@@ -0,0 +1,141 @@
+package filters;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.jersey.server.ManagedAsyncExecutor;
+import org.glassfish.jersey.server.model.ModelProcessor;
+import org.glassfish.jersey.server.model.Resource;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.model.ResourceModel;
+import org.glassfish.jersey.spi.ExecutorServiceProvider;
+
+import jakarta.ws.rs.core.Configuration;
+import jakarta.ws.rs.core.Feature;
+import jakarta.ws.rs.core.FeatureContext;
+import jakarta.ws.rs.ext.Provider;
+import persistence.DatastoreMetrics;
+
+/**
+ * Runs resource methods on virtual threads when the {@value #ENABLED_PROPERTY} servlet init-param is true.
+ * Every resource method is turned into a Jersey managed-async method, so the servlet thread only runs the
+ * request filters and is released while the method blocks on Datastore or Cloud Storage; the method itself
+ * runs on a new virtual thread. Needs async-supported on the servlet.
+ */
+@Provider
+public class VirtualThreadFeature implements Feature {
+	public static final String ENABLED_PROPERTY = "terrawatch.server.virtualThreads";
+
+	@Override
+	public boolean configure(FeatureContext context) {
+		Object enabled = context.getConfiguration().getProperty(ENABLED_PROPERTY);
+		if (!Boolean.parseBoolean(String.valueOf(enabled))) {
+			return false;
+		}
+		context.register(ManagedAsyncProcessor.class);
+		context.register(VirtualThreadExecutorProvider.class);
+		return true;
+	}
+
+	/**
+	 * Marks every resource method (including sub-resource methods) as managed-async
+	 */
+	public static class ManagedAsyncProcessor implements ModelProcessor {
+
+		@Override
+		public ResourceModel processResourceModel(ResourceModel resourceModel, Configuration configuration) {
+			ResourceModel.Builder builder = new ResourceModel.Builder(false);
+			for (Resource resource : resourceModel.getResources()) {
+				builder.addResource(managedAsync(resource));
+			}
+			return builder.build();
+		}
+
+		@Override
+		public ResourceModel processSubResource(ResourceModel subResourceModel, Configuration configuration) {
+			return subResourceModel;
+		}
+
+		private static Resource managedAsync(Resource resource) {
+			Resource.Builder builder = Resource.builder(resource);
+			for (ResourceMethod method : resource.getResourceMethods()) {
+				// Methods that already suspend their own response manage their threads themselves
+				if (!method.isManagedAsyncDeclared() && !method.isSuspendDeclared()) {
+					builder.updateMethod(method).managedAsync().build();
+				}
+			}
+			for (Resource child : resource.getChildResources()) {
+				builder.replaceChildResource(child, managedAsync(child));
+			}
+			return builder.build();
+		}
+	}
+
+	/**
+	 * Jersey's managed-async executor: one virtual thread per resource method invocation.
+	 * Tasks are submitted from the request thread, which carries the DatastoreMetrics endpoint tag,
+	 * so the tag is copied onto the virtual thread.
+	 */
+	@ManagedAsyncExecutor
+	public static class VirtualThreadExecutorProvider implements ExecutorServiceProvider {
+
+		@Override
+		public ExecutorService getExecutorService() {
+			return new EndpointPropagatingExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		}
+
+		@Override
+		public void dispose(ExecutorService executorService) {
+			executorService.shutdown();
+		}
+	}
+
+	private static class EndpointPropagatingExecutor extends AbstractExecutorService {
+		private final ExecutorService delegate;
+
+		EndpointPropagatingExecutor(ExecutorService delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			String endpoint = DatastoreMetrics.currentEndpoint();
+			delegate.execute(() -> {
+				DatastoreMetrics.setEndpoint(endpoint);
+				try {
+					command.run();
+				} finally {
+					DatastoreMetrics.clearEndpoint();
+				}
+			});
+		}
+
+		@Override
+		public void shutdown() {
+			delegate.shutdown();
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return delegate.shutdownNow();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return delegate.isShutdown();
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return delegate.isTerminated();
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			return delegate.awaitTermination(timeout, unit);
+		}
+	}
+}
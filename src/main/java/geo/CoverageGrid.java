@@ -0,0 +1,283 @@
+package geo;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import geo.TrackPoints.Point;
+
+/**
+ * Part of a parcel covered by GPS tracks, on a square grid laid over the parcel.
+ *
+ * The parcel polygon is rasterised once: a cell is inside when its centre is (even-odd rule, so holes are
+ * left out). Each track segment then marks the cells whose centre lies within half the implement width of it,
+ * which is the track buffered by the implement and unioned with everything covered before, one segment at a
+ * time. Covering the same ground twice marks nothing new, so the covered fraction is simply covered inside
+ * cells over inside cells, and tracks can be added in any number of increments.
+ *
+ * Coordinates are WGS84 longitude/latitude, projected on a plane tangent at the parcel's middle latitude; over
+ * a parcel the distortion is far below the cell size. The grid keeps at most {@link #MAX_CELLS} cells, coarser
+ * than {@link #RESOLUTION} for very large parcels. {@link #bytes()} stores the grid and its covered cells,
+ * deflated; the inside mask is rebuilt from the parcel when the grid is read back.
+ */
+public final class CoverageGrid {
+    public static final double RESOLUTION = 1.0;
+    public static final int MAX_CELLS = 1 << 21;
+    private static final byte FORMAT = 1;
+    private static final double METRES_PER_DEGREE = 6371008.8 * Math.PI / 180;
+    private static final int HEADER = 1 + 4 * Double.BYTES + 2 * Integer.BYTES;
+
+    private final double originLon;
+    private final double originLat;
+    private final double metresPerDegreeLon;
+    private final double cell;
+    private final int columns;
+    private final int rows;
+    private final BitSet inside;
+    private final BitSet covered;
+    private final int insideCells;
+    private int coveredCells;
+
+    private CoverageGrid(PackedGeometry parcel, double originLon, double originLat, double metresPerDegreeLon,
+            double cell, int columns, int rows, BitSet covered) {
+        this.originLon = originLon;
+        this.originLat = originLat;
+        this.metresPerDegreeLon = metresPerDegreeLon;
+        this.cell = cell;
+        this.columns = columns;
+        this.rows = rows;
+        this.inside = rasterise(parcel);
+        this.insideCells = inside.cardinality();
+        covered.and(inside);
+        this.covered = covered;
+        this.coveredCells = covered.cardinality();
+    }
+
+    /**
+     * An empty grid over a parcel
+     * @param parcel the parcel's WGS84 geometry
+     */
+    public static CoverageGrid create(PackedGeometry parcel) {
+        double[] bounds = parcel.bounds();
+        double metresPerDegreeLon = METRES_PER_DEGREE * Math.cos(Math.toRadians((bounds[1] + bounds[3]) / 2));
+        double width = (bounds[2] - bounds[0]) * metresPerDegreeLon;
+        double height = (bounds[3] - bounds[1]) * METRES_PER_DEGREE;
+        double cell = Math.max(RESOLUTION, Math.sqrt(width * height / MAX_CELLS));
+        while ((long) (Math.floor(width / cell) + 1) * (long) (Math.floor(height / cell) + 1) > MAX_CELLS) {
+            cell *= 1.05;
+        }
+        int columns = (int) Math.floor(width / cell) + 1;
+        int rows = (int) Math.floor(height / cell) + 1;
+        return new CoverageGrid(parcel, bounds[0], bounds[1], metresPerDegreeLon, cell, columns, rows,
+                new BitSet(columns * rows));
+    }
+
+    /**
+     * Reads back a grid stored with {@link #bytes()}
+     * @param parcel the geometry the grid was created for
+     * @throws IllegalArgumentException if the bytes are not a stored grid
+     */
+    public static CoverageGrid of(PackedGeometry parcel, byte[] bytes) {
+        if (bytes.length < HEADER || bytes[0] != FORMAT) {
+            throw new IllegalArgumentException("Not a coverage grid");
+        }
+        ByteBuffer header = ByteBuffer.wrap(bytes, 1, HEADER - 1);
+        double originLon = header.getDouble();
+        double originLat = header.getDouble();
+        double metresPerDegreeLon = header.getDouble();
+        double cell = header.getDouble();
+        int columns = header.getInt();
+        int rows = header.getInt();
+        if (columns <= 0 || rows <= 0 || (long) columns * rows > MAX_CELLS || !(cell > 0)) {
+            throw new IllegalArgumentException("Malformed coverage grid");
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, HEADER, bytes.length - HEADER);
+            byte[] bits = new byte[(columns * rows + 7) / 8];
+            int length = 0;
+            while (length < bits.length && !inflater.finished()) {
+                int read = inflater.inflate(bits, length, bits.length - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += read;
+            }
+            return new CoverageGrid(parcel, originLon, originLat, metresPerDegreeLon, cell, columns, rows,
+                    BitSet.valueOf(Arrays.copyOf(bits, length)));
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Malformed coverage grid", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Marks the ground covered by a track: every segment between consecutive points, buffered by half the
+     * implement width. Points further apart than maxGap are not joined, since the implement was not necessarily
+     * working in between; they still cover their own surroundings.
+     * @param width implement width in metres
+     * @param maxGap longest segment joined, in metres
+     * @return inside cells newly covered
+     */
+    public int cover(List<Point> track, double width, double maxGap) {
+        int before = coveredCells;
+        double radius = width / 2;
+        double previousX = Double.NaN;
+        double previousY = Double.NaN;
+        for (Point point : track) {
+            double x = x(point.lon());
+            double y = y(point.lat());
+            double gap = Math.hypot(x - previousX, y - previousY);
+            if (gap <= maxGap) {
+                stamp(previousX, previousY, x, y, radius);
+            } else {
+                stamp(x, y, x, y, radius);
+            }
+            previousX = x;
+            previousY = y;
+        }
+        return coveredCells - before;
+    }
+
+    /**
+     * @return covered share of the parcel, between 0 and 1
+     */
+    public double fraction() {
+        return insideCells == 0 ? 0 : (double) coveredCells / insideCells;
+    }
+
+    public int insideCells() {
+        return insideCells;
+    }
+
+    public int coveredCells() {
+        return coveredCells;
+    }
+
+    /**
+     * @return side of a cell in metres
+     */
+    public double cellSize() {
+        return cell;
+    }
+
+    public byte[] bytes() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.put(FORMAT).putDouble(originLon).putDouble(originLat).putDouble(metresPerDegreeLon).putDouble(cell)
+                .putInt(columns).putInt(rows);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(header.array(), 0, HEADER);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(covered.toByteArray());
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    // Marks the cells whose centre is within radius of the segment from (ax, ay) to (bx, by)
+    private void stamp(double ax, double ay, double bx, double by, double radius) {
+        int firstColumn = Math.max(0, (int) Math.floor((Math.min(ax, bx) - radius) / cell));
+        int lastColumn = Math.min(columns - 1, (int) Math.floor((Math.max(ax, bx) + radius) / cell));
+        int firstRow = Math.max(0, (int) Math.floor((Math.min(ay, by) - radius) / cell));
+        int lastRow = Math.min(rows - 1, (int) Math.floor((Math.max(ay, by) + radius) / cell));
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double radiusSquared = radius * radius;
+        for (int row = firstRow; row <= lastRow; row++) {
+            double cy = (row + 0.5) * cell;
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int index = row * columns + column;
+                if (!inside.get(index) || covered.get(index)) {
+                    continue;
+                }
+                double cx = (column + 0.5) * cell;
+                double t = lengthSquared == 0 ? 0
+                        : Math.max(0, Math.min(1, ((cx - ax) * dx + (cy - ay) * dy) / lengthSquared));
+                double ex = cx - (ax + t * dx);
+                double ey = cy - (ay + t * dy);
+                if (ex * ex + ey * ey <= radiusSquared) {
+                    covered.set(index);
+                    coveredCells++;
+                }
+            }
+        }
+    }
+
+    // Scanline fill of the cell centres, every ring of every polygon toggling the cells to its right
+    private BitSet rasterise(PackedGeometry parcel) {
+        List<double[]> rings = new ArrayList<>();
+        parcel.visit(new PackedGeometry.Visitor() {
+            private double[] ring;
+            private int length;
+
+            @Override
+            public void ring(int vertices) {
+                ring = new double[vertices * 2];
+                length = 0;
+            }
+
+            @Override
+            public void vertex(double lon, double lat) {
+                ring[length++] = x(lon);
+                ring[length++] = y(lat);
+            }
+
+            @Override
+            public void endRing() {
+                rings.add(Arrays.copyOf(ring, length));
+            }
+        });
+
+        BitSet mask = new BitSet(columns * rows);
+        double[] crossings = new double[16];
+        for (int row = 0; row < rows; row++) {
+            double cy = (row + 0.5) * cell;
+            int count = 0;
+            for (double[] ring : rings) {
+                for (int i = 0, j = ring.length - 2; i < ring.length; j = i, i += 2) {
+                    double y1 = ring[i + 1];
+                    double y2 = ring[j + 1];
+                    if ((y1 > cy) != (y2 > cy)) {
+                        if (count == crossings.length) {
+                            crossings = Arrays.copyOf(crossings, count * 2);
+                        }
+                        crossings[count++] = ring[i] + (cy - y1) / (y2 - y1) * (ring[j] - ring[i]);
+                    }
+                }
+            }
+            Arrays.sort(crossings, 0, count);
+            for (int k = 0; k + 1 < count; k += 2) {
+                // Cells whose centre lies between the two crossings
+                int from = Math.max(0, (int) Math.ceil(crossings[k] / cell - 0.5));
+                int to = Math.min(columns - 1, (int) Math.floor(crossings[k + 1] / cell - 0.5));
+                if (from <= to) {
+                    mask.set(row * columns + from, row * columns + to + 1);
+                }
+            }
+        }
+        return mask;
+    }
+
+    private double x(double lon) {
+        return (lon - originLon) * metresPerDegreeLon;
+    }
+
+    private double y(double lat) {
+        return (lat - originLat) * METRES_PER_DEGREE;
+    }
+}
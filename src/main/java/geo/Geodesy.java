@@ -0,0 +1,407 @@
+package geo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.locationtech.proj4j.CRSFactory;
+import org.locationtech.proj4j.CoordinateReferenceSystem;
+import org.locationtech.proj4j.CoordinateTransform;
+import org.locationtech.proj4j.CoordinateTransformFactory;
+import org.locationtech.proj4j.ProjCoordinate;
+import org.locationtech.proj4j.proj.LongLatProjection;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import net.sf.geographiclib.Geodesic;
+import net.sf.geographiclib.PolygonArea;
+
+/**
+ * Geodesic areas of parcel geometries, computed on the WGS84 ellipsoid.
+ * Parcels are in PT-TM06 (ETRS89 / Portugal TM06, EPSG:3763) unless their worksheet names another CRS.
+ * {@link #measure(JsonNode, String)} also returns everything else derived from a parcel's geometry, so that it
+ * can be stored at import and read back instead of reprojecting the geometry on every use. Every method taking
+ * GeoJSON also takes a {@link PackedGeometry}, which is decoded vertex by vertex without building a JSON tree.
+ *
+ * Building a proj4j CRS parses its definition and costs far more than transforming a vertex, so each CRS is
+ * built once and its transforms are pooled. A pooled transform comes with its own coordinate buffers and
+ * PolygonArea accumulator, none of which are thread-safe, and is used by one thread at a time.
+ * Pooling instead of ThreadLocal keeps the cache effective when requests run on virtual threads.
+ */
+public class Geodesy {
+    public static final String PT_TM06 = "PT-TM06";
+    public static final String WGS84 = "EPSG:4326";
+    private static final String PT_TM06_PARAMETERS = "+proj=tmerc +lat_0=39.66825833333333 +lon_0=-8.13190611111111 "
+            + "+k=1.0 +x_0=200000 +y_0=300000 +ellps=GRS80 +units=m +no_defs";
+    private static final Pattern EPSG_NAME = Pattern.compile("(?:URN:OGC:DEF:CRS:)?EPSG:(?:[0-9.]*:)?(\\d+)");
+    private static final double SQUARE_METRES_PER_HECTARE = 10000;
+
+    private static final Geodesy instance = new Geodesy();
+
+    /**
+     * Everything derived from one geometry in a single pass over its vertices
+     * @param areaHa geodesic area in hectares, holes excluded
+     * @param bbox WGS84 bounding box as in GeoJSON: min longitude, min latitude, max longitude, max latitude
+     * @param centroidLon longitude of the area centroid, computed in the source CRS and then transformed
+     * @param centroidLat latitude of the area centroid
+     * @param wgs84 copy of the geometry with longitude/latitude coordinates
+     */
+    public record Measurement(double areaHa, double[] bbox, double centroidLon, double centroidLat,
+            PackedGeometry wgs84) {
+    }
+
+    private final CRSFactory crsFactory = new CRSFactory();
+    private final CoordinateTransformFactory transformFactory = new CoordinateTransformFactory();
+    private final CoordinateReferenceSystem wgs84 = crsFactory.createFromName(WGS84);
+    private final Map<String, CoordinateReferenceSystem> systems = new ConcurrentHashMap<>();
+    private final Map<String, Queue<Calculator>> pools = new ConcurrentHashMap<>();
+
+    public static Geodesy get() {
+        return instance;
+    }
+
+    /**
+     * Canonical name of a CRS as found in GeoJSON: "EPSG:3763", "urn:ogc:def:crs:EPSG::3763" and PT-TM06 are
+     * the same system, as are EPSG:4326 and OGC CRS84.
+     * @param name CRS name, null or blank for PT-TM06
+     * @throws IllegalArgumentException if the name is not an EPSG code or one of the names above
+     */
+    public static String canonicalName(String name) {
+        if (name == null || name.isBlank()) {
+            return PT_TM06;
+        }
+        String upper = name.trim().toUpperCase(Locale.ROOT);
+        if (upper.equals(PT_TM06)) {
+            return PT_TM06;
+        }
+        if (upper.endsWith("CRS84")) {
+            return WGS84;
+        }
+        Matcher epsg = EPSG_NAME.matcher(upper);
+        if (!epsg.matches()) {
+            throw new IllegalArgumentException("Unsupported CRS: " + name);
+        }
+        String code = "EPSG:" + epsg.group(1);
+        return code.equals("EPSG:3763") ? PT_TM06 : code;
+    }
+
+    /**
+     * Decimals of a coordinate in a CRS that keep centimetre precision when packing a geometry
+     * @param crs see {@link #canonicalName(String)}
+     */
+    public int coordinateDecimals(String crs) {
+        String name = canonicalName(crs);
+        if (name.equals(WGS84)) {
+            return PackedGeometry.DEGREE_DECIMALS;
+        }
+        CoordinateReferenceSystem system;
+        synchronized (crsFactory) {
+            system = system(name);
+        }
+        return system.getProjection() instanceof LongLatProjection ? PackedGeometry.DEGREE_DECIMALS
+                : PackedGeometry.METRE_DECIMALS;
+    }
+
+    /**
+     * @param geometry GeoJSON Polygon or MultiPolygon in PT-TM06
+     * @return area in hectares, holes excluded
+     */
+    public double area(JsonNode geometry) {
+        return area(geometry, PT_TM06);
+    }
+
+    /**
+     * @param geometry GeoJSON Polygon or MultiPolygon
+     * @param crs CRS of the coordinates, see {@link #canonicalName(String)}
+     * @return area in hectares, holes excluded; 0 for other geometry types
+     */
+    public double area(JsonNode geometry, String crs) {
+        Calculator calculator = borrow(crs);
+        try {
+            return calculator.area(geometry);
+        } finally {
+            release(calculator);
+        }
+    }
+
+    /**
+     * @param crs CRS of the coordinates, see {@link #canonicalName(String)}
+     * @return area in hectares, holes excluded
+     */
+    public double area(PackedGeometry geometry, String crs) {
+        Calculator calculator = borrow(crs);
+        try {
+            return calculator.area(geometry::visit);
+        } finally {
+            release(calculator);
+        }
+    }
+
+    /**
+     * Areas of many geometries of the same CRS, with one transform and one set of buffers for the whole batch
+     * @return areas in hectares, in the order of the geometries
+     */
+    public double[] areas(List<JsonNode> geometries, String crs) {
+        double[] areas = new double[geometries.size()];
+        Calculator calculator = borrow(crs);
+        try {
+            for (int i = 0; i < areas.length; i++) {
+                areas[i] = calculator.area(geometries.get(i));
+            }
+        } finally {
+            release(calculator);
+        }
+        return areas;
+    }
+
+    /**
+     * @param geometry GeoJSON Polygon or MultiPolygon
+     * @param crs CRS of the coordinates, see {@link #canonicalName(String)}
+     * @throws IllegalArgumentException if the geometry is not a Polygon or MultiPolygon, or has no vertices
+     */
+    public Measurement measure(JsonNode geometry, String crs) {
+        Calculator calculator = borrow(crs);
+        try {
+            return calculator.measure(visitor -> PackedGeometry.visit(geometry, visitor));
+        } finally {
+            release(calculator);
+        }
+    }
+
+    /**
+     * @param geometry geometry with coordinates in the CRS
+     * @param crs CRS of the coordinates, see {@link #canonicalName(String)}
+     * @throws IllegalArgumentException if the geometry has no vertices or its bytes are malformed
+     */
+    public Measurement measure(PackedGeometry geometry, String crs) {
+        Calculator calculator = borrow(crs);
+        try {
+            return calculator.measure(geometry::visit);
+        } finally {
+            release(calculator);
+        }
+    }
+
+    /**
+     * Measurements of many geometries of the same CRS, with one transform for the whole batch
+     * @return measurements in the order of the geometries
+     */
+    public List<Measurement> measure(List<JsonNode> geometries, String crs) {
+        List<Measurement> measurements = new ArrayList<>(geometries.size());
+        Calculator calculator = borrow(crs);
+        try {
+            for (JsonNode geometry : geometries) {
+                measurements.add(calculator.measure(visitor -> PackedGeometry.visit(geometry, visitor)));
+            }
+        } finally {
+            release(calculator);
+        }
+        return measurements;
+    }
+
+    private Calculator borrow(String crs) {
+        String name = canonicalName(crs);
+        Calculator calculator = pools.computeIfAbsent(name, n -> new ConcurrentLinkedQueue<>()).poll();
+        if (calculator != null) {
+            return calculator;
+        }
+        if (name.equals(WGS84)) {
+            return new Calculator(name, null);
+        }
+        // CRSFactory reads shared definition files, so CRSs and transforms are built one at a time
+        synchronized (crsFactory) {
+            return new Calculator(name, transformFactory.createTransform(system(name), wgs84));
+        }
+    }
+
+    private void release(Calculator calculator) {
+        pools.get(calculator.crs).offer(calculator);
+    }
+
+    private CoordinateReferenceSystem system(String name) {
+        return systems.computeIfAbsent(name, n -> n.equals(PT_TM06)
+                ? crsFactory.createFromParameters(PT_TM06, PT_TM06_PARAMETERS)
+                : crsFactory.createFromName(n));
+    }
+
+    /**
+     * Transform to WGS84 plus reusable buffers; confined to the thread that borrowed it.
+     * It visits a geometry vertex by vertex, from GeoJSON or from its packed form alike.
+     */
+    private static class Calculator implements PackedGeometry.Visitor {
+        private final String crs;
+        // null when the coordinates already are WGS84 longitude/latitude
+        private final CoordinateTransform transform;
+        private final ProjCoordinate source = new ProjCoordinate();
+        private final ProjCoordinate target = new ProjCoordinate();
+        private final PolygonArea polygon = new PolygonArea(Geodesic.WGS84, false);
+        // State of the geometry being visited; out stays null while only an area is computed
+        private PackedGeometry.Writer out;
+        private double squareMetres;
+        private double polygonSquareMetres;
+        private int ringIndex;
+        private boolean hasOrigin;
+        private double originX;
+        private double originY;
+        private double planarArea;
+        private double momentX;
+        private double momentY;
+        private final double[] bbox = new double[4];
+        // State of the ring being visited
+        private double ringArea;
+        private double ringMomentX;
+        private double ringMomentY;
+        private double previousX;
+        private double previousY;
+        private boolean ringStarted;
+
+        Calculator(String crs, CoordinateTransform transform) {
+            this.crs = crs;
+            this.transform = transform;
+        }
+
+        double area(JsonNode geometry) {
+            String type = geometry.path("type").asText("Polygon");
+            if (!type.equals("Polygon") && !type.equals("MultiPolygon")) {
+                return 0;
+            }
+            return area(visitor -> PackedGeometry.visit(geometry, visitor));
+        }
+
+        double area(Consumer<PackedGeometry.Visitor> geometry) {
+            out = null;
+            squareMetres = 0;
+            geometry.accept(this);
+            return squareMetres / SQUARE_METRES_PER_HECTARE;
+        }
+
+        Measurement measure(Consumer<PackedGeometry.Visitor> geometry) {
+            PackedGeometry.Writer wgs84 = new PackedGeometry.Writer(PackedGeometry.DEGREE_DECIMALS);
+            out = wgs84;
+            squareMetres = 0;
+            hasOrigin = false;
+            planarArea = 0;
+            momentX = 0;
+            momentY = 0;
+            bbox[0] = Double.POSITIVE_INFINITY;
+            bbox[1] = Double.POSITIVE_INFINITY;
+            bbox[2] = Double.NEGATIVE_INFINITY;
+            bbox[3] = Double.NEGATIVE_INFINITY;
+            try {
+                geometry.accept(this);
+            } finally {
+                out = null;
+            }
+            if (!hasOrigin) {
+                throw new IllegalArgumentException("Geometry has no vertices");
+            }
+
+            double areaHa = squareMetres / SQUARE_METRES_PER_HECTARE;
+            if (planarArea == 0) {
+                // Degenerate geometry: fall back to the centre of the bounding box
+                return new Measurement(areaHa, bbox.clone(), (bbox[0] + bbox[2]) / 2, (bbox[1] + bbox[3]) / 2,
+                        wgs84.finish());
+            }
+            toWgs84(originX + momentX / planarArea, originY + momentY / planarArea);
+            return new Measurement(areaHa, bbox.clone(), target.x, target.y, wgs84.finish());
+        }
+
+        @Override
+        public void geometry(boolean multiPolygon, int polygons) {
+            if (out != null) {
+                out.geometry(multiPolygon, polygons);
+            }
+        }
+
+        @Override
+        public void polygon(int rings) {
+            polygonSquareMetres = 0;
+            ringIndex = 0;
+            if (out != null) {
+                out.polygon(rings);
+            }
+        }
+
+        @Override
+        public void ring(int vertices) {
+            polygon.Clear();
+            ringArea = 0;
+            ringMomentX = 0;
+            ringMomentY = 0;
+            ringStarted = false;
+            if (out != null) {
+                out.ring(vertices);
+            }
+        }
+
+        @Override
+        public void vertex(double x, double y) {
+            toWgs84(x, y);
+            polygon.AddPoint(target.y, target.x);
+            if (out == null) {
+                return;
+            }
+            out.vertex(target.x, target.y);
+            bbox[0] = Math.min(bbox[0], target.x);
+            bbox[1] = Math.min(bbox[1], target.y);
+            bbox[2] = Math.max(bbox[2], target.x);
+            bbox[3] = Math.max(bbox[3], target.y);
+            if (!hasOrigin) {
+                // Planar moments are taken relative to the first vertex to keep projected metres precise
+                originX = x;
+                originY = y;
+                hasOrigin = true;
+            }
+            double rx = x - originX;
+            double ry = y - originY;
+            if (ringStarted) {
+                double cross = previousX * ry - rx * previousY;
+                ringArea += cross / 2;
+                ringMomentX += (previousX + rx) * cross / 6;
+                ringMomentY += (previousY + ry) * cross / 6;
+            }
+            previousX = rx;
+            previousY = ry;
+            ringStarted = true;
+        }
+
+        // Outer ring minus holes
+        @Override
+        public void endRing() {
+            double area = Math.abs(polygon.Compute().area);
+            polygonSquareMetres += ringIndex == 0 ? area : -area;
+            if (out != null) {
+                // Rings may wind either way: orient each one positively, then subtract holes
+                double sign = (ringArea < 0 ? -1 : 1) * (ringIndex == 0 ? 1 : -1);
+                planarArea += sign * ringArea;
+                momentX += sign * ringMomentX;
+                momentY += sign * ringMomentY;
+            }
+            ringIndex++;
+        }
+
+        @Override
+        public void endPolygon() {
+            squareMetres += Math.max(0, polygonSquareMetres);
+        }
+
+        // Leaves the source coordinates in source and the longitude/latitude in target
+        private void toWgs84(double x, double y) {
+            source.x = x;
+            source.y = y;
+            if (transform == null) {
+                target.x = x;
+                target.y = y;
+            } else {
+                transform.transform(source, target);
+            }
+        }
+    }
+}
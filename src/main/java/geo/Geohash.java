@@ -0,0 +1,118 @@
+package geo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Geohash cells: base-32 strings naming a longitude/latitude rectangle, where every extra character splits the
+ * parent cell into 32. Cells sharing a prefix lie inside the cell the prefix names, so a key range over a prefix
+ * selects a region.
+ */
+public final class Geohash {
+    public static final int MAX_PRECISION = 12;
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    private Geohash() {
+    }
+
+    /**
+     * @param precision characters of the cell, 1 to {@link #MAX_PRECISION}
+     */
+    public static String encode(double lon, double lat, int precision) {
+        double minLon = -180;
+        double maxLon = 180;
+        double minLat = -90;
+        double maxLat = 90;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean even = true;
+        int bits = 0;
+        int ch = 0;
+        while (hash.length() < precision) {
+            if (even) {
+                double mid = (minLon + maxLon) / 2;
+                if (lon >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLon = mid;
+                } else {
+                    ch <<= 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (lat >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch <<= 1;
+                    maxLat = mid;
+                }
+            }
+            even = !even;
+            if (++bits == 5) {
+                hash.append(BASE32.charAt(ch));
+                bits = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Width in degrees of longitude of the cells of a precision
+     */
+    public static double cellWidth(int precision) {
+        return 360 / Math.pow(2, (5 * precision + 1) / 2);
+    }
+
+    /**
+     * Height in degrees of latitude of the cells of a precision
+     */
+    public static double cellHeight(int precision) {
+        return 180 / Math.pow(2, 5 * precision / 2);
+    }
+
+    /**
+     * Number of cells of a precision that {@link #cover} would return for a box
+     */
+    public static long coverSize(double minLon, double minLat, double maxLon, double maxLat, int precision) {
+        return (long) (column(maxLon, precision) - column(minLon, precision) + 1)
+                * (row(maxLat, precision) - row(minLat, precision) + 1);
+    }
+
+    /**
+     * Cells of a precision that intersect a box
+     */
+    public static List<String> cover(double minLon, double minLat, double maxLon, double maxLat, int precision) {
+        double width = cellWidth(precision);
+        double height = cellHeight(precision);
+        List<String> cells = new ArrayList<>();
+        for (int row = row(minLat, precision); row <= row(maxLat, precision); row++) {
+            for (int column = column(minLon, precision); column <= column(maxLon, precision); column++) {
+                cells.add(encode(-180 + (column + 0.5) * width, -90 + (row + 0.5) * height, precision));
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Longest precision, at most maxPrecision, whose cover of a box has no more than maxCells cells
+     */
+    public static int precisionFor(double minLon, double minLat, double maxLon, double maxLat, int maxPrecision,
+            int maxCells) {
+        int precision = maxPrecision;
+        while (precision > 1 && coverSize(minLon, minLat, maxLon, maxLat, precision) > maxCells) {
+            precision--;
+        }
+        return precision;
+    }
+
+    private static int column(double lon, int precision) {
+        int columns = 1 << ((5 * precision + 1) / 2);
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((lon + 180) / cellWidth(precision))));
+    }
+
+    private static int row(double lat, int precision) {
+        int rows = 1 << (5 * precision / 2);
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((lat + 90) / cellHeight(precision))));
+    }
+}
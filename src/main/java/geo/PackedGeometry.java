@@ -0,0 +1,319 @@
+package geo;
+
+import java.util.Arrays;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Compact binary form of a GeoJSON Polygon or MultiPolygon, used to store parcel geometries.
+ *
+ * Coordinates are scaled to integers with a fixed number of decimals, {@link #METRE_DECIMALS} for projected
+ * systems and {@link #DEGREE_DECIMALS} for longitude/latitude, both about a centimetre. Each coordinate is
+ * stored as the difference from the previous vertex, zigzag-encoded so small negative differences stay small,
+ * as a base-128 varint. Neighbouring parcel vertices are metres apart, so most coordinates take one to three
+ * bytes instead of the twenty or so of their JSON text. The layout is a format byte followed by varints:
+ * type, decimals, polygon count, then per polygon its ring count and per ring its vertex count and vertices.
+ *
+ * The bytes are decoded lazily by {@link #visit(Visitor)}, one vertex at a time, so area, bounds or a tile
+ * are computed without building a JSON tree; {@link #toGeoJson()} is for the API edge only.
+ * Instances are immutable.
+ */
+public final class PackedGeometry {
+    public static final int METRE_DECIMALS = 2;
+    public static final int DEGREE_DECIMALS = 7;
+    private static final byte FORMAT = 1;
+    private static final int POLYGON = 0;
+    private static final int MULTI_POLYGON = 1;
+    private static final double[] SCALES = { 1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9 };
+
+    /**
+     * Receives a geometry one vertex at a time. Calls come in document order: {@code geometry}, then for each
+     * polygon {@code polygon}, for each of its rings (outer ring first) {@code ring}, the ring's vertices and
+     * {@code endRing}, and finally {@code endPolygon}.
+     */
+    public interface Visitor {
+        default void geometry(boolean multiPolygon, int polygons) {
+        }
+
+        default void polygon(int rings) {
+        }
+
+        default void ring(int vertices) {
+        }
+
+        void vertex(double x, double y);
+
+        default void endRing() {
+        }
+
+        default void endPolygon() {
+        }
+    }
+
+    private final byte[] bytes;
+
+    private PackedGeometry(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Wraps stored bytes; they are only read when the geometry is visited
+     * @throws IllegalArgumentException if the bytes are not in this format
+     */
+    public static PackedGeometry of(byte[] bytes) {
+        if (bytes.length < 4 || bytes[0] != FORMAT) {
+            throw new IllegalArgumentException("Not a packed geometry");
+        }
+        return new PackedGeometry(bytes);
+    }
+
+    /**
+     * @param geometry GeoJSON Polygon or MultiPolygon; a missing type is taken as Polygon
+     * @param decimals decimals kept of each coordinate
+     * @throws IllegalArgumentException if the geometry is of another type or is malformed
+     */
+    public static PackedGeometry encode(JsonNode geometry, int decimals) {
+        Writer writer = new Writer(decimals);
+        visit(geometry, writer);
+        return writer.finish();
+    }
+
+    /**
+     * Walks a GeoJSON Polygon or MultiPolygon with the same calls as {@link #visit(Visitor)}
+     * @throws IllegalArgumentException if the geometry is of another type or is malformed
+     */
+    public static void visit(JsonNode geometry, Visitor visitor) {
+        String type = geometry.path("type").asText("Polygon");
+        JsonNode coordinates = geometry.path("coordinates");
+        if (!coordinates.isArray()) {
+            throw new IllegalArgumentException("Geometry has no coordinates");
+        }
+        switch (type) {
+            case "Polygon" -> {
+                visitor.geometry(false, 1);
+                visitPolygon(coordinates, visitor);
+            }
+            case "MultiPolygon" -> {
+                visitor.geometry(true, coordinates.size());
+                for (JsonNode polygon : coordinates) {
+                    visitPolygon(polygon, visitor);
+                }
+            }
+            default -> throw new IllegalArgumentException("Unsupported geometry type: " + type);
+        }
+    }
+
+    private static void visitPolygon(JsonNode rings, Visitor visitor) {
+        if (!rings.isArray()) {
+            throw new IllegalArgumentException("Polygon is not an array of rings");
+        }
+        visitor.polygon(rings.size());
+        for (JsonNode ring : rings) {
+            if (!ring.isArray()) {
+                throw new IllegalArgumentException("Ring is not an array of positions");
+            }
+            visitor.ring(ring.size());
+            for (JsonNode point : ring) {
+                JsonNode x = point.path(0);
+                JsonNode y = point.path(1);
+                if (!x.isNumber() || !y.isNumber()) {
+                    throw new IllegalArgumentException("Invalid position: " + point);
+                }
+                visitor.vertex(x.asDouble(), y.asDouble());
+            }
+            visitor.endRing();
+        }
+        visitor.endPolygon();
+    }
+
+    /**
+     * Decodes the geometry into a visitor
+     */
+    public void visit(Visitor visitor) {
+        Reader reader = new Reader(bytes);
+        boolean multiPolygon = reader.next() == MULTI_POLYGON;
+        long decimals = reader.next();
+        if (decimals >= SCALES.length) {
+            throw new IllegalArgumentException("Malformed packed geometry");
+        }
+        double scale = SCALES[(int) decimals];
+        int polygons = (int) reader.next();
+        visitor.geometry(multiPolygon, polygons);
+        long x = 0;
+        long y = 0;
+        for (int p = 0; p < polygons; p++) {
+            int rings = (int) reader.next();
+            visitor.polygon(rings);
+            for (int r = 0; r < rings; r++) {
+                int vertices = (int) reader.next();
+                visitor.ring(vertices);
+                for (int v = 0; v < vertices; v++) {
+                    x += reader.nextDelta();
+                    y += reader.nextDelta();
+                    visitor.vertex(x / scale, y / scale);
+                }
+                visitor.endRing();
+            }
+            visitor.endPolygon();
+        }
+    }
+
+    /**
+     * @return min x, min y, max x, max y of the vertices, in the geometry's own coordinates
+     */
+    public double[] bounds() {
+        double[] bounds = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                Double.NEGATIVE_INFINITY };
+        visit((x, y) -> {
+            bounds[0] = Math.min(bounds[0], x);
+            bounds[1] = Math.min(bounds[1], y);
+            bounds[2] = Math.max(bounds[2], x);
+            bounds[3] = Math.max(bounds[3], y);
+        });
+        return bounds;
+    }
+
+    public ObjectNode toGeoJson() {
+        ObjectNode geometry = JsonNodeFactory.instance.objectNode();
+        visit(new Visitor() {
+            private boolean multiPolygon;
+            private ArrayNode coordinates;
+            private ArrayNode polygon;
+            private ArrayNode ring;
+
+            @Override
+            public void geometry(boolean multiPolygon, int polygons) {
+                this.multiPolygon = multiPolygon;
+                geometry.put("type", multiPolygon ? "MultiPolygon" : "Polygon");
+                coordinates = geometry.putArray("coordinates");
+                polygon = coordinates;
+            }
+
+            @Override
+            public void polygon(int rings) {
+                if (multiPolygon) {
+                    polygon = coordinates.addArray();
+                }
+            }
+
+            @Override
+            public void ring(int vertices) {
+                ring = polygon.addArray();
+            }
+
+            @Override
+            public void vertex(double x, double y) {
+                ring.addArray().add(x).add(y);
+            }
+        });
+        return geometry;
+    }
+
+    public byte[] bytes() {
+        return bytes.clone();
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+
+    /**
+     * Encodes the calls it receives; counts are taken from the visitor calls, so they must match the vertices
+     */
+    static final class Writer implements Visitor {
+        private final int decimals;
+        private final double scale;
+        private byte[] out = new byte[64];
+        private int length;
+        private long lastX;
+        private long lastY;
+
+        Writer(int decimals) {
+            if (decimals < 0 || decimals >= SCALES.length) {
+                throw new IllegalArgumentException("Unsupported decimals: " + decimals);
+            }
+            this.decimals = decimals;
+            this.scale = SCALES[decimals];
+            out[length++] = FORMAT;
+        }
+
+        @Override
+        public void geometry(boolean multiPolygon, int polygons) {
+            write(multiPolygon ? MULTI_POLYGON : POLYGON);
+            write(decimals);
+            write(polygons);
+        }
+
+        @Override
+        public void polygon(int rings) {
+            write(rings);
+        }
+
+        @Override
+        public void ring(int vertices) {
+            write(vertices);
+        }
+
+        @Override
+        public void vertex(double x, double y) {
+            long scaledX = Math.round(x * scale);
+            long scaledY = Math.round(y * scale);
+            writeDelta(scaledX - lastX);
+            writeDelta(scaledY - lastY);
+            lastX = scaledX;
+            lastY = scaledY;
+        }
+
+        PackedGeometry finish() {
+            return new PackedGeometry(Arrays.copyOf(out, length));
+        }
+
+        private void writeDelta(long delta) {
+            // Zigzag: 0, -1, 1, -2... become 0, 1, 2, 3...
+            write((delta << 1) ^ (delta >> 63));
+        }
+
+        private void write(long value) {
+            if (length + 10 > out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            while ((value & ~0x7FL) != 0) {
+                out[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out[length++] = (byte) value;
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] in;
+        private int position = 1;
+
+        Reader(byte[] in) {
+            this.in = in;
+        }
+
+        long next() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= in.length) {
+                    throw new IllegalArgumentException("Truncated packed geometry");
+                }
+                byte b = in[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed packed geometry");
+        }
+
+        long nextDelta() {
+            long value = next();
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
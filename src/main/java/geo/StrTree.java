@@ -0,0 +1,126 @@
+package geo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Immutable R-tree over boxes, bulk-loaded with Sort-Tile-Recursive packing: entries are sorted into vertical
+ * slices by x, each slice is sorted by y and cut into full nodes, and the nodes are packed the same way until
+ * one root is left. Packed nodes are full and barely overlap, so a search visits few of them.
+ * Safe to share between threads once built.
+ */
+public final class StrTree<T> {
+    public static final int NODE_CAPACITY = 16;
+
+    private interface Box {
+        double minX();
+
+        double minY();
+
+        double maxX();
+
+        double maxY();
+
+        default boolean intersects(double minX, double minY, double maxX, double maxY) {
+            return minX() <= maxX && maxX() >= minX && minY() <= maxY && maxY() >= minY;
+        }
+
+        default double centerX() {
+            return (minX() + maxX()) / 2;
+        }
+
+        default double centerY() {
+            return (minY() + maxY()) / 2;
+        }
+    }
+
+    public record Entry<T>(double minX, double minY, double maxX, double maxY, T value) implements Box {
+    }
+
+    // Inner nodes hold nodes, leaves hold entries
+    private record Node(double minX, double minY, double maxX, double maxY, List<? extends Box> children,
+            boolean leaf) implements Box {
+    }
+
+    private final Node root;
+    private final int size;
+
+    private StrTree(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public static <T> StrTree<T> build(List<Entry<T>> entries) {
+        if (entries.isEmpty()) {
+            return new StrTree<>(null, 0);
+        }
+        List<Node> level = pack(new ArrayList<Box>(entries), true);
+        while (level.size() > 1) {
+            level = pack(new ArrayList<Box>(level), false);
+        }
+        return new StrTree<>(level.get(0), entries.size());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Calls the consumer with every entry whose box intersects the query box
+     */
+    @SuppressWarnings("unchecked")
+    public void search(double minX, double minY, double maxX, double maxY, Consumer<Entry<T>> consumer) {
+        if (root == null || !root.intersects(minX, minY, maxX, maxY)) {
+            return;
+        }
+        List<Node> stack = new ArrayList<>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.remove(stack.size() - 1);
+            for (Box child : node.children()) {
+                if (!child.intersects(minX, minY, maxX, maxY)) {
+                    continue;
+                }
+                if (node.leaf()) {
+                    consumer.accept((Entry<T>) child);
+                } else {
+                    stack.add((Node) child);
+                }
+            }
+        }
+    }
+
+    private static List<Node> pack(List<Box> boxes, boolean leaves) {
+        int nodes = (boxes.size() + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int slices = (int) Math.ceil(Math.sqrt(nodes));
+        int sliceSize = slices * NODE_CAPACITY;
+
+        boxes.sort(Comparator.comparingDouble(Box::centerX));
+        List<Node> packed = new ArrayList<>(nodes);
+        for (int start = 0; start < boxes.size(); start += sliceSize) {
+            List<Box> slice = new ArrayList<>(boxes.subList(start, Math.min(boxes.size(), start + sliceSize)));
+            slice.sort(Comparator.comparingDouble(Box::centerY));
+            for (int from = 0; from < slice.size(); from += NODE_CAPACITY) {
+                packed.add(node(List.copyOf(slice.subList(from, Math.min(slice.size(), from + NODE_CAPACITY))),
+                        leaves));
+            }
+        }
+        return packed;
+    }
+
+    private static Node node(List<Box> children, boolean leaf) {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (Box child : children) {
+            minX = Math.min(minX, child.minX());
+            minY = Math.min(minY, child.minY());
+            maxX = Math.max(maxX, child.maxX());
+            maxY = Math.max(maxY, child.maxY());
+        }
+        return new Node(minX, minY, maxX, maxY, children, leaf);
+    }
+}
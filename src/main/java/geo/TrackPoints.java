@@ -0,0 +1,134 @@
+package geo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * GPS track points and their compact binary form, one chunk of a track at a time.
+ *
+ * A chunk stores a format byte, the point count, and each point as the difference from the previous one, as
+ * zigzag varints like {@link PackedGeometry}: latitude and longitude in units of 1e-7 degrees (about a
+ * centimetre) and time in milliseconds. A receiver reporting every second while walking moves a few metres per
+ * fix, so a point takes about seven bytes instead of the forty or so of its JSON text. Every chunk starts from
+ * zero, so chunks decode independently of each other.
+ */
+public final class TrackPoints {
+    private static final byte FORMAT = 1;
+    private static final double SCALE = 1e7;
+
+    /**
+     * @param t time of the fix, in milliseconds since the epoch
+     */
+    public record Point(double lat, double lon, long t) {
+    }
+
+    private TrackPoints() {
+    }
+
+    public static byte[] encode(List<Point> points) {
+        byte[] out = new byte[16 + points.size() * 8];
+        int length = 0;
+        out[length++] = FORMAT;
+        length = write(out, length, points.size());
+        long lastLat = 0;
+        long lastLon = 0;
+        long lastT = 0;
+        for (Point point : points) {
+            if (length + 30 > out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            long lat = Math.round(point.lat() * SCALE);
+            long lon = Math.round(point.lon() * SCALE);
+            length = writeDelta(out, length, lat - lastLat);
+            length = writeDelta(out, length, lon - lastLon);
+            length = writeDelta(out, length, point.t() - lastT);
+            lastLat = lat;
+            lastLon = lon;
+            lastT = point.t();
+        }
+        return Arrays.copyOf(out, length);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not an encoded chunk
+     */
+    public static List<Point> decode(byte[] bytes) {
+        if (bytes.length < 2 || bytes[0] != FORMAT) {
+            throw new IllegalArgumentException("Not an encoded track");
+        }
+        int[] position = { 1 };
+        int count = (int) read(bytes, position);
+        List<Point> points = new ArrayList<>(count);
+        long lat = 0;
+        long lon = 0;
+        long t = 0;
+        for (int i = 0; i < count; i++) {
+            lat += readDelta(bytes, position);
+            lon += readDelta(bytes, position);
+            t += readDelta(bytes, position);
+            points.add(new Point(lat / SCALE, lon / SCALE, t));
+        }
+        return points;
+    }
+
+    /**
+     * Reads one point as sent by the apps: a GeoJSON position [lon, lat] or [lon, lat, t], or an object with
+     * lat, lon (or lng) and an optional t (or timestamp)
+     * @param defaultTime time given to a point without one
+     * @throws IllegalArgumentException if the point has no valid coordinates
+     */
+    public static Point parse(JsonNode point, long defaultTime) {
+        JsonNode lat;
+        JsonNode lon;
+        JsonNode t;
+        if (point.isArray()) {
+            lon = point.path(0);
+            lat = point.path(1);
+            t = point.path(2);
+        } else {
+            lat = point.path("lat");
+            lon = point.has("lon") ? point.path("lon") : point.path("lng");
+            t = point.has("t") ? point.path("t") : point.path("timestamp");
+        }
+        if (!lat.isNumber() || !lon.isNumber() || Math.abs(lat.asDouble()) > 90 || Math.abs(lon.asDouble()) > 180) {
+            throw new IllegalArgumentException("Invalid track point: " + point);
+        }
+        return new Point(lat.asDouble(), lon.asDouble(), t.isNumber() ? t.asLong() : defaultTime);
+    }
+
+    private static int writeDelta(byte[] out, int length, long delta) {
+        return write(out, length, (delta << 1) ^ (delta >> 63));
+    }
+
+    private static int write(byte[] out, int length, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[length++] = (byte) value;
+        return length;
+    }
+
+    private static long readDelta(byte[] in, int[] position) {
+        long value = read(in, position);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long read(byte[] in, int[] position) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position[0] >= in.length) {
+                throw new IllegalArgumentException("Truncated track");
+            }
+            byte b = in[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed track");
+    }
+}
@@ -0,0 +1,332 @@
+package geo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Web Mercator (XYZ) tiles of parcel outlines as quantized GeoJSON: coordinates are integers in a tile-local grid
+ * of {@link #EXTENT} units per side, as in Mapbox Vector Tiles, so a tile is small and needs no reprojection.
+ *
+ * Each geometry is projected into the tile's grid, clipped to the tile plus a {@link #BUFFER} (so outlines
+ * crossing tile edges join without seams), simplified with Douglas-Peucker at a fixed tolerance in grid units,
+ * and rounded. The tolerance is constant in screen pixels, so the same parcel keeps fewer vertices at lower zooms.
+ * Rings that collapse below the tolerance are dropped, as they would not be visible.
+ */
+public final class VectorTiles {
+    public static final int EXTENT = 4096;
+    public static final int BUFFER = 64;
+    public static final int MAX_ZOOM = 22;
+    // Half a pixel of a 256-pixel tile
+    private static final double TOLERANCE = EXTENT / 512.0;
+    private static final double MAX_LATITUDE = 85.0511287798;
+
+    private VectorTiles() {
+    }
+
+    public static boolean isValid(int z, int x, int y) {
+        return z >= 0 && z <= MAX_ZOOM && x >= 0 && y >= 0 && x < (1 << z) && y < (1 << z);
+    }
+
+    /**
+     * @return min longitude, min latitude, max longitude, max latitude of a tile, including its buffer
+     */
+    public static double[] bounds(int z, int x, int y) {
+        double buffer = (double) BUFFER / EXTENT;
+        double tiles = 1 << z;
+        return new double[] {
+                longitude((x - buffer) / tiles),
+                latitude((y + 1 + buffer) / tiles),
+                longitude((x + 1 + buffer) / tiles),
+                latitude((y - buffer) / tiles) };
+    }
+
+    /**
+     * Projects, clips and simplifies a WGS84 geometry into a tile
+     * @return a GeoJSON Polygon or MultiPolygon in tile units, null if nothing of it is visible in the tile
+     */
+    public static ObjectNode encode(PackedGeometry geometry, int z, int x, int y) {
+        double scale = (double) EXTENT * (1 << z);
+        List<List<int[]>> encodedPolygons = new ArrayList<>();
+        geometry.visit(new PackedGeometry.Visitor() {
+            private List<int[]> rings;
+            private boolean outerVisible;
+            private int ringIndex;
+            private double[] points = new double[64];
+            private int length;
+
+            @Override
+            public void polygon(int ringCount) {
+                rings = new ArrayList<>();
+                outerVisible = true;
+                ringIndex = 0;
+            }
+
+            @Override
+            public void ring(int vertices) {
+                if (points.length < vertices * 2) {
+                    points = new double[vertices * 2];
+                }
+                length = 0;
+            }
+
+            @Override
+            public void vertex(double lon, double lat) {
+                points[length++] = mercatorX(lon) * scale - (double) x * EXTENT;
+                points[length++] = mercatorY(lat) * scale - (double) y * EXTENT;
+            }
+
+            @Override
+            public void endRing() {
+                // Holes of an outer ring that is not visible are skipped
+                if (outerVisible) {
+                    int[] ring = VectorTiles.ring(Arrays.copyOf(points, length));
+                    if (ring != null) {
+                        rings.add(ring);
+                    } else if (ringIndex == 0) {
+                        outerVisible = false;
+                    }
+                }
+                ringIndex++;
+            }
+
+            @Override
+            public void endPolygon() {
+                if (!rings.isEmpty()) {
+                    encodedPolygons.add(rings);
+                }
+            }
+        });
+        if (encodedPolygons.isEmpty()) {
+            return null;
+        }
+
+        ObjectNode tileGeometry = JsonNodeFactory.instance.objectNode();
+        ArrayNode coordinates;
+        if (encodedPolygons.size() == 1) {
+            tileGeometry.put("type", "Polygon");
+            coordinates = tileGeometry.putArray("coordinates");
+            addRings(coordinates, encodedPolygons.get(0));
+        } else {
+            tileGeometry.put("type", "MultiPolygon");
+            coordinates = tileGeometry.putArray("coordinates");
+            for (List<int[]> rings : encodedPolygons) {
+                addRings(coordinates.addArray(), rings);
+            }
+        }
+        return tileGeometry;
+    }
+
+    private static void addRings(ArrayNode target, List<int[]> rings) {
+        for (int[] ring : rings) {
+            ArrayNode points = target.addArray();
+            for (int i = 0; i < ring.length; i += 2) {
+                points.addArray().add(ring[i]).add(ring[i + 1]);
+            }
+        }
+    }
+
+    // Ring as x0, y0, x1, y1... in tile units, closed; null if it is outside the tile or too small to see
+    private static int[] ring(double[] points) {
+        if (points.length < 8) {
+            return null;
+        }
+        points = clip(points);
+        if (points.length < 8 || Math.abs(area(points)) < TOLERANCE * TOLERANCE) {
+            return null;
+        }
+        points = simplify(points);
+
+        // Round, dropping vertices that fall on the previous one
+        int[] rounded = new int[points.length + 2];
+        int length = 0;
+        for (int i = 0; i < points.length; i += 2) {
+            int px = (int) Math.round(points[i]);
+            int py = (int) Math.round(points[i + 1]);
+            if (length == 0 || rounded[length - 2] != px || rounded[length - 1] != py) {
+                rounded[length++] = px;
+                rounded[length++] = py;
+            }
+        }
+        if (rounded[0] != rounded[length - 2] || rounded[1] != rounded[length - 1]) {
+            rounded[length++] = rounded[0];
+            rounded[length++] = rounded[1];
+        }
+        if (length < 8) {
+            return null;
+        }
+        int[] result = new int[length];
+        System.arraycopy(rounded, 0, result, 0, length);
+        return result;
+    }
+
+    // Sutherland-Hodgman clipping of a closed ring against the buffered tile square
+    private static double[] clip(double[] points) {
+        double min = -BUFFER;
+        double max = EXTENT + BUFFER;
+        boolean inside = true;
+        for (double coordinate : points) {
+            if (coordinate < min || coordinate > max) {
+                inside = false;
+                break;
+            }
+        }
+        if (inside) {
+            return points;
+        }
+        for (int edge = 0; edge < 4 && points.length > 0; edge++) {
+            points = clipEdge(points, edge % 2, edge < 2 ? min : max, edge < 2);
+        }
+        if (points.length > 0 && (points[0] != points[points.length - 2] || points[1] != points[points.length - 1])) {
+            double[] closed = new double[points.length + 2];
+            System.arraycopy(points, 0, closed, 0, points.length);
+            closed[points.length] = points[0];
+            closed[points.length + 1] = points[1];
+            points = closed;
+        }
+        return points;
+    }
+
+    // Keeps the part of an open or closed ring where coordinate axis is >= bound (lower) or <= bound (upper)
+    private static double[] clipEdge(double[] points, int axis, double bound, boolean lower) {
+        int n = points.length / 2;
+        double[] out = new double[points.length * 2 + 4];
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            int previous = (i + n - 1) % n;
+            double ax = points[2 * previous];
+            double ay = points[2 * previous + 1];
+            double bx = points[2 * i];
+            double by = points[2 * i + 1];
+            double a = axis == 0 ? ax : ay;
+            double b = axis == 0 ? bx : by;
+            boolean aInside = lower ? a >= bound : a <= bound;
+            boolean bInside = lower ? b >= bound : b <= bound;
+            if (aInside != bInside) {
+                double t = (bound - a) / (b - a);
+                out[length++] = ax + (bx - ax) * t;
+                out[length++] = ay + (by - ay) * t;
+            }
+            if (bInside) {
+                out[length++] = bx;
+                out[length++] = by;
+            }
+        }
+        double[] result = new double[length];
+        System.arraycopy(out, 0, result, 0, length);
+        return result;
+    }
+
+    // Douglas-Peucker on a closed ring, always keeping its first and last vertex
+    private static double[] simplify(double[] points) {
+        int n = points.length / 2;
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        int[] stack = new int[2 * n];
+        int top = 0;
+        // A closed ring has no baseline from first to last vertex, so the farthest vertex from the first splits it
+        int split = farthest(points, 0, n - 1);
+        keep[split] = true;
+        stack[top++] = 0;
+        stack[top++] = split;
+        stack[top++] = split;
+        stack[top++] = n - 1;
+        double toleranceSquared = TOLERANCE * TOLERANCE;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double maxDistance = 0;
+            int index = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distance = segmentDistanceSquared(points, i, first, last);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    index = i;
+                }
+            }
+            if (index >= 0 && maxDistance > toleranceSquared) {
+                keep[index] = true;
+                stack[top++] = first;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = last;
+            }
+        }
+        int kept = 0;
+        for (boolean k : keep) {
+            kept += k ? 1 : 0;
+        }
+        double[] result = new double[kept * 2];
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                result[length++] = points[2 * i];
+                result[length++] = points[2 * i + 1];
+            }
+        }
+        return result;
+    }
+
+    private static int farthest(double[] points, int from, int to) {
+        int index = from;
+        double max = -1;
+        for (int i = from + 1; i < to; i++) {
+            double dx = points[2 * i] - points[2 * from];
+            double dy = points[2 * i + 1] - points[2 * from + 1];
+            if (dx * dx + dy * dy > max) {
+                max = dx * dx + dy * dy;
+                index = i;
+            }
+        }
+        return index == from ? to : index;
+    }
+
+    private static double segmentDistanceSquared(double[] points, int i, int first, int last) {
+        double px = points[2 * i];
+        double py = points[2 * i + 1];
+        double ax = points[2 * first];
+        double ay = points[2 * first + 1];
+        double dx = points[2 * last] - ax;
+        double dy = points[2 * last + 1] - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared > 0) {
+            double t = Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+            ax += dx * t;
+            ay += dy * t;
+        }
+        return (px - ax) * (px - ax) + (py - ay) * (py - ay);
+    }
+
+    // Signed shoelace area of a closed ring
+    private static double area(double[] points) {
+        double sum = 0;
+        for (int i = 0; i + 3 < points.length; i += 2) {
+            sum += points[i] * points[i + 3] - points[i + 2] * points[i + 1];
+        }
+        return sum / 2;
+    }
+
+    // Web Mercator in [0, 1] from the west and north edges of the world
+    private static double mercatorX(double lon) {
+        return (lon + 180) / 360;
+    }
+
+    private static double mercatorY(double lat) {
+        double sin = Math.sin(Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, lat))));
+        return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+    }
+
+    private static double longitude(double mercatorX) {
+        return mercatorX * 360 - 180;
+    }
+
+    private static double latitude(double mercatorY) {
+        double clamped = Math.max(0, Math.min(1, mercatorY));
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * clamped))));
+    }
+}
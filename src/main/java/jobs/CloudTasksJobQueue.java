@@ -0,0 +1,73 @@
+package jobs;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+
+import com.google.cloud.ServiceOptions;
+import com.google.cloud.tasks.v2.AppEngineHttpRequest;
+import com.google.cloud.tasks.v2.CloudTasksClient;
+import com.google.cloud.tasks.v2.HttpMethod;
+import com.google.cloud.tasks.v2.QueueName;
+import com.google.cloud.tasks.v2.Task;
+
+/**
+ * Delivers job steps as Cloud Tasks App Engine tasks, pushed to {@link JobServlet} on this service.
+ * The queue is {@code jobs.cloudtasks.queue} (JOBS_QUEUE_NAME, default {@value #DEFAULT_QUEUE}) in
+ * {@code jobs.cloudtasks.location} (JOBS_LOCATION, default {@value #DEFAULT_LOCATION}) of the default project.
+ * Tasks are not named: duplicate deliveries are harmless, and names would be reserved for an hour after a task ran.
+ */
+public class CloudTasksJobQueue implements JobQueue {
+    public static final String DEFAULT_QUEUE = "jobs";
+    public static final String DEFAULT_LOCATION = "europe-west1";
+
+    private final QueueName queueName;
+    private CloudTasksClient client;
+
+    public CloudTasksJobQueue() {
+        this.queueName = QueueName.of(ServiceOptions.getDefaultProjectId(),
+                System.getProperty("jobs.cloudtasks.location",
+                        System.getenv().getOrDefault("JOBS_LOCATION", DEFAULT_LOCATION)),
+                System.getProperty("jobs.cloudtasks.queue",
+                        System.getenv().getOrDefault("JOBS_QUEUE_NAME", DEFAULT_QUEUE)));
+    }
+
+    @Override
+    public void dispatch(String id, Duration delay) {
+        Task.Builder task = Task.newBuilder()
+                .setAppEngineHttpRequest(AppEngineHttpRequest.newBuilder()
+                        .setHttpMethod(HttpMethod.POST)
+                        .setRelativeUri(JobServlet.PATH + "?" + JobServlet.ID_PARAMETER + "="
+                                + URLEncoder.encode(id, StandardCharsets.UTF_8))
+                        .build());
+        if (!delay.isZero()) {
+            Instant at = Instant.now().plus(delay);
+            task.setScheduleTime(com.google.protobuf.Timestamp.newBuilder()
+                    .setSeconds(at.getEpochSecond())
+                    .setNanos(at.getNano())
+                    .build());
+        }
+        client().createTask(queueName, task.build());
+    }
+
+    @Override
+    public synchronized void close() {
+        if (client != null) {
+            client.close();
+            client = null;
+        }
+    }
+
+    private synchronized CloudTasksClient client() {
+        if (client == null) {
+            try {
+                client = CloudTasksClient.create();
+            } catch (IOException e) {
+                throw new IllegalStateException("Cloud Tasks client not available: " + e.getMessage(), e);
+            }
+        }
+        return client;
+    }
+}
@@ -0,0 +1,111 @@
+package jobs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.cloud.datastore.Cursor;
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.EntityQuery;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyFactory;
+import com.google.cloud.datastore.ListValue;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.QueryResults;
+import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+import com.google.cloud.datastore.Transaction;
+
+import constants.ExecutionSheetConstants;
+import constants.WorkSheetConstants;
+import persistence.DatastoreGateway;
+import persistence.TileCache;
+
+/**
+ * Background work of execution sheets: creating the execution parcels of a new sheet, one per operation and
+ * property of its worksheet.
+ */
+public final class ExecutionSheetJobs {
+    public static final String CREATE_PARCELS = "executionsheet-parcels";
+
+    // Properties per step; with at most five operations a step writes at most 400 parcels in one transaction
+    private static final int PROPERTIES_PER_STEP = 80;
+
+    private static final Datastore datastore = DatastoreGateway.get();
+    private static final KeyFactory parcelKeyFactory = datastore.newKeyFactory()
+            .setKind(ExecutionSheetConstants.EXEC_PARCEL);
+
+    private ExecutionSheetJobs() {
+    }
+
+    public static void register() {
+        Jobs.register(CREATE_PARCELS, ExecutionSheetJobs::createParcels);
+    }
+
+    public static String createParcelsJobId(String executionSheetId) {
+        return CREATE_PARCELS + "-" + executionSheetId;
+    }
+
+    /**
+     * Creates the execution parcels of a page of the worksheet's properties for every operation. The request has
+     * created the sheet and its operations. Parcels that already exist are left as they are, so a repeated step
+     * does not reset the status of a parcel an operator has started.
+     */
+    private static Jobs.Step createParcels(Jobs.Job job) {
+        long worksheetId = Long.parseLong(job.payload());
+        String execRef = "execution_" + worksheetId;
+
+        Query<Entity> operationQuery = Query.newEntityQueryBuilder().setKind(WorkSheetConstants.WS_OPERATION)
+                .setFilter(PropertyFilter.eq(WorkSheetConstants.WS_OP_WSID, worksheetId)).build();
+        List<String> operationKeys = new ArrayList<>();
+        datastore.run(operationQuery).forEachRemaining(
+                operation -> operationKeys.add(execRef + "_" + operation.getString(WorkSheetConstants.WS_OP_OPC)));
+
+        EntityQuery.Builder propertyQuery = Query.newEntityQueryBuilder().setKind(WorkSheetConstants.WS_PROP)
+                .setFilter(PropertyFilter.eq(WorkSheetConstants.WS_P_WSW, worksheetId))
+                .setLimit(PROPERTIES_PER_STEP);
+        if (job.cursor() != null) {
+            propertyQuery.setStartCursor(Cursor.fromUrlSafe(job.cursor()));
+        }
+        QueryResults<Entity> properties = datastore.run(propertyQuery.build());
+        List<Entity> parcels = new ArrayList<>();
+        int read = 0;
+        while (properties.hasNext()) {
+            long polygonId = properties.next().getLong(WorkSheetConstants.WS_P_PID);
+            read++;
+            for (String operationKey : operationKeys) {
+                parcels.add(Entity.newBuilder(parcelKeyFactory.newKey(operationKey + "_" + polygonId))
+                        .set(ExecutionSheetConstants.EP_OPERATION_ID, operationKey)
+                        .set(ExecutionSheetConstants.EP_POLYGON_ID, polygonId)
+                        .set(ExecutionSheetConstants.EP_STATUS, ExecutionSheetConstants.EP_STATUS_PA)
+                        .set(ExecutionSheetConstants.EP_OBSERVATIONS, ListValue.newBuilder().build())
+                        .set(ExecutionSheetConstants.EP_OPERATORS, ListValue.newBuilder().build())
+                        .build());
+            }
+        }
+        Cursor next = properties.getCursorAfter();
+
+        if (!parcels.isEmpty()) {
+            Transaction txn = datastore.newTransaction();
+            try {
+                List<Entity> existing = txn.fetch(parcels.stream().map(Entity::getKey).toArray(Key[]::new));
+                for (int i = 0; i < parcels.size(); i++) {
+                    if (existing.get(i) == null) {
+                        txn.put(parcels.get(i));
+                    }
+                }
+                txn.commit();
+            } finally {
+                if (txn.isActive()) {
+                    txn.rollback();
+                }
+            }
+        }
+
+        long progress = job.progress() + read;
+        if (read < PROPERTIES_PER_STEP) {
+            TileCache.get().invalidate();
+            return Jobs.Step.done(progress, progress);
+        }
+        return Jobs.Step.next(next.toUrlSafe(), progress, 0);
+    }
+}
@@ -0,0 +1,35 @@
+package jobs;
+
+import java.time.Duration;
+
+/**
+ * Delivers the steps of {@link Jobs}. A delivery only names the job: the step reads everything else from the job
+ * entity, so deliveries can be repeated, reordered or lost without harm.
+ */
+public interface JobQueue extends AutoCloseable {
+    String QUEUE_PROPERTY = "jobs.queue";
+    String CLOUD_TASKS = "cloudtasks";
+    String LOCAL = "local";
+
+    /**
+     * Has {@link Jobs#execute(String)} called for a job, once the delay has passed
+     * @throws RuntimeException if the delivery could not be scheduled
+     */
+    void dispatch(String id, Duration delay);
+
+    @Override
+    void close();
+
+    /**
+     * The queue for this environment: {@code -Djobs.queue=cloudtasks|local} (or JOBS_QUEUE), by default Cloud Tasks
+     * on App Engine and the local scheduler anywhere else
+     */
+    static JobQueue create() {
+        String configured = System.getProperty(QUEUE_PROPERTY, System.getenv("JOBS_QUEUE"));
+        boolean onAppEngine = System.getenv("GAE_ENV") != null;
+        if (CLOUD_TASKS.equalsIgnoreCase(configured) || (configured == null && onAppEngine)) {
+            return new CloudTasksJobQueue();
+        }
+        return new LocalJobQueue();
+    }
+}
@@ -0,0 +1,48 @@
+package jobs;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import com.google.cloud.datastore.DatastoreException;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Push endpoint of {@link CloudTasksJobQueue}: runs the next step of the job named in the request.
+ * App Engine removes the X-AppEngine-QueueName header from requests that do not come from a task queue, so
+ * requests without it are refused. A 2xx answer acknowledges the task; failures of the step itself are retried by
+ * {@link Jobs} with its own backoff, so only a failure to read or write the job makes Cloud Tasks deliver it again.
+ */
+@WebServlet(urlPatterns = JobServlet.PATH)
+public class JobServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    public static final String PATH = "/tasks/jobs";
+    public static final String ID_PARAMETER = "id";
+    private static final String QUEUE_HEADER = "X-AppEngine-QueueName";
+
+    private static final Logger LOG = Logger.getLogger(JobServlet.class.getName());
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (request.getHeader(QUEUE_HEADER) == null) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        String id = request.getParameter(ID_PARAMETER);
+        if (id == null || id.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        try {
+            Jobs.execute(id);
+            response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+        } catch (DatastoreException e) {
+            LOG.warning("Job " + id + " step not recorded: " + e.getMessage());
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package jobs;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyFactory;
+import com.google.cloud.datastore.LongValue;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.QueryResults;
+import com.google.cloud.datastore.StringValue;
+import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+import com.google.cloud.datastore.Transaction;
+
+import persistence.DatastoreGateway;
+import persistence.DatastoreMetrics;
+
+/**
+ * Work that is too long for a request, run in the background as {@value #KIND} entities.
+ *
+ * A job has a caller-chosen id, so enqueuing the same work twice finds the job already there, a type naming its
+ * {@link Handler}, and a payload. Handlers do the work in bounded steps: each step gets the cursor the previous one
+ * returned and returns the next, and the job stores it with its progress, so a job of any size survives instance
+ * restarts and every step fits in one Datastore transaction and one push request. Steps must be idempotent, since a
+ * step that committed its work but not the job's cursor is run again.
+ *
+ * Each step is delivered through the {@link JobQueue}: Cloud Tasks in production, which pushes to {@link JobServlet},
+ * or a local scheduler in development and tests. The instance running a step holds a lease on the job, so duplicate
+ * deliveries do nothing. A step that throws is retried with exponential backoff, up to {@link #MAX_ATTEMPTS} times,
+ * after which the job is marked {@value #STATUS_FAILED} with its last error.
+ *
+ * Every job that is not finished has a {@value #DUE} time, by which its next step should have started. A sweep
+ * dispatches the jobs past it again, so a lost delivery, a crashed instance or a job enqueued in a transaction whose
+ * caller never dispatched it only delays the job.
+ */
+public final class Jobs {
+    public static final String KIND = "Job";
+
+    public static final String TYPE = "type";
+    public static final String PAYLOAD = "payload";
+    public static final String STATUS = "status";
+    public static final String PROGRESS = "progress";
+    public static final String TOTAL = "total";
+    public static final String ATTEMPTS = "attempts";
+    public static final String ERROR = "error";
+    public static final String CREATED_AT = "createdAt";
+    public static final String UPDATED_AT = "updatedAt";
+    private static final String CURSOR = "cursor";
+    private static final String LEASE = "lease";
+    private static final String DUE = "due";
+
+    public static final String STATUS_QUEUED = "QUEUED";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_DONE = "DONE";
+    public static final String STATUS_FAILED = "FAILED";
+
+    public static final int MAX_ATTEMPTS = 8;
+    private static final Duration LEASE_TIME = Duration.ofMinutes(5);
+    // Time a dispatched step has to start before the sweep dispatches it again
+    private static final Duration DISPATCH_GRACE = Duration.ofMinutes(2);
+    private static final Duration FIRST_RETRY = Duration.ofSeconds(5);
+    private static final Duration LAST_RETRY = Duration.ofMinutes(30);
+    private static final long SWEEP_SECONDS = 60;
+    private static final int SWEEP_LIMIT = 100;
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private static final Logger LOG = Logger.getLogger(Jobs.class.getName());
+    private static final Datastore datastore = DatastoreGateway.get();
+    private static final KeyFactory keyFactory = datastore.newKeyFactory().setKind(KIND);
+    private static final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+
+    private static volatile JobQueue queue;
+    private static ScheduledExecutorService sweeper;
+
+    /**
+     * State of a job as a handler sees it
+     * @param cursor where the previous step stopped, null on the first step
+     */
+    public record Job(String id, String type, String payload, String cursor, long progress, long total,
+            int attempts) {
+    }
+
+    /**
+     * What a step did
+     * @param cursor where the next step starts, ignored when done
+     * @param progress units of work done so far, out of total
+     */
+    public record Step(String cursor, long progress, long total, boolean done) {
+        public static Step next(String cursor, long progress, long total) {
+            return new Step(cursor, progress, total, false);
+        }
+
+        public static Step done(long progress, long total) {
+            return new Step(null, progress, total, true);
+        }
+    }
+
+    /**
+     * Runs one step of jobs of one type
+     */
+    public interface Handler {
+        /**
+         * @throws Exception to have the step retried after a backoff
+         */
+        Step run(Job job) throws Exception;
+    }
+
+    private Jobs() {
+    }
+
+    public static void register(String type, Handler handler) {
+        handlers.put(type, handler);
+    }
+
+    /**
+     * @param queue delivers steps; {@link JobQueue#create()} picks it from the environment when none is set
+     */
+    public static void setQueue(JobQueue queue) {
+        Jobs.queue = queue;
+    }
+
+    public static synchronized void start() {
+        if (sweeper != null) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "job-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            } catch (Exception e) {
+                LOG.warning("Job sweep failed: " + e.getMessage());
+            }
+        }, SWEEP_SECONDS, SWEEP_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stop() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+        JobQueue current = queue;
+        if (current != null) {
+            current.close();
+            queue = null;
+        }
+    }
+
+    public static Key key(String id) {
+        return keyFactory.newKey(id);
+    }
+
+    /**
+     * Creates a job in the caller's transaction. It runs once the caller has committed and called
+     * {@link #dispatch(String)}, or at the latest when the sweep finds it.
+     * @return false if a job with this id is already queued or running
+     */
+    public static boolean add(Transaction txn, String id, String type, String payload) {
+        Entity existing = txn.get(key(id));
+        if (existing != null && !isFinished(existing)) {
+            return false;
+        }
+        Timestamp now = Timestamp.now();
+        txn.put(Entity.newBuilder(key(id))
+                .set(TYPE, type)
+                .set(PAYLOAD, StringValue.newBuilder(payload).setExcludeFromIndexes(true).build())
+                .set(STATUS, STATUS_QUEUED)
+                .set(PROGRESS, unindexed(0))
+                .set(TOTAL, unindexed(0))
+                .set(ATTEMPTS, unindexed(0))
+                .set(DUE, after(now, DISPATCH_GRACE))
+                .set(CREATED_AT, now)
+                .set(UPDATED_AT, now)
+                .build());
+        return true;
+    }
+
+    /**
+     * Creates a job and dispatches its first step
+     * @return false if a job with this id is already queued or running
+     */
+    public static boolean enqueue(String id, String type, String payload) {
+        Transaction txn = datastore.newTransaction();
+        try {
+            if (!add(txn, id, type, payload)) {
+                return false;
+            }
+            txn.commit();
+        } finally {
+            if (txn.isActive()) {
+                txn.rollback();
+            }
+        }
+        dispatch(id);
+        return true;
+    }
+
+    /**
+     * Delivers the next step of a job now. A failure is only logged: the job stays due and the sweep retries it.
+     */
+    public static void dispatch(String id) {
+        dispatch(id, Duration.ZERO);
+    }
+
+    public static Entity get(String id) {
+        return datastore.get(key(id));
+    }
+
+    /**
+     * @return whether a job with this id exists and has not finished
+     */
+    public static boolean isPending(Transaction txn, String id) {
+        Entity job = txn.get(key(id));
+        return job != null && !isFinished(job);
+    }
+
+    public static boolean isFinished(Entity job) {
+        String status = job.getString(STATUS);
+        return status.equals(STATUS_DONE) || status.equals(STATUS_FAILED);
+    }
+
+    /**
+     * Runs the next step of a job, unless it has finished or another instance holds its lease. Failures of the
+     * handler are recorded on the job and retried; only failures to read or write the job itself are thrown, so the
+     * delivery is retried by the queue.
+     */
+    public static void execute(String id) {
+        String lease = UUID.randomUUID().toString();
+        Job job = claim(id, lease);
+        if (job == null) {
+            return;
+        }
+        Handler handler = handlers.get(job.type());
+        DatastoreMetrics.setEndpoint(KIND + "." + job.type());
+        Step step;
+        try {
+            if (handler == null) {
+                throw new IllegalStateException("No handler for jobs of type " + job.type());
+            }
+            step = handler.run(job);
+        } catch (Exception e) {
+            LOG.warning("Job " + id + " failed on attempt " + (job.attempts() + 1) + ": " + e);
+            retry(id, lease, e);
+            return;
+        } finally {
+            DatastoreMetrics.clearEndpoint();
+        }
+        if (advance(id, lease, step) && !step.done()) {
+            dispatch(id);
+        }
+    }
+
+    /**
+     * Dispatches every job whose step should have started by now
+     * @return jobs dispatched
+     */
+    public static int sweep() {
+        Query<Key> query = Query.newKeyQueryBuilder()
+                .setKind(KIND)
+                .setFilter(PropertyFilter.le(DUE, Timestamp.now()))
+                .setLimit(SWEEP_LIMIT)
+                .build();
+        QueryResults<Key> results = datastore.run(query);
+        int dispatched = 0;
+        while (results.hasNext()) {
+            dispatch(results.next().getName());
+            dispatched++;
+        }
+        if (dispatched > 0) {
+            LOG.info("Dispatched " + dispatched + " overdue jobs");
+        }
+        return dispatched;
+    }
+
+    // Takes the lease on a job that is queued, or running under a lease that has expired
+    private static Job claim(String id, String lease) {
+        Transaction txn = datastore.newTransaction();
+        try {
+            Entity job = txn.get(key(id));
+            if (job == null || isFinished(job)) {
+                return null;
+            }
+            Timestamp now = Timestamp.now();
+            if (job.getString(STATUS).equals(STATUS_RUNNING) && job.getTimestamp(DUE).compareTo(now) > 0) {
+                return null;
+            }
+            txn.put(Entity.newBuilder(job)
+                    .set(STATUS, STATUS_RUNNING)
+                    .set(LEASE, unindexed(lease))
+                    .set(DUE, after(now, LEASE_TIME))
+                    .set(UPDATED_AT, now)
+                    .build());
+            txn.commit();
+            return new Job(id, job.getString(TYPE), job.getString(PAYLOAD),
+                    job.contains(CURSOR) ? job.getString(CURSOR) : null, job.getLong(PROGRESS), job.getLong(TOTAL),
+                    (int) job.getLong(ATTEMPTS));
+        } finally {
+            if (txn.isActive()) {
+                txn.rollback();
+            }
+        }
+    }
+
+    // Records a step that completed; false if the lease was lost meanwhile
+    private static boolean advance(String id, String lease, Step step) {
+        return release(id, lease, (job, builder) -> {
+            builder.set(PROGRESS, unindexed(step.progress()))
+                    .set(TOTAL, unindexed(step.total()))
+                    .set(ATTEMPTS, unindexed(0));
+            if (step.done()) {
+                builder.set(STATUS, STATUS_DONE).remove(CURSOR).remove(DUE).remove(ERROR);
+            } else {
+                builder.set(STATUS, STATUS_QUEUED)
+                        .set(CURSOR, unindexed(step.cursor()))
+                        .set(DUE, after(Timestamp.now(), DISPATCH_GRACE));
+            }
+        });
+    }
+
+    // Records a failed step and schedules the retry, or gives up after the last attempt
+    private static void retry(String id, String lease, Exception error) {
+        Duration[] backoff = new Duration[1];
+        boolean released = release(id, lease, (job, builder) -> {
+            int attempts = (int) job.getLong(ATTEMPTS) + 1;
+            String message = String.valueOf(error);
+            builder.set(ATTEMPTS, unindexed(attempts))
+                    .set(ERROR, unindexed(message.length() > MAX_ERROR_LENGTH
+                            ? message.substring(0, MAX_ERROR_LENGTH) : message));
+            if (attempts >= MAX_ATTEMPTS) {
+                builder.set(STATUS, STATUS_FAILED).remove(DUE);
+            } else {
+                backoff[0] = backoff(attempts);
+                builder.set(STATUS, STATUS_QUEUED).set(DUE, after(Timestamp.now(), backoff[0].plus(DISPATCH_GRACE)));
+            }
+        });
+        if (!released) {
+            return;
+        }
+        if (backoff[0] == null) {
+            LOG.severe("Job " + id + " failed after " + MAX_ATTEMPTS + " attempts: " + error);
+        } else {
+            dispatch(id, backoff[0]);
+        }
+    }
+
+    private static boolean release(String id, String lease, BiConsumer<Entity, Entity.Builder> update) {
+        Transaction txn = datastore.newTransaction();
+        try {
+            Entity job = txn.get(key(id));
+            if (job == null || !job.contains(LEASE) || !job.getString(LEASE).equals(lease)) {
+                LOG.warning("Job " + id + " lost its lease before the step was recorded");
+                return false;
+            }
+            Entity.Builder builder = Entity.newBuilder(job).remove(LEASE).set(UPDATED_AT, Timestamp.now());
+            update.accept(job, builder);
+            txn.put(builder.build());
+            txn.commit();
+            return true;
+        } finally {
+            if (txn.isActive()) {
+                txn.rollback();
+            }
+        }
+    }
+
+    private static void dispatch(String id, Duration delay) {
+        try {
+            queue().dispatch(id, delay);
+        } catch (RuntimeException e) {
+            LOG.warning("Job " + id + " not dispatched, the sweep will retry it: " + e.getMessage());
+        }
+    }
+
+    private static JobQueue queue() {
+        JobQueue current = queue;
+        if (current != null) {
+            return current;
+        }
+        synchronized (Jobs.class) {
+            if (queue == null) {
+                queue = JobQueue.create();
+            }
+            return queue;
+        }
+    }
+
+    // Doubles from FIRST_RETRY up to LAST_RETRY, with up to a quarter of jitter so retries do not line up
+    private static Duration backoff(int attempts) {
+        long millis = Math.min(LAST_RETRY.toMillis(), FIRST_RETRY.toMillis() << Math.min(attempts - 1, 20));
+        return Duration.ofMillis(millis + ThreadLocalRandom.current().nextLong(millis / 4 + 1));
+    }
+
+    private static Timestamp after(Timestamp time, Duration duration) {
+        return Timestamp.ofTimeMicroseconds(TimeUnit.SECONDS.toMicros(time.getSeconds()) + time.getNanos() / 1000
+                + TimeUnit.NANOSECONDS.toMicros(duration.toNanos()));
+    }
+
+    private static LongValue unindexed(long value) {
+        return LongValue.newBuilder(value).setExcludeFromIndexes(true).build();
+    }
+
+    private static StringValue unindexed(String value) {
+        return StringValue.newBuilder(value).setExcludeFromIndexes(true).build();
+    }
+}
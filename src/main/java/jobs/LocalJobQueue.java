@@ -0,0 +1,44 @@
+package jobs;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Runs job steps in this process, on a small scheduled pool, for development, tests and benchmarks where there is no
+ * Cloud Tasks queue. Deliveries pending when the process stops are lost, and picked up by the sweep of the next one.
+ */
+public class LocalJobQueue implements JobQueue {
+    private static final int THREADS = 2;
+    private static final Logger LOG = Logger.getLogger(LocalJobQueue.class.getName());
+
+    private final ScheduledExecutorService scheduler;
+
+    public LocalJobQueue() {
+        AtomicInteger threads = new AtomicInteger();
+        scheduler = Executors.newScheduledThreadPool(THREADS, r -> {
+            Thread t = new Thread(r, "job-runner-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void dispatch(String id, Duration delay) {
+        scheduler.schedule(() -> {
+            try {
+                Jobs.execute(id);
+            } catch (Exception e) {
+                LOG.warning("Job " + id + " step not recorded: " + e.getMessage());
+            }
+        }, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,71 @@
+package jobs;
+
+import com.google.cloud.datastore.Cursor;
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.EntityQuery;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.QueryResults;
+
+import persistence.DatastoreGateway;
+import persistence.SearchIndex;
+
+/**
+ * Background work of the search index: indexing the entities written before the index existed.
+ */
+public final class SearchIndexJobs {
+    public static final String REINDEX = "search-reindex";
+    // Only one reindex runs at a time; a new one can start once it has finished
+    public static final String REINDEX_JOB_ID = REINDEX;
+
+    // Entities indexed per step
+    private static final int REINDEX_STEP = 100;
+    private static final String SEPARATOR = "|";
+
+    private static final Datastore datastore = DatastoreGateway.get();
+
+    private SearchIndexJobs() {
+    }
+
+    public static void register() {
+        Jobs.register(REINDEX, SearchIndexJobs::reindex);
+    }
+
+    /**
+     * Indexes a page of one of the searchable kinds, taken in the order of {@link SearchIndex#INDEXED_KINDS}.
+     * The cursor holds the position of the kind in that list and the query cursor within it. Indexing an entity
+     * rewrites its entries, so a repeated step leaves the index as it was.
+     */
+    private static Jobs.Step reindex(Jobs.Job job) {
+        int kindIndex = 0;
+        Cursor start = null;
+        if (job.cursor() != null) {
+            int separator = job.cursor().indexOf(SEPARATOR);
+            kindIndex = Integer.parseInt(job.cursor().substring(0, separator));
+            String queryCursor = job.cursor().substring(separator + 1);
+            start = queryCursor.isEmpty() ? null : Cursor.fromUrlSafe(queryCursor);
+        }
+
+        EntityQuery.Builder query = Query.newEntityQueryBuilder()
+                .setKind(SearchIndex.INDEXED_KINDS.get(kindIndex))
+                .setLimit(REINDEX_STEP);
+        if (start != null) {
+            query.setStartCursor(start);
+        }
+        QueryResults<Entity> results = datastore.run(query.build());
+        int read = 0;
+        while (results.hasNext()) {
+            SearchIndex.index(datastore, results.next());
+            read++;
+        }
+
+        long progress = job.progress() + read;
+        if (read == REINDEX_STEP) {
+            return Jobs.Step.next(kindIndex + SEPARATOR + results.getCursorAfter().toUrlSafe(), progress, 0);
+        }
+        if (kindIndex + 1 < SearchIndex.INDEXED_KINDS.size()) {
+            return Jobs.Step.next((kindIndex + 1) + SEPARATOR, progress, 0);
+        }
+        return Jobs.Step.done(progress, progress);
+    }
+}
@@ -0,0 +1,137 @@
+package jobs;
+
+import java.util.logging.Logger;
+
+import com.google.cloud.datastore.Cursor;
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.EntityQuery;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.QueryResults;
+
+import constants.AccountConstants;
+import constants.WorkSheetConstants;
+import persistence.DatastoreGateway;
+import persistence.ParcelGeometry;
+import persistence.StatsAggregate;
+
+/**
+ * Background work of the statistics: counting the platform totals from the entities, on the first deployment
+ * and whenever an administrator asks for it.
+ */
+public final class StatsJobs {
+    public static final String RECOUNT = "stats-recount";
+    // Only one count runs at a time; a new one can start once it has finished
+    public static final String RECOUNT_JOB_ID = RECOUNT;
+
+    // Entities read per step
+    private static final int RECOUNT_STEP = 500;
+    private static final String SEPARATOR = "|";
+    // Kinds are counted in this order
+    private static final int PARCELS = 0;
+    private static final int WORKSHEETS = 1;
+    private static final int USERS = 2;
+
+    private static final Logger LOG = Logger.getLogger(StatsJobs.class.getName());
+    private static final Datastore datastore = DatastoreGateway.get();
+
+    private StatsJobs() {
+    }
+
+    public static void register() {
+        Jobs.register(RECOUNT, StatsJobs::recount);
+    }
+
+    /**
+     * Starts the first count if the totals have never been counted. Safe to call from every instance: the job
+     * has a fixed id, so only one of them creates it.
+     */
+    public static void seedIfNeeded() {
+        if (!StatsAggregate.isSeeded() && Jobs.enqueue(RECOUNT_JOB_ID, RECOUNT, "")) {
+            LOG.info("Statistics were never counted, recount job queued");
+        }
+    }
+
+    /**
+     * Counts a page of parcels, worksheets or users. The totals counted so far travel in the cursor with the count
+     * epoch, the kind being counted and the query cursor within it; the last step stores them. A repeated step
+     * starts from the same cursor, so nothing is counted twice.
+     */
+    private static Jobs.Step recount(Jobs.Job job) {
+        Count count = job.cursor() == null
+                ? new Count(StatsAggregate.beginCount(), PARCELS, 0, 0, 0, 0, 0, null)
+                : Count.parse(job.cursor());
+
+        String kind = switch (count.kind()) {
+            case PARCELS -> WorkSheetConstants.WS_PROP;
+            case WORKSHEETS -> WorkSheetConstants.WORKSHEET;
+            default -> AccountConstants.USER;
+        };
+        EntityQuery.Builder query = Query.newEntityQueryBuilder().setKind(kind).setLimit(RECOUNT_STEP);
+        if (count.cursor() != null) {
+            query.setStartCursor(Cursor.fromUrlSafe(count.cursor()));
+        }
+        QueryResults<Entity> results = datastore.run(query.build());
+        long parcels = count.parcels();
+        double areaHa = count.areaHa();
+        long worksheets = count.worksheets();
+        long users = count.users();
+        long activeUsers = count.activeUsers();
+        int read = 0;
+        while (results.hasNext()) {
+            Entity entity = results.next();
+            read++;
+            if (count.kind() == PARCELS) {
+                parcels++;
+                areaHa += ParcelGeometry.areaHa(entity);
+            } else if (count.kind() == WORKSHEETS) {
+                worksheets++;
+            } else {
+                users++;
+                if (entity.contains(AccountConstants.DS_STATE)
+                        && AccountConstants.ACTIVE_STATE.equals(entity.getString(AccountConstants.DS_STATE))) {
+                    activeUsers++;
+                }
+            }
+        }
+
+        long progress = job.progress() + read;
+        if (read == RECOUNT_STEP) {
+            return Jobs.Step.next(new Count(count.epoch(), count.kind(), parcels, areaHa, worksheets, users, activeUsers,
+                    results.getCursorAfter().toUrlSafe()).format(), progress, 0);
+        }
+        if (count.kind() < USERS) {
+            return Jobs.Step.next(new Count(count.epoch(), count.kind() + 1, parcels, areaHa, worksheets, users, activeUsers,
+                    null).format(), progress, 0);
+        }
+        StatsAggregate.Totals totals = new StatsAggregate.Totals(parcels, areaHa, worksheets, users, activeUsers);
+        if (StatsAggregate.store(count.epoch(), totals)) {
+            LOG.info("Statistics recounted: " + totals);
+        } else {
+            LOG.info("Statistics count of epoch " + count.epoch() + " superseded, not stored");
+        }
+        return Jobs.Step.done(progress, progress);
+    }
+
+    /**
+     * Totals counted so far and where the count stopped
+     * @param epoch count epoch opened when the count started
+     * @param cursor query cursor within the kind, null at its start
+     */
+    private record Count(long epoch, int kind, long parcels, double areaHa, long worksheets, long users, long activeUsers,
+            String cursor) {
+
+        String format() {
+            return String.join(SEPARATOR, String.valueOf(epoch), String.valueOf(kind), String.valueOf(parcels), String.valueOf(areaHa),
+                    String.valueOf(worksheets), String.valueOf(users), String.valueOf(activeUsers),
+                    cursor == null ? "" : cursor);
+        }
+
+        static Count parse(String value) {
+            String[] parts = value.split("\\|", -1);
+            return new Count(Long.parseLong(parts[0]), Integer.parseInt(parts[1]), Long.parseLong(parts[2]),
+                    Double.parseDouble(parts[3]), Long.parseLong(parts[4]), Long.parseLong(parts[5]),
+                    Long.parseLong(parts[6]), parts[7].isEmpty() ? null : parts[7]);
+        }
+    }
+}
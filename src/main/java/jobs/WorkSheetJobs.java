@@ -0,0 +1,170 @@
+package jobs;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.datastore.Cursor;
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.EntityQuery;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.ListValue;
+import com.google.cloud.datastore.LongValue;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.QueryResults;
+import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+import com.google.cloud.datastore.Transaction;
+import com.google.cloud.datastore.Value;
+
+import constants.AccountConstants;
+import constants.WorkSheetConstants;
+import persistence.DatastoreGateway;
+import persistence.TileCache;
+import resources.NotificationResource;
+
+/**
+ * Background work of worksheets: the cascade of a deletion and the notifications of a new worksheet.
+ */
+public final class WorkSheetJobs {
+    public static final String DELETE = "worksheet-delete";
+    public static final String NOTIFY = "worksheet-notify";
+
+    // Properties updated per step, in one transaction
+    private static final int DELETE_STEP = 200;
+    // Users read per step
+    private static final int NOTIFY_STEP = 200;
+    private static final String SEPARATOR = "|";
+    private static final Set<String> NOTIFIED_ROLES = Set.of(AccountConstants.SHEET_MANAGER_BACKOFFICE,
+            AccountConstants.SYSTEM_ADMIN_ROLE, AccountConstants.SYSTEM_BACKOFFICE_ROLE);
+
+    private static final Datastore datastore = DatastoreGateway.get();
+
+    private WorkSheetJobs() {
+    }
+
+    public static void register() {
+        Jobs.register(DELETE, WorkSheetJobs::removeFromProperties);
+        Jobs.register(NOTIFY, WorkSheetJobs::notifyManagers);
+    }
+
+    /**
+     * @return id of the job that finishes deleting a worksheet; imports with the same id wait for it
+     */
+    public static String deleteJobId(long worksheetId) {
+        return DELETE + "-" + worksheetId;
+    }
+
+    /**
+     * @param importedAt creation time of the worksheet's import record; a worksheet deleted and imported again
+     *            with the same id gets a new job, and so new notifications
+     * @return id of the job that notifies the managers of one import of a worksheet
+     */
+    public static String notifyJobId(long worksheetId, Timestamp importedAt) {
+        return NOTIFY + "-" + worksheetId + "-" + (importedAt.getSeconds() * 1_000_000 + importedAt.getNanos() / 1000);
+    }
+
+    /**
+     * Payload of a {@link #NOTIFY} job
+     */
+    public static String notifyPayload(long worksheetId, String createdBy) {
+        return worksheetId + SEPARATOR + createdBy;
+    }
+
+    /**
+     * Removes a deleted worksheet from the properties it listed. The worksheet, its operations and its search
+     * entry are deleted by the request; properties are as many as the worksheet's parcels, so they are updated here
+     * a step at a time. Every step takes the properties still listing the worksheet, so a repeated step finds
+     * nothing left to do for the ones already updated.
+     */
+    private static Jobs.Step removeFromProperties(Jobs.Job job) {
+        long worksheetId = Long.parseLong(job.payload());
+        Query<Key> query = Query.newKeyQueryBuilder()
+                .setKind(WorkSheetConstants.WS_PROP)
+                .setFilter(PropertyFilter.eq(WorkSheetConstants.WS_P_WSW, LongValue.of(worksheetId)))
+                .setLimit(DELETE_STEP)
+                .build();
+        List<Key> keys = new ArrayList<>();
+        datastore.run(query).forEachRemaining(keys::add);
+
+        Transaction txn = datastore.newTransaction();
+        try {
+            for (Entity property : txn.fetch(keys.toArray(new Key[0]))) {
+                if (property == null) {
+                    continue;
+                }
+                ListValue.Builder worksheets = ListValue.newBuilder();
+                for (Value<?> value : property.getList(WorkSheetConstants.WS_P_WSW)) {
+                    if (!(value instanceof LongValue && ((LongValue) value).get() == worksheetId)) {
+                        worksheets.addValue(value);
+                    }
+                }
+                txn.update(Entity.newBuilder(property).set(WorkSheetConstants.WS_P_WSW, worksheets.build()).build());
+            }
+            txn.commit();
+        } finally {
+            if (txn.isActive()) {
+                txn.rollback();
+            }
+        }
+
+        long progress = job.progress() + keys.size();
+        if (keys.size() < DELETE_STEP) {
+            TileCache.get().invalidate();
+            return Jobs.Step.done(progress, progress);
+        }
+        return Jobs.Step.next(null, progress, 0);
+    }
+
+    /**
+     * Notifies the active managers and administrators of a new worksheet, one page of users per step.
+     * Notifications are named after the job, and only the missing ones are written, so a repeated step does not
+     * notify anyone twice.
+     */
+    private static Jobs.Step notifyManagers(Jobs.Job job) {
+        int separator = job.payload().indexOf(SEPARATOR);
+        String worksheetId = job.payload().substring(0, separator);
+        String createdBy = job.payload().substring(separator + 1);
+
+        EntityQuery.Builder query = Query.newEntityQueryBuilder()
+                .setKind(AccountConstants.USER)
+                .setFilter(PropertyFilter.eq(AccountConstants.DS_STATE, AccountConstants.ACTIVE_STATE))
+                .setLimit(NOTIFY_STEP);
+        if (job.cursor() != null) {
+            query.setStartCursor(Cursor.fromUrlSafe(job.cursor()));
+        }
+        QueryResults<Entity> users = datastore.run(query.build());
+        List<Entity> notifications = new ArrayList<>();
+        int read = 0;
+        while (users.hasNext()) {
+            Entity user = users.next();
+            read++;
+            if (!NOTIFIED_ROLES.contains(user.getString(AccountConstants.DS_ROLE))) {
+                continue;
+            }
+            String username = user.getString(AccountConstants.DS_USERNAME);
+            notifications.add(NotificationResource.notification(username + "_" + job.id(), username, createdBy,
+                    "worksheet_added", "Nova Worksheet Criada",
+                    createdBy + " criou uma nova worksheet #" + worksheetId, worksheetId));
+        }
+        Cursor next = users.getCursorAfter();
+
+        if (!notifications.isEmpty()) {
+            Set<Key> existing = new HashSet<>();
+            Key[] keys = notifications.stream().map(Entity::getKey).toArray(Key[]::new);
+            datastore.get(keys).forEachRemaining(notification -> existing.add(notification.getKey()));
+            notifications.removeIf(notification -> existing.contains(notification.getKey()));
+            if (!notifications.isEmpty()) {
+                datastore.put(notifications.toArray(new Entity[0]));
+            }
+        }
+
+        long progress = job.progress() + read;
+        if (read < NOTIFY_STEP) {
+            return Jobs.Step.done(progress, progress);
+        }
+        return Jobs.Step.next(next.toUrlSafe(), progress, 0);
+    }
+}
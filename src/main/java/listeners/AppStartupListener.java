@@ -2,20 +2,29 @@ package listeners;
 
 import java.util.logging.Logger;
 
-import org.apache.commons.codec.digest.DigestUtils;
-
 import com.google.cloud.datastore.Datastore;
-import com.google.cloud.datastore.DatastoreOptions;
 import com.google.cloud.datastore.Entity;
 import com.google.cloud.datastore.Key;
 import com.google.cloud.datastore.KeyFactory;
 import com.google.cloud.datastore.Transaction;
 
+import auth.JWTConfig;
+import auth.JWTKeyStore;
+import auth.RevokedTokenStore;
 import constants.AccountConstants;
+import jobs.ExecutionSheetJobs;
+import jobs.Jobs;
+import jobs.SearchIndexJobs;
+import jobs.StatsJobs;
+import jobs.WorkSheetJobs;
 import jakarta.servlet.ServletContextEvent;
 import jakarta.servlet.ServletContextListener;
 import jakarta.servlet.annotation.WebListener;
+import persistence.CoverageEngine;
+import persistence.DatastoreGateway;
+import persistence.StatsAggregate;
 import resources.RegisterResource;
+import security.PasswordHasher;
 
 @WebListener
 public class AppStartupListener implements ServletContextListener {
@@ -48,18 +57,38 @@ public class AppStartupListener implements ServletContextListener {
 				ROOT_ADDRESS,
 				ROOT_POSTAL_CODE, ROOT_PHONE1, ROOT_PHONE2, ROOT_NIF, ROOT_CC, ROOT_CCDE, ROOT_CCLE, ROOT_CCV,
 				ROOT_DNASC, ROOT_ROLE, ROOT_PRIVACY, ROOT_ACCOUNT_STATE);
+		// Keys are only read lazily on first use, this just schedules the shared rotation check
+		if (JWTConfig.isAsymmetric()) {
+			JWTKeyStore.startRotation();
+		}
+		RevokedTokenStore.startRefresh();
+		CoverageEngine.startProcessing();
+		WorkSheetJobs.register();
+		ExecutionSheetJobs.register();
+		SearchIndexJobs.register();
+		StatsJobs.register();
+		Jobs.start();
+		// Statistics are counted once on the first deployment; afterwards writers keep them up to date
+		try {
+			StatsJobs.seedIfNeeded();
+		} catch (Exception e) {
+			LOG.warning("Statistics seed not queued: " + e.getMessage());
+		}
 	}
 
 	@Override
 	public void contextDestroyed(ServletContextEvent sce) {
-		// No cleanup needed
+		JWTKeyStore.stopRotation();
+		RevokedTokenStore.stopRefresh();
+		CoverageEngine.stopProcessing();
+		Jobs.stop();
 	}
 
 	private void createRoot(String username, String email, String pwd, String name, String pn, String pr, String end,
 			String endcp, String phone1, String phone2, String nif, String cc, String ccde, String ccle, String ccv,
 			String dnasc, String role, String profile, String state) {
 
-		Datastore datastore = DatastoreOptions.getDefaultInstance().getService();
+		Datastore datastore = DatastoreGateway.get();
 		
 		KeyFactory keyFactory = datastore.newKeyFactory().setKind(AccountConstants.USER);
 		Key rootKey = keyFactory.newKey("root");
@@ -77,7 +106,7 @@ public class AppStartupListener implements ServletContextListener {
 				newUser = Entity.newBuilder(rootKey)
 						.set(AccountConstants.DS_USERNAME, username)
 						.set(AccountConstants.DS_EMAIL, email)
-						.set(AccountConstants.DS_PWD, DigestUtils.sha512Hex(pwd))
+						.set(AccountConstants.DS_PWD, PasswordHasher.hashPassword(pwd))
 						.set(AccountConstants.DS_FULLNAME, name)
 						.set(AccountConstants.DS_PN, pn)
 						.set(AccountConstants.DS_PR, pr)
@@ -96,6 +125,7 @@ public class AppStartupListener implements ServletContextListener {
 						.set(AccountConstants.DS_STATE, state)
 						.build();
 				txn.put(newUser);
+				StatsAggregate.add(txn, StatsAggregate.Delta.user(true, state));
 				txn.commit();
 				LOG.info("New user created: " + username);
 			} catch (Exception e) {
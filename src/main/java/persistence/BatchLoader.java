@@ -0,0 +1,92 @@
+package persistence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.google.cloud.datastore.DatastoreReader;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+
+/**
+ * Request-scoped key loader in the style of DataLoader: {@link #load(Key)} only queues the key, and
+ * {@link #dispatch()} resolves everything queued so far with a single batched lookup.
+ * Repeated keys are fetched once and served from the loader afterwards.
+ * Create one per request (or per transaction); instances are not thread-safe.
+ */
+public class BatchLoader {
+    // Datastore rejects lookups with more keys than this
+    private static final int MAX_KEYS_PER_LOOKUP = 1000;
+
+    private final DatastoreReader reader;
+    private final Map<Key, CompletableFuture<Entity>> loaded = new HashMap<>();
+    private final Map<Key, CompletableFuture<Entity>> pending = new LinkedHashMap<>();
+
+    /**
+     * @param reader the Datastore client, or a transaction to read from its snapshot
+     */
+    public BatchLoader(DatastoreReader reader) {
+        this.reader = reader;
+    }
+
+    public static BatchLoader create() {
+        return new BatchLoader(DatastoreGateway.get());
+    }
+
+    /**
+     * Queues a key for the next dispatch
+     * @param key entity key
+     * @return future completed with the entity (or null if it does not exist) on dispatch
+     */
+    public CompletableFuture<Entity> load(Key key) {
+        CompletableFuture<Entity> future = loaded.get(key);
+        if (future == null) {
+            future = pending.computeIfAbsent(key, k -> new CompletableFuture<>());
+        }
+        return future;
+    }
+
+    /**
+     * Loads a single key right away, together with anything else already queued
+     * @param key entity key
+     * @return the entity, null if it does not exist
+     */
+    public Entity get(Key key) {
+        CompletableFuture<Entity> future = load(key);
+        dispatch();
+        return future.join();
+    }
+
+    /**
+     * Resolves every queued key. Keys queued by callbacks of this batch are resolved by a follow-up batch
+     * in the same call.
+     */
+    public void dispatch() {
+        while (!pending.isEmpty()) {
+            List<Key> keys = new ArrayList<>(pending.keySet());
+            Map<Key, CompletableFuture<Entity>> batch = new HashMap<>(pending);
+            pending.clear();
+            loaded.putAll(batch);
+
+            Map<Key, Entity> found = new HashMap<>();
+            try {
+                for (int i = 0; i < keys.size(); i += MAX_KEYS_PER_LOOKUP) {
+                    List<Key> chunk = keys.subList(i, Math.min(i + MAX_KEYS_PER_LOOKUP, keys.size()));
+                    Iterator<Entity> entities = reader.get(chunk.toArray(new Key[0]));
+                    while (entities.hasNext()) {
+                        Entity entity = entities.next();
+                        found.put(entity.getKey(), entity);
+                    }
+                }
+            } catch (RuntimeException e) {
+                batch.values().forEach(f -> f.completeExceptionally(e));
+                throw e;
+            }
+            batch.forEach((key, future) -> future.complete(found.get(key)));
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package persistence;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.datastore.Blob;
+import com.google.cloud.datastore.BlobValue;
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.DatastoreException;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.EntityValue;
+import com.google.cloud.datastore.FullEntity;
+import com.google.cloud.datastore.IncompleteKey;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyFactory;
+import com.google.cloud.datastore.LongValue;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.QueryResults;
+import com.google.cloud.datastore.StringValue;
+import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+import com.google.cloud.datastore.Transaction;
+
+import constants.ExecutionSheetConstants;
+import constants.WorkSheetConstants;
+import geo.CoverageGrid;
+import geo.PackedGeometry;
+import geo.TrackPoints.Point;
+
+/**
+ * Executed area of every parcel of every operation, measured from the operators' GPS tracks on a
+ * {@link CoverageGrid} per execution parcel.
+ *
+ * A background task follows the track segments written since its last step ({@link TrackStore#readChanges}) and,
+ * for each parcel they belong to, adds the points it has not seen yet to the parcel's grid, buffered by the
+ * operation's implement width ({@link ExecutionSheetConstants#EO_IMPLEMENT_WIDTH}, {@value #DEFAULT_IMPLEMENT_WIDTH}
+ * metres when unset). The grid is stored as a {@value #KIND} entity together with how many points of each
+ * activity it holds, so a step only reads new points and no request pays for the geometry. The parcel's covered
+ * area is written to the execution parcel, and the change in it is added to the operation's covered area and
+ * percentage.
+ *
+ * Steps are bounded, {@link #MAX_PARCELS_PER_STEP} parcels and {@link #MAX_POINTS_PER_STEP} points per parcel,
+ * and leave the rest to the next step. Each step re-reads a short overlap before its watermark, because a
+ * segment's time is taken before its transaction commits; a parcel seen again only finds the points it has
+ * already counted. They are also idempotent: a grid is only written if it is still the
+ * version that was read, so instances running steps at the same time cannot count the same points twice.
+ */
+public class CoverageEngine {
+    public static final String KIND = "ParcelCoverage";
+    public static final double DEFAULT_IMPLEMENT_WIDTH = 6.0;
+    public static final int MAX_PARCELS_PER_STEP = 50;
+    public static final int MAX_POINTS_PER_STEP = 8 * TrackStore.CHUNK_POINTS;
+    private static final int MAX_SEGMENTS_PER_STEP = 500;
+    private static final long STEP_SECONDS = 30;
+    private static final Duration FEED_OVERLAP = Duration.ofSeconds(30);
+    // Fixes further apart than this are not joined: the receiver lost the signal or the implement was lifted
+    private static final double MAX_GAP_METRES = 50;
+
+    private static final String STATE_KIND = "CoverageState";
+    private static final String WATERMARK = "watermark";
+    private static final String GRID = "grid";
+    private static final String PROPERTY = "property";
+    private static final String PROCESSED = "processed";
+    private static final String VERSION = "version";
+    private static final String FRACTION = "fraction";
+    private static final String COVERED_AREA_HA = "coveredAreaHa";
+    private static final String UPDATED_AT = "updatedAt";
+
+    private static final Logger LOG = Logger.getLogger(CoverageEngine.class.getName());
+    private static final Datastore datastore = DatastoreGateway.get();
+    private static final KeyFactory coverageKeyFactory = datastore.newKeyFactory().setKind(KIND);
+    private static final KeyFactory parcelKeyFactory = datastore.newKeyFactory()
+            .setKind(ExecutionSheetConstants.EXEC_PARCEL);
+    private static final KeyFactory operationKeyFactory = datastore.newKeyFactory()
+            .setKind(ExecutionSheetConstants.EXEC_OPERATION);
+    private static final KeyFactory propertyKeyFactory = datastore.newKeyFactory()
+            .setKind(WorkSheetConstants.WS_PROP);
+    private static final Key stateKey = datastore.newKeyFactory().setKind(STATE_KIND).newKey("tracks");
+
+    private static ScheduledExecutorService scheduler;
+
+    private CoverageEngine() {
+    }
+
+    public static synchronized void startProcessing() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "coverage-engine");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                step();
+            } catch (Exception e) {
+                LOG.warning("Coverage step failed: " + e.getMessage());
+            }
+        }, STEP_SECONDS, STEP_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stopProcessing() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Covers the tracks written since the previous step
+     * @return parcels whose coverage changed
+     */
+    public static int step() {
+        Entity state = datastore.get(stateKey);
+        Timestamp since = state == null ? null : state.getTimestamp(WATERMARK);
+        Timestamp overlapStart = since == null ? null
+                : Timestamp.ofTimeSecondsAndNanos(since.getSeconds() - FEED_OVERLAP.getSeconds(), since.getNanos());
+        // First change seen of each parcel, where reading resumes if the parcel is not caught up
+        Map<String, Timestamp> parcels = new LinkedHashMap<>();
+        Timestamp watermark = TrackStore.readChanges(datastore, overlapStart, since, MAX_SEGMENTS_PER_STEP,
+                segment -> parcels.putIfAbsent(segment.getString(TrackStore.PARCEL),
+                        segment.getTimestamp(TrackStore.UPDATED_AT)));
+        if (since != null && watermark.compareTo(since) < 0) {
+            watermark = since;
+        }
+
+        int updated = 0;
+        int visited = 0;
+        for (Map.Entry<String, Timestamp> parcel : parcels.entrySet()) {
+            boolean caughtUp = false;
+            // Parcels of the overlap are always visited, so they cannot hold the watermark back step after step
+            boolean overlap = since != null && parcel.getValue().compareTo(since) <= 0;
+            if (overlap || visited++ < MAX_PARCELS_PER_STEP) {
+                try {
+                    Result result = update(parcel.getKey());
+                    caughtUp = result.caughtUp();
+                    updated += result.changed() ? 1 : 0;
+                } catch (DatastoreException e) {
+                    LOG.warning("Coverage of parcel " + parcel.getKey() + " deferred: " + e.getMessage());
+                }
+            }
+            if (!caughtUp && watermark.compareTo(parcel.getValue()) >= 0) {
+                watermark = justBefore(parcel.getValue());
+            }
+        }
+
+        if (watermark != null && !watermark.equals(since)) {
+            datastore.put(Entity.newBuilder(stateKey).set(WATERMARK, watermark).build());
+        }
+        return updated;
+    }
+
+    private record Result(boolean changed, boolean caughtUp) {
+    }
+
+    /**
+     * Adds the parcel's new track points to its grid, at most {@link #MAX_POINTS_PER_STEP} of them
+     * @param parcelId execution parcel id
+     */
+    private static Result update(String parcelId) {
+        Entity execParcel = datastore.get(parcelKeyFactory.newKey(parcelId));
+        if (execParcel == null) {
+            return new Result(false, true);
+        }
+        Key coverageKey = coverageKeyFactory.newKey(parcelId);
+        Entity coverage = datastore.get(coverageKey);
+        Entity property = property(coverage, execParcel, parcelId);
+        if (property == null) {
+            LOG.warning("No rural property found for execution parcel " + parcelId);
+            return new Result(false, true);
+        }
+
+        CoverageGrid grid;
+        double areaHa;
+        try {
+            PackedGeometry wgs84 = ParcelGeometry.wgs84(property);
+            if (wgs84 == null) {
+                wgs84 = ParcelGeometry.measure(property).wgs84();
+            }
+            grid = coverage == null ? CoverageGrid.create(wgs84)
+                    : CoverageGrid.of(wgs84, coverage.getBlob(GRID).toByteArray());
+            areaHa = ParcelGeometry.areaHa(property);
+        } catch (IllegalArgumentException e) {
+            LOG.warning("Cannot measure coverage of parcel " + parcelId + ": " + e.getMessage());
+            return new Result(false, true);
+        }
+        Key operationKey = operationKeyFactory.newKey(execParcel.getString(ExecutionSheetConstants.EP_OPERATION_ID));
+        double width = implementWidth(datastore.get(operationKey));
+
+        Map<String, Long> processed = processed(coverage);
+        boolean changed = false;
+        boolean caughtUp = true;
+        int budget = MAX_POINTS_PER_STEP;
+        Query<Entity> activityQuery = Query.newEntityQueryBuilder().setKind(ExecutionSheetConstants.EXEC_ACTIVITY)
+                .setFilter(PropertyFilter.eq(ExecutionSheetConstants.EA_PARCEL_ID, parcelId)).build();
+        QueryResults<Entity> activities = datastore.run(activityQuery);
+        while (activities.hasNext()) {
+            Entity activity = activities.next();
+            String activityId = activity.getKey().getName();
+            long count = TrackStore.pointCount(activity);
+            long done = processed.getOrDefault(activityId, 0L);
+            if (count <= done) {
+                continue;
+            }
+            if (budget <= 0) {
+                caughtUp = false;
+                break;
+            }
+            // The last point already covered is read again to join it to the new ones
+            long from = Math.max(0, done - 1);
+            List<Point> points = TrackStore.points(datastore, activityId, from,
+                    (int) Math.min(budget + done - from, count - from));
+            long taken = from + points.size();
+            if (taken <= done) {
+                caughtUp = false;
+                continue;
+            }
+            grid.cover(points, width, MAX_GAP_METRES);
+            budget -= points.size();
+            processed.put(activityId, taken);
+            changed = true;
+            caughtUp &= taken >= count;
+        }
+        if (!changed) {
+            return new Result(false, caughtUp);
+        }
+        boolean saved = save(coverageKey, coverage, property, grid, processed, grid.fraction() * areaHa,
+                execParcel.getKey(), operationKey);
+        return new Result(saved, caughtUp && saved);
+    }
+
+    // Writes the grid unless another step wrote it since it was read, and passes the change on
+    private static boolean save(Key coverageKey, Entity coverage, Entity property, CoverageGrid grid,
+            Map<String, Long> processed, double coveredHa, Key parcelKey, Key operationKey) {
+        Transaction txn = datastore.newTransaction();
+        try {
+            Entity current = txn.get(coverageKey);
+            long version = coverage == null ? 0 : coverage.getLong(VERSION);
+            if ((current == null ? 0 : current.getLong(VERSION)) != version) {
+                return false;
+            }
+            double previousHa = current == null ? 0 : current.getDouble(COVERED_AREA_HA);
+
+            FullEntity.Builder<IncompleteKey> taken = FullEntity.newBuilder();
+            processed.forEach(taken::set);
+            txn.put(Entity.newBuilder(coverageKey)
+                    .set(PROPERTY, StringValue.newBuilder(property.getKey().getName()).setExcludeFromIndexes(true)
+                            .build())
+                    .set(GRID, BlobValue.newBuilder(Blob.copyFrom(grid.bytes())).setExcludeFromIndexes(true).build())
+                    .set(PROCESSED, EntityValue.newBuilder(taken.build()).setExcludeFromIndexes(true).build())
+                    .set(VERSION, version + 1)
+                    .set(FRACTION, grid.fraction())
+                    .set(COVERED_AREA_HA, coveredHa)
+                    .set(UPDATED_AT, Timestamp.now())
+                    .build());
+
+            Entity parcel = txn.get(parcelKey);
+            if (parcel != null) {
+                txn.put(Entity.newBuilder(parcel).set(ExecutionSheetConstants.EP_COVERED_AREA_HA, coveredHa).build());
+            }
+            Entity operation = txn.get(operationKey);
+            if (operation != null) {
+                double operationHa = (operation.contains(ExecutionSheetConstants.EO_COVERED_AREA_HA)
+                        ? operation.getDouble(ExecutionSheetConstants.EO_COVERED_AREA_HA) : 0) + coveredHa - previousHa;
+                double totalHa = operation.getDouble(ExecutionSheetConstants.EO_TOTAL_AREA_HA);
+                txn.put(Entity.newBuilder(operation)
+                        .set(ExecutionSheetConstants.EO_COVERED_AREA_HA, Math.max(0, operationHa))
+                        .set(ExecutionSheetConstants.EO_TOTAL_AREA_PERCENT,
+                                totalHa > 0 ? Math.min(100.0, Math.max(0, operationHa) / totalHa * 100) : 0.0)
+                        .build());
+            }
+            txn.commit();
+            return true;
+        } finally {
+            if (txn.isActive()) {
+                txn.rollback();
+            }
+        }
+    }
+
+    /**
+     * @return the operation's implement width in metres
+     */
+    public static double implementWidth(Entity operation) {
+        if (operation != null && operation.contains(ExecutionSheetConstants.EO_IMPLEMENT_WIDTH)) {
+            double width = operation.getDouble(ExecutionSheetConstants.EO_IMPLEMENT_WIDTH);
+            if (width > 0) {
+                return width;
+            }
+        }
+        return DEFAULT_IMPLEMENT_WIDTH;
+    }
+
+    private static Map<String, Long> processed(Entity coverage) {
+        Map<String, Long> processed = new HashMap<>();
+        if (coverage != null && coverage.contains(PROCESSED)) {
+            FullEntity<?> taken = coverage.getEntity(PROCESSED);
+            for (String activityId : taken.getNames()) {
+                processed.put(activityId, taken.getLong(activityId));
+            }
+        }
+        return processed;
+    }
+
+    /**
+     * Execution parcels only keep the polygon id; the rural property is looked up once and then kept with the grid
+     */
+    private static Entity property(Entity coverage, Entity execParcel, String parcelId) {
+        if (coverage != null && coverage.contains(PROPERTY)) {
+            return datastore.get(propertyKeyFactory.newKey(coverage.getString(PROPERTY)));
+        }
+        // Execution parcels are named execution_<worksheet>_<operation>_<polygon>
+        String[] splitId = parcelId.split("_");
+        LongValue worksheetId = null;
+        if (splitId.length == 4) {
+            try {
+                worksheetId = LongValue.of(Long.parseLong(splitId[1]));
+            } catch (NumberFormatException e) {
+                worksheetId = null;
+            }
+        }
+        Query<Entity> query = Query.newEntityQueryBuilder().setKind(WorkSheetConstants.WS_PROP)
+                .setFilter(PropertyFilter.eq(WorkSheetConstants.WS_P_PID,
+                        execParcel.getLong(ExecutionSheetConstants.EP_POLYGON_ID)))
+                .build();
+        QueryResults<Entity> results = datastore.run(query);
+        Entity first = null;
+        while (results.hasNext()) {
+            Entity property = results.next();
+            if (worksheetId != null && property.contains(WorkSheetConstants.WS_P_WSW)
+                    && property.getList(WorkSheetConstants.WS_P_WSW).contains(worksheetId)) {
+                return property;
+            }
+            if (first == null) {
+                first = property;
+            }
+        }
+        return first;
+    }
+
+    // Datastore keeps microseconds, so this is the latest time strictly before t
+    private static Timestamp justBefore(Timestamp t) {
+        return Timestamp.ofTimeMicroseconds(t.getSeconds() * 1_000_000 + t.getNanos() / 1000 - 1);
+    }
+}
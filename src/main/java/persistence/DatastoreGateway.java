@@ -0,0 +1,279 @@
+package persistence;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.cloud.datastore.BaseEntity;
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.DatastoreException;
+import com.google.cloud.datastore.DatastoreOptions;
+import com.google.cloud.datastore.DatastoreReaderWriter;
+import com.google.cloud.datastore.IncompleteKey;
+import com.google.cloud.datastore.QueryResults;
+import com.google.cloud.datastore.StructuredQuery;
+import com.google.cloud.datastore.Transaction;
+
+/**
+ * The single Datastore client of the application. Every class gets its client from {@link #get()} instead of
+ * building its own from DatastoreOptions, so every call goes through one place and is recorded in
+ * {@link DatastoreMetrics}: RPC counts and latency per kind and operation, entities read and written,
+ * aborted commits and runInTransaction retries, all tagged with the calling endpoint.
+ * The backing client can be replaced with {@link #setDelegate(Datastore)}; otherwise it is created on first use,
+ * from DatastoreOptions or, with {@code -Ddatastore.backend=memory} (or DATASTORE_BACKEND=memory), as an
+ * {@link InMemoryDatastore} delayed by {@code datastore.memory.latencyMs}/{@code datastore.memory.jitterMs}.
+ */
+public class DatastoreGateway {
+    private static final Set<String> READS = Set.of("get", "fetch", "run", "runAggregation");
+    private static final Set<String> WRITES = Set.of("put", "add", "update", "delete");
+    private static final Set<String> BUFFERED_WRITES = Set.of("put", "add", "update", "delete",
+            "putWithDeferredIdAllocation", "addWithDeferredIdAllocation");
+    private static final Set<String> OTHER_RPCS = Set.of("allocateId", "reserveIds");
+
+    public static final String BACKEND_PROPERTY = "datastore.backend";
+    public static final String MEMORY_BACKEND = "memory";
+
+    private static volatile Datastore delegate;
+
+    private static final Datastore instrumented = (Datastore) Proxy.newProxyInstance(
+            Datastore.class.getClassLoader(), new Class<?>[] { Datastore.class }, new DatastoreHandler());
+
+    private DatastoreGateway() {
+    }
+
+    /**
+     * @return the instrumented client shared by the whole application
+     */
+    public static Datastore get() {
+        return instrumented;
+    }
+
+    /**
+     * Replaces the client every call is forwarded to (e.g. an emulator or in-memory backend)
+     * @param datastore new backing client
+     */
+    public static void setDelegate(Datastore datastore) {
+        delegate = datastore;
+    }
+
+    public static Datastore getDelegate() {
+        Datastore current = delegate;
+        if (current != null) {
+            return current;
+        }
+        synchronized (DatastoreGateway.class) {
+            if (delegate == null) {
+                delegate = createDefault();
+            }
+            return delegate;
+        }
+    }
+
+    private static Datastore createDefault() {
+        String backend = System.getProperty(BACKEND_PROPERTY, System.getenv("DATASTORE_BACKEND"));
+        if (MEMORY_BACKEND.equalsIgnoreCase(backend)) {
+            return new InMemoryDatastore(Duration.ofMillis(Long.getLong("datastore.memory.latencyMs", 0)),
+                    Duration.ofMillis(Long.getLong("datastore.memory.jitterMs", 0))).asDatastore();
+        }
+        return DatastoreOptions.getDefaultInstance().getService();
+    }
+
+    private static class DatastoreHandler implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("newTransaction")) {
+                Transaction txn = (Transaction) timed(DatastoreMetrics.TRANSACTION_KIND, "begin", method, getDelegate(), args);
+                return wrap(Transaction.class, txn);
+            }
+            if (name.equals("runInTransaction")) {
+                return runInTransaction(method, args);
+            }
+            if (!READS.contains(name) && !WRITES.contains(name) && !OTHER_RPCS.contains(name)) {
+                return invokeDirect(method, getDelegate(), args);
+            }
+
+            String kind = kindOf(args);
+            Object result = timed(kind, name, method, getDelegate(), args);
+            if (WRITES.contains(name)) {
+                DatastoreMetrics.recordWrite(kind, name, countArgs(args));
+                return result;
+            }
+            return countReads(kind, name, result);
+        }
+    }
+
+    private static class TransactionHandler implements InvocationHandler {
+        private final Object target;
+
+        TransactionHandler(Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (READS.contains(name)) {
+                String kind = kindOf(args);
+                return countReads(kind, name, timed(kind, name, method, target, args));
+            }
+            if (BUFFERED_WRITES.contains(name)) {
+                // Mutations are only buffered until commit, so they count entities but not RPCs
+                DatastoreMetrics.recordWrite(kindOf(args), name, countArgs(args));
+                return invokeDirect(method, target, args);
+            }
+            if (name.equals("commit") || name.equals("rollback")) {
+                return timed(DatastoreMetrics.TRANSACTION_KIND, name, method, target, args);
+            }
+            return invokeDirect(method, target, args);
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Object runInTransaction(Method method, Object[] args) throws Throwable {
+        AtomicInteger attempts = new AtomicInteger();
+        Datastore.TransactionCallable callable = (Datastore.TransactionCallable) args[0];
+        Object[] wrappedArgs = args.clone();
+        wrappedArgs[0] = (Datastore.TransactionCallable) readerWriter -> {
+            attempts.incrementAndGet();
+            return callable.run(wrap(DatastoreReaderWriter.class, readerWriter));
+        };
+        try {
+            return timed(DatastoreMetrics.TRANSACTION_KIND, "runInTransaction", method, getDelegate(), wrappedArgs);
+        } finally {
+            DatastoreMetrics.recordRetries(DatastoreMetrics.TRANSACTION_KIND, "runInTransaction",
+                    Math.max(0, attempts.get() - 1));
+        }
+    }
+
+    private static Object timed(String kind, String operation, Method method, Object target, Object[] args)
+            throws Throwable {
+        long start = System.nanoTime();
+        boolean failed = false;
+        try {
+            return invokeDirect(method, target, args);
+        } catch (DatastoreException e) {
+            failed = true;
+            if (e.getCode() == 10 || "ABORTED".equals(e.getReason())) {
+                DatastoreMetrics.recordAborted(kind, operation);
+            }
+            throw e;
+        } catch (Throwable t) {
+            failed = true;
+            throw t;
+        } finally {
+            DatastoreMetrics.recordCall(kind, operation, System.nanoTime() - start, failed);
+        }
+    }
+
+    private static Object invokeDirect(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T wrap(Class<T> type, Object target) {
+        if (target == null) {
+            return null;
+        }
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new TransactionHandler(target));
+    }
+
+    // Entities returned by get/fetch are counted right away, query results as they are iterated
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Object countReads(String kind, String operation, Object result) {
+        if (result instanceof BaseEntity) {
+            DatastoreMetrics.recordRead(kind, operation, 1);
+        } else if (result instanceof List<?> list) {
+            DatastoreMetrics.recordRead(kind, operation, list.stream().filter(e -> e != null).count());
+        } else if (result instanceof QueryResults<?> results) {
+            return Proxy.newProxyInstance(QueryResults.class.getClassLoader(), new Class<?>[] { QueryResults.class },
+                    (p, m, a) -> {
+                        Object value = invokeDirect(m, results, a);
+                        if (m.getName().equals("next")) {
+                            DatastoreMetrics.recordRead(kind, operation, 1);
+                        }
+                        return value;
+                    });
+        } else if (result instanceof Iterator<?> iterator) {
+            return new Iterator() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Object next() {
+                    Object value = iterator.next();
+                    DatastoreMetrics.recordRead(kind, operation, 1);
+                    return value;
+                }
+            };
+        }
+        return result;
+    }
+
+    private static String kindOf(Object[] args) {
+        if (args == null) {
+            return "(none)";
+        }
+        for (Object arg : args) {
+            Object first = first(arg);
+            if (first instanceof IncompleteKey key) {
+                return key.getKind();
+            }
+            if (first instanceof BaseEntity<?> entity && entity.getKey() != null) {
+                return entity.getKey().getKind();
+            }
+            if (first instanceof StructuredQuery<?> query) {
+                return query.getKind();
+            }
+        }
+        return "(none)";
+    }
+
+    private static Object first(Object arg) {
+        if (arg instanceof Object[] array) {
+            return array.length > 0 ? array[0] : null;
+        }
+        if (arg instanceof Iterable<?> iterable) {
+            Iterator<?> it = iterable.iterator();
+            return it.hasNext() ? it.next() : null;
+        }
+        return arg;
+    }
+
+    private static long countArgs(Object[] args) {
+        long count = 0;
+        if (args == null) {
+            return count;
+        }
+        for (Object arg : args) {
+            if (arg instanceof Object[] array) {
+                for (Object o : array) {
+                    if (o instanceof BaseEntity || o instanceof IncompleteKey) {
+                        count++;
+                    }
+                }
+            } else if (arg instanceof Iterable<?> iterable) {
+                for (Object o : iterable) {
+                    if (o instanceof BaseEntity || o instanceof IncompleteKey) {
+                        count++;
+                    }
+                }
+            } else if (arg instanceof BaseEntity || arg instanceof IncompleteKey) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
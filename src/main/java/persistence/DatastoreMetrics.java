@@ -0,0 +1,144 @@
+package persistence;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Datastore call counters, grouped by calling endpoint, entity kind and operation.
+ * The endpoint is taken from a thread-local set by DatastoreMetricsFilter; calls made outside
+ * a request (listeners, schedulers) are reported under "background".
+ */
+public class DatastoreMetrics {
+    public static final String BACKGROUND = "background";
+    public static final String TRANSACTION_KIND = "(transaction)";
+
+    // Upper bounds of the latency buckets in milliseconds, the last bucket is open-ended
+    private static final long[] BUCKET_BOUNDS_MS = { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500 };
+
+    private static final ThreadLocal<String> endpoint = new ThreadLocal<>();
+    private static final ConcurrentHashMap<StatKey, Stat> stats = new ConcurrentHashMap<>();
+
+    private record StatKey(String endpoint, String kind, String operation) {
+    }
+
+    private static class Stat {
+        final LongAdder calls = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder aborted = new LongAdder();
+        final LongAdder retries = new LongAdder();
+        final LongAdder entitiesRead = new LongAdder();
+        final LongAdder entitiesWritten = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MS.length + 1];
+
+        Stat() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+    }
+
+    private DatastoreMetrics() {
+    }
+
+    public static void setEndpoint(String name) {
+        endpoint.set(name);
+    }
+
+    public static void clearEndpoint() {
+        endpoint.remove();
+    }
+
+    public static String currentEndpoint() {
+        String name = endpoint.get();
+        return name != null ? name : BACKGROUND;
+    }
+
+    static void recordCall(String kind, String operation, long nanos, boolean failed) {
+        Stat stat = stat(kind, operation);
+        stat.calls.increment();
+        stat.totalNanos.add(nanos);
+        if (failed) {
+            stat.errors.increment();
+        }
+        long millis = nanos / 1_000_000;
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MS.length && millis >= BUCKET_BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        stat.buckets[bucket].increment();
+    }
+
+    static void recordRead(String kind, String operation, long entities) {
+        if (entities > 0) {
+            stat(kind, operation).entitiesRead.add(entities);
+        }
+    }
+
+    static void recordWrite(String kind, String operation, long entities) {
+        if (entities > 0) {
+            stat(kind, operation).entitiesWritten.add(entities);
+        }
+    }
+
+    static void recordAborted(String kind, String operation) {
+        stat(kind, operation).aborted.increment();
+    }
+
+    static void recordRetries(String kind, String operation, long retries) {
+        if (retries > 0) {
+            stat(kind, operation).retries.add(retries);
+        }
+    }
+
+    /**
+     * Current counters, busiest first
+     * @return one map per endpoint/kind/operation combination
+     */
+    public static List<Map<String, Object>> snapshot() {
+        List<Map.Entry<StatKey, Stat>> entries = new ArrayList<>(stats.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<StatKey, Stat> e) -> e.getValue().calls.sum()).reversed());
+
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (Map.Entry<StatKey, Stat> entry : entries) {
+            StatKey key = entry.getKey();
+            Stat stat = entry.getValue();
+            long calls = stat.calls.sum();
+
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("endpoint", key.endpoint());
+            row.put("kind", key.kind());
+            row.put("operation", key.operation());
+            row.put("calls", calls);
+            row.put("errors", stat.errors.sum());
+            row.put("aborted", stat.aborted.sum());
+            row.put("retries", stat.retries.sum());
+            row.put("entitiesRead", stat.entitiesRead.sum());
+            row.put("entitiesWritten", stat.entitiesWritten.sum());
+            row.put("meanMs", calls == 0 ? 0.0 : stat.totalNanos.sum() / 1e6 / calls);
+
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < stat.buckets.length; i++) {
+                String label = i < BUCKET_BOUNDS_MS.length ? "<" + BUCKET_BOUNDS_MS[i] + "ms"
+                        : ">=" + BUCKET_BOUNDS_MS[BUCKET_BOUNDS_MS.length - 1] + "ms";
+                histogram.put(label, stat.buckets[i].sum());
+            }
+            row.put("latency", histogram);
+            out.add(row);
+        }
+        return out;
+    }
+
+    public static void reset() {
+        stats.clear();
+    }
+
+    private static Stat stat(String kind, String operation) {
+        return stats.computeIfAbsent(new StatKey(currentEndpoint(), kind, operation), k -> new Stat());
+    }
+}
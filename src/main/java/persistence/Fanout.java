@@ -0,0 +1,155 @@
+package persistence;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.cloud.datastore.DatastoreException;
+
+/**
+ * Runs the independent Datastore reads of one request concurrently, one virtual thread per task.
+ * Shaped after StructuredTaskScope.ShutdownOnFailure, which is still a preview API on Java 21:
+ * tasks are forked inside a try-with-resources block, {@link #join()} waits for all of them until the
+ * scope's deadline, and the first failure (or the deadline) cancels every task still running.
+ * Closing the scope waits for its threads, so no task outlives the block.
+ *
+ * Forked tasks are tagged with the caller's DatastoreMetrics endpoint. They must not share state that is
+ * not thread-safe, such as a BatchLoader or a transaction.
+ */
+public class Fanout implements AutoCloseable {
+    public static final Duration DEFAULT_DEADLINE = Duration.ofSeconds(20);
+    // Tasks of one scope running at once, so fanning out over a whole page does not flood Datastore
+    public static final int DEFAULT_MAX_CONCURRENCY = 16;
+
+    /**
+     * Result of a forked task, readable once {@link Fanout#join()} has returned
+     */
+    public interface Task<T> {
+        T get();
+    }
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<Future<?>> futures = new CopyOnWriteArrayList<>();
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private final Semaphore permits;
+    private final long deadlineNanos;
+    private final String endpoint = DatastoreMetrics.currentEndpoint();
+    private boolean joined;
+
+    private Fanout(Duration deadline, int maxConcurrency) {
+        this.deadlineNanos = System.nanoTime() + deadline.toNanos();
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    public static Fanout open() {
+        return new Fanout(DEFAULT_DEADLINE, DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * @param deadline time allowed for every task of the scope, counted from now
+     * @param maxConcurrency tasks allowed to run at the same time
+     */
+    public static Fanout open(Duration deadline, int maxConcurrency) {
+        return new Fanout(deadline, maxConcurrency);
+    }
+
+    /**
+     * Starts a task on its own virtual thread
+     * @param task the work, typically one query and the processing of its results
+     * @return handle to read the result after {@link #join()}
+     */
+    public <T> Task<T> fork(Callable<T> task) {
+        Future<T> future = executor.submit(() -> {
+            DatastoreMetrics.setEndpoint(endpoint);
+            permits.acquire();
+            try {
+                return task.call();
+            } catch (Exception e) {
+                if (failure.compareAndSet(null, e)) {
+                    cancelAll();
+                }
+                throw e;
+            } finally {
+                permits.release();
+            }
+        });
+        futures.add(future);
+        return () -> result(future);
+    }
+
+    /**
+     * Waits for every forked task
+     * @throws DatastoreException DEADLINE_EXCEEDED if the deadline passed first, or the first task failure
+     */
+    public void join() {
+        try {
+            for (Future<?> future : futures) {
+                try {
+                    future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (ExecutionException | CancellationException e) {
+                    // the first failure is rethrown below, once every task has stopped
+                }
+            }
+        } catch (TimeoutException e) {
+            cancelAll();
+            throw new DatastoreException(4, "Deadline exceeded waiting for concurrent queries", "DEADLINE_EXCEEDED");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelAll();
+            throw new DatastoreException(1, "Interrupted waiting for concurrent queries", "CANCELLED");
+        }
+        joined = true;
+        Exception first = failure.get();
+        if (first != null) {
+            throw unchecked(first);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!joined) {
+            cancelAll();
+        }
+        executor.close();
+    }
+
+    private void cancelAll() {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private <T> T result(Future<T> future) {
+        if (!joined) {
+            throw new IllegalStateException("Fanout results are only available after join()");
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw unchecked(e.getCause());
+        } catch (InterruptedException | CancellationException e) {
+            throw new IllegalStateException("Task did not complete", e);
+        }
+    }
+
+    private static RuntimeException unchecked(Throwable t) {
+        if (t instanceof RuntimeException e) {
+            return e;
+        }
+        if (t instanceof Error e) {
+            throw e;
+        }
+        return new CompletionException(t);
+    }
+}
@@ -0,0 +1,794 @@
+package persistence;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.datastore.Blob;
+import com.google.cloud.datastore.Cursor;
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.DatastoreException;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.EntityQuery;
+import com.google.cloud.datastore.FullEntity;
+import com.google.cloud.datastore.IncompleteKey;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyFactory;
+import com.google.cloud.datastore.KeyQuery;
+import com.google.cloud.datastore.KeyValue;
+import com.google.cloud.datastore.LatLng;
+import com.google.cloud.datastore.ListValue;
+import com.google.cloud.datastore.PathElement;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.StructuredQuery;
+import com.google.cloud.datastore.StructuredQuery.CompositeFilter;
+import com.google.cloud.datastore.StructuredQuery.Filter;
+import com.google.cloud.datastore.StructuredQuery.OrderBy;
+import com.google.cloud.datastore.Transaction;
+import com.google.cloud.datastore.Value;
+import com.google.datastore.v1.QueryResultBatch;
+import com.google.protobuf.ByteString;
+
+/**
+ * Datastore backend that keeps every entity in memory, for load and performance tests run offline.
+ * Install it with {@code DatastoreGateway.setDelegate(new InMemoryDatastore().asDatastore())}, or start the
+ * application with {@code -Ddatastore.backend=memory}.
+ *
+ * Supports what the resources use: kinds, named and numeric keys (with id allocation), ancestors, property
+ * filters (equality, inequalities, IN/NOT_IN, matched per element on list properties), AND/OR filters,
+ * ordering, offset, limit, cursors and optimistic transactions that abort when another commit touched the
+ * same keys. Unindexed properties are invisible to queries, as in Datastore. Composite indexes and the
+ * per-commit mutation limit are not enforced, and cursors are plain positions, so they shift if entities
+ * are inserted before them between pages.
+ *
+ * Every RPC can be delayed by a fixed latency plus random jitter to approximate the real service.
+ */
+public class InMemoryDatastore {
+    public static final String PROJECT_ID = "in-memory";
+
+    private static final String KEY_PROPERTY = "__key__";
+    private static final int MAX_TRANSACTION_ATTEMPTS = 5;
+
+    private static final Comparator<Key> KEY_ORDER = InMemoryDatastore::compareKeys;
+
+    private final Map<String, ConcurrentSkipListMap<Key, Entity>> kinds = new ConcurrentHashMap<>();
+    // Commit sequence number of the last write of each key, kept after deletes for conflict detection
+    private final Map<Key, Long> versions = new ConcurrentHashMap<>();
+    private final Object commitLock = new Object();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicLong nextTransactionId = new AtomicLong(1);
+    private long commitSequence;
+
+    private volatile long latencyNanos;
+    private volatile long jitterNanos;
+
+    private final Datastore client = (Datastore) Proxy.newProxyInstance(Datastore.class.getClassLoader(),
+            new Class<?>[] { Datastore.class }, new ClientHandler());
+
+    public InMemoryDatastore() {
+    }
+
+    /**
+     * @param latency delay added to every RPC
+     * @param jitter upper bound of a random delay added on top of it
+     */
+    public InMemoryDatastore(Duration latency, Duration jitter) {
+        setLatency(latency, jitter);
+    }
+
+    /**
+     * @return Datastore client backed by this store
+     */
+    public Datastore asDatastore() {
+        return client;
+    }
+
+    public void setLatency(Duration latency, Duration jitter) {
+        this.latencyNanos = latency.toNanos();
+        this.jitterNanos = jitter.toNanos();
+    }
+
+    /**
+     * @return number of entities of a kind
+     */
+    public int count(String kind) {
+        Map<Key, Entity> entities = kinds.get(kind);
+        return entities == null ? 0 : entities.size();
+    }
+
+    public void clear() {
+        synchronized (commitLock) {
+            kinds.clear();
+            versions.clear();
+        }
+    }
+
+    // === Client ===
+
+    private class ClientHandler implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "newKeyFactory":
+                    return new KeyFactory(PROJECT_ID);
+                case "get":
+                    simulateLatency();
+                    return method.getReturnType() == Entity.class
+                            ? lookup((Key) args[0])
+                            : nonNull(lookupAll(keys(args[0])));
+                case "fetch":
+                    simulateLatency();
+                    return lookupAll(keys(args[0]));
+                case "run":
+                    simulateLatency();
+                    return run((Query<?>) args[0], null);
+                case "put":
+                case "add":
+                case "update":
+                case "delete": {
+                    simulateLatency();
+                    Map<Key, Entity> mutations = new LinkedHashMap<>();
+                    List<Entity> written = stage(method.getName(), args[0], mutations, new ArrayList<>());
+                    commit(mutations, null, 0);
+                    return writeResult(method, written);
+                }
+                case "allocateId":
+                    simulateLatency();
+                    if (args[0] instanceof IncompleteKey[] incompleteKeys) {
+                        return Arrays.stream(incompleteKeys).map(InMemoryDatastore.this::allocate).toList();
+                    }
+                    return allocate((IncompleteKey) args[0]);
+                case "newTransaction":
+                    simulateLatency();
+                    return new MemoryTransaction().proxy;
+                case "runInTransaction":
+                    return runInTransaction((Datastore.TransactionCallable<?>) args[0]);
+                case "close":
+                    return null;
+                case "toString":
+                    return "InMemoryDatastore";
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException("InMemoryDatastore does not support " + method.getName());
+            }
+        }
+    }
+
+    private Object runInTransaction(Datastore.TransactionCallable<?> callable) {
+        for (int attempt = 1;; attempt++) {
+            MemoryTransaction txn = new MemoryTransaction();
+            try {
+                Object result = callable.run(txn.proxy);
+                txn.commit();
+                return result;
+            } catch (DatastoreException e) {
+                if (!isAborted(e) || attempt >= MAX_TRANSACTION_ATTEMPTS) {
+                    throw e;
+                }
+            } catch (Exception e) {
+                throw new DatastoreException(13, e.getMessage(), "INTERNAL", e);
+            } finally {
+                txn.active = false;
+            }
+        }
+    }
+
+    // === Transactions ===
+
+    private class MemoryTransaction implements InvocationHandler {
+        final Transaction proxy = (Transaction) Proxy.newProxyInstance(Transaction.class.getClassLoader(),
+                new Class<?>[] { Transaction.class }, this);
+        final long startSequence;
+        final ByteString id = ByteString.copyFromUtf8(Long.toString(nextTransactionId.getAndIncrement()));
+        final Map<Key, Entity> mutations = new LinkedHashMap<>();
+        final Set<Key> reads = new HashSet<>();
+        final List<Key> generatedKeys = new ArrayList<>();
+        volatile boolean active = true;
+
+        MemoryTransaction() {
+            synchronized (commitLock) {
+                startSequence = commitSequence;
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "isActive":
+                    return active;
+                case "getTransactionId":
+                    return id;
+                case "getDatastore":
+                    return client;
+                case "toString":
+                    return "InMemoryTransaction[" + id.toStringUtf8() + "]";
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    break;
+            }
+            ensureActive();
+            switch (method.getName()) {
+                case "get": {
+                    simulateLatency();
+                    List<Key> keys = keys(args[0]);
+                    reads.addAll(keys);
+                    List<Entity> found = lookupAll(keys);
+                    return method.getReturnType() == Entity.class
+                            ? found.get(0)
+                            : nonNull(found);
+                }
+                case "fetch": {
+                    simulateLatency();
+                    List<Key> keys = keys(args[0]);
+                    reads.addAll(keys);
+                    return lookupAll(keys);
+                }
+                case "run":
+                    simulateLatency();
+                    return InMemoryDatastore.this.run((Query<?>) args[0], reads);
+                case "put":
+                case "add":
+                case "update":
+                case "delete":
+                    return writeResult(method, stage(method.getName(), args[0], mutations, generatedKeys));
+                case "putWithDeferredIdAllocation":
+                case "addWithDeferredIdAllocation":
+                    stage(method.getName().startsWith("put") ? "put" : "add", args[0], mutations, generatedKeys);
+                    return null;
+                case "commit":
+                    return commit();
+                case "rollback":
+                    simulateLatency();
+                    active = false;
+                    return null;
+                default:
+                    throw new UnsupportedOperationException("InMemoryDatastore transactions do not support "
+                            + method.getName());
+            }
+        }
+
+        Transaction.Response commit() {
+            ensureActive();
+            simulateLatency();
+            try {
+                InMemoryDatastore.this.commit(mutations, reads, startSequence);
+            } finally {
+                active = false;
+            }
+            List<Key> keys = List.copyOf(generatedKeys);
+            return (Transaction.Response) Proxy.newProxyInstance(Transaction.Response.class.getClassLoader(),
+                    new Class<?>[] { Transaction.Response.class }, (p, m, a) -> switch (m.getName()) {
+                        case "getGeneratedKeys" -> keys;
+                        case "hashCode" -> System.identityHashCode(p);
+                        case "equals" -> p == a[0];
+                        default -> "InMemoryTransaction.Response" + keys;
+                    });
+        }
+
+        private void ensureActive() {
+            if (!active) {
+                throw new DatastoreException(9, "transaction no longer active", "FAILED_PRECONDITION");
+            }
+        }
+    }
+
+    /**
+     * Applies mutations atomically
+     * @param reads keys read by the committing transaction, null for non-transactional writes
+     * @param startSequence commit sequence number when the transaction began
+     */
+    private void commit(Map<Key, Entity> mutations, Set<Key> reads, long startSequence) {
+        synchronized (commitLock) {
+            if (reads != null) {
+                for (Key key : reads) {
+                    checkUnchanged(key, startSequence);
+                }
+                for (Key key : mutations.keySet()) {
+                    checkUnchanged(key, startSequence);
+                }
+            }
+            long sequence = ++commitSequence;
+            mutations.forEach((key, entity) -> {
+                ConcurrentSkipListMap<Key, Entity> entities = kinds.computeIfAbsent(key.getKind(),
+                        k -> new ConcurrentSkipListMap<>(KEY_ORDER));
+                if (entity == null) {
+                    entities.remove(key);
+                } else {
+                    entities.put(key, entity);
+                }
+                versions.put(key, sequence);
+            });
+        }
+    }
+
+    private void checkUnchanged(Key key, long startSequence) {
+        Long version = versions.get(key);
+        if (version != null && version > startSequence) {
+            throw new DatastoreException(10, "too much contention on these datastore entities. please try again.",
+                    "ABORTED");
+        }
+    }
+
+    /**
+     * Turns put/add/update/delete arguments into mutations. add and update are checked against the
+     * committed state and the mutations already staged, as Datastore does at commit.
+     */
+    private List<Entity> stage(String operation, Object arg, Map<Key, Entity> mutations, List<Key> generatedKeys) {
+        List<Entity> written = new ArrayList<>();
+        if (operation.equals("delete")) {
+            keys(arg).forEach(key -> mutations.put(key, null));
+            return written;
+        }
+        for (Object item : items(arg)) {
+            FullEntity<?> full = (FullEntity<?>) item;
+            Entity entity;
+            if (full.getKey() instanceof Key complete) {
+                entity = full instanceof Entity e ? e : Entity.newBuilder(complete, full).build();
+            } else {
+                Key allocated = allocate(full.getKey());
+                generatedKeys.add(allocated);
+                entity = Entity.newBuilder(allocated, full).build();
+            }
+            Key key = entity.getKey();
+            boolean exists = mutations.containsKey(key) ? mutations.get(key) != null : lookup(key) != null;
+            if (operation.equals("add") && exists) {
+                throw new DatastoreException(6, "entity already exists", "ALREADY_EXISTS");
+            }
+            if (operation.equals("update") && !exists) {
+                throw new DatastoreException(5, "no entity to update", "NOT_FOUND");
+            }
+            mutations.put(key, entity);
+            written.add(entity);
+        }
+        return written;
+    }
+
+    private static Object writeResult(Method method, List<Entity> written) {
+        Class<?> type = method.getReturnType();
+        if (type == Entity.class) {
+            return written.get(0);
+        }
+        return type == List.class ? written : null;
+    }
+
+    private Key allocate(IncompleteKey incompleteKey) {
+        return Key.newBuilder(incompleteKey, nextId.getAndIncrement()).build();
+    }
+
+    // === Lookups ===
+
+    private Entity lookup(Key key) {
+        Map<Key, Entity> entities = kinds.get(key.getKind());
+        return entities == null ? null : entities.get(key);
+    }
+
+    private List<Entity> lookupAll(List<Key> keys) {
+        List<Entity> found = new ArrayList<>(keys.size());
+        for (Key key : keys) {
+            found.add(lookup(key));
+        }
+        return found;
+    }
+
+    private static Iterator<Entity> nonNull(List<Entity> entities) {
+        return entities.stream().filter(e -> e != null).iterator();
+    }
+
+    private static List<Key> keys(Object arg) {
+        List<Key> keys = new ArrayList<>();
+        for (Object item : items(arg)) {
+            keys.add((Key) item);
+        }
+        return keys;
+    }
+
+    private static Iterable<?> items(Object arg) {
+        if (arg instanceof Object[] array) {
+            return Arrays.asList(array);
+        }
+        if (arg instanceof Iterable<?> iterable) {
+            return iterable;
+        }
+        return List.of(arg);
+    }
+
+    // === Queries ===
+
+    /**
+     * @param reads read set of the calling transaction, null outside transactions
+     */
+    private Object run(Query<?> query, Set<Key> reads) {
+        if (!(query instanceof EntityQuery) && !(query instanceof KeyQuery)) {
+            throw new UnsupportedOperationException("InMemoryDatastore only runs entity and key queries");
+        }
+        StructuredQuery<?> structured = (StructuredQuery<?>) query;
+        Predicate<Entity> filter = structured.getFilter() == null ? e -> true : compile(structured.getFilter());
+
+        List<Entity> matches = new ArrayList<>();
+        if (structured.getKind() != null) {
+            Map<Key, Entity> entities = kinds.get(structured.getKind());
+            if (entities != null) {
+                entities.values().stream().filter(filter).forEach(matches::add);
+            }
+        } else {
+            kinds.values().forEach(entities -> entities.values().stream().filter(filter).forEach(matches::add));
+            matches.sort(Comparator.comparing(Entity::getKey, KEY_ORDER));
+        }
+
+        List<OrderBy> orderBy = structured.getOrderBy();
+        if (!orderBy.isEmpty()) {
+            // Entities without an indexed value for a sort property are not part of the index
+            matches.removeIf(e -> orderBy.stream().anyMatch(o -> indexedValues(e, o.getProperty()).isEmpty()));
+            matches.sort(ordering(orderBy));
+        }
+
+        int start = structured.getStartCursor() == null ? 0 : position(structured.getStartCursor());
+        int end = structured.getEndCursor() == null ? matches.size()
+                : Math.min(matches.size(), position(structured.getEndCursor()));
+        int skipped = Math.max(0, Math.min(structured.getOffset(), end - start));
+        start = Math.min(end, start + skipped);
+        if (structured.getLimit() != null) {
+            end = Math.min(end, start + structured.getLimit());
+        }
+
+        List<Entity> page = start < end ? matches.subList(start, end) : List.of();
+        if (reads != null) {
+            page.forEach(e -> reads.add(e.getKey()));
+        }
+        boolean keysOnly = query instanceof KeyQuery;
+        List<Object> results = new ArrayList<>(page.size());
+        page.forEach(e -> results.add(keysOnly ? e.getKey() : e));
+        boolean more = end < matches.size();
+        return new MemoryResults(keysOnly ? Key.class : Entity.class, results, start, skipped, more).proxy;
+    }
+
+    private static class MemoryResults implements InvocationHandler {
+        final Object proxy = Proxy.newProxyInstance(com.google.cloud.datastore.QueryResults.class.getClassLoader(),
+                new Class<?>[] { com.google.cloud.datastore.QueryResults.class }, this);
+        final Class<?> resultClass;
+        final List<Object> results;
+        final int firstPosition;
+        final int skipped;
+        final boolean more;
+        int next;
+
+        MemoryResults(Class<?> resultClass, List<Object> results, int firstPosition, int skipped, boolean more) {
+            this.resultClass = resultClass;
+            this.results = results;
+            this.firstPosition = firstPosition;
+            this.skipped = skipped;
+            this.more = more;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "hasNext":
+                    return next < results.size();
+                case "next":
+                    if (next >= results.size()) {
+                        throw new NoSuchElementException();
+                    }
+                    return results.get(next++);
+                case "forEachRemaining":
+                    while (next < results.size()) {
+                        ((Consumer<Object>) args[0]).accept(results.get(next++));
+                    }
+                    return null;
+                case "getResultClass":
+                    return resultClass;
+                case "getCursorAfter":
+                    return cursorAt(firstPosition + next);
+                case "getSkippedResults":
+                    return skipped;
+                case "getMoreResults":
+                    return more ? QueryResultBatch.MoreResultsType.MORE_RESULTS_AFTER_LIMIT
+                            : QueryResultBatch.MoreResultsType.NO_MORE_RESULTS;
+                case "toString":
+                    return "InMemoryQueryResults" + results;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException("InMemoryDatastore query results do not support "
+                            + method.getName());
+            }
+        }
+    }
+
+    private static Cursor cursorAt(int position) {
+        return Cursor.copyFrom(ByteBuffer.allocate(Integer.BYTES).putInt(position).array());
+    }
+
+    private static int position(Cursor cursor) {
+        byte[] bytes = Base64.getUrlDecoder().decode(cursor.toUrlSafe());
+        if (bytes.length != Integer.BYTES) {
+            throw new DatastoreException(3, "invalid query cursor", "INVALID_ARGUMENT");
+        }
+        return Math.max(0, ByteBuffer.wrap(bytes).getInt());
+    }
+
+    // === Filters ===
+
+    private static Predicate<Entity> compile(Filter filter) {
+        if (filter instanceof CompositeFilter) {
+            List<Predicate<Entity>> parts = new ArrayList<>();
+            for (Object part : (Iterable<?>) attribute(filter, "filters")) {
+                parts.add(compile((Filter) part));
+            }
+            boolean or = "OR".equals(String.valueOf(attribute(filter, "operator")));
+            return e -> or ? parts.stream().anyMatch(p -> p.test(e)) : parts.stream().allMatch(p -> p.test(e));
+        }
+        String property = (String) attribute(filter, "property");
+        String operator = String.valueOf(attribute(filter, "operator"));
+        Value<?> value = (Value<?>) attribute(filter, "value");
+
+        if (operator.equals("HAS_ANCESTOR")) {
+            Key ancestor = (Key) value.get();
+            return e -> {
+                for (Key key = e.getKey(); key != null; key = key.getParent()) {
+                    if (key.equals(ancestor)) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        }
+        if (operator.equals("IN") || operator.equals("NOT_IN")) {
+            List<? extends Value<?>> candidates = ((ListValue) value).get();
+            boolean in = operator.equals("IN");
+            return e -> {
+                List<Value<?>> values = indexedValues(e, property);
+                if (values.isEmpty()) {
+                    return false;
+                }
+                boolean found = values.stream().anyMatch(v -> candidates.stream().anyMatch(c -> compareValues(v, c) == 0));
+                return in == found;
+            };
+        }
+        Predicate<Integer> test = switch (operator) {
+            case "EQUAL" -> c -> c == 0;
+            case "NOT_EQUAL" -> c -> c != 0;
+            case "LESS_THAN" -> c -> c < 0;
+            case "LESS_THAN_OR_EQUAL" -> c -> c <= 0;
+            case "GREATER_THAN" -> c -> c > 0;
+            case "GREATER_THAN_OR_EQUAL" -> c -> c >= 0;
+            default -> throw new UnsupportedOperationException("InMemoryDatastore does not support operator " + operator);
+        };
+        return e -> {
+            for (Value<?> v : indexedValues(e, property)) {
+                // Inequalities never match across value types
+                if ((operator.equals("EQUAL") || typeRank(v) == typeRank(value)) && test.test(compareValues(v, value))) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    // Filter internals only have public getters in newer client versions, so they are read reflectively
+    private static Object attribute(Object target, String name) {
+        for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                return field.get(target);
+            } catch (NoSuchFieldException e) {
+                // declared on a superclass
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot read " + name + " of " + target, e);
+            }
+        }
+        throw new IllegalStateException("No " + name + " in " + target.getClass().getName());
+    }
+
+    /**
+     * Index entries of a property: one per element for lists, none for missing or unindexed values
+     */
+    private static List<Value<?>> indexedValues(Entity entity, String property) {
+        if (property.equals(KEY_PROPERTY)) {
+            return List.of(KeyValue.of(entity.getKey()));
+        }
+        if (!entity.contains(property)) {
+            return List.of();
+        }
+        Value<?> value = entity.getValue(property);
+        if (value.excludeFromIndexes()) {
+            return List.of();
+        }
+        if (value instanceof ListValue list) {
+            List<Value<?>> values = new ArrayList<>();
+            for (Value<?> element : list.get()) {
+                if (!element.excludeFromIndexes()) {
+                    values.add(element);
+                }
+            }
+            return values;
+        }
+        return List.of(value);
+    }
+
+    private static Comparator<Entity> ordering(List<OrderBy> orderBy) {
+        Comparator<Entity> comparator = null;
+        for (OrderBy order : orderBy) {
+            boolean descending = "DESCENDING".equals(String.valueOf(order.getDirection()));
+            // List properties sort by their smallest element ascending and their largest descending
+            Comparator<Entity> next = (a, b) -> {
+                Value<?> va = sortValue(a, order.getProperty(), descending);
+                Value<?> vb = sortValue(b, order.getProperty(), descending);
+                int c = compareValues(va, vb);
+                return descending ? -c : c;
+            };
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        return comparator.thenComparing(Entity::getKey, KEY_ORDER);
+    }
+
+    private static Value<?> sortValue(Entity entity, String property, boolean descending) {
+        Value<?> selected = null;
+        for (Value<?> value : indexedValues(entity, property)) {
+            if (selected == null) {
+                selected = value;
+            } else {
+                int c = compareValues(value, selected);
+                if (descending ? c > 0 : c < 0) {
+                    selected = value;
+                }
+            }
+        }
+        return selected;
+    }
+
+    // === Value and key ordering (Datastore's cross-type order) ===
+
+    private static int typeRank(Value<?> value) {
+        Object v = value.get();
+        if (v == null) {
+            return 0;
+        }
+        if (v instanceof Long || v instanceof Timestamp) {
+            return 1;
+        }
+        if (v instanceof Boolean) {
+            return 2;
+        }
+        if (v instanceof Blob) {
+            return 3;
+        }
+        if (v instanceof String) {
+            return 4;
+        }
+        if (v instanceof Double) {
+            return 5;
+        }
+        if (v instanceof LatLng) {
+            return 6;
+        }
+        if (v instanceof Key) {
+            return 7;
+        }
+        return 8;
+    }
+
+    private static int compareValues(Value<?> a, Value<?> b) {
+        int rank = Integer.compare(typeRank(a), typeRank(b));
+        if (rank != 0) {
+            return rank;
+        }
+        Object va = a.get();
+        Object vb = b.get();
+        if (va == null) {
+            return 0;
+        }
+        if (va instanceof Long || va instanceof Timestamp) {
+            return Long.compare(micros(va), micros(vb));
+        }
+        if (va instanceof Boolean x) {
+            return Boolean.compare(x, (Boolean) vb);
+        }
+        if (va instanceof Blob x) {
+            return Arrays.compareUnsigned(x.toByteArray(), ((Blob) vb).toByteArray());
+        }
+        if (va instanceof String x) {
+            return x.compareTo((String) vb);
+        }
+        if (va instanceof Double x) {
+            return Double.compare(x, (Double) vb);
+        }
+        if (va instanceof LatLng x) {
+            LatLng y = (LatLng) vb;
+            int c = Double.compare(x.getLatitude(), y.getLatitude());
+            return c != 0 ? c : Double.compare(x.getLongitude(), y.getLongitude());
+        }
+        if (va instanceof Key x) {
+            return compareKeys(x, (Key) vb);
+        }
+        return va.equals(vb) ? 0 : Integer.compare(va.hashCode(), vb.hashCode());
+    }
+
+    private static long micros(Object value) {
+        if (value instanceof Timestamp t) {
+            return t.getSeconds() * 1_000_000 + t.getNanos() / 1_000;
+        }
+        return (Long) value;
+    }
+
+    private static int compareKeys(Key a, Key b) {
+        List<PathElement> pa = path(a);
+        List<PathElement> pb = path(b);
+        for (int i = 0; i < Math.min(pa.size(), pb.size()); i++) {
+            PathElement x = pa.get(i);
+            PathElement y = pb.get(i);
+            int c = x.getKind().compareTo(y.getKind());
+            if (c != 0) {
+                return c;
+            }
+            // Numeric ids sort before names
+            if (x.hasId() != y.hasId()) {
+                return x.hasId() ? -1 : 1;
+            }
+            c = x.hasId() ? Long.compare(x.getId(), y.getId()) : x.getName().compareTo(y.getName());
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(pa.size(), pb.size());
+    }
+
+    private static List<PathElement> path(Key key) {
+        List<PathElement> path = new ArrayList<>(key.getAncestors());
+        path.add(key.hasId() ? PathElement.of(key.getKind(), key.getId()) : PathElement.of(key.getKind(), key.getName()));
+        return path;
+    }
+
+    // === Latency injection ===
+
+    private void simulateLatency() {
+        long nanos = latencyNanos;
+        if (jitterNanos > 0) {
+            nanos += ThreadLocalRandom.current().nextLong(jitterNanos);
+        }
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean isAborted(DatastoreException e) {
+        return e.getCode() == 10 || "ABORTED".equals(e.getReason());
+    }
+}
@@ -0,0 +1,222 @@
+package persistence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.cloud.datastore.Cursor;
+import com.google.cloud.datastore.QueryResults;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * pageSize/cursor query parameters of a list endpoint.
+ * Endpoints keep their original unpaged response when neither parameter is sent; otherwise they answer with
+ * the envelope built by {@link #envelope(Object, String)}: items, nextCursor (null on the last page), pageSize, hasMore.
+ * Cursors are opaque to clients: a Datastore cursor in URL-safe form, or for feeds merged from several kinds,
+ * one cursor per source packed by {@link #encodeComposite(Map)}.
+ */
+public record PageRequest(boolean paged, int pageSize, String cursorToken) {
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+    // Marks a source of a composite cursor that has no more results
+    private static final String EXHAUSTED = "-";
+
+    private static final Gson gson = new Gson();
+
+    /**
+     * @param pageSize requested page size, clamped to [1, MAX_PAGE_SIZE]
+     * @param cursor cursor returned by the previous page, null for the first page
+     */
+    public static PageRequest of(Integer pageSize, String cursor) {
+        boolean paged = pageSize != null || (cursor != null && !cursor.isEmpty());
+        int size = pageSize == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(MAX_PAGE_SIZE, pageSize));
+        return new PageRequest(paged, size, cursor == null || cursor.isEmpty() ? null : cursor);
+    }
+
+    /**
+     * Same as {@link #of(Integer, String)} for feeds paged with a composite cursor
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static PageRequest ofComposite(Integer pageSize, String cursor) {
+        PageRequest page = of(pageSize, cursor);
+        page.sources();
+        return page;
+    }
+
+    /**
+     * @return query limit, null (no limit) for unpaged requests. One more than the page size: the extra result is
+     * left unread by {@link #hasNext(QueryResults, int)} and only tells {@link #nextCursor(QueryResults, int)}
+     * whether another page exists.
+     */
+    public Integer limit() {
+        return paged ? pageSize + 1 : null;
+    }
+
+    /**
+     * Whether another result of this page is to be read: false once the page is full, even if the query returned
+     * the extra result
+     * @param returned number of results read so far
+     */
+    public boolean hasNext(QueryResults<?> results, int returned) {
+        return (!paged || returned < pageSize) && results.hasNext();
+    }
+
+    /**
+     * @return start cursor of a single-kind query, null for the first page
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public Cursor startCursor() {
+        return cursorToken == null ? null : decode(cursorToken);
+    }
+
+    /**
+     * Cursor for the page after this one. Call after the page has been iterated with
+     * {@link #hasNext(QueryResults, int)}.
+     * @param results query results of this page
+     * @param returned number of results read from them
+     * @return opaque cursor, null when this was the last page
+     */
+    public String nextCursor(QueryResults<?> results, int returned) {
+        if (!paged || returned < pageSize) {
+            return null;
+        }
+        return cursorIfMore(results);
+    }
+
+    public Map<String, Object> envelope(Object items, String nextCursor) {
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("items", items);
+        page.put("nextCursor", nextCursor);
+        page.put("pageSize", pageSize);
+        page.put("hasMore", nextCursor != null);
+        return page;
+    }
+
+    // === Composite cursors (feeds merged from several kinds) ===
+
+    /**
+     * Start cursor of one source of a composite cursor
+     * @return the source's cursor, null if it starts from the beginning
+     */
+    public Cursor startCursor(String source) {
+        String token = sources().get(source);
+        return token == null || EXHAUSTED.equals(token) ? null : decode(token);
+    }
+
+    /**
+     * Whether a source already returned its last result on a previous page
+     */
+    public boolean isExhausted(String source) {
+        return EXHAUSTED.equals(sources().get(source));
+    }
+
+    /**
+     * Query limit of one source of a composite cursor, one more than its share of the page for the same reason
+     * as {@link #limit()}
+     * @param limit the source's share of the page
+     */
+    public static int sourceLimit(int limit) {
+        return limit + 1;
+    }
+
+    /**
+     * Whether another result of a source is to be read, see {@link #hasNext(QueryResults, int)}
+     * @param results query results of the source, null if the source was not queried
+     * @param returned results read from the source so far
+     * @param limit the source's share of the page
+     */
+    public static boolean sourceHasNext(QueryResults<?> results, int returned, int limit) {
+        return results != null && returned < limit && results.hasNext();
+    }
+
+    /**
+     * Position of one source after this page, to be packed with {@link #encodeComposite(Map)}
+     * @param results query results of the source, null if the source was not queried
+     * @param returned results read from the source
+     * @param limit the source's share of the page
+     */
+    public static String sourceCursor(QueryResults<?> results, int returned, int limit) {
+        if (results == null || returned < limit) {
+            return EXHAUSTED;
+        }
+        String cursor = cursorIfMore(results);
+        return cursor == null ? EXHAUSTED : cursor;
+    }
+
+    /**
+     * Position of a source left out of this page, to be carried unchanged into the next composite cursor
+     * @return the source's position as received, null if it starts from the beginning
+     */
+    public String sourcePosition(String source) {
+        return sources().get(source);
+    }
+
+    /**
+     * Start offset of one source of a composite cursor, for sources ranked in memory rather than by a query
+     * @return offset of the source's next result, 0 if it starts from the beginning
+     * @throws IllegalArgumentException if the source's position is not an offset
+     */
+    public int startOffset(String source) {
+        String token = sources().get(source);
+        if (token == null || EXHAUSTED.equals(token)) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(token));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    /**
+     * Position of a source ranked in memory after this page, to be packed with {@link #encodeComposite(Map)}
+     * @param next offset of the first result not returned yet
+     * @param total results the source has
+     */
+    public static String sourceOffset(int next, int total) {
+        return next >= total ? EXHAUSTED : String.valueOf(next);
+    }
+
+    /**
+     * @return opaque composite cursor, null when every source is exhausted
+     */
+    public static String encodeComposite(Map<String, String> sources) {
+        if (sources.values().stream().allMatch(EXHAUSTED::equals)) {
+            return null;
+        }
+        return Base64.getUrlEncoder().encodeToString(gson.toJson(sources).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Map<String, String> sources() {
+        if (cursorToken == null) {
+            return Map.of();
+        }
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(cursorToken), StandardCharsets.UTF_8);
+            Map<String, String> sources = gson.fromJson(json, new TypeToken<Map<String, String>>() {
+            }.getType());
+            return sources == null ? Map.of() : sources;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    /**
+     * Cursor after the last result read, or null if the query returned nothing past it
+     */
+    private static String cursorIfMore(QueryResults<?> results) {
+        // Taken before looking at the extra result, which moves the cursor past it
+        Cursor after = results.getCursorAfter();
+        return results.hasNext() ? after.toUrlSafe() : null;
+    }
+
+    private static Cursor decode(String token) {
+        try {
+            return Cursor.fromUrlSafe(token);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package persistence;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.datastore.Blob;
+import com.google.cloud.datastore.BlobValue;
+import com.google.cloud.datastore.DoubleValue;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.LatLng;
+import com.google.cloud.datastore.LatLngValue;
+import com.google.cloud.datastore.ListValue;
+import com.google.cloud.datastore.StringValue;
+import com.google.cloud.datastore.Value;
+
+import constants.WorkSheetConstants;
+import geo.Geodesy;
+import geo.PackedGeometry;
+
+/**
+ * Geometry of a RuralProperties entity and the properties derived from it: the CRS the geometry was imported in,
+ * the geodesic area in hectares, the WGS84 bounding box and centroid, and a WGS84 copy of the geometry.
+ * They are written once at worksheet import, so readers never parse or reproject the source geometry.
+ * Parcels imported before these properties existed are measured by the backfill; until then
+ * {@link #areaHa(Entity)} still computes their area from the geometry.
+ *
+ * Both geometries are stored as {@link PackedGeometry} blobs. Parcels written before that hold GeoJSON strings,
+ * which every reader here still accepts and the backfill repacks. Outside this class geometries are only turned
+ * into GeoJSON to be returned by the API.
+ * None of the properties is indexed.
+ */
+public final class ParcelGeometry {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private ParcelGeometry() {
+    }
+
+    /**
+     * Sets the derived properties on a parcel being written
+     * @param crs canonical CRS of the source geometry, see {@link Geodesy#canonicalName(String)}
+     */
+    public static Entity.Builder set(Entity.Builder parcel, Geodesy.Measurement measurement, String crs) {
+        double[] bbox = measurement.bbox();
+        ListValue.Builder bboxValue = ListValue.newBuilder();
+        for (double coordinate : bbox) {
+            bboxValue.addValue(DoubleValue.newBuilder(coordinate).setExcludeFromIndexes(true).build());
+        }
+        return parcel
+                .set(WorkSheetConstants.WS_P_CRS, StringValue.newBuilder(crs).setExcludeFromIndexes(true).build())
+                .set(WorkSheetConstants.WS_P_AREA_HA,
+                        DoubleValue.newBuilder(measurement.areaHa()).setExcludeFromIndexes(true).build())
+                .set(WorkSheetConstants.WS_P_BBOX, bboxValue.build())
+                .set(WorkSheetConstants.WS_P_CENTROID,
+                        LatLngValue.newBuilder(LatLng.of(measurement.centroidLat(), measurement.centroidLon()))
+                                .setExcludeFromIndexes(true).build())
+                .set(WorkSheetConstants.WS_P_GEOMETRY_WGS84, value(measurement.wgs84()));
+    }
+
+    /**
+     * @return the geometry as an unindexed blob property value
+     */
+    public static BlobValue value(PackedGeometry geometry) {
+        return BlobValue.newBuilder(Blob.copyFrom(geometry.bytes())).setExcludeFromIndexes(true).build();
+    }
+
+    /**
+     * @return whether both geometries of a parcel are stored packed
+     */
+    public static boolean isPacked(Entity parcel) {
+        return parcel.getValue(WorkSheetConstants.WS_P_GEOMETRY) instanceof BlobValue
+                && (!parcel.contains(WorkSheetConstants.WS_P_GEOMETRY_WGS84)
+                        || parcel.getValue(WorkSheetConstants.WS_P_GEOMETRY_WGS84) instanceof BlobValue);
+    }
+
+    /**
+     * Replaces GeoJSON string geometries of a parcel being rewritten with their packed form
+     * @throws IllegalArgumentException if a stored geometry cannot be parsed
+     */
+    public static Entity.Builder pack(Entity.Builder builder, Entity parcel) {
+        builder.set(WorkSheetConstants.WS_P_GEOMETRY, value(geometry(parcel)));
+        PackedGeometry wgs84 = wgs84(parcel);
+        if (wgs84 != null) {
+            builder.set(WorkSheetConstants.WS_P_GEOMETRY_WGS84, value(wgs84));
+        }
+        return builder;
+    }
+
+    public static boolean isMeasured(Entity parcel) {
+        return parcel.contains(WorkSheetConstants.WS_P_AREA_HA);
+    }
+
+    /**
+     * @return the stored WGS84 bounding box (min longitude, min latitude, max longitude, max latitude), null for
+     * unmeasured parcels
+     */
+    public static double[] bbox(Entity parcel) {
+        if (!parcel.contains(WorkSheetConstants.WS_P_BBOX)) {
+            return null;
+        }
+        List<? extends Value<?>> values = parcel.getList(WorkSheetConstants.WS_P_BBOX);
+        double[] bbox = new double[values.size()];
+        for (int i = 0; i < bbox.length; i++) {
+            bbox[i] = ((DoubleValue) values.get(i)).get();
+        }
+        return bbox;
+    }
+
+    /**
+     * Measures the stored geometry of a parcel, in the CRS it was imported in (PT-TM06 for older parcels)
+     * @throws IllegalArgumentException if the geometry cannot be parsed or measured
+     */
+    public static Geodesy.Measurement measure(Entity parcel) {
+        String crs = crs(parcel);
+        return Geodesy.get().measure(geometry(parcel, crs), crs);
+    }
+
+    /**
+     * @return the stored area in hectares, or the area computed from the geometry for unmeasured parcels
+     */
+    public static double areaHa(Entity parcel) {
+        if (isMeasured(parcel)) {
+            return parcel.getDouble(WorkSheetConstants.WS_P_AREA_HA);
+        }
+        String crs = crs(parcel);
+        return Geodesy.get().area(geometry(parcel, crs), crs);
+    }
+
+    public static String crs(Entity parcel) {
+        return parcel.contains(WorkSheetConstants.WS_P_CRS) ? parcel.getString(WorkSheetConstants.WS_P_CRS)
+                : Geodesy.PT_TM06;
+    }
+
+    /**
+     * @return the source geometry, in the CRS it was imported in
+     * @throws IllegalArgumentException if the stored geometry is malformed
+     */
+    public static PackedGeometry geometry(Entity parcel) {
+        return geometry(parcel, crs(parcel));
+    }
+
+    /**
+     * @return the WGS84 copy of the geometry, null for unmeasured parcels
+     * @throws IllegalArgumentException if the stored geometry is malformed
+     */
+    public static PackedGeometry wgs84(Entity parcel) {
+        if (!parcel.contains(WorkSheetConstants.WS_P_GEOMETRY_WGS84)) {
+            return null;
+        }
+        return read(parcel, WorkSheetConstants.WS_P_GEOMETRY_WGS84, PackedGeometry.DEGREE_DECIMALS);
+    }
+
+    /**
+     * @return the source geometry as GeoJSON text, for API responses
+     */
+    public static String geometryJson(Entity parcel) {
+        return json(parcel, WorkSheetConstants.WS_P_GEOMETRY);
+    }
+
+    /**
+     * @return the WGS84 copy of the geometry as GeoJSON text, for API responses; null for unmeasured parcels
+     */
+    public static String wgs84Json(Entity parcel) {
+        return parcel.contains(WorkSheetConstants.WS_P_GEOMETRY_WGS84)
+                ? json(parcel, WorkSheetConstants.WS_P_GEOMETRY_WGS84) : null;
+    }
+
+    private static PackedGeometry geometry(Entity parcel, String crs) {
+        return read(parcel, WorkSheetConstants.WS_P_GEOMETRY, Geodesy.get().coordinateDecimals(crs));
+    }
+
+    // Legacy GeoJSON strings are packed on the fly
+    private static PackedGeometry read(Entity parcel, String property, int decimals) {
+        Value<?> value = parcel.getValue(property);
+        if (value instanceof BlobValue blob) {
+            return PackedGeometry.of(blob.get().toByteArray());
+        }
+        try {
+            return PackedGeometry.encode(mapper.readTree(parcel.getString(property)), decimals);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid geometry of parcel " + parcel.getKey(), e);
+        }
+    }
+
+    // Legacy GeoJSON strings are returned as stored
+    private static String json(Entity parcel, String property) {
+        Value<?> value = parcel.getValue(property);
+        if (value instanceof BlobValue blob) {
+            return PackedGeometry.of(blob.get().toByteArray()).toGeoJson().toString();
+        }
+        return parcel.getString(property);
+    }
+}
@@ -0,0 +1,507 @@
+package persistence;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.cloud.Timestamp;
+import com.google.cloud.datastore.BooleanValue;
+import com.google.cloud.datastore.DatastoreReader;
+import com.google.cloud.datastore.DatastoreReaderWriter;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.EntityQuery;
+import com.google.cloud.datastore.FullEntity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyFactory;
+import com.google.cloud.datastore.ListValue;
+import com.google.cloud.datastore.LongValue;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.QueryResults;
+import com.google.cloud.datastore.StringValue;
+import com.google.cloud.datastore.StructuredQuery.CompositeFilter;
+import com.google.cloud.datastore.StructuredQuery.OrderBy;
+import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+import com.google.cloud.datastore.Value;
+
+import constants.AccountConstants;
+import constants.ExecutionSheetConstants;
+import constants.WorkSheetConstants;
+
+/**
+ * Token index behind /utils/search, maintained on write.
+ * Every searchable entity (users, worksheets, execution sheets, their photos and videos, social posts) has one
+ * {@value #DOCUMENT}, holding its search result and the terms it is indexed under, and one {@value #TERM} per
+ * term, named {@code type|term|entityId}. A query token is answered by a single key-range scan from
+ * {@code type|token} to the last name starting with it, so tokens match as prefixes and a search reads the matching
+ * entries only, however large the kinds are. The type leads the key, so a search never reads the entries of
+ * types the caller's role may not see.
+ *
+ * Writers call {@link #index(DatastoreReaderWriter, Entity)} and {@link #remove(DatastoreReaderWriter, Key)}
+ * with the transaction that writes the entity, so the index commits or rolls back together with it.
+ * Documents carry the time they were last written, and removed entities leave a tombstone document, so
+ * {@link #readChanges(DatastoreReader, Timestamp, Consumer)} doubles as a change feed of searchable entities.
+ */
+public class SearchIndex {
+    public static final String TERM = "SearchTerm";
+    public static final String DOCUMENT = "SearchDocument";
+
+    // Result types, in the order /utils/search returns them
+    public static final String USERS = "users";
+    public static final String WORKSHEETS = "worksheets";
+    public static final String EXECUTION_SHEETS = "executionSheets";
+    public static final String ACTIVITIES = "activities";
+    public static final String POSTS = "posts";
+    public static final List<String> TYPES = List.of(USERS, WORKSHEETS, EXECUTION_SHEETS, ACTIVITIES, POSTS);
+
+    public static final String PHOTO_KIND = "ExecutionSheetPhoto";
+    public static final String VIDEO_KIND = "ExecutionSheetVideo";
+    public static final String POST_KIND = "SocialPost";
+    public static final List<String> INDEXED_KINDS = List.of(AccountConstants.USER, WorkSheetConstants.WORKSHEET,
+            ExecutionSheetConstants.EXEC_SHEET, PHOTO_KIND, VIDEO_KIND, POST_KIND);
+
+    private static final String TERM_ENTITY_ID = "entityId";
+    private static final String TERM_WEIGHT = "weight";
+    private static final String DOCUMENT_TERMS = "terms";
+    private static final String DOCUMENT_RESULT = "result";
+    private static final String DOCUMENT_UPDATED_AT = "updatedAt";
+    private static final String DOCUMENT_DELETED = "deleted";
+
+    private static final String KEY_PROPERTY = "__key__";
+    private static final String SEPARATOR = "|";
+    // Sorts after every character a term can contain
+    private static final String RANGE_END = "\uffff";
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    // Weight of a term by the field it came from; an exact term match counts double a prefix match
+    private static final long NAME_WEIGHT = 3;
+    private static final long CONTACT_WEIGHT = 2;
+    private static final long FIELD_WEIGHT = 1;
+    private static final double EXACT_MATCH_BOOST = 2.0;
+
+    private static final int MAX_TERMS_PER_DOCUMENT = 100;
+    private static final int MAX_QUERY_TOKENS = 8;
+    private static final int MAX_TERM_LENGTH = 64;
+    private static final int MAX_VALUE_LENGTH = 1500;
+    // Entries read per query token and type; a prefix broader than this only ranks its first matches
+    private static final int MAX_TERM_MATCHES = 2000;
+
+    private static final KeyFactory termKeyFactory = DatastoreGateway.get().newKeyFactory().setKind(TERM);
+    private static final KeyFactory documentKeyFactory = DatastoreGateway.get().newKeyFactory().setKind(DOCUMENT);
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * A ranked search result
+     * @param id id of the matching entity
+     * @param score sum over the query tokens of the best weight each matched
+     */
+    public record Hit(String id, double score) {
+    }
+
+    /**
+     * An entry of the change feed
+     * @param type one of {@link #TYPES}
+     * @param id id of the entity
+     * @param result the entity's search result, null if the entity was removed
+     * @param updatedAt when the document was written
+     */
+    public record Change(String type, String id, ObjectNode result, Timestamp updatedAt) {
+    }
+
+    private record Document(String type, String id, Map<String, Long> terms, ObjectNode result) {
+    }
+
+    private SearchIndex() {
+    }
+
+    /**
+     * Types a role may search. Users are only visible to the system roles.
+     */
+    public static List<String> visibleTypes(String role) {
+        if (AccountConstants.SYSTEM_ADMIN_ROLE.equals(role) || AccountConstants.SYSTEM_BACKOFFICE_ROLE.equals(role)) {
+            return TYPES;
+        }
+        return TYPES.subList(1, TYPES.size());
+    }
+
+    /**
+     * @return whether entities of the kind are indexed
+     */
+    public static boolean isIndexed(String kind) {
+        return typeOf(kind) != null;
+    }
+
+    /**
+     * Writes (or rewrites) the index entries of an entity and deletes the ones it no longer has.
+     * Entities of kinds that are not searchable are ignored.
+     * @param writer the transaction writing the entity, or the Datastore client
+     * @param entity the entity as it is being stored
+     */
+    public static void index(DatastoreReaderWriter writer, Entity entity) {
+        Document document = document(entity);
+        if (document == null) {
+            return;
+        }
+        Key documentKey = documentKeyFactory.newKey(document.type() + SEPARATOR + document.id());
+        Set<String> stale = indexedTerms(writer.get(documentKey));
+
+        List<FullEntity<?>> entries = new ArrayList<>();
+        List<StringValue> names = new ArrayList<>();
+        for (Map.Entry<String, Long> term : document.terms().entrySet()) {
+            String name = document.type() + SEPARATOR + term.getKey() + SEPARATOR + document.id();
+            stale.remove(name);
+            names.add(unindexed(name));
+            entries.add(Entity.newBuilder(termKeyFactory.newKey(name))
+                    .set(TERM_ENTITY_ID, unindexed(document.id()))
+                    .set(TERM_WEIGHT, LongValue.newBuilder(term.getValue()).setExcludeFromIndexes(true).build())
+                    .build());
+        }
+        entries.add(Entity.newBuilder(documentKey)
+                .set(DOCUMENT_TERMS, ListValue.newBuilder().set(names).build())
+                .set(DOCUMENT_RESULT, unindexed(document.result().toString()))
+                .set(DOCUMENT_UPDATED_AT, Timestamp.now())
+                .set(DOCUMENT_DELETED, BooleanValue.newBuilder(false).setExcludeFromIndexes(true).build())
+                .build());
+
+        if (!stale.isEmpty()) {
+            writer.delete(stale.stream().map(termKeyFactory::newKey).toArray(Key[]::new));
+        }
+        writer.put(entries.toArray(new FullEntity<?>[0]));
+    }
+
+    /**
+     * Deletes the index entries of a deleted entity, leaving a tombstone document for the change feed
+     * @param writer the transaction deleting the entity, or the Datastore client
+     * @param key key of the deleted entity
+     */
+    public static void remove(DatastoreReaderWriter writer, Key key) {
+        String type = typeOf(key.getKind());
+        if (type == null) {
+            return;
+        }
+        Key documentKey = documentKeyFactory.newKey(type + SEPARATOR + key.getNameOrId());
+        Entity document = writer.get(documentKey);
+        if (document == null || isDeleted(document)) {
+            return;
+        }
+        Set<String> terms = indexedTerms(document);
+        if (!terms.isEmpty()) {
+            writer.delete(terms.stream().map(termKeyFactory::newKey).toArray(Key[]::new));
+        }
+        writer.put(Entity.newBuilder(documentKey)
+                .set(DOCUMENT_TERMS, ListValue.newBuilder().build())
+                .set(DOCUMENT_UPDATED_AT, Timestamp.now())
+                .set(DOCUMENT_DELETED, BooleanValue.newBuilder(true).setExcludeFromIndexes(true).build())
+                .build());
+    }
+
+    /**
+     * Reads the documents written after a time, oldest first
+     * @param reader the Datastore client
+     * @param since exclusive lower bound, null to read every document
+     * @param consumer receives each document as a change
+     * @return time of the last document read, {@code since} if there was none
+     */
+    public static Timestamp readChanges(DatastoreReader reader, Timestamp since, Consumer<Change> consumer) {
+        EntityQuery.Builder query = Query.newEntityQueryBuilder()
+                .setKind(DOCUMENT)
+                .setOrderBy(OrderBy.asc(DOCUMENT_UPDATED_AT));
+        if (since != null) {
+            query.setFilter(PropertyFilter.gt(DOCUMENT_UPDATED_AT, since));
+        }
+        QueryResults<Entity> results = reader.run(query.build());
+
+        Timestamp last = since;
+        while (results.hasNext()) {
+            Entity document = results.next();
+            String name = document.getKey().getName();
+            int separator = name.indexOf(SEPARATOR);
+            last = document.getTimestamp(DOCUMENT_UPDATED_AT);
+            boolean deleted = isDeleted(document);
+            ObjectNode result = deleted ? null : result(document);
+            if (separator > 0 && (deleted || result != null)) {
+                consumer.accept(new Change(name.substring(0, separator), name.substring(separator + 1), result, last));
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Ranks the entities of one type that match every token of the query, a token matching any term it is
+     * a prefix of. Ties are broken by entity id, so the order is stable across pages.
+     * @param reader the Datastore client
+     * @param type one of {@link #TYPES}
+     * @param query free text, tokenized like the indexed fields
+     * @return hits by descending score, empty if the query has no tokens
+     */
+    public static List<Hit> search(DatastoreReader reader, String type, String query) {
+        List<String> tokens = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (tokens.isEmpty()) {
+            return List.of();
+        }
+        Map<String, Double> scores = null;
+        for (String token : tokens.subList(0, Math.min(MAX_QUERY_TOKENS, tokens.size()))) {
+            Map<String, Double> matches = scan(reader, type, token);
+            if (scores == null) {
+                scores = matches;
+            } else {
+                scores.keySet().retainAll(matches.keySet());
+                scores.replaceAll((id, score) -> score + matches.get(id));
+            }
+            if (scores.isEmpty()) {
+                return List.of();
+            }
+        }
+        List<Hit> hits = new ArrayList<>();
+        scores.forEach((id, score) -> hits.add(new Hit(id, score)));
+        hits.sort(Comparator.comparingDouble(Hit::score).reversed().thenComparing(Hit::id));
+        return hits;
+    }
+
+    /**
+     * Loads the search results of some hits with one batched lookup
+     * @param type type the hits were searched in
+     * @param hits hits of one page
+     * @return results in hit order; hits whose entity was removed meanwhile are skipped
+     */
+    public static List<ObjectNode> results(DatastoreReader reader, String type, List<Hit> hits) {
+        if (hits.isEmpty()) {
+            return List.of();
+        }
+        Key[] keys = hits.stream().map(hit -> documentKeyFactory.newKey(type + SEPARATOR + hit.id())).toArray(Key[]::new);
+        List<ObjectNode> results = new ArrayList<>();
+        for (Entity document : reader.fetch(keys)) {
+            ObjectNode result = document == null || isDeleted(document) ? null : result(document);
+            if (result != null) {
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Splits text into index terms: lower case, accents removed, split on anything but letters and digits.
+     * Single characters are dropped unless they are digits, so ids like "Worksheet 1" stay searchable.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String normalized = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        for (String token : NON_WORD.split(normalized)) {
+            if (token.isEmpty() || (token.length() == 1 && !Character.isDigit(token.charAt(0)))) {
+                continue;
+            }
+            tokens.add(token.length() > MAX_TERM_LENGTH ? token.substring(0, MAX_TERM_LENGTH) : token);
+        }
+        return tokens;
+    }
+
+    private static Map<String, Double> scan(DatastoreReader reader, String type, String token) {
+        String prefix = type + SEPARATOR + token;
+        Query<Entity> query = Query.newEntityQueryBuilder()
+                .setKind(TERM)
+                .setFilter(CompositeFilter.and(
+                        PropertyFilter.ge(KEY_PROPERTY, termKeyFactory.newKey(prefix)),
+                        PropertyFilter.lt(KEY_PROPERTY, termKeyFactory.newKey(prefix + RANGE_END))))
+                .setLimit(MAX_TERM_MATCHES)
+                .build();
+        QueryResults<Entity> results = reader.run(query);
+
+        Map<String, Double> matches = new HashMap<>();
+        String exact = prefix + SEPARATOR;
+        while (results.hasNext()) {
+            Entity entry = results.next();
+            double score = entry.getLong(TERM_WEIGHT) * (entry.getKey().getName().startsWith(exact) ? EXACT_MATCH_BOOST : 1);
+            matches.merge(entry.getString(TERM_ENTITY_ID), score, Math::max);
+        }
+        return matches;
+    }
+
+    private static String typeOf(String kind) {
+        return switch (kind) {
+            case AccountConstants.USER -> USERS;
+            case WorkSheetConstants.WORKSHEET -> WORKSHEETS;
+            case ExecutionSheetConstants.EXEC_SHEET -> EXECUTION_SHEETS;
+            case PHOTO_KIND, VIDEO_KIND -> ACTIVITIES;
+            case POST_KIND -> POSTS;
+            default -> null;
+        };
+    }
+
+    private static Document document(Entity entity) {
+        String type = typeOf(entity.getKey().getKind());
+        // Worksheets are indexed once their import is done
+        if (type == null || (type.equals(WORKSHEETS) && entity.contains(WorkSheetConstants.WS_IMPORTING))) {
+            return null;
+        }
+        String id = String.valueOf(entity.getKey().getNameOrId());
+        Map<String, Long> terms = new LinkedHashMap<>();
+        ObjectNode result = mapper.createObjectNode();
+
+        switch (type) {
+            case USERS -> {
+                String username = string(entity, AccountConstants.DS_USERNAME, id);
+                String name = string(entity, AccountConstants.DS_FULLNAME, username);
+                String email = string(entity, AccountConstants.DS_EMAIL, "");
+                String role = string(entity, AccountConstants.DS_ROLE, "");
+                addTerms(terms, username, NAME_WEIGHT);
+                addTerms(terms, name, NAME_WEIGHT);
+                addTerms(terms, email, CONTACT_WEIGHT);
+                addTerms(terms, role, FIELD_WEIGHT);
+                result.put("id", username);
+                result.put("name", name);
+                result.put("username", username);
+                result.put("email", email);
+                result.put("role", role);
+                result.put("type", "user");
+                result.put("displayName", name + " (" + username + ")");
+            }
+            case WORKSHEETS -> {
+                String name = "Worksheet " + id;
+                addTerms(terms, name, NAME_WEIGHT);
+                addPropertyTerms(terms, entity);
+                result.put("id", entity.getKey().getId());
+                result.put("name", name);
+                result.put("type", "worksheet");
+                result.put("displayName", name);
+            }
+            case EXECUTION_SHEETS -> {
+                String name = "Execution Sheet " + id.replace("execution_", "");
+                addTerms(terms, name, NAME_WEIGHT);
+                addPropertyTerms(terms, entity);
+                result.put("id", id);
+                result.put("name", name);
+                result.put("type", "executionSheet");
+                result.put("displayName", name);
+            }
+            case ACTIVITIES -> {
+                boolean video = VIDEO_KIND.equals(entity.getKey().getKind());
+                String label = video ? "Video" : "Photo";
+                String description = string(entity, "description", label);
+                String executionSheetId = string(entity, "executionSheetId", "");
+                addTerms(terms, description, NAME_WEIGHT);
+                addTerms(terms, executionSheetId, FIELD_WEIGHT);
+                result.put("id", id);
+                result.put("name", description);
+                result.put("type", "activity");
+                result.put("activityType", video ? "video" : "photo");
+                result.put("executionSheetId", executionSheetId);
+                result.put("displayName", label + ": " + description);
+            }
+            default -> {
+                String content = string(entity, "content", "");
+                String postType = string(entity, "type", "text");
+                String executionSheetId = string(entity, "executionSheetId", "");
+                addTerms(terms, content, CONTACT_WEIGHT);
+                addTerms(terms, postType, FIELD_WEIGHT);
+                addTerms(terms, executionSheetId, FIELD_WEIGHT);
+                result.put("id", id);
+                result.put("name", content.length() > 50 ? content.substring(0, 50) + "..." : content);
+                result.put("type", "post");
+                result.put("postType", postType);
+                result.put("executionSheetId", executionSheetId);
+                result.put("displayName", postType + " post: "
+                        + (content.length() > 30 ? content.substring(0, 30) + "..." : content));
+            }
+        }
+        return new Document(type, id, bounded(terms), result);
+    }
+
+    // Indexed string and integer properties (and lists of them); large unindexed values such as geometries are skipped
+    private static void addPropertyTerms(Map<String, Long> terms, Entity entity) {
+        for (String property : entity.getNames()) {
+            addValueTerms(terms, entity.getValue(property));
+        }
+    }
+
+    private static void addValueTerms(Map<String, Long> terms, Value<?> value) {
+        if (value.excludeFromIndexes()) {
+            return;
+        }
+        if (value instanceof StringValue string) {
+            String text = string.get();
+            addTerms(terms, text.length() > MAX_VALUE_LENGTH ? text.substring(0, MAX_VALUE_LENGTH) : text, FIELD_WEIGHT);
+        } else if (value instanceof LongValue number) {
+            addTerms(terms, String.valueOf(number.get()), FIELD_WEIGHT);
+        } else if (value instanceof ListValue list) {
+            for (Value<?> element : list.get()) {
+                addValueTerms(terms, element);
+            }
+        }
+    }
+
+    private static void addTerms(Map<String, Long> terms, String text, long weight) {
+        for (String token : tokenize(text)) {
+            terms.merge(token, weight, Math::max);
+        }
+    }
+
+    // Keeps the heaviest terms, in the order they were found, when a document has too many
+    private static Map<String, Long> bounded(Map<String, Long> terms) {
+        if (terms.size() <= MAX_TERMS_PER_DOCUMENT) {
+            return terms;
+        }
+        Set<String> kept = new HashSet<>();
+        terms.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(MAX_TERMS_PER_DOCUMENT)
+                .forEach(term -> kept.add(term.getKey()));
+        terms.keySet().retainAll(kept);
+        return terms;
+    }
+
+    private static Set<String> indexedTerms(Entity document) {
+        Set<String> names = new HashSet<>();
+        if (document != null && document.contains(DOCUMENT_TERMS)) {
+            for (Value<?> value : document.getList(DOCUMENT_TERMS)) {
+                names.add(((StringValue) value).get());
+            }
+        }
+        return names;
+    }
+
+    private static ObjectNode result(Entity document) {
+        if (!document.contains(DOCUMENT_RESULT)) {
+            return null;
+        }
+        try {
+            JsonNode result = mapper.readTree(document.getString(DOCUMENT_RESULT));
+            return result instanceof ObjectNode node ? node : null;
+        } catch (JsonProcessingException e) {
+            // A corrupt document only loses its own result; the next write of the entity rebuilds it
+            return null;
+        }
+    }
+
+    private static boolean isDeleted(Entity document) {
+        return document.contains(DOCUMENT_DELETED) && document.getBoolean(DOCUMENT_DELETED);
+    }
+
+    private static String string(Entity entity, String property, String fallback) {
+        if (entity.contains(property) && entity.getValue(property) instanceof StringValue value) {
+            return value.get();
+        }
+        return fallback;
+    }
+
+    private static StringValue unindexed(String value) {
+        return StringValue.newBuilder(value).setExcludeFromIndexes(true).build();
+    }
+}
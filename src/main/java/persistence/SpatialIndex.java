@@ -0,0 +1,296 @@
+package persistence;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.datastore.DatastoreReader;
+import com.google.cloud.datastore.DatastoreWriter;
+import com.google.cloud.datastore.DoubleValue;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.EntityQuery;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyFactory;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.QueryResults;
+import com.google.cloud.datastore.StringValue;
+import com.google.cloud.datastore.StructuredQuery.CompositeFilter;
+import com.google.cloud.datastore.StructuredQuery.OrderBy;
+import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+
+import geo.Geohash;
+import geo.StrTree;
+
+/**
+ * Spatial index of parcel bounding boxes, in WGS84 longitude/latitude, answering which parcels a map viewport
+ * shows without reading every parcel.
+ *
+ * Boxes are persisted as one {@value #KIND} per parcel and geohash cell of {@link #PRECISION} characters the box
+ * touches, named {@code cell|parcelId}. Cells sharing a prefix are one key range, so Datastore answers a viewport
+ * with a key-range scan per covering cell. Parcels too large for {@link #MAX_CELLS_PER_PARCEL} cells are filed
+ * under the single cell {@value #OVERSIZED}, which every scan also reads.
+ *
+ * Each instance also keeps the boxes in an STR-packed R-tree, loaded on first use and then following the
+ * entries' change feed, like {@link TypeaheadIndex}. Boxes that arrive after the tree was packed are kept in a
+ * list searched linearly, and the tree is repacked once that list reaches {@link #REPACK_THRESHOLD}. Until the
+ * first load completes, queries are answered by the Datastore scan.
+ *
+ * Writers call {@link #index(DatastoreWriter, Map)} once the parcels are committed: a parcel has one entry per
+ * cell, and writing them in the import transaction would push large worksheets past the commit size limit.
+ * Entries are rewritten by the parcel backfill, which repairs any lost to a failure between the two writes.
+ * Parcel geometries do not change after import, so entries are never moved or removed.
+ */
+public class SpatialIndex {
+    public static final String KIND = "ParcelCell";
+    public static final int PRECISION = 5;
+    public static final int MAX_CELLS_PER_PARCEL = 64;
+    public static final Duration REFRESH_INTERVAL = Duration.ofSeconds(5);
+    private static final Duration FEED_OVERLAP = Duration.ofSeconds(30);
+    private static final int REPACK_THRESHOLD = 256;
+    // Covering cells of a viewport scanned in Datastore; larger viewports are scanned with shorter prefixes
+    private static final int MAX_SCAN_CELLS = 16;
+    private static final String OVERSIZED = "*";
+    // Datastore rejects commits with more mutations than this
+    private static final int MAX_ENTITIES_PER_PUT = 500;
+
+    private static final String PARCEL = "parcel";
+    private static final String MIN_LON = "minLon";
+    private static final String MIN_LAT = "minLat";
+    private static final String MAX_LON = "maxLon";
+    private static final String MAX_LAT = "maxLat";
+    private static final String UPDATED_AT = "updatedAt";
+
+    private static final String KEY_PROPERTY = "__key__";
+    private static final String SEPARATOR = "|";
+    // Sorts after every character a cell or parcel id can contain
+    private static final String RANGE_END = "\uffff";
+
+    private static final Logger LOG = Logger.getLogger(SpatialIndex.class.getName());
+    private static final KeyFactory keyFactory = DatastoreGateway.get().newKeyFactory().setKind(KIND);
+    private static final SpatialIndex instance = new SpatialIndex(DatastoreGateway.get());
+
+    private final DatastoreReader reader;
+    // parcel id -> box, the latest known for each parcel
+    private final Map<String, double[]> boxes = new ConcurrentHashMap<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile StrTree<String> tree = StrTree.build(List.of());
+    // Parcels added since the tree was packed
+    private volatile List<String> unpacked = List.of();
+    private volatile boolean loaded;
+    private volatile long lastRefresh;
+    private Timestamp watermark;
+
+    public SpatialIndex(DatastoreReader reader) {
+        this.reader = reader;
+    }
+
+    public static SpatialIndex get() {
+        return instance;
+    }
+
+    /**
+     * Files parcels' boxes under the cells they touch, in puts of at most {@link #MAX_ENTITIES_PER_PUT} entries
+     * @param bboxes parcel key -> min longitude, min latitude, max longitude, max latitude
+     */
+    public static void index(DatastoreWriter writer, Map<Key, double[]> bboxes) {
+        Timestamp now = Timestamp.now();
+        List<Entity> entries = new ArrayList<>();
+        for (Map.Entry<Key, double[]> parcel : bboxes.entrySet()) {
+            String parcelId = parcel.getKey().getName();
+            double[] bbox = parcel.getValue();
+            List<String> cells = Geohash.coverSize(bbox[0], bbox[1], bbox[2], bbox[3], PRECISION) > MAX_CELLS_PER_PARCEL
+                    ? List.of(OVERSIZED)
+                    : Geohash.cover(bbox[0], bbox[1], bbox[2], bbox[3], PRECISION);
+            for (String cell : cells) {
+                entries.add(Entity.newBuilder(keyFactory.newKey(cell + SEPARATOR + parcelId))
+                        .set(PARCEL, StringValue.newBuilder(parcelId).setExcludeFromIndexes(true).build())
+                        .set(MIN_LON, unindexed(bbox[0]))
+                        .set(MIN_LAT, unindexed(bbox[1]))
+                        .set(MAX_LON, unindexed(bbox[2]))
+                        .set(MAX_LAT, unindexed(bbox[3]))
+                        .set(UPDATED_AT, now)
+                        .build());
+            }
+        }
+        for (int from = 0; from < entries.size(); from += MAX_ENTITIES_PER_PUT) {
+            writer.put(entries.subList(from, Math.min(entries.size(), from + MAX_ENTITIES_PER_PUT)).toArray(new Entity[0]));
+        }
+    }
+
+    /**
+     * Ids of the parcels whose boxes intersect a box, in no particular order
+     * @param limit most ids returned
+     */
+    public List<String> query(double minLon, double minLat, double maxLon, double maxLat, int limit) {
+        if (!loaded) {
+            startLoad();
+            return scan(reader, minLon, minLat, maxLon, maxLat, limit);
+        }
+        refreshIfStale();
+
+        Set<String> ids = new LinkedHashSet<>();
+        StrTree<String> packed = tree;
+        packed.search(minLon, minLat, maxLon, maxLat, entry -> {
+            // A box filed again after packing is checked against its latest value
+            if (ids.size() < limit && intersects(boxes.get(entry.value()), minLon, minLat, maxLon, maxLat)) {
+                ids.add(entry.value());
+            }
+        });
+        for (String id : unpacked) {
+            if (ids.size() >= limit) {
+                break;
+            }
+            if (intersects(boxes.get(id), minLon, minLat, maxLon, maxLat)) {
+                ids.add(id);
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /**
+     * Parcels held by this instance
+     */
+    public int size() {
+        return boxes.size();
+    }
+
+    /**
+     * Reads the entries written after a time, oldest first
+     * @param since null to read every entry
+     * @return time of the last entry read, or since if there was none
+     */
+    public static Timestamp readChanges(DatastoreReader reader, Timestamp since, Consumer<Entity> consumer) {
+        EntityQuery.Builder query = Query.newEntityQueryBuilder()
+                .setKind(KIND)
+                .setOrderBy(OrderBy.asc(UPDATED_AT));
+        if (since != null) {
+            query.setFilter(PropertyFilter.gt(UPDATED_AT, since));
+        }
+        QueryResults<Entity> results = reader.run(query.build());
+        Timestamp last = since;
+        while (results.hasNext()) {
+            Entity entry = results.next();
+            last = entry.getTimestamp(UPDATED_AT);
+            consumer.accept(entry);
+        }
+        return last;
+    }
+
+    /**
+     * Answers a box from Datastore alone: one key-range scan per covering cell, plus the oversized parcels
+     */
+    public static List<String> scan(DatastoreReader reader, double minLon, double minLat, double maxLon,
+            double maxLat, int limit) {
+        int precision = Geohash.precisionFor(minLon, minLat, maxLon, maxLat, PRECISION, MAX_SCAN_CELLS);
+        List<String> prefixes = new ArrayList<>(Geohash.cover(minLon, minLat, maxLon, maxLat, precision));
+        prefixes.add(OVERSIZED + SEPARATOR);
+
+        Set<String> ids = new LinkedHashSet<>();
+        for (String prefix : prefixes) {
+            Query<Entity> query = Query.newEntityQueryBuilder()
+                    .setKind(KIND)
+                    .setFilter(CompositeFilter.and(
+                            PropertyFilter.ge(KEY_PROPERTY, keyFactory.newKey(prefix)),
+                            PropertyFilter.lt(KEY_PROPERTY, keyFactory.newKey(prefix + RANGE_END))))
+                    .build();
+            QueryResults<Entity> results = reader.run(query);
+            while (results.hasNext() && ids.size() < limit) {
+                Entity entry = results.next();
+                if (intersects(box(entry), minLon, minLat, maxLon, maxLat)) {
+                    ids.add(entry.getString(PARCEL));
+                }
+            }
+            if (ids.size() >= limit) {
+                break;
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    private void startLoad() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        Thread.ofVirtual().start(() -> {
+            try {
+                refresh();
+                loaded = true;
+            } catch (RuntimeException e) {
+                LOG.warning("Spatial index load failed: " + e.getMessage());
+            } finally {
+                refreshing.set(false);
+            }
+        });
+    }
+
+    private void refreshIfStale() {
+        if (System.nanoTime() - lastRefresh < REFRESH_INTERVAL.toNanos() || !refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        Thread.ofVirtual().start(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                LOG.warning("Spatial index refresh failed: " + e.getMessage());
+            } finally {
+                refreshing.set(false);
+            }
+        });
+    }
+
+    private synchronized void refresh() {
+        try {
+            Timestamp since = watermark == null ? null
+                    : Timestamp.ofTimeSecondsAndNanos(watermark.getSeconds() - FEED_OVERLAP.getSeconds(), watermark.getNanos());
+            List<String> added = new ArrayList<>();
+            Timestamp last = readChanges(reader, since, entry -> {
+                String id = entry.getString(PARCEL);
+                if (boxes.put(id, box(entry)) == null) {
+                    added.add(id);
+                }
+            });
+            if (last != null && (watermark == null || last.compareTo(watermark) > 0)) {
+                watermark = last;
+            }
+            if (!added.isEmpty()) {
+                List<String> pending = new ArrayList<>(unpacked);
+                pending.addAll(added);
+                if (tree.size() == 0 || pending.size() >= REPACK_THRESHOLD) {
+                    repack();
+                } else {
+                    unpacked = List.copyOf(pending);
+                }
+            }
+        } finally {
+            lastRefresh = System.nanoTime();
+        }
+    }
+
+    private void repack() {
+        List<StrTree.Entry<String>> entries = new ArrayList<>(boxes.size());
+        boxes.forEach((id, box) -> entries.add(new StrTree.Entry<>(box[0], box[1], box[2], box[3], id)));
+        tree = StrTree.build(entries);
+        unpacked = List.of();
+    }
+
+    private static double[] box(Entity entry) {
+        return new double[] { entry.getDouble(MIN_LON), entry.getDouble(MIN_LAT), entry.getDouble(MAX_LON),
+                entry.getDouble(MAX_LAT) };
+    }
+
+    private static boolean intersects(double[] box, double minLon, double minLat, double maxLon, double maxLat) {
+        return box != null && box[0] <= maxLon && box[2] >= minLon && box[1] <= maxLat && box[3] >= minLat;
+    }
+
+    private static DoubleValue unindexed(double value) {
+        return DoubleValue.newBuilder(value).setExcludeFromIndexes(true).build();
+    }
+}
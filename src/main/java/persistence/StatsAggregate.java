@@ -0,0 +1,294 @@
+package persistence;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.DatastoreReader;
+import com.google.cloud.datastore.DoubleValue;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyFactory;
+import com.google.cloud.datastore.LongValue;
+import com.google.cloud.Timestamp;
+import com.google.cloud.datastore.Transaction;
+
+import constants.AccountConstants;
+
+/**
+ * Platform totals shown by the statistics endpoints: parcels and their area, worksheets, users and active users.
+ * Writers add deltas in the transaction that changes the counted entities, so the totals are read with one
+ * batched lookup instead of scanning the kinds. The totals are split over {@link #SHARDS} entities: a delta
+ * updates one shard picked at random, which keeps concurrent writers from contending on a single entity,
+ * and readers add the shards up.
+ *
+ * {@link #current()} caches the totals for {@link #MAX_AGE}; after that the cached totals are still served
+ * while one background refresh reads the shards again. The totals are counted from the entities by a background
+ * job, which runs on its own on the first deployment and afterwards only when an administrator asks for it, so
+ * no request scans the kinds. The job opens a count epoch with {@link #beginCount()} and hands its count to
+ * {@link #store(long, Totals)}. Each shard also sums the deltas committed in the current epoch, so the deltas of
+ * writes made while the kinds are scanned are added to the count instead of being overwritten by it.
+ */
+public class StatsAggregate {
+    public static final String KIND = "StatsAggregate";
+    public static final int SHARDS = 8;
+    public static final Duration MAX_AGE = Duration.ofSeconds(30);
+    public static final Duration STALE_WHILE_REVALIDATE = Duration.ofMinutes(5);
+
+    private static final String PARCELS = "parcels";
+    private static final String AREA_HA = "area_ha";
+    private static final String WORKSHEETS = "worksheets";
+    private static final String USERS = "users";
+    private static final String ACTIVE_USERS = "active_users";
+    private static final String SEEDED_AT = "seeded_at";
+    private static final String EPOCH = "epoch";
+    // Deltas committed since the shard's epoch began
+    private static final String PENDING = "pending_";
+
+    private static final Logger LOG = Logger.getLogger(StatsAggregate.class.getName());
+    private static final Datastore datastore = DatastoreGateway.get();
+    private static final KeyFactory keyFactory = datastore.newKeyFactory().setKind(KIND);
+    // Written with the first count, so instances know the shards hold real totals
+    private static final Key seedKey = keyFactory.newKey("seed");
+    // Number of the latest count; a count stores its totals only while it is still the latest
+    private static final Key epochKey = keyFactory.newKey("epoch");
+    private static final Totals ZERO = new Totals(0, 0, 0, 0, 0);
+    private static final AtomicBoolean refreshing = new AtomicBoolean();
+    private static volatile Totals cached;
+    private static volatile long cachedAt;
+
+    /**
+     * @param areaHa area of all parcels in hectares
+     */
+    public record Totals(long parcels, double areaHa, long worksheets, long users, long activeUsers) {
+        public long inactiveUsers() {
+            return users - activeUsers;
+        }
+
+        Totals plus(Totals other) {
+            return new Totals(parcels + other.parcels, areaHa + other.areaHa, worksheets + other.worksheets,
+                    users + other.users, activeUsers + other.activeUsers);
+        }
+    }
+
+    /**
+     * Change to the totals made by one write
+     */
+    public record Delta(long parcels, double areaHa, long worksheets, long users, long activeUsers) {
+
+        /**
+         * @param worksheets worksheets created (positive) or deleted (negative)
+         * @param parcels parcels first imported by them
+         * @param areaHa area of those parcels
+         */
+        public static Delta worksheets(long worksheets, long parcels, double areaHa) {
+            return new Delta(parcels, areaHa, worksheets, 0, 0);
+        }
+
+        /**
+         * A user created (state is the new user's) or removed (state is the removed user's)
+         */
+        public static Delta user(boolean created, String state) {
+            long sign = created ? 1 : -1;
+            return new Delta(0, 0, 0, sign, isActive(state) ? sign : 0);
+        }
+
+        /**
+         * A user's state changed from one value to another
+         */
+        public static Delta userState(String from, String to) {
+            return new Delta(0, 0, 0, 0, (isActive(to) ? 1 : 0) - (isActive(from) ? 1 : 0));
+        }
+
+        boolean isEmpty() {
+            return parcels == 0 && areaHa == 0 && worksheets == 0 && users == 0 && activeUsers == 0;
+        }
+
+        Totals asTotals() {
+            return new Totals(parcels, areaHa, worksheets, users, activeUsers);
+        }
+
+        private static boolean isActive(String state) {
+            return AccountConstants.ACTIVE_STATE.equals(state);
+        }
+    }
+
+    private StatsAggregate() {
+    }
+
+    /**
+     * Adds a delta to one shard within the caller's transaction, so it commits with the counted writes
+     */
+    public static void add(Transaction txn, Delta delta) {
+        if (delta.isEmpty()) {
+            return;
+        }
+        Key key = shardKey(ThreadLocalRandom.current().nextInt(SHARDS));
+        List<Entity> found = txn.fetch(key, epochKey);
+        Entity shard = found.get(0);
+        long epoch = epoch(found.get(1));
+        Totals totals = shard == null ? ZERO : totals(shard, "");
+        // Deltas of an earlier epoch were either counted or stored with its count, so the shard starts over
+        Totals pending = shard == null || epoch(shard) != epoch ? ZERO : totals(shard, PENDING);
+        txn.put(entity(key, totals.plus(delta.asTotals()), epoch, pending.plus(delta.asTotals())));
+    }
+
+    /**
+     * Totals as of at most {@link #MAX_AGE} ago; older totals are returned while a background refresh runs
+     */
+    public static Totals current() {
+        if (cached == null) {
+            synchronized (StatsAggregate.class) {
+                if (cached == null) {
+                    refresh();
+                }
+            }
+        } else if (System.nanoTime() - cachedAt > MAX_AGE.toNanos() && refreshing.compareAndSet(false, true)) {
+            Thread.ofVirtual().start(() -> {
+                try {
+                    refresh();
+                } catch (RuntimeException e) {
+                    LOG.warning("Statistics refresh failed: " + e.getMessage());
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        }
+        return cached;
+    }
+
+    /**
+     * Sums the shards, with one batched lookup
+     */
+    public static Totals read(DatastoreReader reader) {
+        Key[] keys = new Key[SHARDS];
+        for (int i = 0; i < SHARDS; i++) {
+            keys[i] = shardKey(i);
+        }
+        long parcels = 0;
+        double areaHa = 0;
+        long worksheets = 0;
+        long users = 0;
+        long activeUsers = 0;
+        for (Entity shard : reader.fetch(keys)) {
+            if (shard != null) {
+                Totals totals = totals(shard, "");
+                parcels += totals.parcels();
+                areaHa += totals.areaHa();
+                worksheets += totals.worksheets();
+                users += totals.users();
+                activeUsers += totals.activeUsers();
+            }
+        }
+        return new Totals(parcels, areaHa, worksheets, users, activeUsers);
+    }
+
+    /**
+     * @return whether the totals have ever been counted from the entities
+     */
+    public static boolean isSeeded() {
+        return datastore.get(seedKey) != null;
+    }
+
+    /**
+     * Starts a new count epoch. Deltas committed from now on are kept apart in the shards, to be added to the
+     * count when it is stored.
+     * @return epoch of the count
+     */
+    public static long beginCount() {
+        return datastore.runInTransaction(txn -> {
+            long epoch = epoch(txn.get(epochKey)) + 1;
+            txn.put(Entity.newBuilder(epochKey).set(EPOCH, epoch).build());
+            return epoch;
+        });
+    }
+
+    /**
+     * Replaces the totals with a count plus the deltas committed since its epoch began, stored in the first shard
+     * with the others cleared. The epoch is closed by the same transaction, so a repeated store, or the store of
+     * a count superseded by a later one, changes nothing.
+     * @param epoch epoch returned by {@link #beginCount()} when the count started
+     * @return whether the count was stored
+     */
+    public static boolean store(long epoch, Totals count) {
+        Totals stored = datastore.runInTransaction(txn -> {
+            if (epoch(txn.get(epochKey)) != epoch) {
+                return null;
+            }
+            Key[] keys = new Key[SHARDS];
+            for (int i = 0; i < SHARDS; i++) {
+                keys[i] = shardKey(i);
+            }
+            Totals totals = count;
+            for (Entity shard : txn.fetch(keys)) {
+                if (shard != null && epoch(shard) == epoch) {
+                    totals = totals.plus(totals(shard, PENDING));
+                }
+            }
+            long next = epoch + 1;
+            List<Entity> entities = new ArrayList<>();
+            entities.add(entity(keys[0], totals, next, ZERO));
+            for (int i = 1; i < SHARDS; i++) {
+                entities.add(entity(keys[i], ZERO, next, ZERO));
+            }
+            entities.add(Entity.newBuilder(epochKey).set(EPOCH, next).build());
+            entities.add(Entity.newBuilder(seedKey).set(SEEDED_AT, Timestamp.now()).build());
+            txn.put(entities.toArray(new Entity[0]));
+            return totals;
+        });
+        if (stored == null) {
+            return false;
+        }
+        cached = stored;
+        cachedAt = System.nanoTime();
+        return true;
+    }
+
+    private static void refresh() {
+        cached = read(datastore);
+        cachedAt = System.nanoTime();
+    }
+
+    private static Key shardKey(int shard) {
+        return keyFactory.newKey("global-" + shard);
+    }
+
+    /**
+     * @param prefix "" for the shard's totals, {@link #PENDING} for its deltas of the current epoch
+     */
+    private static Totals totals(Entity shard, String prefix) {
+        return new Totals(longOrZero(shard, prefix + PARCELS),
+                shard.contains(prefix + AREA_HA) ? shard.getDouble(prefix + AREA_HA) : 0,
+                longOrZero(shard, prefix + WORKSHEETS), longOrZero(shard, prefix + USERS),
+                longOrZero(shard, prefix + ACTIVE_USERS));
+    }
+
+    private static long epoch(Entity entity) {
+        return entity == null ? 0 : longOrZero(entity, EPOCH);
+    }
+
+    private static long longOrZero(Entity shard, String name) {
+        return shard.contains(name) ? shard.getLong(name) : 0;
+    }
+
+    private static Entity entity(Key key, Totals totals, long epoch, Totals pending) {
+        Entity.Builder builder = Entity.newBuilder(key)
+                .set(EPOCH, LongValue.newBuilder(epoch).setExcludeFromIndexes(true).build());
+        set(builder, "", totals);
+        set(builder, PENDING, pending);
+        return builder.build();
+    }
+
+    private static void set(Entity.Builder builder, String prefix, Totals totals) {
+        builder.set(prefix + PARCELS, LongValue.newBuilder(totals.parcels()).setExcludeFromIndexes(true).build())
+                .set(prefix + AREA_HA, DoubleValue.newBuilder(totals.areaHa()).setExcludeFromIndexes(true).build())
+                .set(prefix + WORKSHEETS, LongValue.newBuilder(totals.worksheets()).setExcludeFromIndexes(true).build())
+                .set(prefix + USERS, LongValue.newBuilder(totals.users()).setExcludeFromIndexes(true).build())
+                .set(prefix + ACTIVE_USERS,
+                        LongValue.newBuilder(totals.activeUsers()).setExcludeFromIndexes(true).build());
+    }
+}
@@ -0,0 +1,32 @@
+package persistence;
+
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
+
+/**
+ * The single Cloud Storage client of the application, created on first use. Like {@link DatastoreGateway},
+ * it can be swapped with {@link #setDelegate(Storage)} (e.g. for a local fake during offline benchmarks).
+ */
+public class StorageGateway {
+    private static volatile Storage delegate;
+
+    private StorageGateway() {
+    }
+
+    public static Storage get() {
+        Storage current = delegate;
+        if (current != null) {
+            return current;
+        }
+        synchronized (StorageGateway.class) {
+            if (delegate == null) {
+                delegate = StorageOptions.getDefaultInstance().getService();
+            }
+            return delegate;
+        }
+    }
+
+    public static void setDelegate(Storage storage) {
+        delegate = storage;
+    }
+}
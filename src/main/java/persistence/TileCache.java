@@ -0,0 +1,101 @@
+package persistence;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.LongValue;
+
+/**
+ * Per-instance cache of generated map tiles, invalidated as a whole when parcels or their execution status change.
+ *
+ * Invalidation bumps a generation counter stored in Datastore, so every instance drops its tiles, not just the
+ * one that handled the write. Instances re-read the counter at most every {@link #GENERATION_TTL}, which bounds
+ * how long another instance may serve a stale tile. Tiles are stored with the generation they were built for,
+ * and the generation doubles as the tiles' ETag.
+ */
+public class TileCache {
+    public static final String KIND = "TileGeneration";
+    public static final Duration GENERATION_TTL = Duration.ofSeconds(10);
+    private static final int MAX_TILES = 2048;
+    private static final String GENERATION = "generation";
+
+    private static final Logger LOG = Logger.getLogger(TileCache.class.getName());
+    private static final TileCache instance = new TileCache(DatastoreGateway.get());
+
+    private record Tile(long generation, String body) {
+    }
+
+    private final Datastore datastore;
+    private final Key generationKey;
+    // Least recently used tiles are evicted first
+    private final Map<String, Tile> tiles = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Tile> eldest) {
+            return size() > MAX_TILES;
+        }
+    };
+    private volatile long generation = -1;
+    private volatile long generationReadAt;
+
+    public TileCache(Datastore datastore) {
+        this.datastore = datastore;
+        this.generationKey = datastore.newKeyFactory().setKind(KIND).newKey("tiles");
+    }
+
+    public static TileCache get() {
+        return instance;
+    }
+
+    /**
+     * Generation tiles are currently built for
+     */
+    public long generation() {
+        if (generation < 0 || System.nanoTime() - generationReadAt > GENERATION_TTL.toNanos()) {
+            Entity entity = datastore.get(generationKey);
+            generation = entity == null ? 0 : entity.getLong(GENERATION);
+            generationReadAt = System.nanoTime();
+        }
+        return generation;
+    }
+
+    /**
+     * @return the cached tile, or null if it is not cached for this generation
+     */
+    public synchronized String get(String tileKey, long generation) {
+        Tile tile = tiles.get(tileKey);
+        return tile != null && tile.generation() == generation ? tile.body() : null;
+    }
+
+    public synchronized void put(String tileKey, long generation, String body) {
+        tiles.put(tileKey, new Tile(generation, body));
+    }
+
+    /**
+     * Drops every tile on every instance. Called after the write that changes parcels has committed; a failure is
+     * logged and not thrown, and tiles then expire with the next invalidation.
+     */
+    public void invalidate() {
+        try {
+            long next = datastore.runInTransaction(txn -> {
+                Entity entity = txn.get(generationKey);
+                long value = (entity == null ? 0 : entity.getLong(GENERATION)) + 1;
+                txn.put(Entity.newBuilder(generationKey)
+                        .set(GENERATION, LongValue.newBuilder(value).setExcludeFromIndexes(true).build())
+                        .build());
+                return value;
+            });
+            generation = next;
+            generationReadAt = System.nanoTime();
+            synchronized (this) {
+                tiles.clear();
+            }
+        } catch (RuntimeException e) {
+            LOG.warning("Tile cache not invalidated: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.datastore.Blob;
+import com.google.cloud.datastore.BlobValue;
+import com.google.cloud.datastore.DatastoreReader;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.EntityQuery;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyFactory;
+import com.google.cloud.datastore.LongValue;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.QueryResults;
+import com.google.cloud.datastore.StringValue;
+import com.google.cloud.datastore.StructuredQuery.CompositeFilter;
+import com.google.cloud.datastore.StructuredQuery.OrderBy;
+import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+import com.google.cloud.datastore.Transaction;
+
+import constants.ExecutionSheetConstants;
+import geo.TrackPoints;
+import geo.TrackPoints.Point;
+
+/**
+ * GPS tracks of execution activities, stored as {@value #KIND} entities of at most {@link #CHUNK_POINTS}
+ * points each, encoded with {@link TrackPoints}.
+ *
+ * Segments are named {@code activityId|seq} with a zero-padded sequence number, so a track is one key range read
+ * in order. The activity keeps its point count, which locates the last, partly filled segment: appending rewrites
+ * only that segment and adds new ones, whatever the length of the track, and no entity grows past one chunk.
+ * Each segment also records its parcel, indexed so a parcel's tracks can be read across activities, and the
+ * time span of its points, so range reads skip segments without decoding them.
+ */
+public final class TrackStore {
+    public static final String KIND = "TrackSegment";
+    public static final int CHUNK_POINTS = 512;
+    // Keeps one append within Datastore's 500 mutations per commit, with room for the caller's own writes
+    public static final int MAX_APPEND_POINTS = 400 * CHUNK_POINTS;
+
+    public static final String PARCEL = "parcel";
+    public static final String UPDATED_AT = "updatedAt";
+    private static final String ACTIVITY = "activity";
+    private static final String SEQUENCE = "seq";
+    private static final String COUNT = "count";
+    private static final String START = "start";
+    private static final String END = "end";
+    private static final String POINTS = "points";
+
+    private static final String KEY_PROPERTY = "__key__";
+    private static final String SEPARATOR = "|";
+    // Sorts after every sequence number
+    private static final String RANGE_END = "\uffff";
+
+    private static final KeyFactory keyFactory = DatastoreGateway.get().newKeyFactory().setKind(KIND);
+
+    /**
+     * Points of a track within a time range
+     * @param total points in the range before downsampling
+     * @param downsampled whether points were left out to stay within the requested maximum
+     */
+    public record Track(List<Point> points, int total, boolean downsampled) {
+    }
+
+    private TrackStore() {
+    }
+
+    /**
+     * @return the points stored for an activity
+     */
+    public static long pointCount(Entity activity) {
+        return activity.contains(ExecutionSheetConstants.EA_TRACK_POINTS)
+                ? activity.getLong(ExecutionSheetConstants.EA_TRACK_POINTS) : 0;
+    }
+
+    /**
+     * Appends points to an activity's track within the caller's transaction. The new point count is set on the
+     * activity builder, which the caller writes in the same transaction.
+     * @param activity the activity as read in the transaction
+     * @throws IllegalArgumentException if there are more than {@link #MAX_APPEND_POINTS} points
+     */
+    public static void append(Transaction txn, Entity activity, Entity.Builder activityBuilder, List<Point> points) {
+        if (points.size() > MAX_APPEND_POINTS) {
+            throw new IllegalArgumentException("At most " + MAX_APPEND_POINTS + " points can be appended at once");
+        }
+        if (points.isEmpty()) {
+            return;
+        }
+        String activityId = activity.getKey().getName();
+        String parcelId = activity.getString(ExecutionSheetConstants.EA_PARCEL_ID);
+        long total = pointCount(activity);
+        long sequence = total / CHUNK_POINTS;
+
+        List<Point> open = new ArrayList<>(CHUNK_POINTS);
+        if (total % CHUNK_POINTS != 0) {
+            Entity tail = txn.get(segmentKey(activityId, sequence));
+            if (tail != null) {
+                open.addAll(TrackPoints.decode(tail.getBlob(POINTS).toByteArray()));
+            }
+        }
+        Timestamp now = Timestamp.now();
+        for (Point point : points) {
+            open.add(point);
+            if (open.size() == CHUNK_POINTS) {
+                txn.put(segment(activityId, parcelId, sequence++, open, now));
+                open = new ArrayList<>(CHUNK_POINTS);
+            }
+        }
+        if (!open.isEmpty()) {
+            txn.put(segment(activityId, parcelId, sequence, open, now));
+        }
+        activityBuilder.set(ExecutionSheetConstants.EA_TRACK_POINTS, total + points.size());
+    }
+
+    /**
+     * Reads the points of a track within a time range, oldest segment first. When more than maxPoints fall in the
+     * range, every n-th point is kept, plus the last one, so the view spans the whole range.
+     * @param from first time included, in milliseconds since the epoch
+     * @param to last time included
+     */
+    public static Track read(DatastoreReader reader, String activityId, long from, long to, int maxPoints) {
+        List<Point> points = new ArrayList<>();
+        forEachSegment(reader, activityId, segment -> {
+            if (segment.getLong(END) < from || segment.getLong(START) > to) {
+                return;
+            }
+            for (Point point : points(segment)) {
+                if (point.t() >= from && point.t() <= to) {
+                    points.add(point);
+                }
+            }
+        });
+        if (points.size() <= maxPoints || maxPoints < 2) {
+            return new Track(points, points.size(), false);
+        }
+        int stride = (points.size() + maxPoints - 2) / (maxPoints - 1);
+        List<Point> sampled = new ArrayList<>(maxPoints);
+        for (int i = 0; i < points.size() - 1; i += stride) {
+            sampled.add(points.get(i));
+        }
+        sampled.add(points.get(points.size() - 1));
+        return new Track(sampled, points.size(), true);
+    }
+
+    /**
+     * Reads points by position in the track, for consumers that process a track incrementally
+     * @param from position of the first point, 0 for the start of the track
+     * @param maxPoints most points returned
+     */
+    public static List<Point> points(DatastoreReader reader, String activityId, long from, int maxPoints) {
+        List<Point> points = new ArrayList<>();
+        long sequence = from / CHUNK_POINTS;
+        Query<Entity> query = Query.newEntityQueryBuilder()
+                .setKind(KIND)
+                .setFilter(CompositeFilter.and(
+                        PropertyFilter.ge(KEY_PROPERTY, segmentKey(activityId, sequence)),
+                        PropertyFilter.lt(KEY_PROPERTY, keyFactory.newKey(activityId + SEPARATOR + RANGE_END))))
+                .setLimit(maxPoints / CHUNK_POINTS + 2)
+                .build();
+        QueryResults<Entity> results = reader.run(query);
+        long position = sequence * CHUNK_POINTS;
+        while (results.hasNext() && points.size() < maxPoints) {
+            for (Point point : points(results.next())) {
+                if (position++ >= from && points.size() < maxPoints) {
+                    points.add(point);
+                }
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Calls the consumer with every point of a track, in order
+     */
+    public static void forEachPoint(DatastoreReader reader, String activityId, Consumer<Point> consumer) {
+        forEachSegment(reader, activityId, segment -> points(segment).forEach(consumer));
+    }
+
+    /**
+     * Reads the segments written after a time, oldest first. Segments written by the same commit share their
+     * time, so reading stops at the first change of time after the limit and never splits a commit.
+     * @param since exclusive lower bound, null to read every segment
+     * @param countAfter segments up to this time are read again by the caller and do not count towards the limit,
+     *            null to count every segment
+     * @param limit segments read after {@code countAfter} before stopping at the next commit boundary
+     * @return time of the last segment read, {@code since} if there was none
+     */
+    public static Timestamp readChanges(DatastoreReader reader, Timestamp since, Timestamp countAfter, int limit,
+            Consumer<Entity> consumer) {
+        EntityQuery.Builder query = Query.newEntityQueryBuilder()
+                .setKind(KIND)
+                .setOrderBy(OrderBy.asc(UPDATED_AT));
+        if (since != null) {
+            query.setFilter(PropertyFilter.gt(UPDATED_AT, since));
+        }
+        QueryResults<Entity> results = reader.run(query.build());
+        Timestamp last = since;
+        int read = 0;
+        while (results.hasNext()) {
+            Entity segment = results.next();
+            Timestamp updatedAt = segment.getTimestamp(UPDATED_AT);
+            if (read >= limit && !updatedAt.equals(last)) {
+                break;
+            }
+            consumer.accept(segment);
+            last = updatedAt;
+            if (countAfter == null || updatedAt.compareTo(countAfter) > 0) {
+                read++;
+            }
+        }
+        return last;
+    }
+
+    /**
+     * @return the points of a segment entity, as returned by queries on {@link #PARCEL} or {@link #UPDATED_AT}
+     */
+    public static List<Point> points(Entity segment) {
+        return TrackPoints.decode(segment.getBlob(POINTS).toByteArray());
+    }
+
+    /**
+     * @return the activity a segment entity belongs to
+     */
+    public static String activityId(Entity segment) {
+        return segment.getString(ACTIVITY);
+    }
+
+    private static void forEachSegment(DatastoreReader reader, String activityId, Consumer<Entity> consumer) {
+        String prefix = activityId + SEPARATOR;
+        Query<Entity> query = Query.newEntityQueryBuilder()
+                .setKind(KIND)
+                .setFilter(CompositeFilter.and(
+                        PropertyFilter.ge(KEY_PROPERTY, keyFactory.newKey(prefix)),
+                        PropertyFilter.lt(KEY_PROPERTY, keyFactory.newKey(prefix + RANGE_END))))
+                .build();
+        QueryResults<Entity> results = reader.run(query);
+        results.forEachRemaining(consumer);
+    }
+
+    private static Key segmentKey(String activityId, long sequence) {
+        return keyFactory.newKey(activityId + SEPARATOR + String.format("%06d", sequence));
+    }
+
+    private static Entity segment(String activityId, String parcelId, long sequence, List<Point> points,
+            Timestamp now) {
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        for (Point point : points) {
+            start = Math.min(start, point.t());
+            end = Math.max(end, point.t());
+        }
+        return Entity.newBuilder(segmentKey(activityId, sequence))
+                .set(ACTIVITY, StringValue.newBuilder(activityId).setExcludeFromIndexes(true).build())
+                .set(PARCEL, parcelId)
+                .set(SEQUENCE, unindexed(sequence))
+                .set(COUNT, unindexed(points.size()))
+                .set(START, unindexed(start))
+                .set(END, unindexed(end))
+                .set(POINTS, BlobValue.newBuilder(Blob.copyFrom(TrackPoints.encode(points)))
+                        .setExcludeFromIndexes(true).build())
+                .set(UPDATED_AT, now)
+                .build();
+    }
+
+    private static LongValue unindexed(long value) {
+        return LongValue.newBuilder(value).setExcludeFromIndexes(true).build();
+    }
+}
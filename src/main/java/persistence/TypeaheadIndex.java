@@ -0,0 +1,213 @@
+package persistence;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.cloud.Timestamp;
+import com.google.cloud.datastore.DatastoreReader;
+
+/**
+ * Per-instance typeahead over the names of searchable entities: usernames and user names, worksheet and
+ * execution sheet ids, and photo, video and post descriptions. Terms live in a sorted map, so a prefix is a
+ * single sub-map view and suggestions are answered from memory, without Datastore RPCs.
+ *
+ * The index is loaded on first use from the {@link SearchIndex} documents and then follows their change feed.
+ * A lookup made more than {@link #REFRESH_INTERVAL} after the last refresh starts a refresh in the background
+ * and is answered from the data already loaded. Each refresh re-reads a short overlap before its watermark,
+ * because a document's timestamp is taken before its transaction commits; applying a change twice is harmless.
+ */
+public class TypeaheadIndex {
+    public static final Duration REFRESH_INTERVAL = Duration.ofSeconds(5);
+    private static final Duration FEED_OVERLAP = Duration.ofSeconds(30);
+    // Entities collected for the first token before ranking; a broader prefix only ranks its first matches
+    private static final int MAX_CANDIDATES = 1000;
+    private static final String SEPARATOR = "|";
+    private static final String RANGE_END = "\uffff";
+
+    private static final Logger LOG = Logger.getLogger(TypeaheadIndex.class.getName());
+    private static final TypeaheadIndex instance = new TypeaheadIndex(DatastoreGateway.get());
+
+    private record Suggestion(String type, String name, ObjectNode result, Set<String> terms) {
+    }
+
+    private record Match(Suggestion suggestion, int exactTokens) {
+    }
+
+    private final DatastoreReader reader;
+    // term -> keys (type|id) of the suggestions indexed under it
+    private final ConcurrentSkipListMap<String, Set<String>> terms = new ConcurrentSkipListMap<>();
+    private final Map<String, Suggestion> suggestions = new ConcurrentHashMap<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile boolean loaded;
+    private volatile long lastRefresh;
+    private Timestamp watermark;
+
+    public TypeaheadIndex(DatastoreReader reader) {
+        this.reader = reader;
+    }
+
+    public static TypeaheadIndex get() {
+        return instance;
+    }
+
+    /**
+     * Suggestions whose names contain a term starting with each token of the query.
+     * Ranked by tokens matching a whole term, then by shorter name.
+     * @param query partial text typed by the user
+     * @param types types the caller may see
+     * @param limit suggestions per type
+     * @return suggestions per type, in {@link SearchIndex#TYPES} order, empty for types not searched
+     */
+    public Map<String, List<ObjectNode>> suggest(String query, Collection<String> types, int limit) {
+        ensureLoaded();
+        refreshIfStale();
+
+        Map<String, List<ObjectNode>> results = new LinkedHashMap<>();
+        for (String type : SearchIndex.TYPES) {
+            results.put(type, new ArrayList<>());
+        }
+        List<String> tokens = new ArrayList<>(new LinkedHashSet<>(SearchIndex.tokenize(query)));
+        if (tokens.isEmpty()) {
+            return results;
+        }
+
+        // The longest token has the fewest matching terms, so it picks the candidates
+        String seed = tokens.stream().max(Comparator.comparingInt(String::length)).get();
+        Set<String> candidates = new LinkedHashSet<>();
+        collect:
+        for (Set<String> keys : terms.subMap(seed, true, seed + RANGE_END, false).values()) {
+            for (String key : keys) {
+                candidates.add(key);
+                if (candidates.size() >= MAX_CANDIDATES) {
+                    break collect;
+                }
+            }
+        }
+
+        List<Match> matches = new ArrayList<>();
+        for (String key : candidates) {
+            Suggestion suggestion = suggestions.get(key);
+            if (suggestion == null || !types.contains(suggestion.type())) {
+                continue;
+            }
+            int exactTokens = 0;
+            boolean matchesAll = true;
+            for (String token : tokens) {
+                if (suggestion.terms().contains(token)) {
+                    exactTokens++;
+                } else if (suggestion.terms().stream().noneMatch(term -> term.startsWith(token))) {
+                    matchesAll = false;
+                    break;
+                }
+            }
+            if (matchesAll) {
+                matches.add(new Match(suggestion, exactTokens));
+            }
+        }
+        matches.sort(Comparator.comparingInt(Match::exactTokens).reversed()
+                .thenComparingInt(match -> match.suggestion().name().length())
+                .thenComparing(match -> match.suggestion().name()));
+
+        for (Match match : matches) {
+            List<ObjectNode> list = results.get(match.suggestion().type());
+            if (list.size() < limit) {
+                list.add(match.suggestion().result());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Suggestions held by this instance
+     */
+    public int size() {
+        return suggestions.size();
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    refresh();
+                    loaded = true;
+                }
+            }
+        }
+    }
+
+    private void refreshIfStale() {
+        if (System.nanoTime() - lastRefresh < REFRESH_INTERVAL.toNanos() || !refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        Thread.ofVirtual().start(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                LOG.warning("Typeahead refresh failed: " + e.getMessage());
+            } finally {
+                refreshing.set(false);
+            }
+        });
+    }
+
+    private synchronized void refresh() {
+        try {
+            Timestamp since = watermark == null ? null
+                    : Timestamp.ofTimeSecondsAndNanos(watermark.getSeconds() - FEED_OVERLAP.getSeconds(), watermark.getNanos());
+            Timestamp last = SearchIndex.readChanges(reader, since, this::apply);
+            if (last != null && (watermark == null || last.compareTo(watermark) > 0)) {
+                watermark = last;
+            }
+        } finally {
+            lastRefresh = System.nanoTime();
+        }
+    }
+
+    private void apply(SearchIndex.Change change) {
+        String key = change.type() + SEPARATOR + change.id();
+        Suggestion suggestion = change.result() == null ? null : suggestion(change.type(), change.result());
+        Suggestion previous = suggestion == null ? suggestions.remove(key) : suggestions.put(key, suggestion);
+
+        if (suggestion != null) {
+            for (String term : suggestion.terms()) {
+                terms.computeIfAbsent(term, t -> ConcurrentHashMap.newKeySet()).add(key);
+            }
+        }
+        if (previous != null) {
+            for (String term : previous.terms()) {
+                if (suggestion == null || !suggestion.terms().contains(term)) {
+                    terms.computeIfPresent(term, (t, keys) -> {
+                        keys.remove(key);
+                        return keys.isEmpty() ? null : keys;
+                    });
+                }
+            }
+        }
+    }
+
+    // Only the id and name of a result are typeahead terms, not every field the full search indexes
+    private static Suggestion suggestion(String type, ObjectNode result) {
+        String name = text(result.get("name"));
+        Set<String> names = new HashSet<>(SearchIndex.tokenize(text(result.get("id"))));
+        names.addAll(SearchIndex.tokenize(name));
+        return new Suggestion(type, name, result, Set.copyOf(names));
+    }
+
+    private static String text(JsonNode node) {
+        return node == null || node.isNull() ? "" : node.asText();
+    }
+}
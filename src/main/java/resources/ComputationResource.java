@@ -1,18 +1,18 @@
 package resources;
 
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
-import org.apache.commons.codec.digest.DigestUtils;
-
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.cloud.datastore.Datastore;
 import com.google.cloud.datastore.DatastoreException;
-import com.google.cloud.datastore.DatastoreOptions;
 import com.google.cloud.datastore.Entity;
 import com.google.cloud.datastore.Key;
 import com.google.cloud.datastore.KeyFactory;
@@ -22,7 +22,11 @@ import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
 import com.google.cloud.datastore.Transaction;
 import com.google.gson.Gson;
 
-import auth.AuthTokenUtil;
+import auth.Role;
+import auth.Secured;
+import auth.TokenVersionStore;
+import auth.UserCache;
+import auth.UserPrincipal;
 import constants.AccountConstants;
 import constants.ExecutionSheetConstants;
 import constants.WorkSheetConstants;
@@ -34,13 +38,23 @@ import dto.RemoveUserData;
 import dto.ViewStateData;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.GET;
-import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.SecurityContext;
+import jobs.Jobs;
+import jobs.SearchIndexJobs;
+import persistence.DatastoreGateway;
+import persistence.Fanout;
+import persistence.PageRequest;
+import persistence.SearchIndex;
+import persistence.StatsAggregate;
+import persistence.TypeaheadIndex;
+import security.PasswordHashingService;
 
 @Path("/utils")
 public class ComputationResource {
@@ -53,6 +67,10 @@ public class ComputationResource {
 	private static final String MESSAGE_ACCOUNT_NOT_ACTIVE = "You must have your account activated to perform this action.";
 	private static final String MESSAGE_INVALID_NEW_PASSWORD = "The password change attempt is invalid.";
 	private static final String MESSAGE_WRONG_PASSWORD = "Wrong password, please try again.";
+	private static final String MESSAGE_SERVER_BUSY = "Server busy, please try again.";
+	private static final String MESSAGE_PASSWORD_CHANGED = "The password was changed meanwhile, please try again.";
+	private static final String MESSAGE_REVOCATION_FAILED = "The user's sessions could not be revoked. Please try again.";
+	private static final String MESSAGE_INVALID_CURSOR = "Invalid cursor.";
 	private static final String MESSAGE_MISSING_ATTRIBUTE = "O utilizador alvo não tem o campo obrigatório preenchido: ";
 
 	private static final String LOG_MESSAGE_CHANGE_ROLE_ATTEMPT = "Change role attempt by user: ";
@@ -69,13 +87,19 @@ public class ComputationResource {
 	private static final String LOG_MESSAGE_WRONG_PASSWORD = "Wrong password in password change attempt by: ";
 	private static final String LOG_MESSAGE_VIEW_ROLE_ATTEMPT = "View state attempt by user: ";
 
+	// Suggestions per type answered by /search/suggest
+	private static final int MAX_SUGGESTIONS = 10;
+
 	private static final Logger LOG = Logger.getLogger(ComputationResource.class.getName());
-	private static final Datastore datastore = DatastoreOptions.getDefaultInstance().getService();
+	private static final Datastore datastore = DatastoreGateway.get();
 	private static final KeyFactory userKeyFactory = datastore.newKeyFactory().setKind(AccountConstants.USER);
 
 	private final Gson g = new Gson();
 	private final ObjectMapper mapper = new ObjectMapper();
 
+	@Context
+	private SecurityContext securityContext;
+
 	private static final String[] allAttributes = {
 			AccountConstants.DS_PARTNER,
 			AccountConstants.DS_PN,
@@ -127,18 +151,8 @@ public class ComputationResource {
 	@Path("/activateaccount")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response activateAccount(@HeaderParam("Authorization") String authHeader, ChangeStateData data) {
-
-		List<String> activateAccountRoles = new ArrayList<>();
-		activateAccountRoles.add(AccountConstants.SYSTEM_ADMIN_ROLE);
-		activateAccountRoles.add(AccountConstants.SYSTEM_BACKOFFICE_ROLE);
-
-		String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-		Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, activateAccountRoles);
-		if (user == null) {
-			return Response.status(Status.UNAUTHORIZED).entity(MESSAGE_INVALID_TOKEN).build();
-		}
-
+	@Secured({ Role.SYSADMIN, Role.SYSBO })
+	public Response activateAccount(ChangeStateData data) {
 		Transaction txn = datastore.newTransaction();
 
 		try {
@@ -198,11 +212,15 @@ public class ComputationResource {
 				}
 			}
 
+			String previousState = targetUser.contains(AccountConstants.DS_STATE)
+					? targetUser.getString(AccountConstants.DS_STATE) : null;
 			targetUser = Entity.newBuilder(targetUser)
 					.set(AccountConstants.DS_STATE, AccountConstants.ACTIVE_STATE)
 					.build();
 			txn.put(targetUser);
+			StatsAggregate.add(txn, StatsAggregate.Delta.userState(previousState, AccountConstants.ACTIVE_STATE));
 			txn.commit();
+			UserCache.invalidate(data.targetUsername);
 
 			return Response.ok(g.toJson(true)).build();
 		}
@@ -229,19 +247,10 @@ public class ComputationResource {
 	@Path("/changerole")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response changeUserRole(@HeaderParam("Authorization") String authHeader, ChangeRoleData data) {
+	@Secured({ Role.SYSADMIN, Role.SYSBO })
+	public Response changeUserRole(ChangeRoleData data) {
 		LOG.fine(LOG_MESSAGE_CHANGE_ROLE_ATTEMPT + data.username);
-
-		List<String> changeRoleRoles = new ArrayList<>();
-		changeRoleRoles.add(AccountConstants.SYSTEM_ADMIN_ROLE);
-		changeRoleRoles.add(AccountConstants.SYSTEM_BACKOFFICE_ROLE);
-
-		String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-		Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, changeRoleRoles);
-
-		if (user == null) {
-			return Response.status(Status.UNAUTHORIZED).entity(MESSAGE_INVALID_TOKEN).build();
-		}
+		UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 		Key userTargetKey = userKeyFactory.newKey(data.targetUsername);
 		Entity targetUser = datastore.get(userTargetKey);
@@ -250,7 +259,7 @@ public class ComputationResource {
 			return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
 		}
 
-		String requesterRole = user.getString(AccountConstants.DS_ROLE);
+		String requesterRole = user.getRole();
 		String targetRole = targetUser.getString(AccountConstants.DS_ROLE);
 		String newRole = data.role;
 
@@ -280,11 +289,26 @@ public class ComputationResource {
 
 		Entity updatedTarget = Entity.newBuilder(targetUser).set(AccountConstants.DS_ROLE, newRole).build();
 		datastore.put(updatedTarget);
+		SearchIndex.index(datastore, updatedTarget);
+		UserCache.invalidate(data.targetUsername);
+		if (!revokeTokens(data.targetUsername)) {
+			return Response.status(Status.INTERNAL_SERVER_ERROR).entity(MESSAGE_REVOCATION_FAILED).build();
+		}
 
 		LOG.info(LOG_MESSAGE_CHANGE_ROLE_SUCCESSFUL + data.username);
 		return Response.ok(g.toJson(true)).build();
 	}
 
+	// Revokes the target's tokens after a change to their account; the change is idempotent, so the caller can retry
+	private boolean revokeTokens(String username) {
+		try {
+			TokenVersionStore.bump(username);
+			return true;
+		} catch (DatastoreException e) {
+			return false;
+		}
+	}
+
 	private boolean isModifiable(String role) {
 		return !role.equals(AccountConstants.ADHERENT_LANDOWNER_USER) &&
 				!role.equals(AccountConstants.REGISTERED_USER) &&
@@ -295,55 +319,65 @@ public class ComputationResource {
 	@Path("/changestate")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response changeUserState(@HeaderParam("Authorization") String authHeader, ChangeStateData data) {
+	@Secured({ Role.SYSADMIN, Role.SYSBO })
+	public Response changeUserState(ChangeStateData data) {
 		LOG.fine(LOG_MESSAGE_CHANGE_STATE_ATTEMPT);
+		UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-		List<String> changeStateRoles = new ArrayList<>();
-		changeStateRoles.add(AccountConstants.SYSTEM_ADMIN_ROLE);
-		changeStateRoles.add(AccountConstants.SYSTEM_BACKOFFICE_ROLE);
-
-		String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-		Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, changeStateRoles);
-		if (user == null) {
-			return Response.status(Status.UNAUTHORIZED).entity(MESSAGE_INVALID_TOKEN).build();
-		}
-
-		String username = user.getString(AccountConstants.DS_USERNAME);
+		String username = user.getUsername();
 
+		// The state and its statistics delta commit together
 		Key userTargetKey = userKeyFactory.newKey(data.targetUsername);
-		Entity targetUser = datastore.get(userTargetKey);
-		if (targetUser == null) {
-			LOG.warning(LOG_MESSAGE_NONEXISTING_USER + data.targetUsername);
-			return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-		}
+		Transaction txn = datastore.newTransaction();
+		try {
+			Entity targetUser = txn.get(userTargetKey);
+			if (targetUser == null) {
+				LOG.warning(LOG_MESSAGE_NONEXISTING_USER + data.targetUsername);
+				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
+			}
 
-		String requesterRole = user.getString(AccountConstants.DS_ROLE);
-		String targetRole = targetUser.getString(AccountConstants.DS_ROLE);
-		String newState = data.state;
+			String requesterRole = user.getRole();
+			String targetRole = targetUser.getString(AccountConstants.DS_ROLE);
+			String newState = data.state;
 
-		boolean allowed = false;
-		if (isStateValid(targetRole, newState)) {
-			switch (requesterRole) {
-				case AccountConstants.SYSTEM_ADMIN_ROLE:
-					allowed = true;
-					break;
-				case AccountConstants.SYSTEM_BACKOFFICE_ROLE:
-					if (!targetRole.equals(AccountConstants.SYSTEM_ADMIN_ROLE)) {
+			boolean allowed = false;
+			if (isStateValid(targetRole, newState)) {
+				switch (requesterRole) {
+					case AccountConstants.SYSTEM_ADMIN_ROLE:
 						allowed = true;
-					}
-					break;
-				default:
-					allowed = false;
+						break;
+					case AccountConstants.SYSTEM_BACKOFFICE_ROLE:
+						if (!targetRole.equals(AccountConstants.SYSTEM_ADMIN_ROLE)) {
+							allowed = true;
+						}
+						break;
+					default:
+						allowed = false;
+				}
 			}
-		}
 
-		if (!allowed) {
-			LOG.warning(LOG_MESSAGE_USER_WITHOUT_PERMISSION + username);
-			return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_PERMISSION).build();
-		}
+			if (!allowed) {
+				LOG.warning(LOG_MESSAGE_USER_WITHOUT_PERMISSION + username);
+				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_PERMISSION).build();
+			}
 
-		Entity updatedTarget = Entity.newBuilder(targetUser).set(AccountConstants.DS_STATE, newState).build();
-		datastore.put(updatedTarget);
+			String previousState = targetUser.contains(AccountConstants.DS_STATE)
+					? targetUser.getString(AccountConstants.DS_STATE) : null;
+			txn.put(Entity.newBuilder(targetUser).set(AccountConstants.DS_STATE, newState).build());
+			StatsAggregate.add(txn, StatsAggregate.Delta.userState(previousState, newState));
+			txn.commit();
+		} catch (DatastoreException e) {
+			LOG.severe("Datastore error: " + e.getMessage());
+			return Response.status(Status.INTERNAL_SERVER_ERROR).entity("Internal server error").build();
+		} finally {
+			if (txn.isActive()) {
+				txn.rollback();
+			}
+		}
+		UserCache.invalidate(data.targetUsername);
+		if (!revokeTokens(data.targetUsername)) {
+			return Response.status(Status.INTERNAL_SERVER_ERROR).entity(MESSAGE_REVOCATION_FAILED).build();
+		}
 
 		LOG.info(LOG_MESSAGE_CHANGE_STATE_SUCCESSFUL + data.targetUsername);
 		return Response.ok(g.toJson(true)).build();
@@ -359,18 +393,10 @@ public class ComputationResource {
 	@Path("/removeaccount")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response removeUserAccount(@HeaderParam("Authorization") String authHeader, RemoveUserData data) {
+	@Secured({ Role.SYSADMIN, Role.SYSBO })
+	public Response removeUserAccount(RemoveUserData data) {
 		LOG.fine(LOG_MESSAGE_REMOVE_USER_ATTEMPT + data.username);
-
-		List<String> removeAccountRoles = new ArrayList<>();
-		removeAccountRoles.add(AccountConstants.SYSTEM_ADMIN_ROLE);
-		removeAccountRoles.add(AccountConstants.SYSTEM_BACKOFFICE_ROLE);
-
-		String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-		Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, removeAccountRoles);
-		if (user == null) {
-			return Response.status(Status.UNAUTHORIZED).entity(MESSAGE_INVALID_TOKEN).build();
-		}
+		UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 		Key targetKey = userKeyFactory.newKey(data.targetUsername);
 		Entity target = datastore.get(targetKey);
@@ -379,7 +405,7 @@ public class ComputationResource {
 			return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
 		}
 
-		String requesterRole = user.getString(AccountConstants.DS_ROLE);
+		String requesterRole = user.getRole();
 		String targetRole = target.getString(AccountConstants.DS_ROLE);
 
 		boolean allowed = false;
@@ -401,7 +427,31 @@ public class ComputationResource {
 			return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_PERMISSION).build();
 		}
 
-		datastore.delete(targetKey);
+		// Revoked first: once the account is gone a retry would find no target, so it could not revoke anything
+		if (!revokeTokens(data.targetUsername)) {
+			return Response.status(Status.INTERNAL_SERVER_ERROR).entity(MESSAGE_REVOCATION_FAILED).build();
+		}
+		// The removal and its statistics delta commit together, counted from the user as it is deleted
+		Transaction txn = datastore.newTransaction();
+		try {
+			Entity current = txn.get(targetKey);
+			if (current != null) {
+				txn.delete(targetKey);
+				StatsAggregate.add(txn, StatsAggregate.Delta.user(false,
+						current.contains(AccountConstants.DS_STATE) ? current.getString(AccountConstants.DS_STATE)
+								: null));
+				txn.commit();
+			}
+		} catch (DatastoreException e) {
+			LOG.severe("Datastore error: " + e.getMessage());
+			return Response.status(Status.INTERNAL_SERVER_ERROR).entity("Internal server error").build();
+		} finally {
+			if (txn.isActive()) {
+				txn.rollback();
+			}
+		}
+		SearchIndex.remove(datastore, targetKey);
+		UserCache.invalidate(data.targetUsername);
 		return Response.ok(g.toJson(true)).build();
 	}
 
@@ -409,14 +459,14 @@ public class ComputationResource {
 	@Path("/changeattribute")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response changeAccountAttributes(@HeaderParam("Authorization") String authHeader, ChangeAttributeData data) {
+	@Secured
+	public Response changeAccountAttributes(ChangeAttributeData data) {
 		LOG.info(LOG_MESSAGE_CHANGE_ATTRIBUTE_ATTEMPT + data.username);
 
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-			if (user == null || data.username == null || data.targetUsername == null) {
+			if (data.username == null || data.targetUsername == null) {
 				LOG.warning(MESSAGE_INVALID_USER);
 				return Response.status(Status.UNAUTHORIZED)
 						.entity(MESSAGE_INVALID_USER)
@@ -425,7 +475,7 @@ public class ComputationResource {
 
 			// Check if user is modifying their own attributes
 			boolean isSelfModification = data.username.equals(data.targetUsername);
-			String userRole = user.getString(AccountConstants.DS_ROLE);
+			String userRole = user.getRole();
 
 			// Allow users to modify their own attributes
 			if (isSelfModification) {
@@ -438,13 +488,24 @@ public class ComputationResource {
 				};
 
 				if (Arrays.asList(selfModifiableAttributes).contains(data.attributeName)) {
-					Entity targetUser = user; // Same as user for self-modification
-
-					Entity updatedUser = Entity.newBuilder(targetUser)
-							.set(data.attributeName, data.newValue)
-							.build();
-
-					datastore.update(updatedUser);
+					// The cached entity may be stale, so only the attribute is written, onto the stored user
+					Entity updatedUser;
+					Transaction txn = datastore.newTransaction();
+					try {
+						Entity current = txn.get(userKeyFactory.newKey(user.getUsername()));
+						if (current == null) {
+							return Response.status(Status.NOT_FOUND).entity(MESSAGE_INVALID_USER).build();
+						}
+						updatedUser = Entity.newBuilder(current).set(data.attributeName, data.newValue).build();
+						txn.put(updatedUser);
+						txn.commit();
+					} finally {
+						if (txn.isActive()) {
+							txn.rollback();
+						}
+					}
+					SearchIndex.index(datastore, updatedUser);
+					UserCache.invalidate(user.getUsername());
 
 					LOG.info(LOG_MESSAGE_CHANGE_ATTRIBUTE_SUCCESSFUL + data.username);
 					return Response.ok(true).build();
@@ -474,6 +535,8 @@ public class ComputationResource {
 					.build();
 
 			datastore.update(updatedUser);
+			SearchIndex.index(datastore, updatedUser);
+			UserCache.invalidate(data.targetUsername);
 
 			LOG.info(LOG_MESSAGE_CHANGE_ATTRIBUTE_SUCCESSFUL + data.username);
 			return Response.ok(true).build();
@@ -497,41 +560,54 @@ public class ComputationResource {
 	@Path("/changepassword")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response changePassword(@HeaderParam("Authorization") String authHeader, ChangePasswordData data) {
-
-		List<String> changePasswordRoles = new ArrayList<>();
-		changePasswordRoles.add(AccountConstants.SYSTEM_ADMIN_ROLE);
-		changePasswordRoles.add(AccountConstants.SYSTEM_BACKOFFICE_ROLE);
-		changePasswordRoles.add(AccountConstants.SHEET_MANAGER_BACKOFFICE);
-		changePasswordRoles.add(AccountConstants.SHEET_GENERAL_VIEWER_BACKOFFICE);
-		changePasswordRoles.add(AccountConstants.SHEET_DETAILED_VIEWER_BACKOFFICE);
-		changePasswordRoles.add(AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE);
-		changePasswordRoles.add(AccountConstants.PARTNER_OPERATOR);
-		changePasswordRoles.add(AccountConstants.ADHERENT_LANDOWNER_USER);
-		changePasswordRoles.add(AccountConstants.REGISTERED_USER);
-
-		String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-		Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, changePasswordRoles);
-		if (user == null) {
-			return Response.status(Status.UNAUTHORIZED).entity(MESSAGE_INVALID_TOKEN).build();
-		}
+	@Secured({ Role.SYSADMIN, Role.SYSBO, Role.SMBO, Role.SGVBO, Role.SDVBO, Role.PRBO, Role.PO, Role.ADLU, Role.RU })
+	public Response changePassword(ChangePasswordData data) {
+		UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
+		Key userKey = userKeyFactory.newKey(user.getUsername());
 
 		if (data.newPassword == null || data.newPassword.length() < 8) {
 			LOG.warning(LOG_MESSAGE_CHANGE_PASSWORD_INVALID + data.username);
 			return Response.status(Status.BAD_REQUEST).entity(MESSAGE_INVALID_NEW_PASSWORD).build();
 		}
 
-		String hashedOldPassword = DigestUtils.sha512Hex(data.oldPassword);
-		String currentPassword = user.getString(AccountConstants.DS_PWD);
-
-		if (!hashedOldPassword.equals(currentPassword)) {
-			LOG.warning(LOG_MESSAGE_WRONG_PASSWORD + data.username);
-			return Response.status(Status.FORBIDDEN).entity(MESSAGE_WRONG_PASSWORD).build();
+		// Verified against the stored hash, not the cached one, which may predate a change made elsewhere
+		Entity stored = datastore.get(userKey);
+		if (stored == null || !stored.contains(AccountConstants.DS_PWD)) {
+			return Response.status(Status.UNAUTHORIZED).entity(MESSAGE_INVALID_TOKEN).build();
+		}
+		String currentPassword = stored.getString(AccountConstants.DS_PWD);
+		String hashedNewPassword;
+		try {
+			if (!PasswordHashingService.verify(data.oldPassword, currentPassword)) {
+				LOG.warning(LOG_MESSAGE_WRONG_PASSWORD + data.username);
+				return Response.status(Status.FORBIDDEN).entity(MESSAGE_WRONG_PASSWORD).build();
+			}
+			hashedNewPassword = PasswordHashingService.hash(data.newPassword);
+		} catch (PasswordHashingService.OverloadedException e) {
+			LOG.warning(e.getMessage());
+			return Response.status(Status.SERVICE_UNAVAILABLE).entity(MESSAGE_SERVER_BUSY).header("Retry-After", "1").build();
 		}
 
-		String hashedNewPassword = DigestUtils.sha512Hex(data.newPassword);
-		Entity updatedUser = Entity.newBuilder(user).set(AccountConstants.DS_PWD, hashedNewPassword).build();
-		datastore.put(updatedUser);
+		// Only the password is written, and only if it is still the one that was verified
+		Transaction txn = datastore.newTransaction();
+		try {
+			Entity current = txn.get(userKey);
+			if (current == null || !current.contains(AccountConstants.DS_PWD)
+					|| !current.getString(AccountConstants.DS_PWD).equals(currentPassword)) {
+				LOG.warning(LOG_MESSAGE_WRONG_PASSWORD + data.username);
+				return Response.status(Status.CONFLICT).entity(MESSAGE_PASSWORD_CHANGED).build();
+			}
+			txn.put(Entity.newBuilder(current).set(AccountConstants.DS_PWD, hashedNewPassword).build());
+			txn.commit();
+		} catch (DatastoreException e) {
+			LOG.severe("Datastore error: " + e.getMessage());
+			return Response.status(Status.INTERNAL_SERVER_ERROR).entity("Internal server error").build();
+		} finally {
+			if (txn.isActive()) {
+				txn.rollback();
+			}
+		}
+		UserCache.invalidate(user.getUsername());
 
 		LOG.info(LOG_MESSAGE_CHANGE_PASSWORD_SUCCESSFUL + data.username);
 		return Response.ok(g.toJson(true)).build();
@@ -541,29 +617,31 @@ public class ComputationResource {
 	@Path("/requestAccountRemoval")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response requestAccountRemoval(@HeaderParam("Authorization") String authHeader) {
-
-		List<String> changePasswordRoles = new ArrayList<>();
-		changePasswordRoles.add(AccountConstants.SYSTEM_ADMIN_ROLE);
-		changePasswordRoles.add(AccountConstants.SYSTEM_BACKOFFICE_ROLE);
-		changePasswordRoles.add(AccountConstants.SHEET_MANAGER_BACKOFFICE);
-		changePasswordRoles.add(AccountConstants.SHEET_GENERAL_VIEWER_BACKOFFICE);
-		changePasswordRoles.add(AccountConstants.SHEET_DETAILED_VIEWER_BACKOFFICE);
-		changePasswordRoles.add(AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE);
-		changePasswordRoles.add(AccountConstants.PARTNER_OPERATOR);
-		changePasswordRoles.add(AccountConstants.ADHERENT_LANDOWNER_USER);
-		changePasswordRoles.add(AccountConstants.REGISTERED_USER);
-
-		String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-		Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, changePasswordRoles);
-		if (user == null) {
-			return Response.status(Status.UNAUTHORIZED).entity(MESSAGE_INVALID_TOKEN).build();
-		}
+	@Secured({ Role.SYSADMIN, Role.SYSBO, Role.SMBO, Role.SGVBO, Role.SDVBO, Role.PRBO, Role.PO, Role.ADLU, Role.RU })
+	public Response requestAccountRemoval() {
+		UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-		Entity updatedUser = Entity.newBuilder(user)
-				.set(AccountConstants.DS_STATE, AccountConstants.TO_REMOVE_STATE)
-				.build();
-		datastore.put(updatedUser);
+		// Only the state is written, onto the stored user: the cached one may miss a role or state set elsewhere
+		Transaction txn = datastore.newTransaction();
+		try {
+			Entity current = txn.get(userKeyFactory.newKey(user.getUsername()));
+			if (current == null) {
+				return Response.status(Status.UNAUTHORIZED).entity(MESSAGE_INVALID_TOKEN).build();
+			}
+			String previousState = current.contains(AccountConstants.DS_STATE)
+					? current.getString(AccountConstants.DS_STATE) : null;
+			txn.put(Entity.newBuilder(current).set(AccountConstants.DS_STATE, AccountConstants.TO_REMOVE_STATE).build());
+			StatsAggregate.add(txn, StatsAggregate.Delta.userState(previousState, AccountConstants.TO_REMOVE_STATE));
+			txn.commit();
+		} catch (DatastoreException e) {
+			LOG.severe("Datastore error: " + e.getMessage());
+			return Response.status(Status.INTERNAL_SERVER_ERROR).entity("Internal server error").build();
+		} finally {
+			if (txn.isActive()) {
+				txn.rollback();
+			}
+		}
+		UserCache.invalidate(user.getUsername());
 
 		return Response.ok(g.toJson(true)).build();
 	}
@@ -572,28 +650,32 @@ public class ComputationResource {
 	@Path("/changeprivacy")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response changePrivacy(@HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response changePrivacy() {
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-
-			if (user == null) {
-				LOG.warning(MESSAGE_INVALID_USER);
-				return Response.status(Status.UNAUTHORIZED)
-						.entity(MESSAGE_INVALID_USER)
-						.build();
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
+
+			// Toggled on the stored user, not the cached one, and only the profile is written
+			Transaction txn = datastore.newTransaction();
+			try {
+				Entity current = txn.get(userKeyFactory.newKey(user.getUsername()));
+				if (current == null) {
+					return Response.status(Status.UNAUTHORIZED).entity(MESSAGE_INVALID_USER).build();
+				}
+				String currentPrivacy = current.contains(AccountConstants.DS_PROFILE)
+						? current.getString(AccountConstants.DS_PROFILE)
+						: AccountConstants.PUBLIC_PROFILE;
+				String newPrivacy = currentPrivacy.equals(AccountConstants.PUBLIC_PROFILE)
+						? AccountConstants.PRIVATE_PROFILE
+						: AccountConstants.PUBLIC_PROFILE;
+				txn.put(Entity.newBuilder(current).set(AccountConstants.DS_PROFILE, newPrivacy).build());
+				txn.commit();
+			} finally {
+				if (txn.isActive()) {
+					txn.rollback();
+				}
 			}
-
-			String currentPrivacy = user.contains(AccountConstants.DS_PROFILE) ? user.getString(AccountConstants.DS_PROFILE)
-					: AccountConstants.PUBLIC_PROFILE;
-			String newPrivacy = currentPrivacy.equals(AccountConstants.PUBLIC_PROFILE) ? AccountConstants.PRIVATE_PROFILE
-					: AccountConstants.PUBLIC_PROFILE;
-
-			Entity updatedUser = Entity.newBuilder(user)
-					.set(AccountConstants.DS_PROFILE, newPrivacy)
-					.build();
-
-			datastore.update(updatedUser);
+			UserCache.invalidate(user.getUsername());
 
 			return Response.ok(true).build();
 
@@ -609,25 +691,10 @@ public class ComputationResource {
 	@Path("/viewState")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response viewState(@HeaderParam("Authorization") String authHeader, ViewStateData data) {
+	@Secured({ Role.SYSADMIN, Role.SYSBO, Role.SMBO, Role.SGVBO, Role.SDVBO, Role.PRBO, Role.PO, Role.ADLU, Role.RU })
+	public Response viewState(ViewStateData data) {
 		LOG.fine(LOG_MESSAGE_VIEW_ROLE_ATTEMPT + data.username);
-
-		List<String> viewStateRoles = new ArrayList<>();
-		viewStateRoles.add(AccountConstants.SYSTEM_ADMIN_ROLE);
-		viewStateRoles.add(AccountConstants.SYSTEM_BACKOFFICE_ROLE);
-		viewStateRoles.add(AccountConstants.SHEET_MANAGER_BACKOFFICE);
-		viewStateRoles.add(AccountConstants.SHEET_GENERAL_VIEWER_BACKOFFICE);
-		viewStateRoles.add(AccountConstants.SHEET_DETAILED_VIEWER_BACKOFFICE);
-		viewStateRoles.add(AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE);
-		viewStateRoles.add(AccountConstants.PARTNER_OPERATOR);
-		viewStateRoles.add(AccountConstants.ADHERENT_LANDOWNER_USER);
-		viewStateRoles.add(AccountConstants.REGISTERED_USER);
-
-		String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-		Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, viewStateRoles);
-		if (user == null) {
-			return Response.status(Status.UNAUTHORIZED).entity(MESSAGE_INVALID_TOKEN).build();
-		}
+		UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 		Key targetKey = userKeyFactory.newKey(data.targetUsername);
 		Entity target = datastore.get(targetKey);
@@ -636,7 +703,7 @@ public class ComputationResource {
 			return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
 		}
 
-		String requesterRole = user.getString(AccountConstants.DS_ROLE);
+		String requesterRole = user.getRole();
 		String targetRole = target.getString(AccountConstants.DS_ROLE);
 		String targetState = target.getString(AccountConstants.DS_STATE);
 
@@ -683,238 +750,138 @@ public class ComputationResource {
 	@GET
 	@Path("/search")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response globalSearch(@HeaderParam("Authorization") String authHeader,
-			@jakarta.ws.rs.QueryParam("q") String query,
+	@Secured
+	public Response globalSearch(@jakarta.ws.rs.QueryParam("q") String query,
 			@jakarta.ws.rs.QueryParam("type") String type,
-			@jakarta.ws.rs.QueryParam("limit") Integer limitParam) {
+			@jakarta.ws.rs.QueryParam("limit") Integer limitParam,
+			@jakarta.ws.rs.QueryParam("pageSize") Integer pageSize,
+			@jakarta.ws.rs.QueryParam("cursor") String cursor) {
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-
-			if (user == null) {
-				return Response.status(Status.FORBIDDEN).entity("Invalid or expired token").build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 			if (query == null || query.trim().isEmpty()) {
 				return Response.status(Status.BAD_REQUEST).entity("Search query is required").build();
 			}
 
-			String searchQuery = query.trim().toLowerCase();
-			int limit = (limitParam != null && limitParam > 0) ? limitParam : 20;
-			String userRole = user.getString(AccountConstants.DS_ROLE);
+			String userRole = user.getRole();
 
-			ObjectNode result = mapper.createObjectNode();
-			ArrayNode usersArray = result.putArray("users");
-			ArrayNode worksheetsArray = result.putArray("worksheets");
-			ArrayNode executionSheetsArray = result.putArray("executionSheets");
-			ArrayNode activitiesArray = result.putArray("activities");
-			ArrayNode postsArray = result.putArray("posts");
-
-			// Search users (only if user has permission to view users)
-			if ((type == null || "users".equals(type)) && 
-				(AccountConstants.SYSTEM_ADMIN_ROLE.equals(userRole) || 
-				 AccountConstants.SYSTEM_BACKOFFICE_ROLE.equals(userRole))) {
-				
-				Query<Entity> usersQuery = Query.newEntityQueryBuilder()
-						.setKind(AccountConstants.USER)
-						.build();
-				QueryResults<Entity> usersResults = datastore.run(usersQuery);
-
-				while (usersResults.hasNext() && usersArray.size() < limit) {
-					Entity userEntity = usersResults.next();
-					String username = userEntity.getString(AccountConstants.DS_USERNAME);
-					String name = userEntity.contains(AccountConstants.DS_FULLNAME) ? 
-						userEntity.getString(AccountConstants.DS_FULLNAME) : username;
-					String email = userEntity.contains(AccountConstants.DS_EMAIL) ? 
-						userEntity.getString(AccountConstants.DS_EMAIL) : "";
-					String role = userEntity.getString(AccountConstants.DS_ROLE);
-
-					if (username.toLowerCase().contains(searchQuery) || 
-						name.toLowerCase().contains(searchQuery) || 
-						email.toLowerCase().contains(searchQuery) ||
-						role.toLowerCase().contains(searchQuery)) {
-						
-						ObjectNode userNode = mapper.createObjectNode();
-						userNode.put("id", username);
-						userNode.put("name", name);
-						userNode.put("username", username);
-						userNode.put("email", email);
-						userNode.put("role", role);
-						userNode.put("type", "user");
-						userNode.put("displayName", name + " (" + username + ")");
-						usersArray.add(userNode);
+			// Only the types the role may see are searched, so the index entries of the others are never read
+			PageRequest page;
+			Map<String, Integer> offsets = new LinkedHashMap<>();
+			try {
+				page = PageRequest.ofComposite(pageSize, cursor);
+				for (String searchType : SearchIndex.visibleTypes(userRole)) {
+					if ((type == null || type.equals(searchType)) && !page.isExhausted(searchType)) {
+						offsets.put(searchType, page.startOffset(searchType));
 					}
 				}
+			} catch (IllegalArgumentException e) {
+				return Response.status(Status.BAD_REQUEST).entity(MESSAGE_INVALID_CURSOR).build();
 			}
+			int limit = page.paged() ? page.pageSize() : (limitParam != null && limitParam > 0) ? limitParam : 20;
 
-			// Search worksheets
-			if (type == null || "worksheets".equals(type)) {
-				Query<Entity> worksheetsQuery = Query.newEntityQueryBuilder()
-						.setKind(WorkSheetConstants.WORKSHEET)
-						.build();
-				QueryResults<Entity> worksheetsResults = datastore.run(worksheetsQuery);
-
-				while (worksheetsResults.hasNext() && worksheetsArray.size() < limit) {
-					Entity worksheet = worksheetsResults.next();
-					Long worksheetId = worksheet.getKey().getId();
-					String worksheetName = "Worksheet " + worksheetId;
-					
-					// Check if worksheet contains search query in any field
-					boolean matches = false;
-					for (String propertyName : worksheet.getNames()) {
-						Object value = worksheet.getValue(propertyName);
-						if (value != null && value.toString().toLowerCase().contains(searchQuery)) {
-							matches = true;
-							break;
-						}
-					}
-
-					if (matches || worksheetName.toLowerCase().contains(searchQuery)) {
-						ObjectNode worksheetNode = mapper.createObjectNode();
-						worksheetNode.put("id", worksheetId);
-						worksheetNode.put("name", worksheetName);
-						worksheetNode.put("type", "worksheet");
-						worksheetNode.put("displayName", worksheetName);
-						worksheetsArray.add(worksheetNode);
+			ObjectNode result = mapper.createObjectNode();
+			Map<String, String> sources = new LinkedHashMap<>();
+			// The types are independent, so they are searched concurrently
+			try (Fanout fanout = Fanout.open()) {
+				Map<String, Fanout.Task<SearchPage>> tasks = new LinkedHashMap<>();
+				offsets.forEach((searchType, offset) -> tasks.put(searchType,
+						fanout.fork(() -> searchPage(searchType, query, offset, limit))));
+				fanout.join();
+
+				for (String searchType : SearchIndex.TYPES) {
+					ArrayNode results = result.putArray(searchType);
+					Fanout.Task<SearchPage> task = tasks.get(searchType);
+					if (task == null) {
+						sources.put(searchType, PageRequest.sourceOffset(0, 0));
+						continue;
 					}
+					SearchPage found = task.get();
+					results.addAll(found.results());
+					sources.put(searchType, PageRequest.sourceOffset(found.next(), found.total()));
 				}
 			}
 
-			// Search execution sheets
-			if (type == null || "executionSheets".equals(type)) {
-				Query<Entity> execSheetsQuery = Query.newEntityQueryBuilder()
-						.setKind(ExecutionSheetConstants.EXEC_SHEET)
-						.build();
-				QueryResults<Entity> execSheetsResults = datastore.run(execSheetsQuery);
-
-				while (execSheetsResults.hasNext() && executionSheetsArray.size() < limit) {
-					Entity execSheet = execSheetsResults.next();
-					String execSheetId = execSheet.getKey().getName();
-					String execSheetName = "Execution Sheet " + execSheetId.replace("execution_", "");
-					
-					// Check if execution sheet contains search query in any field
-					boolean matches = false;
-					for (String propertyName : execSheet.getNames()) {
-						Object value = execSheet.getValue(propertyName);
-						if (value != null && value.toString().toLowerCase().contains(searchQuery)) {
-							matches = true;
-							break;
-						}
-					}
-
-					if (matches || execSheetName.toLowerCase().contains(searchQuery)) {
-						ObjectNode execSheetNode = mapper.createObjectNode();
-						execSheetNode.put("id", execSheetId);
-						execSheetNode.put("name", execSheetName);
-						execSheetNode.put("type", "executionSheet");
-						execSheetNode.put("displayName", execSheetName);
-						executionSheetsArray.add(execSheetNode);
-					}
-				}
+			if (page.paged()) {
+				String nextCursor = PageRequest.encodeComposite(sources);
+				return Response.ok(mapper.writeValueAsString(page.envelope(result, nextCursor))).build();
 			}
+			return Response.ok(mapper.writeValueAsString(result)).build();
 
-			// Search activities (photos and videos)
-			if (type == null || "activities".equals(type)) {
-				// Search photos
-				Query<Entity> photosQuery = Query.newEntityQueryBuilder()
-						.setKind("ExecutionSheetPhoto")
-						.build();
-				QueryResults<Entity> photosResults = datastore.run(photosQuery);
-
-				while (photosResults.hasNext() && activitiesArray.size() < limit) {
-					Entity photo = photosResults.next();
-					String photoId = photo.getKey().getName();
-					String description = photo.contains("description") ? 
-						photo.getString("description") : "Photo";
-					String executionSheetId = photo.contains("executionSheetId") ? 
-						photo.getString("executionSheetId") : "";
-					
-					if (description.toLowerCase().contains(searchQuery) || 
-						executionSheetId.toLowerCase().contains(searchQuery)) {
-						
-						ObjectNode activityNode = mapper.createObjectNode();
-						activityNode.put("id", photoId);
-						activityNode.put("name", description);
-						activityNode.put("type", "activity");
-						activityNode.put("activityType", "photo");
-						activityNode.put("executionSheetId", executionSheetId);
-						activityNode.put("displayName", "Photo: " + description);
-						activitiesArray.add(activityNode);
-					}
-				}
+		} catch (Exception e) {
+			LOG.severe("Error in global search: " + e.getMessage());
+			return Response.status(Status.INTERNAL_SERVER_ERROR)
+					.entity("Error performing search: " + e.getMessage())
+					.build();
+		}
+	}
 
-				// Search videos
-				Query<Entity> videosQuery = Query.newEntityQueryBuilder()
-						.setKind("ExecutionSheetVideo")
-						.build();
-				QueryResults<Entity> videosResults = datastore.run(videosQuery);
-
-				while (videosResults.hasNext() && activitiesArray.size() < limit) {
-					Entity video = videosResults.next();
-					String videoId = video.getKey().getName();
-					String description = video.contains("description") ? 
-						video.getString("description") : "Video";
-					String executionSheetId = video.contains("executionSheetId") ? 
-						video.getString("executionSheetId") : "";
-					
-					if (description.toLowerCase().contains(searchQuery) || 
-						executionSheetId.toLowerCase().contains(searchQuery)) {
-						
-						ObjectNode activityNode = mapper.createObjectNode();
-						activityNode.put("id", videoId);
-						activityNode.put("name", description);
-						activityNode.put("type", "activity");
-						activityNode.put("activityType", "video");
-						activityNode.put("executionSheetId", executionSheetId);
-						activityNode.put("displayName", "Video: " + description);
-						activitiesArray.add(activityNode);
-					}
-				}
-			}
+	/**
+	 * Typeahead for the dashboard search box, answered from this instance's memory.
+	 * Same response shape as /search; the full search runs when the user submits the query.
+	 */
+	@GET
+	@Path("/search/suggest")
+	@Produces(MediaType.APPLICATION_JSON)
+	@Secured
+	public Response suggest(@jakarta.ws.rs.QueryParam("q") String query,
+			@jakarta.ws.rs.QueryParam("limit") Integer limitParam) {
+		try {
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-			// Search posts (social feed)
-			if (type == null || "posts".equals(type)) {
-				// Search text posts
-				Query<Entity> textPostsQuery = Query.newEntityQueryBuilder()
-						.setKind("SocialPost")
-						.build();
-				QueryResults<Entity> textPostsResults = datastore.run(textPostsQuery);
-
-				while (textPostsResults.hasNext() && postsArray.size() < limit) {
-					Entity post = textPostsResults.next();
-					String postId = post.getKey().getName();
-					String content = post.contains("content") ? 
-						post.getString("content") : "";
-					String postType = post.contains("type") ? 
-						post.getString("type") : "text";
-					String executionSheetId = post.contains("executionSheetId") ? 
-						post.getString("executionSheetId") : "";
-					
-					if (content.toLowerCase().contains(searchQuery) || 
-						postType.toLowerCase().contains(searchQuery) ||
-						executionSheetId.toLowerCase().contains(searchQuery)) {
-						
-						ObjectNode postNode = mapper.createObjectNode();
-						postNode.put("id", postId);
-						postNode.put("name", content.length() > 50 ? content.substring(0, 50) + "..." : content);
-						postNode.put("type", "post");
-						postNode.put("postType", postType);
-						postNode.put("executionSheetId", executionSheetId);
-						postNode.put("displayName", postType + " post: " + 
-							(content.length() > 30 ? content.substring(0, 30) + "..." : content));
-						postsArray.add(postNode);
-					}
-				}
+			if (query == null || query.trim().isEmpty()) {
+				return Response.status(Status.BAD_REQUEST).entity("Search query is required").build();
 			}
 
-			return Response.ok(mapper.writeValueAsString(result)).build();
+			int limit = (limitParam != null && limitParam > 0) ? Math.min(limitParam, MAX_SUGGESTIONS) : MAX_SUGGESTIONS;
+			Map<String, List<ObjectNode>> suggestions = TypeaheadIndex.get().suggest(query,
+					SearchIndex.visibleTypes(user.getRole()), limit);
+			return Response.ok(mapper.writeValueAsString(suggestions)).build();
 
 		} catch (Exception e) {
-			LOG.severe("Error in global search: " + e.getMessage());
+			LOG.severe("Error in search suggestions: " + e.getMessage());
 			return Response.status(Status.INTERNAL_SERVER_ERROR)
 					.entity("Error performing search: " + e.getMessage())
 					.build();
 		}
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Rebuilds the search index from the searchable kinds, for data written before the index existed.
+	 * The kinds are indexed a page at a time by a job; the response points at it, and a call made while it is
+	 * still running points at the running one.
+	 */
+	@POST
+	@Path("/search/reindex")
+	@Produces(MediaType.APPLICATION_JSON)
+	@Secured({ Role.SYSADMIN })
+	public Response reindexSearch() {
+		UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
+		String jobId = SearchIndexJobs.REINDEX_JOB_ID;
+		try {
+			if (Jobs.enqueue(jobId, SearchIndexJobs.REINDEX, "")) {
+				LOG.info("Search reindex started by " + user.getUsername());
+			}
+		} catch (DatastoreException e) {
+			return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.toString()).build();
+		}
+		return Response.accepted().location(URI.create("jobs/" + jobId)).build();
+	}
+
+	/**
+	 * One type of search results
+	 * @param results results of the page
+	 * @param next offset of the first result after the page
+	 * @param total results of the type
+	 */
+	private record SearchPage(List<ObjectNode> results, int next, int total) {
+	}
+
+	private SearchPage searchPage(String type, String query, int offset, int limit) {
+		List<SearchIndex.Hit> hits = SearchIndex.search(datastore, type, query);
+		int end = Math.min(hits.size(), offset + limit);
+		List<SearchIndex.Hit> pageHits = offset < end ? hits.subList(offset, end) : List.of();
+		return new SearchPage(SearchIndex.results(datastore, type, pageHits), end, hits.size());
+	}
+
+}
@@ -1,24 +1,20 @@
 package resources;
 
 import java.io.IOException;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.locationtech.proj4j.CRSFactory;
-import org.locationtech.proj4j.CoordinateTransform;
-import org.locationtech.proj4j.CoordinateTransformFactory;
-import org.locationtech.proj4j.ProjCoordinate;
-
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -27,7 +23,6 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.cloud.Timestamp;
 import com.google.cloud.datastore.Datastore;
 import com.google.cloud.datastore.DatastoreException;
-import com.google.cloud.datastore.DatastoreOptions;
 import com.google.cloud.datastore.Entity;
 import com.google.cloud.datastore.Key;
 import com.google.cloud.datastore.KeyFactory;
@@ -45,15 +40,18 @@ import com.google.cloud.storage.BlobId;
 import com.google.cloud.storage.BlobInfo;
 import com.google.cloud.storage.Bucket;
 import com.google.cloud.storage.Storage;
-import com.google.cloud.storage.StorageOptions;
 import com.google.gson.Gson;
 
 import auth.AuthTokenUtil;
+import auth.Role;
+import auth.Secured;
+import auth.UserPrincipal;
 import constants.AccountConstants;
 import constants.ExecutionSheetConstants;
 import constants.WorkSheetConstants;
 import dto.AddActivityInfoData;
 import dto.EditOperationData;
+import geo.TrackPoints;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
@@ -65,12 +63,22 @@ import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
-import net.sf.geographiclib.Geodesic;
-import net.sf.geographiclib.PolygonArea;
-import net.sf.geographiclib.PolygonResult;
+import jakarta.ws.rs.core.SecurityContext;
+import jobs.ExecutionSheetJobs;
+import jobs.Jobs;
+import persistence.BatchLoader;
+import persistence.CoverageEngine;
+import persistence.DatastoreGateway;
+import persistence.Fanout;
+import persistence.PageRequest;
+import persistence.SearchIndex;
+import persistence.StorageGateway;
+import persistence.TileCache;
+import persistence.TrackStore;
 
 @Path("/executionsheet")
 public class ExecutionSheetResource {
@@ -87,6 +95,9 @@ public class ExecutionSheetResource {
 	private static final String MESSAGE_ERROR_CREATING_EXECUTION_SHEET = "Error creating execution sheet: ";
 	private static final String MESSAGE_UNASSIGNED_PARCEL = "You are not assigned to this parcel";
 	private static final String MESSAGE_UNFINISHED_ACTIVITY = "Error: Activity is not finished.";
+	private static final String MESSAGE_INVALID_GPS_PATH = "Error: Invalid GPS path. ";
+	private static final String MESSAGE_INVALID_IMPLEMENT_WIDTH = "Error: Implement width must be positive.";
+	private static final String MESSAGE_INVALID_CURSOR = "Invalid cursor.";
 
 	private static final String LOG_MESSAGE_CREATE_EXECUTION_SHEET_ATTEMPT = "Create ExecutionSheet attempt.";
 	private static final String LOG_MESSAGE_CREATE_EXECUTION_SHEET_SUCCESSFUL = "Execution sheet created successfully for worksheet: ";
@@ -94,7 +105,7 @@ public class ExecutionSheetResource {
 	private static final String LOG_START_ACTIVITY_ATTEMPT = "Start activity attempt.";
 
 	private static final Logger LOG = Logger.getLogger(ExecutionSheetResource.class.getName());
-	private static final Datastore datastore = DatastoreOptions.getDefaultInstance().getService();
+	private static final Datastore datastore = DatastoreGateway.get();
 	private static final KeyFactory wsKeyFactory = datastore.newKeyFactory().setKind(WorkSheetConstants.WORKSHEET);
 	private static final KeyFactory esKeyFactory = datastore.newKeyFactory()
 			.setKind(ExecutionSheetConstants.EXEC_SHEET);
@@ -102,40 +113,30 @@ public class ExecutionSheetResource {
 	private final Gson g = new Gson();
 	private static final ObjectMapper mapper = new ObjectMapper();
 
+	@Context
+	private SecurityContext securityContext;
+
 	public ExecutionSheetResource() {
 	}
 
 	@POST
 	@Path("/create/{worksheetId}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response createExecutionSheet(@HeaderParam("Authorization") String authHeader,
-			@PathParam("worksheetId") Long worksheetId) {
+	@Secured({ Role.PRBO, Role.SMBO, Role.SYSADMIN, Role.SYSBO, Role.PO })
+	public Response createExecutionSheet(@PathParam("worksheetId") Long worksheetId) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			// Allow more roles to create execution sheets
-			List<String> roles = List.of(
-					AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE,
-					AccountConstants.SHEET_MANAGER_BACKOFFICE,
-					AccountConstants.SYSTEM_ADMIN_ROLE,
-					AccountConstants.SYSTEM_BACKOFFICE_ROLE,
-					AccountConstants.PARTNER_OPERATOR);
-
 			LOG.fine(LOG_MESSAGE_CREATE_EXECUTION_SHEET_ATTEMPT);
 			LOG.info("Attempting to create execution sheet for worksheet: " + worksheetId);
 
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-			if (user == null) {
-				LOG.warning("User validation failed for execution sheet creation");
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
-			LOG.info("User validated: " + user.getString(AccountConstants.DS_USERNAME));
+			LOG.info("User validated: " + user.getUsername());
 
 			Key wsKey = wsKeyFactory.newKey(worksheetId);
 			Entity ws = txn.get(wsKey);
-			if (ws == null) {
+			// A worksheet still being imported does not have all its parcels yet
+			if (ws == null || ws.contains(WorkSheetConstants.WS_IMPORTING)) {
 				LOG.warning("Worksheet not found: " + worksheetId);
 				txn.rollback();
 				return Response.status(Status.NOT_FOUND).entity(MESSAGE_INVALID_WS_ID).build();
@@ -155,19 +156,14 @@ public class ExecutionSheetResource {
 					.setFilter(PropertyFilter.eq(WorkSheetConstants.WS_OP_WSID, worksheetId)).build();
 			QueryResults<Entity> operationResults = txn.run(operationQuery);
 
-			Query<Entity> propertyQuery = Query.newEntityQueryBuilder().setKind(WorkSheetConstants.WS_PROP)
-					.setFilter(PropertyFilter.eq(WorkSheetConstants.WS_P_WSW, worksheetId)).build();
-			QueryResults<Entity> propertyResults = txn.run(propertyQuery);
-
-			List<Entity> properties = new ArrayList<>();
-			propertyResults.forEachRemaining(properties::add);
-
 			Entity.Builder esBuilder = Entity.newBuilder(esKey)
 					.set(ExecutionSheetConstants.ES_WORKSHEET_ID, worksheetId);
 
 			ListValue.Builder observationsBuilder = ListValue.newBuilder();
 			esBuilder.set(ExecutionSheetConstants.ES_OBSERVATIONS, observationsBuilder.build());
-			txn.put(esBuilder.build());
+			Entity executionSheet = esBuilder.build();
+			txn.put(executionSheet);
+			SearchIndex.index(txn, executionSheet);
 
 			while (operationResults.hasNext()) {
 				Entity operation = operationResults.next();
@@ -187,30 +183,17 @@ public class ExecutionSheetResource {
 				ListValue.Builder opObservationsBuilder = ListValue.newBuilder();
 				opBuilder.set(ExecutionSheetConstants.EO_OBSERVATIONS, opObservationsBuilder.build());
 				txn.put(opBuilder.build());
-
-				for (Entity property : properties) {
-					long polygonId = property.getLong(WorkSheetConstants.WS_P_PID);
-
-					Key pKey = datastore.newKeyFactory().setKind(ExecutionSheetConstants.EXEC_PARCEL)
-							.newKey(operationKey + "_" + polygonId);
-
-					Entity.Builder pBuilder = Entity.newBuilder(pKey)
-							.set(ExecutionSheetConstants.EP_OPERATION_ID, operationKey)
-							.set(ExecutionSheetConstants.EP_POLYGON_ID, polygonId)
-							.set(ExecutionSheetConstants.EP_STATUS, ExecutionSheetConstants.EP_STATUS_PA);
-
-					ListValue.Builder prObservationsBuilder = ListValue.newBuilder();
-					pBuilder.set(ExecutionSheetConstants.EP_OBSERVATIONS, prObservationsBuilder.build());
-
-					ListValue.Builder prOperatorBuilder = ListValue.newBuilder();
-					pBuilder.set(ExecutionSheetConstants.EP_OPERATORS, prOperatorBuilder.build());
-					txn.put(pBuilder.build());
-				}
 			}
 
+			// One parcel per operation and property: as many as the worksheet has parcels, so they are created
+			// by a job, in steps that each fit in a transaction
+			String jobId = ExecutionSheetJobs.createParcelsJobId(execRef);
+			Jobs.add(txn, jobId, ExecutionSheetJobs.CREATE_PARCELS, String.valueOf(worksheetId));
+
 			txn.commit();
+			Jobs.dispatch(jobId);
 			LOG.info(LOG_MESSAGE_CREATE_EXECUTION_SHEET_SUCCESSFUL + worksheetId);
-			return Response.ok(g.toJson(true)).build();
+			return Response.accepted(g.toJson(true)).location(URI.create("jobs/" + jobId)).build();
 		} catch (DatastoreException e) {
 			LOG.severe("DatastoreException creating execution sheet: " + e.getMessage());
 			e.printStackTrace();
@@ -231,21 +214,13 @@ public class ExecutionSheetResource {
 	@POST
 	@Path("/assign/{id}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response assignOperator(@PathParam("id") String id, @HeaderParam("Authorization") String authHeader,
-			@QueryParam("username") String username) {
+	@Secured({ Role.PRBO })
+	public Response assignOperator(@PathParam("id") String id, @QueryParam("username") String username) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			List<String> roles = List.of(AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE);
-
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-
 			LOG.fine(LOG_MESSAGE_ASSIGN_OPERATOR_ATTEMPT);
 
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 			Query<Entity> operator = Query.newEntityQueryBuilder().setKind(AccountConstants.USER)
 					.setFilter(PropertyFilter.eq(AccountConstants.DS_USERNAME, username)).build();
@@ -257,7 +232,8 @@ public class ExecutionSheetResource {
 			}
 
 			Entity operatorEntity = operatorQuery.next();
-			if (!operatorEntity.getString(AccountConstants.DS_ROLE).equals(AccountConstants.PARTNER_OPERATOR) || !user
+			Entity requester = AuthTokenUtil.getUserEntity(user.getUsername());
+			if (requester == null || !operatorEntity.getString(AccountConstants.DS_ROLE).equals(AccountConstants.PARTNER_OPERATOR) || !requester
 					.getString(AccountConstants.DS_PARTNER).equals(operatorEntity.getString(AccountConstants.DS_PARTNER))) {
 				txn.rollback();
 				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_PERMISSION).build();
@@ -304,19 +280,12 @@ public class ExecutionSheetResource {
 	@POST
 	@Path("/start/{id}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response startActivity(@PathParam("id") String parcelId, @HeaderParam("Authorization") String authHeader) {
+	@Secured({ Role.PO })
+	public Response startActivity(@PathParam("id") String parcelId) {
 		LOG.fine(LOG_START_ACTIVITY_ATTEMPT);
 		Transaction txn = datastore.newTransaction();
 		try {
-			List<String> roles = List.of(AccountConstants.PARTNER_OPERATOR);
-
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 			String[] splitId = parcelId.split("_");
 
@@ -341,7 +310,7 @@ public class ExecutionSheetResource {
 			}
 
 			List<Value<?>> operators = propertyOperationEntity.getList(ExecutionSheetConstants.EP_OPERATORS);
-			Value<String> username = StringValue.of(user.getString(AccountConstants.DS_USERNAME));
+			Value<String> username = StringValue.of(user.getUsername());
 			if (!operators.contains(username)) {
 				txn.rollback();
 				return Response.status(Status.FORBIDDEN).entity(MESSAGE_UNASSIGNED_PARCEL).build();
@@ -401,6 +370,7 @@ public class ExecutionSheetResource {
 
 			txn.put(activity);
 			txn.commit();
+			TileCache.get().invalidate();
 			return Response.ok(g.toJson(activityId)).build();
 		} catch (DatastoreException e) {
 			return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.toString()).build();
@@ -414,20 +384,12 @@ public class ExecutionSheetResource {
 	@PUT
 	@Path("/stop/{id}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response stopActivity(@PathParam("id") String activityId, @HeaderParam("Authorization") String authHeader,
-			@QueryParam("finished") boolean finished) {
+	@Secured({ Role.PO })
+	public Response stopActivity(@PathParam("id") String activityId, @QueryParam("finished") boolean finished) {
 		LOG.fine(LOG_START_ACTIVITY_ATTEMPT);
 		Transaction txn = datastore.newTransaction();
 		try {
-			List<String> roles = List.of(AccountConstants.PARTNER_OPERATOR);
-
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 			String[] splitId = activityId.split("_");
 
@@ -456,7 +418,7 @@ public class ExecutionSheetResource {
 			}
 
 			List<Value<?>> operators = propertyOperationEntity.getList(ExecutionSheetConstants.EP_OPERATORS);
-			Value<String> username = StringValue.of(user.getString(AccountConstants.DS_USERNAME));
+			Value<String> username = StringValue.of(user.getUsername());
 			if (!operators.contains(username)) {
 				txn.rollback();
 				return Response.status(Status.FORBIDDEN).entity(MESSAGE_UNASSIGNED_PARCEL).build();
@@ -472,87 +434,69 @@ public class ExecutionSheetResource {
 
 			Date endDate = new Date();
 
-			Entity.Builder builder = Entity.newBuilder(activityKey);
+			// Keeps the parcel id and track point count the CoverageEngine reads
+			Entity.Builder builder = Entity.newBuilder(activityEntity);
 			builder.set(ExecutionSheetConstants.EA_END_DATETIME, Timestamp.of(endDate));
 			txn.update(builder.build());
 			if (finished) {
+				// The executed area is measured from the tracks by the CoverageEngine; finishing only closes the
+				// parcel, and the operation once all of its parcels are closed
 				String activityParcelId = activityEntity.getString(ExecutionSheetConstants.EA_PARCEL_ID);
 				Key activityParcelKey = datastore.newKeyFactory().setKind(ExecutionSheetConstants.EXEC_PARCEL)
 						.newKey(activityParcelId);
 				Entity activityParcelEntity = txn.get(activityParcelKey);
-				Entity.Builder activityParcelBuilder = Entity.newBuilder(activityParcelKey);
+				Entity.Builder activityParcelBuilder = Entity.newBuilder(activityParcelEntity);
 				activityParcelBuilder.set(ExecutionSheetConstants.EP_END_DATETIME, Timestamp.of(endDate));
 				activityParcelBuilder.set(ExecutionSheetConstants.EP_STATUS, ExecutionSheetConstants.EP_STATUS_E);
 				txn.update(activityParcelBuilder.build());
 
-				Key polygonKey = datastore.newKeyFactory().setKind(WorkSheetConstants.WS_PROP)
-						.newKey(activityParcelEntity.getLong(ExecutionSheetConstants.EP_POLYGON_ID));
-				Entity polygonEntity = txn.get(polygonKey);
-				String geometry = polygonEntity.getString(WorkSheetConstants.WS_P_GEOMETRY);
-				JsonNode node = safeParse(geometry);
-				// transormar coordenaras para wsg84
-				PolygonArea polygon = new PolygonArea(Geodesic.WGS84, false);
-				Iterator<JsonNode> points = node.path("coordinates").get(0).iterator();
-				JsonNode point;
-				while (points.hasNext()) {
-					point = points.next();
-					ProjCoordinate src = new ProjCoordinate(point.get(0).asDouble(), point.get(1).asDouble());
-					CoordinateTransform transform = new CoordinateTransformFactory().createTransform(
-							new CRSFactory().createFromParameters("PT-TM06",
-									"+proj=tmerc +lat_0=39.66825833333333 +lon_0=-8.13190611111111 +k=1.0 "
-											+ "+x_0=200000 +y_0=300000 +ellps=GRS80 +units=m +no_defs"),
-							new CRSFactory().createFromName("epsg:4326"));
-					ProjCoordinate dst = new ProjCoordinate();
-					transform.transform(src, dst);
-					polygon.AddPoint(dst.y, dst.x);
-				}
-
-				PolygonResult result = polygon.Compute();
-				double area = Math.abs(result.area) / 10000;
-
-				Key operationKey = datastore.newKeyFactory().setKind(ExecutionSheetConstants.EXEC_OPERATION)
-						.newKey(polygonEntity.getString(ExecutionSheetConstants.EP_OPERATION_ID));
-				Entity operationEntity = txn.get(operationKey);
-				builder = Entity.newBuilder(operationKey);
-				double newPercentage = operationEntity.getDouble(ExecutionSheetConstants.EO_TOTAL_AREA_PERCENT)
-						+ area / operationEntity.getDouble(ExecutionSheetConstants.EO_TOTAL_AREA_HA) * 100;
-				boolean operationFinished = false;
-				if (newPercentage >= 100.0) {
-					operationFinished = true;
-					newPercentage = 100.0;
-				}
-				builder.set(ExecutionSheetConstants.EO_TOTAL_AREA_PERCENT, newPercentage);
-				if (operationFinished) {
-					builder.set(ExecutionSheetConstants.EO_END_DATETIME, Timestamp.of(endDate));
+				String operationId = activityParcelEntity.getString(ExecutionSheetConstants.EP_OPERATION_ID);
+				Query<Entity> operationParcels = Query.newEntityQueryBuilder()
+						.setKind(ExecutionSheetConstants.EXEC_PARCEL)
+						.setFilter(PropertyFilter.eq(ExecutionSheetConstants.EP_OPERATION_ID, operationId)).build();
+				QueryResults<Entity> parcelQuery = txn.run(operationParcels);
+				boolean operationFinished = true;
+				while (parcelQuery.hasNext()) {
+					Entity parcel = parcelQuery.next();
+					if (!parcel.getKey().equals(activityParcelKey) && !parcel.getString(ExecutionSheetConstants.EP_STATUS)
+							.equals(ExecutionSheetConstants.EP_STATUS_E)) {
+						operationFinished = false;
+						break;
+					}
 				}
-				txn.update(builder.build());
 				if (operationFinished) {
+					Key operationKey = datastore.newKeyFactory().setKind(ExecutionSheetConstants.EXEC_OPERATION)
+							.newKey(operationId);
+					Entity operationEntity = txn.get(operationKey);
+					txn.update(Entity.newBuilder(operationEntity)
+							.set(ExecutionSheetConstants.EO_END_DATETIME, Timestamp.of(endDate)).build());
+
+					String executionSheetId = operationEntity.getString(ExecutionSheetConstants.EO_EXECUTIONSHEET_ID);
 					Query<Entity> executionSheetOperations = Query.newEntityQueryBuilder()
 							.setKind(ExecutionSheetConstants.EXEC_OPERATION)
-							.setFilter(PropertyFilter.eq(ExecutionSheetConstants.EO_EXECUTIONSHEET_ID,
-									operationEntity.getString(ExecutionSheetConstants.EO_EXECUTIONSHEET_ID)))
+							.setFilter(PropertyFilter.eq(ExecutionSheetConstants.EO_EXECUTIONSHEET_ID, executionSheetId))
 							.build();
 					QueryResults<Entity> operationQuery = txn.run(executionSheetOperations);
 					boolean allOpsFinished = true;
-					Entity operation;
 					while (operationQuery.hasNext()) {
-						operation = operationQuery.next();
-						if (operation.getDouble(ExecutionSheetConstants.EO_TOTAL_AREA_PERCENT) < 100.0) {
+						Entity operation = operationQuery.next();
+						if (!operation.getKey().equals(operationKey)
+								&& !operation.contains(ExecutionSheetConstants.EO_END_DATETIME)) {
 							allOpsFinished = false;
 							break;
 						}
 					}
 					if (allOpsFinished) {
 						Key executionSheetKey = datastore.newKeyFactory().setKind(ExecutionSheetConstants.EXEC_SHEET)
-								.newKey(operationEntity.getString(ExecutionSheetConstants.EO_EXECUTIONSHEET_ID));
-						builder = Entity.newBuilder(executionSheetKey);
-						builder.set(ExecutionSheetConstants.ES_END_DATETIME, Timestamp.of(endDate));
-						txn.update(builder.build());
+								.newKey(executionSheetId);
+						Entity executionSheetEntity = txn.get(executionSheetKey);
+						txn.update(Entity.newBuilder(executionSheetEntity)
+								.set(ExecutionSheetConstants.ES_END_DATETIME, Timestamp.of(endDate)).build());
 					}
 				}
-
 			}
 			txn.commit();
+			TileCache.get().invalidate();
 			return Response.ok(g.toJson(true)).build();
 		} catch (DatastoreException e) {
 			return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.toString()).build();
@@ -566,21 +510,8 @@ public class ExecutionSheetResource {
 	@GET
 	@Path("/view/{id}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response viewActivity(@PathParam("id") String parcelId, @HeaderParam("Authorization") String authHeader) {
-		List<String> roles = List.of(
-				AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE,
-				AccountConstants.PARTNER_OPERATOR,
-				AccountConstants.SHEET_DETAILED_VIEWER_BACKOFFICE,
-				AccountConstants.SHEET_GENERAL_VIEWER_BACKOFFICE,
-				AccountConstants.SHEET_MANAGER_BACKOFFICE);
-
-		String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-		Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-
-		if (user == null) {
-			return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-		}
-
+	@Secured({ Role.PRBO, Role.PO, Role.SDVBO, Role.SGVBO, Role.SMBO })
+	public Response viewActivity(@PathParam("id") String parcelId) {
 		String[] splitId = parcelId.split("_");
 
 		if (splitId.length != 4) {
@@ -650,6 +581,8 @@ public class ExecutionSheetResource {
 					actNode.put(ExecutionSheetConstants.EA_GPS_PATH, gpsPath);
 				}
 			}
+			// The track itself is read from /track/{activityId}
+			actNode.put(ExecutionSheetConstants.EA_TRACK_POINTS, TrackStore.pointCount(act));
 			if (act.contains(ExecutionSheetConstants.EA_PHOTO_URLS)) {
 				List<Value<?>> photos = act.getList(ExecutionSheetConstants.EA_PHOTO_URLS);
 				if (photos != null && !photos.isEmpty()) {
@@ -675,18 +608,11 @@ public class ExecutionSheetResource {
 	@Path("/add")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response addActivityInfo(@HeaderParam("Authorization") String authHeader, AddActivityInfoData data) {
+	@Secured({ Role.PO })
+	public Response addActivityInfo(AddActivityInfoData data) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			List<String> roles = List.of(AccountConstants.PARTNER_OPERATOR);
-
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 			Key activityKey = datastore.newKeyFactory().setKind(ExecutionSheetConstants.EXEC_ACTIVITY)
 					.newKey(data.activityId);
@@ -698,7 +624,7 @@ public class ExecutionSheetResource {
 			}
 
 			if (!activityEntity.getString(ExecutionSheetConstants.EA_OPERATOR_ID)
-					.equals(user.getString(AccountConstants.DS_USERNAME))) {
+					.equals(user.getUsername())) {
 				txn.rollback();
 				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_PERMISSION).build();
 			}
@@ -707,9 +633,26 @@ public class ExecutionSheetResource {
 				txn.rollback();
 				return Response.status(Status.BAD_REQUEST).entity(MESSAGE_UNFINISHED_ACTIVITY).build();
 			}
+			List<TrackPoints.Point> gpsPoints = new ArrayList<>();
+			if (data.gpsPath != null && !data.gpsPath.isBlank()) {
+				try {
+					JsonNode path = mapper.readTree(data.gpsPath);
+					if (!path.isArray() || path.size() > TrackStore.MAX_APPEND_POINTS) {
+						throw new IllegalArgumentException(
+								"Expected an array of at most " + TrackStore.MAX_APPEND_POINTS + " points.");
+					}
+					long receivedAt = System.currentTimeMillis();
+					for (JsonNode point : path) {
+						gpsPoints.add(TrackPoints.parse(point, receivedAt));
+					}
+				} catch (IOException | IllegalArgumentException e) {
+					txn.rollback();
+					return Response.status(Status.BAD_REQUEST).entity(MESSAGE_INVALID_GPS_PATH + e.getMessage()).build();
+				}
+			}
 			Key parcelKey = datastore.newKeyFactory().setKind(ExecutionSheetConstants.EXEC_PARCEL)
 					.newKey(activityEntity.getString(ExecutionSheetConstants.EA_PARCEL_ID));
-			Entity parcelEntity = datastore.get(parcelKey);
+			Entity parcelEntity = txn.get(parcelKey);
 
 			Entity.Builder builder = Entity.newBuilder(activityEntity);
 			Entity.Builder parcelBuilder = Entity.newBuilder(parcelEntity);
@@ -736,7 +679,7 @@ public class ExecutionSheetResource {
 
 				Key operationKey = datastore.newKeyFactory().setKind(ExecutionSheetConstants.EXEC_OPERATION)
 						.newKey(parcelEntity.getString(ExecutionSheetConstants.EP_OPERATION_ID));
-				Entity operationEntity = datastore.get(operationKey);
+				Entity operationEntity = txn.get(operationKey);
 
 				existingList = new ArrayList<>();
 				if (operationEntity.contains(ExecutionSheetConstants.EO_OBSERVATIONS)) {
@@ -752,7 +695,7 @@ public class ExecutionSheetResource {
 
 				Key workSheetKey = datastore.newKeyFactory().setKind(ExecutionSheetConstants.EXEC_SHEET)
 						.newKey(operationEntity.getString(ExecutionSheetConstants.EO_EXECUTIONSHEET_ID));
-				Entity workSheetEntity = datastore.get(workSheetKey);
+				Entity workSheetEntity = txn.get(workSheetKey);
 
 				existingList = new ArrayList<>();
 				if (workSheetEntity.contains(ExecutionSheetConstants.ES_OBSERVATIONS)) {
@@ -763,24 +706,14 @@ public class ExecutionSheetResource {
 					existingList.forEach(v -> updatedWorkSheetList.add(v));
 				}
 				updatedWorkSheetList.add(StringValue.of(data.observations));
-				txn.update(Entity.newBuilder(workSheetEntity).set(ExecutionSheetConstants.ES_OBSERVATIONS, updatedWorkSheetList)
-						.build());
+				Entity updatedExecutionSheet = Entity.newBuilder(workSheetEntity)
+						.set(ExecutionSheetConstants.ES_OBSERVATIONS, updatedWorkSheetList).build();
+				txn.update(updatedExecutionSheet);
+				SearchIndex.index(txn, updatedExecutionSheet);
 			}
 
-			if (data.gpsPath != null && !data.gpsPath.isBlank()) {
-				String existing = "";
-				if (activityEntity.contains(ExecutionSheetConstants.EA_GPS_PATH)) {
-					existing = activityEntity.getString(ExecutionSheetConstants.EA_GPS_PATH);
-				}
-				String updated = existing.isEmpty() ? data.gpsPath : existing + ";" + data.gpsPath;
-				builder.set(ExecutionSheetConstants.EA_GPS_PATH, updated);
-
-				if (parcelEntity.contains(ExecutionSheetConstants.EP_GPS_PATH)) {
-					existing = parcelEntity.getString(ExecutionSheetConstants.EP_GPS_PATH);
-				}
-				updated = existing.isEmpty() ? data.gpsPath : existing + ";" + data.gpsPath;
-				parcelBuilder.set(ExecutionSheetConstants.EP_GPS_PATH, updated);
-			}
+			// Points go to the activity's track segments; the parcel's tracks are read through them too
+			TrackStore.append(txn, activityEntity, builder, gpsPoints);
 
 			if (data.photoUrls != null && !data.photoUrls.isEmpty()) {
 				List<Value<String>> merged = new ArrayList<>();
@@ -809,22 +742,9 @@ public class ExecutionSheetResource {
 	@GET
 	@Path("/status/{id}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getOperationStatus(@PathParam("id") String operationId,
-			@HeaderParam("Authorization") String authHeader) {
-
-		List<String> roles = List.of(
-				AccountConstants.SHEET_DETAILED_VIEWER_BACKOFFICE,
-				AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE,
-				AccountConstants.PARTNER_OPERATOR,
-				AccountConstants.SYSTEM_ADMIN_ROLE,
-				AccountConstants.SYSTEM_BACKOFFICE_ROLE,
-				AccountConstants.SHEET_MANAGER_BACKOFFICE);
-		String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-		Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-
-		if (user == null) {
-			return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-		}
+	@Secured({ Role.SDVBO, Role.PRBO, Role.PO, Role.SYSADMIN, Role.SYSBO, Role.SMBO })
+	public Response getOperationStatus(@PathParam("id") String operationId) {
+		UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 		if (operationId == null || operationId.trim().isEmpty()) {
 			LOG.warning("Invalid operationId: null or empty");
@@ -855,6 +775,11 @@ public class ExecutionSheetResource {
 		root.put(ExecutionSheetConstants.EO_TOTAL_AREA_HA, op.getDouble(ExecutionSheetConstants.EO_TOTAL_AREA_HA));
 		root.put(ExecutionSheetConstants.EO_TOTAL_AREA_PERCENT,
 				op.getDouble(ExecutionSheetConstants.EO_TOTAL_AREA_PERCENT));
+		if (op.contains(ExecutionSheetConstants.EO_COVERED_AREA_HA)) {
+			root.put(ExecutionSheetConstants.EO_COVERED_AREA_HA,
+					op.getDouble(ExecutionSheetConstants.EO_COVERED_AREA_HA));
+		}
+		root.put(ExecutionSheetConstants.EO_IMPLEMENT_WIDTH, CoverageEngine.implementWidth(op));
 		if (op.contains(ExecutionSheetConstants.EO_END_DATETIME)) {
 			root.put(ExecutionSheetConstants.EO_END_DATETIME,
 					op.getTimestamp(ExecutionSheetConstants.EO_END_DATETIME).toString());
@@ -874,6 +799,10 @@ public class ExecutionSheetResource {
 			ObjectNode pnode = mapper.createObjectNode();
 			pnode.put(ExecutionSheetConstants.EP_POLYGON_ID, parcel.getLong(ExecutionSheetConstants.EP_POLYGON_ID));
 			pnode.put(ExecutionSheetConstants.EP_STATUS, parcel.getString(ExecutionSheetConstants.EP_STATUS));
+			if (parcel.contains(ExecutionSheetConstants.EP_COVERED_AREA_HA)) {
+				pnode.put(ExecutionSheetConstants.EP_COVERED_AREA_HA,
+						parcel.getDouble(ExecutionSheetConstants.EP_COVERED_AREA_HA));
+			}
 
 			ArrayNode a = pnode.putArray(ExecutionSheetConstants.EP_OPERATORS);
 			parcel.getList(ExecutionSheetConstants.EP_OPERATORS).forEach(v -> a.add(((StringValue) v).get()));
@@ -910,6 +839,7 @@ public class ExecutionSheetResource {
 				if (act.contains(ExecutionSheetConstants.EA_GPS_PATH)) {
 					anode.put(ExecutionSheetConstants.EA_GPS_PATH, act.getString(ExecutionSheetConstants.EA_GPS_PATH));
 				}
+				anode.put(ExecutionSheetConstants.EA_TRACK_POINTS, TrackStore.pointCount(act));
 				if (act.contains(ExecutionSheetConstants.EA_PHOTO_URLS)) {
 					List<Value<?>> photos = act.getList(ExecutionSheetConstants.EA_PHOTO_URLS);
 					if (!photos.isEmpty()) {
@@ -935,7 +865,7 @@ public class ExecutionSheetResource {
 	}
 
 	// New method to handle execution sheet status
-	private Response getExecutionSheetStatus(String executionSheetId, Entity user) {
+	private Response getExecutionSheetStatus(String executionSheetId, UserPrincipal user) {
 		try {
 			// Extract worksheet ID from execution sheet ID
 			String worksheetIdStr = executionSheetId.replace("execution_", "");
@@ -1016,21 +946,10 @@ public class ExecutionSheetResource {
 	@Path("/edit")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response editOperation(@HeaderParam("Authorization") String authHeader,
-			EditOperationData editOperationData) {
+	@Secured({ Role.PRBO, Role.SDVBO })
+	public Response editOperation(EditOperationData editOperationData) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			List<String> roles = List.of(AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE,
-					AccountConstants.SHEET_DETAILED_VIEWER_BACKOFFICE);
-
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
-
 			Key operationKey = datastore.newKeyFactory().setKind(ExecutionSheetConstants.EXEC_OPERATION)
 					.newKey(editOperationData.operationId);
 			Entity operationEntity = txn.get(operationKey);
@@ -1039,13 +958,22 @@ public class ExecutionSheetResource {
 				return Response.status(Status.NOT_FOUND).entity(MESSAGE_INVALID_OPERATION).build();
 			}
 
-			List<Value<?>> observations = operationEntity.getList(ExecutionSheetConstants.EO_OBSERVATIONS);
-			ListValue.Builder newObservations = ListValue.newBuilder();
-			observations.forEach(newObservations::addValue);
-			newObservations.addValue(StringValue.of(editOperationData.observations));
-			ListValue updatedList = newObservations.build();
-			Entity.Builder updatedFeat = Entity.newBuilder(operationEntity).set(ExecutionSheetConstants.EO_OBSERVATIONS,
-					updatedList);
+			Entity.Builder updatedFeat = Entity.newBuilder(operationEntity);
+			if (editOperationData.observations != null) {
+				List<Value<?>> observations = operationEntity.getList(ExecutionSheetConstants.EO_OBSERVATIONS);
+				ListValue.Builder newObservations = ListValue.newBuilder();
+				observations.forEach(newObservations::addValue);
+				newObservations.addValue(StringValue.of(editOperationData.observations));
+				updatedFeat.set(ExecutionSheetConstants.EO_OBSERVATIONS, newObservations.build());
+			}
+			// Applies to the points covered from now on; what is already covered is kept
+			if (editOperationData.implementWidth != null) {
+				if (!(editOperationData.implementWidth > 0)) {
+					txn.rollback();
+					return Response.status(Status.BAD_REQUEST).entity(MESSAGE_INVALID_IMPLEMENT_WIDTH).build();
+				}
+				updatedFeat.set(ExecutionSheetConstants.EO_IMPLEMENT_WIDTH, editOperationData.implementWidth);
+			}
 
 			txn.update(updatedFeat.build());
 			txn.commit();
@@ -1064,20 +992,11 @@ public class ExecutionSheetResource {
 	@GET
 	@Path("/export")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response exportSheet(@HeaderParam("Authorization") String authHeader,
-			@QueryParam("workSheetId") long worksheetId) {
+	@Secured({ Role.SDVBO })
+	public Response exportSheet(@QueryParam("workSheetId") long worksheetId) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			// 1) AuthN/Z
-			List<String> roles = List.of(AccountConstants.SHEET_DETAILED_VIEWER_BACKOFFICE);
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
-
-			// 2) Load the sheet
+			// 1) Load the sheet
 			Key sheetKey = datastore.newKeyFactory().setKind(ExecutionSheetConstants.EXEC_SHEET)
 					.newKey("execution_" + worksheetId);
 			Entity sheet = txn.get(sheetKey);
@@ -1100,7 +1019,7 @@ public class ExecutionSheetResource {
 
 			String prefix = "execution_" + worksheetId;
 
-			// 3) Load and filter all ExecutionOperation
+			// 2) Load and filter all ExecutionOperation
 			ArrayNode opsList = result.putArray("operations");
 			Map<String, Integer> opCodeToIndex = new HashMap<>();
 			QueryResults<Entity> opResults = txn
@@ -1174,12 +1093,18 @@ public class ExecutionSheetResource {
 
 					ObjectNode track = mapper.createObjectNode();
 					// geometry / percurso
-					try {
-						JsonNode path = mapper.readTree(a.getString(ExecutionSheetConstants.EA_GPS_PATH));
-						track.set("coordinates", path);
-					} catch (IOException e) {
-						// em caso de JSON mal formado, puxa um array vazio ou loga
-						track.set("coordinates", mapper.createObjectNode());
+					if (TrackStore.pointCount(a) > 0) {
+						ArrayNode coordinates = track.putArray("coordinates");
+						TrackStore.forEachPoint(datastore, aName,
+								point -> coordinates.addArray().add(point.lon()).add(point.lat()));
+					} else {
+						try {
+							JsonNode path = mapper.readTree(a.getString(ExecutionSheetConstants.EA_GPS_PATH));
+							track.set("coordinates", path);
+						} catch (IOException e) {
+							// em caso de JSON mal formado, puxa um array vazio ou loga
+							track.set("coordinates", mapper.createObjectNode());
+						}
 					}
 					tracks.add(track);
 				});
@@ -1212,67 +1137,58 @@ public class ExecutionSheetResource {
 	@GET
 	@Path("/list")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response listExecutionSheets(@HeaderParam("Authorization") String authHeader) {
+	@Secured({ Role.SDVBO, Role.PRBO, Role.PO, Role.SMBO, Role.SGVBO })
+	public Response listExecutionSheets(@QueryParam("pageSize") Integer pageSize, @QueryParam("cursor") String cursor) {
 		try {
-			List<String> roles = List.of(AccountConstants.SHEET_DETAILED_VIEWER_BACKOFFICE,
-					AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE, AccountConstants.PARTNER_OPERATOR,
-					AccountConstants.SHEET_MANAGER_BACKOFFICE, AccountConstants.SHEET_GENERAL_VIEWER_BACKOFFICE);
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
+			String username = user.getUsername();
+			PageRequest page = PageRequest.of(pageSize, cursor);
 
-			if (user == null) {
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
+			Query<Entity> query;
+			try {
+				query = Query.newEntityQueryBuilder()
+						.setKind(ExecutionSheetConstants.EXEC_SHEET)
+						.setLimit(page.limit())
+						.setStartCursor(page.startCursor())
+						.build();
+			} catch (IllegalArgumentException e) {
+				return Response.status(Status.BAD_REQUEST).entity(MESSAGE_INVALID_CURSOR).build();
 			}
 
-			String username = user.getString(AccountConstants.DS_USERNAME);
-
-			Query<Entity> query = Query.newEntityQueryBuilder()
-					.setKind(ExecutionSheetConstants.EXEC_SHEET)
-					.build();
-
 			QueryResults<Entity> results = datastore.run(query);
-			ArrayNode executionSheets = mapper.createArrayNode();
+			List<Entity> sheets = new ArrayList<>();
+			while (page.hasNext(results, sheets.size())) {
+				sheets.add(results.next());
+			}
+
+			// The summary queries of every sheet on the page are independent, so they run concurrently
+			List<ExecutionSheetSummary> summaries = new ArrayList<>();
+			try (Fanout fanout = Fanout.open()) {
+				for (Entity es : sheets) {
+					String executionSheetId = es.getKey().getName();
+					summaries.add(new ExecutionSheetSummary(
+							fanout.fork(() -> earliestActivityStart(executionSheetId)),
+							fanout.fork(() -> averageProgress(executionSheetId)),
+							fanout.fork(() -> executionSheetLikes(executionSheetId, username)),
+							fanout.fork(() -> countExecutionSheetPhotos(executionSheetId)),
+							fanout.fork(() -> countByExecutionSheet("SocialPost", executionSheetId)),
+							fanout.fork(() -> countByExecutionSheet("SocialActivityPost", executionSheetId))));
+				}
+				fanout.join();
+			}
 
-			while (results.hasNext()) {
-				Entity es = results.next();
+			ArrayNode executionSheets = mapper.createArrayNode();
+			for (int i = 0; i < sheets.size(); i++) {
+				Entity es = sheets.get(i);
+				ExecutionSheetSummary summary = summaries.get(i);
 				String executionSheetId = es.getKey().getName();
 				ObjectNode esNode = mapper.createObjectNode();
 				esNode.put("id", executionSheetId);
 				esNode.put("worksheetId", es.getLong(ExecutionSheetConstants.ES_WORKSHEET_ID));
 
-				// Find the first activity (earliest start date) for this execution sheet
-				// Get all parcels for this execution sheet
-				Query<Entity> parcelsQuery = Query.newEntityQueryBuilder()
-						.setKind(ExecutionSheetConstants.EXEC_PARCEL)
-						.setFilter(PropertyFilter.eq("executionSheetId", executionSheetId))
-						.build();
-				QueryResults<Entity> parcels = datastore.run(parcelsQuery);
-
-				Timestamp earliestStartDate = null;
-				while (parcels.hasNext()) {
-					Entity parcel = parcels.next();
-					String parcelId = parcel.getKey().getName();
-					
-					// Get all activities for this parcel
-					Query<Entity> activitiesQuery = Query.newEntityQueryBuilder()
-							.setKind(ExecutionSheetConstants.EXEC_ACTIVITY)
-							.setFilter(PropertyFilter.eq(ExecutionSheetConstants.EA_PARCEL_ID, parcelId))
-							.build();
-					QueryResults<Entity> activities = datastore.run(activitiesQuery);
-					
-					while (activities.hasNext()) {
-						Entity activity = activities.next();
-						if (activity.contains(ExecutionSheetConstants.EA_START_DATETIME)) {
-							Timestamp activityStartDate = activity.getTimestamp(ExecutionSheetConstants.EA_START_DATETIME);
-							if (earliestStartDate == null || activityStartDate.toSqlTimestamp().before(earliestStartDate.toSqlTimestamp())) {
-								earliestStartDate = activityStartDate;
-							}
-						}
-					}
-				}
-
 				// Use the earliest activity start date as the execution sheet start date
+				Timestamp earliestStartDate = summary.earliestStart().get();
 				if (earliestStartDate != null) {
 					esNode.put("startDateTime", earliestStartDate.toString());
 				} else if (es.contains(ExecutionSheetConstants.ES_START_DATETIME)
@@ -1291,129 +1207,163 @@ public class ExecutionSheetResource {
 					esNode.put("endDateTime", es.getTimestamp(ExecutionSheetConstants.ES_END_DATETIME).toString());
 				}
 
-				// Calculate progress
-				Query<Entity> operationsQuery = Query.newEntityQueryBuilder()
-						.setKind(ExecutionSheetConstants.EXEC_OPERATION)
-						.setFilter(PropertyFilter.eq(ExecutionSheetConstants.EO_EXECUTIONSHEET_ID, executionSheetId))
-						.build();
-				QueryResults<Entity> operations = datastore.run(operationsQuery);
-
-				double totalProgress = 0.0;
-				int operationCount = 0;
-				while (operations.hasNext()) {
-					Entity operation = operations.next();
-					totalProgress += operation.getDouble(ExecutionSheetConstants.EO_TOTAL_AREA_PERCENT);
-					operationCount++;
-				}
-
-				double avgProgress = operationCount > 0 ? totalProgress / operationCount : 0.0;
+				double avgProgress = summary.progress().get();
 				esNode.put("progress", Math.round(avgProgress * 100.0) / 100.0);
 				esNode.put("status", avgProgress >= 100.0 ? "COMPLETO" : (avgProgress > 0 ? "EM PROGRESSO" : "NÃO INICIADO"));
 
-				// Load social data for this execution sheet using unified system
-				// Get likes (from unified system)
-				Query<Entity> likesQuery = Query.newEntityQueryBuilder()
-						.setKind("ExecutionSheetLike")
-						.setFilter(PropertyFilter.eq("executionSheetId", executionSheetId))
-						.build();
-				QueryResults<Entity> likes = datastore.run(likesQuery);
-
-				int likeCount = 0;
-				boolean userLiked = false;
-				while (likes.hasNext()) {
-					Entity like = likes.next();
-					likeCount++;
-					if (like.getString("username").equals(username)) {
-						userLiked = true;
-					}
-				}
-				esNode.put("likes", likeCount);
-				esNode.put("userLiked", userLiked);
+				LikeSummary likes = summary.likes().get();
+				esNode.put("likes", likes.count());
+				esNode.put("userLiked", likes.userLiked());
+				esNode.put("photos", summary.photos().get());
+				esNode.put("textPosts", summary.textPosts().get());
+				esNode.put("activities", summary.activityPosts().get());
 
-				// Get photos count (from unified system - excluding activity media)
-				Query<Entity> photosQuery = Query.newEntityQueryBuilder()
-						.setKind("ExecutionSheetPhoto")
-						.setFilter(PropertyFilter.eq("executionSheetId", executionSheetId))
-						.build();
-				QueryResults<Entity> photos = datastore.run(photosQuery);
+				executionSheets.add(esNode);
+			}
 
-				int photoCount = 0;
-				while (photos.hasNext()) {
-					Entity photo = photos.next();
-					// Skip photos that are associated with activity posts to avoid duplication
-					if (photo.contains("activityPostId") && photo.getString("activityPostId") != null) {
-						continue;
-					}
-					// Skip photos that are flagged as activity media
-					if (photo.contains("isActivityMedia") && photo.getBoolean("isActivityMedia")) {
-						continue;
-					}
-					photoCount++;
-				}
-				esNode.put("photos", photoCount);
+			if (page.paged()) {
+				String nextCursor = page.nextCursor(results, sheets.size());
+				return Response.ok(mapper.writeValueAsString(page.envelope(executionSheets, nextCursor))).build();
+			}
+			return Response.ok(mapper.writeValueAsString(executionSheets)).build();
 
-				// Get text posts count (from unified system)
-				Query<Entity> textPostsQuery = Query.newEntityQueryBuilder()
-						.setKind("SocialPost")
-						.setFilter(PropertyFilter.eq("executionSheetId", executionSheetId))
-						.build();
-				QueryResults<Entity> textPosts = datastore.run(textPostsQuery);
+		} catch (Exception e) {
+			LOG.severe("Error listing execution sheets: " + e.getMessage());
+			return Response.status(Status.INTERNAL_SERVER_ERROR).entity("Error listing execution sheets").build();
+		}
+	}
 
-				int textPostCount = 0;
-				while (textPosts.hasNext()) {
-					textPosts.next();
-					textPostCount++;
-				}
-				esNode.put("textPosts", textPostCount);
+	private record LikeSummary(int count, boolean userLiked) {
+	}
 
-				// Get activity posts count (from unified system)
-				Query<Entity> activityPostsQuery = Query.newEntityQueryBuilder()
-						.setKind("SocialActivityPost")
-						.setFilter(PropertyFilter.eq("executionSheetId", executionSheetId))
-						.build();
-				QueryResults<Entity> activityPosts = datastore.run(activityPostsQuery);
+	private record ExecutionSheetSummary(Fanout.Task<Timestamp> earliestStart, Fanout.Task<Double> progress,
+			Fanout.Task<LikeSummary> likes, Fanout.Task<Integer> photos, Fanout.Task<Integer> textPosts,
+			Fanout.Task<Integer> activityPosts) {
+	}
 
-				int activityPostCount = 0;
-				while (activityPosts.hasNext()) {
-					activityPosts.next();
-					activityPostCount++;
+	/**
+	 * @return start of the earliest activity on the execution sheet's parcels, null if none started
+	 */
+	private Timestamp earliestActivityStart(String executionSheetId) {
+		Query<Entity> parcelsQuery = Query.newEntityQueryBuilder()
+				.setKind(ExecutionSheetConstants.EXEC_PARCEL)
+				.setFilter(PropertyFilter.eq("executionSheetId", executionSheetId))
+				.build();
+		QueryResults<Entity> parcels = datastore.run(parcelsQuery);
+
+		Timestamp earliestStartDate = null;
+		while (parcels.hasNext()) {
+			Entity parcel = parcels.next();
+			String parcelId = parcel.getKey().getName();
+			
+			// Get all activities for this parcel
+			Query<Entity> activitiesQuery = Query.newEntityQueryBuilder()
+					.setKind(ExecutionSheetConstants.EXEC_ACTIVITY)
+					.setFilter(PropertyFilter.eq(ExecutionSheetConstants.EA_PARCEL_ID, parcelId))
+					.build();
+			QueryResults<Entity> activities = datastore.run(activitiesQuery);
+			
+			while (activities.hasNext()) {
+				Entity activity = activities.next();
+				if (activity.contains(ExecutionSheetConstants.EA_START_DATETIME)) {
+					Timestamp activityStartDate = activity.getTimestamp(ExecutionSheetConstants.EA_START_DATETIME);
+					if (earliestStartDate == null || activityStartDate.toSqlTimestamp().before(earliestStartDate.toSqlTimestamp())) {
+						earliestStartDate = activityStartDate;
+					}
 				}
-				esNode.put("activities", activityPostCount);
+			}
+		}
+		return earliestStartDate;
+	}
 
-				executionSheets.add(esNode);
+	/**
+	 * @return mean completion percentage of the execution sheet's operations
+	 */
+	private double averageProgress(String executionSheetId) {
+		Query<Entity> operationsQuery = Query.newEntityQueryBuilder()
+				.setKind(ExecutionSheetConstants.EXEC_OPERATION)
+				.setFilter(PropertyFilter.eq(ExecutionSheetConstants.EO_EXECUTIONSHEET_ID, executionSheetId))
+				.build();
+		QueryResults<Entity> operations = datastore.run(operationsQuery);
+
+		double totalProgress = 0.0;
+		int operationCount = 0;
+		while (operations.hasNext()) {
+			Entity operation = operations.next();
+			totalProgress += operation.getDouble(ExecutionSheetConstants.EO_TOTAL_AREA_PERCENT);
+			operationCount++;
+		}
+		return operationCount > 0 ? totalProgress / operationCount : 0.0;
+	}
+
+	private LikeSummary executionSheetLikes(String executionSheetId, String username) {
+		Query<Entity> likesQuery = Query.newEntityQueryBuilder()
+				.setKind("ExecutionSheetLike")
+				.setFilter(PropertyFilter.eq("executionSheetId", executionSheetId))
+				.build();
+		QueryResults<Entity> likes = datastore.run(likesQuery);
+
+		int likeCount = 0;
+		boolean userLiked = false;
+		while (likes.hasNext()) {
+			Entity like = likes.next();
+			likeCount++;
+			if (like.getString("username").equals(username)) {
+				userLiked = true;
 			}
+		}
+		return new LikeSummary(likeCount, userLiked);
+	}
 
-			return Response.ok(mapper.writeValueAsString(executionSheets)).build();
+	/**
+	 * @return photos posted on the execution sheet itself, excluding activity media
+	 */
+	private int countExecutionSheetPhotos(String executionSheetId) {
+		Query<Entity> photosQuery = Query.newEntityQueryBuilder()
+				.setKind("ExecutionSheetPhoto")
+				.setFilter(PropertyFilter.eq("executionSheetId", executionSheetId))
+				.build();
+		QueryResults<Entity> photos = datastore.run(photosQuery);
+
+		int photoCount = 0;
+		while (photos.hasNext()) {
+			Entity photo = photos.next();
+			// Skip photos that are associated with activity posts to avoid duplication
+			if (photo.contains("activityPostId") && photo.getString("activityPostId") != null) {
+				continue;
+			}
+			// Skip photos that are flagged as activity media
+			if (photo.contains("isActivityMedia") && photo.getBoolean("isActivityMedia")) {
+				continue;
+			}
+			photoCount++;
+		}
+		return photoCount;
+	}
 
-		} catch (Exception e) {
-			LOG.severe("Error listing execution sheets: " + e.getMessage());
-			return Response.status(Status.INTERNAL_SERVER_ERROR).entity("Error listing execution sheets").build();
+	private int countByExecutionSheet(String kind, String executionSheetId) {
+		Query<Entity> query = Query.newEntityQueryBuilder()
+				.setKind(kind)
+				.setFilter(PropertyFilter.eq("executionSheetId", executionSheetId))
+				.build();
+		QueryResults<Entity> results = datastore.run(query);
+
+		int count = 0;
+		while (results.hasNext()) {
+			results.next();
+			count++;
 		}
+		return count;
 	}
 
 	@POST
 	@Path("/{id}/like")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response toggleLike(@PathParam("id") String executionSheetId,
-			@HeaderParam("Authorization") String authHeader) {
+	@Secured({ Role.RU, Role.PO, Role.ADLU, Role.PRBO, Role.SYSADMIN, Role.SYSBO, Role.SMBO })
+	public Response toggleLike(@PathParam("id") String executionSheetId) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			List<String> roles = List.of(
-					AccountConstants.REGISTERED_USER,
-					AccountConstants.PARTNER_OPERATOR,
-					AccountConstants.ADHERENT_LANDOWNER_USER,
-					AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE,
-					AccountConstants.SYSTEM_ADMIN_ROLE,
-					AccountConstants.SYSTEM_BACKOFFICE_ROLE,
-					AccountConstants.SHEET_MANAGER_BACKOFFICE);
-
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 			Key esKey = datastore.newKeyFactory().setKind(ExecutionSheetConstants.EXEC_SHEET).newKey(executionSheetId);
 			Entity es = txn.get(esKey);
@@ -1423,7 +1373,7 @@ public class ExecutionSheetResource {
 				return Response.status(Status.NOT_FOUND).entity("Execution sheet not found").build();
 			}
 
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 
 			LOG.info("User " + username + " attempting to toggle like for execution sheet: " + executionSheetId);
 
@@ -1527,26 +1477,11 @@ public class ExecutionSheetResource {
 	@Path("/{id}/comment")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response addComment(@PathParam("id") String executionSheetId, @HeaderParam("Authorization") String authHeader,
-			String commentJson) {
+	@Secured({ Role.RU, Role.PO, Role.ADLU, Role.PRBO, Role.SYSADMIN, Role.SYSBO, Role.SMBO })
+	public Response addComment(@PathParam("id") String executionSheetId, String commentJson) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			List<String> roles = List.of(
-					AccountConstants.REGISTERED_USER,
-					AccountConstants.PARTNER_OPERATOR,
-					AccountConstants.ADHERENT_LANDOWNER_USER,
-					AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE,
-					AccountConstants.SYSTEM_ADMIN_ROLE,
-					AccountConstants.SYSTEM_BACKOFFICE_ROLE,
-					AccountConstants.SHEET_MANAGER_BACKOFFICE);
-
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 			JsonNode commentData = mapper.readTree(commentJson);
 			String comment = commentData.get("comment").asText();
@@ -1564,7 +1499,7 @@ public class ExecutionSheetResource {
 				return Response.status(Status.NOT_FOUND).entity("Execution sheet not found").build();
 			}
 
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 			String commentId = executionSheetId + "_" + System.currentTimeMillis();
 
 			LOG.info("User " + username + " adding comment to execution sheet: " + executionSheetId);
@@ -1654,29 +1589,13 @@ public class ExecutionSheetResource {
 	@GET
 	@Path("/{id}/social")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getSocialData(@PathParam("id") String executionSheetId,
-			@HeaderParam("Authorization") String authHeader) {
+	@Secured({ Role.RU, Role.PO, Role.ADLU, Role.PRBO, Role.SDVBO, Role.SGVBO, Role.SYSADMIN, Role.SYSBO, Role.SMBO })
+	public Response getSocialData(@PathParam("id") String executionSheetId) {
 		try {
-			List<String> roles = List.of(
-					AccountConstants.REGISTERED_USER,
-					AccountConstants.PARTNER_OPERATOR,
-					AccountConstants.ADHERENT_LANDOWNER_USER,
-					AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE,
-					AccountConstants.SHEET_DETAILED_VIEWER_BACKOFFICE,
-					AccountConstants.SHEET_GENERAL_VIEWER_BACKOFFICE,
-					AccountConstants.SYSTEM_ADMIN_ROLE,
-					AccountConstants.SYSTEM_BACKOFFICE_ROLE,
-					AccountConstants.SHEET_MANAGER_BACKOFFICE);
-
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-
-			if (user == null) {
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 			ObjectNode result = mapper.createObjectNode();
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 
 			LOG.info("Getting social data for execution sheet: " + executionSheetId + " for user: " + username);
 
@@ -1737,24 +1656,9 @@ public class ExecutionSheetResource {
 	@GET
 	@Path("/available-worksheets")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getAvailableWorksheets(@HeaderParam("Authorization") String authHeader) {
+	@Secured({ Role.PRBO, Role.SMBO, Role.SDVBO, Role.SGVBO, Role.SYSADMIN, Role.SYSBO })
+	public Response getAvailableWorksheets() {
 		try {
-			// Allow more roles to access available worksheets
-			List<String> roles = List.of(
-					AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE,
-					AccountConstants.SHEET_MANAGER_BACKOFFICE,
-					AccountConstants.SHEET_DETAILED_VIEWER_BACKOFFICE,
-					AccountConstants.SHEET_GENERAL_VIEWER_BACKOFFICE,
-					AccountConstants.SYSTEM_ADMIN_ROLE,
-					AccountConstants.SYSTEM_BACKOFFICE_ROLE);
-
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-
-			if (user == null) {
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
-
 			// Get all worksheets
 			Query<Entity> worksheetsQuery = Query.newEntityQueryBuilder()
 					.setKind(WorkSheetConstants.WORKSHEET)
@@ -1780,7 +1684,7 @@ public class ExecutionSheetResource {
 				Entity ws = worksheets.next();
 				Long worksheetId = ws.getKey().getId();
 
-				if (!existingWorksheetIds.contains(worksheetId)) {
+				if (!existingWorksheetIds.contains(worksheetId) && !ws.contains(WorkSheetConstants.WS_IMPORTING)) {
 					ObjectNode wsNode = mapper.createObjectNode();
 					wsNode.put("id", worksheetId);
 					wsNode.put("startingDate", ws.getString(WorkSheetConstants.WS_STARTING_DATE));
@@ -1803,24 +1707,11 @@ public class ExecutionSheetResource {
 	@Path("/photo/upload/{activityId}")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response uploadActivityPhoto(@PathParam("activityId") String activityId,
-			@HeaderParam("Authorization") String authHeader, String photoDataJson) {
+	@Secured({ Role.PO, Role.PRBO, Role.SYSADMIN, Role.SYSBO, Role.SMBO })
+	public Response uploadActivityPhoto(@PathParam("activityId") String activityId, String photoDataJson) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			List<String> roles = List.of(
-					AccountConstants.PARTNER_OPERATOR,
-					AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE,
-					AccountConstants.SYSTEM_ADMIN_ROLE,
-					AccountConstants.SYSTEM_BACKOFFICE_ROLE,
-					AccountConstants.SHEET_MANAGER_BACKOFFICE);
-
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 			JsonNode photoData;
 			try {
@@ -1855,7 +1746,7 @@ public class ExecutionSheetResource {
 		}
 	}
 
-	private Response uploadActivityPhotoInternal(String activityId, Entity user, String base64Image,
+	private Response uploadActivityPhotoInternal(String activityId, UserPrincipal user, String base64Image,
 			String description, String gpsLocation, Transaction txn) {
 		try {
 			// Verify activity exists and user has permission
@@ -1868,7 +1759,7 @@ public class ExecutionSheetResource {
 				return Response.status(Status.NOT_FOUND).entity(MESSAGE_INVALID_ACTIVITY).build();
 			}
 
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 
 			// Check if user is assigned to this activity
 			if (!activity.getString(ExecutionSheetConstants.EA_OPERATOR_ID).equals(username)) {
@@ -1880,7 +1771,7 @@ public class ExecutionSheetResource {
 			Key photoKey = datastore.newKeyFactory().setKind("ActivityPhoto").newKey(photoId);
 
 			// Upload to GCS
-			Storage storage = StorageOptions.getDefaultInstance().getService();
+			Storage storage = StorageGateway.get();
 			String bucketName = "terra-watch-photos";
 			String blobName = photoId + ".jpg";
 			BlobId blobId = BlobId.of(bucketName, blobName);
@@ -1917,6 +1808,7 @@ public class ExecutionSheetResource {
 					.build();
 
 			txn.put(photo);
+			SearchIndex.index(txn, photo);
 
 			// Update activity with photo reference
 			List<Value<?>> currentPhotos = activity.contains(ExecutionSheetConstants.EA_PHOTO_URLS)
@@ -1958,17 +1850,17 @@ public class ExecutionSheetResource {
 		}
 	}
 
-	private Response uploadExecutionSheetPhoto(String executionSheetId, Entity user, String base64Image,
+	private Response uploadExecutionSheetPhoto(String executionSheetId, UserPrincipal user, String base64Image,
 			String description, String gpsLocation, Transaction txn) {
 		try {
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 
 			// Create photo entity for execution sheet
 			String photoId = "photo_" + executionSheetId + "_" + System.currentTimeMillis();
 			Key photoKey = datastore.newKeyFactory().setKind("ExecutionSheetPhoto").newKey(photoId);
 
 			// Upload to GCS
-			Storage storage = StorageOptions.getDefaultInstance().getService();
+			Storage storage = StorageGateway.get();
 			String bucketName = "terra-watch-photos";
 			String blobName = photoId + ".jpg";
 			BlobId blobId = BlobId.of(bucketName, blobName);
@@ -2005,6 +1897,7 @@ public class ExecutionSheetResource {
 					.build();
 
 			txn.put(photo);
+			SearchIndex.index(txn, photo);
 			txn.commit();
 
 			// Create notification for execution sheet photo
@@ -2034,15 +1927,10 @@ public class ExecutionSheetResource {
 	@GET
 	@Path("/photo/activity/{activityId}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getActivityPhotos(@PathParam("activityId") String activityId,
-			@HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response getActivityPhotos(@PathParam("activityId") String activityId) {
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-
-			if (user == null) {
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 			// Check if this is an execution sheet ID or activity ID
 			boolean isExecutionSheet = activityId.startsWith("execution_");
@@ -2059,7 +1947,7 @@ public class ExecutionSheetResource {
 		}
 	}
 
-	private Response getActivityPhotosInternal(String activityId, Entity user) {
+	private Response getActivityPhotosInternal(String activityId, UserPrincipal user) {
 		try {
 			// Get all photos for the activity
 			Query<Entity> photosQuery = Query.newEntityQueryBuilder()
@@ -2071,7 +1959,7 @@ public class ExecutionSheetResource {
 			QueryResults<Entity> photos = datastore.run(photosQuery);
 			ArrayNode photosArray = mapper.createArrayNode();
 
-			String currentUsername = user.getString(AccountConstants.DS_USERNAME);
+			String currentUsername = user.getUsername();
 
 			while (photos.hasNext()) {
 				Entity photo = photos.next();
@@ -2125,7 +2013,7 @@ public class ExecutionSheetResource {
 		}
 	}
 
-	private Response getExecutionSheetPhotos(String executionSheetId, Entity user) {
+	private Response getExecutionSheetPhotos(String executionSheetId, UserPrincipal user) {
 		try {
 			LOG.info("Starting getExecutionSheetPhotos for execution sheet: " + executionSheetId);
 			
@@ -2139,7 +2027,7 @@ public class ExecutionSheetResource {
 			QueryResults<Entity> photos = datastore.run(photosQuery);
 			ArrayNode photosArray = mapper.createArrayNode();
 
-			String currentUsername = user.getString(AccountConstants.DS_USERNAME);
+			String currentUsername = user.getUsername();
 			LOG.info("Processing photos for user: " + currentUsername);
 
 			int photoCount = 0;
@@ -2204,17 +2092,11 @@ public class ExecutionSheetResource {
 	@POST
 	@Path("/photo/{photoId}/like")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response togglePhotoLike(@PathParam("photoId") String photoId,
-			@HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response togglePhotoLike(@PathParam("photoId") String photoId) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 			// Try to find photo in ActivityPhoto first
 			Key photoKey = datastore.newKeyFactory().setKind("ActivityPhoto").newKey(photoId);
@@ -2233,7 +2115,7 @@ public class ExecutionSheetResource {
 				return Response.status(Status.NOT_FOUND).entity("Photo not found").build();
 			}
 
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 
 			// Check if like already exists
 			Key likeKey = datastore.newKeyFactory().setKind("PhotoLike")
@@ -2305,17 +2187,11 @@ public class ExecutionSheetResource {
 	@DELETE
 	@Path("/photo/{photoId}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response deletePhoto(@PathParam("photoId") String photoId,
-			@HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response deletePhoto(@PathParam("photoId") String photoId) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 			// Get photo
 			Key photoKey = datastore.newKeyFactory().setKind("ActivityPhoto").newKey(photoId);
@@ -2332,12 +2208,12 @@ public class ExecutionSheetResource {
 				return Response.status(Status.NOT_FOUND).entity("Photo not found").build();
 			}
 
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 			String uploader = photo.getString("uploadedBy");
 
 			// Only uploader or admin can delete
 			if (!username.equals(uploader) &&
-					!user.getString(AccountConstants.DS_ROLE).equals(AccountConstants.SYSTEM_ADMIN_ROLE)) {
+					!user.getRole().equals(AccountConstants.SYSTEM_ADMIN_ROLE)) {
 				txn.rollback();
 				return Response.status(Status.FORBIDDEN).entity("Permission denied").build();
 			}
@@ -2373,6 +2249,7 @@ public class ExecutionSheetResource {
 
 			// Delete photo and associated likes
 			txn.delete(photoKey);
+			SearchIndex.remove(txn, photoKey);
 
 			// Delete all likes for this photo
 			Query<Entity> likesQuery = Query.newEntityQueryBuilder()
@@ -2437,15 +2314,9 @@ public class ExecutionSheetResource {
 	@GET
 	@Path("/recent-activities")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getRecentActivities(@HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response getRecentActivities() {
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-
-			if (user == null) {
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
-
 			ArrayNode activities = mapper.createArrayNode();
 
 			// Get recent execution sheet activities
@@ -2523,16 +2394,12 @@ public class ExecutionSheetResource {
 	@GET
 	@Path("/recent-photos")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getRecentPhotos(@HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response getRecentPhotos() {
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-
-			if (user == null) {
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-			String currentUsername = user.getString(AccountConstants.DS_USERNAME);
+			String currentUsername = user.getUsername();
 			ArrayNode photos = mapper.createArrayNode();
 
 			// Get recent activity photos
@@ -2543,6 +2410,7 @@ public class ExecutionSheetResource {
 					.build();
 
 			QueryResults<Entity> recentActivityPhotos = datastore.run(activityPhotosQuery);
+			BatchLoader activityLoader = BatchLoader.create();
 
 			while (recentActivityPhotos.hasNext()) {
 				Entity photo = recentActivityPhotos.next();
@@ -2581,29 +2449,30 @@ public class ExecutionSheetResource {
 				photoNode.put("likes", likeCount);
 				photoNode.put("userLiked", userLiked);
 
-				// Get worksheet ID from activity
+				// Get worksheet ID from activity, all activities are fetched in one batch below
 				String activityId = photo.getString("activityId");
 				Key activityKey = datastore.newKeyFactory()
 						.setKind(ExecutionSheetConstants.EXEC_ACTIVITY)
 						.newKey(activityId);
-				Entity activity = datastore.get(activityKey);
-
-				if (activity != null) {
-					String parcelId = activity.getString(ExecutionSheetConstants.EA_PARCEL_ID);
-					// Extract worksheet ID from parcel ID (format: execution_worksheetId_parcelId)
-					String[] parts = parcelId.split("_");
-					if (parts.length >= 2) {
-						try {
-							Long worksheetId = Long.parseLong(parts[1]);
-							photoNode.put("worksheetId", worksheetId);
-						} catch (NumberFormatException e) {
-							// Ignore if cannot parse
+				activityLoader.load(activityKey).thenAccept(activity -> {
+					if (activity != null) {
+						String parcelId = activity.getString(ExecutionSheetConstants.EA_PARCEL_ID);
+						// Extract worksheet ID from parcel ID (format: execution_worksheetId_parcelId)
+						String[] parts = parcelId.split("_");
+						if (parts.length >= 2) {
+							try {
+								Long worksheetId = Long.parseLong(parts[1]);
+								photoNode.put("worksheetId", worksheetId);
+							} catch (NumberFormatException e) {
+								// Ignore if cannot parse
+							}
 						}
 					}
-				}
+				});
 
 				photos.add(photoNode);
 			}
+			activityLoader.dispatch();
 
 			// Get recent execution sheet photos
 			Query<Entity> executionSheetPhotosQuery = Query.newEntityQueryBuilder()
@@ -2675,26 +2544,15 @@ public class ExecutionSheetResource {
 	@GET
 	@Path("/test/{worksheetId}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response testExecutionSheetData(@HeaderParam("Authorization") String authHeader,
-			@PathParam("worksheetId") Long worksheetId) {
+	@Secured({ Role.PRBO, Role.SMBO, Role.SYSADMIN, Role.SYSBO })
+	public Response testExecutionSheetData(@PathParam("worksheetId") Long worksheetId) {
 		try {
-			List<String> roles = List.of(
-					AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE,
-					AccountConstants.SHEET_MANAGER_BACKOFFICE,
-					AccountConstants.SYSTEM_ADMIN_ROLE,
-					AccountConstants.SYSTEM_BACKOFFICE_ROLE);
-
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-
-			if (user == null) {
-				return Response.status(Status.FORBIDDEN).entity("User validation failed").build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 			ObjectNode result = mapper.createObjectNode();
 			result.put("worksheetId", worksheetId);
-			result.put("user", user.getString(AccountConstants.DS_USERNAME));
-			result.put("role", user.getString(AccountConstants.DS_ROLE));
+			result.put("user", user.getUsername());
+			result.put("role", user.getRole());
 
 			// Check worksheet exists
 			Key wsKey = wsKeyFactory.newKey(worksheetId);
@@ -2751,16 +2609,9 @@ public class ExecutionSheetResource {
 	@GET
 	@Path("/test-social/{executionSheetId}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response testSocialFeatures(@PathParam("executionSheetId") String executionSheetId,
-			@HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response testSocialFeatures(@PathParam("executionSheetId") String executionSheetId) {
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-
-			if (user == null) {
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
-
 			ObjectNode result = mapper.createObjectNode();
 
 			// Test execution sheet exists
@@ -2944,25 +2795,12 @@ public class ExecutionSheetResource {
 	@Path("/{executionSheetId}/photo")
 	@Consumes(MediaType.MULTIPART_FORM_DATA)
 	@Produces(MediaType.APPLICATION_JSON)
+	@Secured({ Role.PO, Role.PRBO, Role.SYSADMIN, Role.SYSBO, Role.SMBO })
 	public Response uploadExecutionSheetPhotoDirect(@PathParam("executionSheetId") String executionSheetId,
-			@HeaderParam("Authorization") String authHeader,
 			@jakarta.ws.rs.core.Context jakarta.servlet.http.HttpServletRequest request) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			List<String> roles = List.of(
-					AccountConstants.PARTNER_OPERATOR,
-					AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE,
-					AccountConstants.SYSTEM_ADMIN_ROLE,
-					AccountConstants.SYSTEM_BACKOFFICE_ROLE,
-					AccountConstants.SHEET_MANAGER_BACKOFFICE);
-
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 			// Verify execution sheet exists
 			Key esKey = datastore.newKeyFactory().setKind(ExecutionSheetConstants.EXEC_SHEET).newKey(executionSheetId);
@@ -2973,7 +2811,7 @@ public class ExecutionSheetResource {
 				return Response.status(Status.NOT_FOUND).entity("Execution sheet not found").build();
 			}
 
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 
 			// --- Parse the uploaded file ---
 			jakarta.servlet.http.Part filePart = null;
@@ -3009,7 +2847,7 @@ public class ExecutionSheetResource {
 			byte[] imageBytes = filePart.getInputStream().readAllBytes();
 
 			// --- Upload to GCS as before ---
-			Storage storage = StorageOptions.getDefaultInstance().getService();
+			Storage storage = StorageGateway.get();
 			String bucketName = "terra-watch-photos";
 			String photoId = "photo_" + executionSheetId + "_" + System.currentTimeMillis();
 			String blobName = photoId + ".jpg";
@@ -3034,6 +2872,7 @@ public class ExecutionSheetResource {
 					.build();
 
 			txn.put(photo);
+			SearchIndex.index(txn, photo);
 			txn.commit();
 
 			// Create notification for execution sheet photo
@@ -3065,18 +2904,12 @@ public class ExecutionSheetResource {
 	@GET
 	@Path("/{executionSheetId}/photos")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getExecutionSheetPhotosDirect(@PathParam("executionSheetId") String executionSheetId,
-			@HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response getExecutionSheetPhotosDirect(@PathParam("executionSheetId") String executionSheetId) {
 		try {
 			LOG.info("Getting photos for execution sheet: " + executionSheetId);
 			
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-
-			if (user == null) {
-				LOG.warning("User validation failed for photos request");
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 			LOG.info("User validated, calling getExecutionSheetPhotos");
 			return getExecutionSheetPhotos(executionSheetId, user);
@@ -3091,20 +2924,16 @@ public class ExecutionSheetResource {
 	@GET
 	@Path("/test-endpoint")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response testEndpoint(@HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response testEndpoint() {
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-
-			if (user == null) {
-				return Response.status(Status.FORBIDDEN).entity("Invalid user").build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 			ObjectNode result = mapper.createObjectNode();
 			result.put("status", "success");
 			result.put("message", "ExecutionSheetResource is working");
 			result.put("timestamp", System.currentTimeMillis());
-			result.put("user", user.getString(AccountConstants.DS_USERNAME));
+			result.put("user", user.getUsername());
 
 			return Response.ok(mapper.writeValueAsString(result)).build();
 
@@ -3114,28 +2943,25 @@ public class ExecutionSheetResource {
 		}
 	}
 
+	// Photos live in either ActivityPhoto or ExecutionSheetPhoto, ActivityPhoto wins if both exist
+	private Entity findPhoto(String photoId) {
+		BatchLoader loader = BatchLoader.create();
+		CompletableFuture<Entity> activityPhoto = loader
+				.load(datastore.newKeyFactory().setKind("ActivityPhoto").newKey(photoId));
+		CompletableFuture<Entity> executionSheetPhoto = loader
+				.load(datastore.newKeyFactory().setKind("ExecutionSheetPhoto").newKey(photoId));
+		loader.dispatch();
+		return activityPhoto.join() != null ? activityPhoto.join() : executionSheetPhoto.join();
+	}
+
 	@GET
 	@Path("/photo/{photoId}/serve")
 	@Produces("image/*")
-	public Response servePhoto(@PathParam("photoId") String photoId,
-			@HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response servePhoto(@PathParam("photoId") String photoId) {
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-
-			if (user == null) {
-				return Response.status(Status.FORBIDDEN).entity("Unauthorized").build();
-			}
-
-			// Get photo metadata from datastore
-			Key photoKey = datastore.newKeyFactory().setKind("ActivityPhoto").newKey(photoId);
-			Entity photo = datastore.get(photoKey);
-
-			// If not found in ActivityPhoto, try ExecutionSheetPhoto
-			if (photo == null) {
-				photoKey = datastore.newKeyFactory().setKind("ExecutionSheetPhoto").newKey(photoId);
-				photo = datastore.get(photoKey);
-			}
+			// Get photo metadata from datastore, looking up both photo kinds in one batch
+			Entity photo = findPhoto(photoId);
 
 			if (photo == null) {
 				return Response.status(Status.NOT_FOUND).entity("Photo not found").build();
@@ -3145,7 +2971,7 @@ public class ExecutionSheetResource {
 			String bucketName = "terra-watch-photos";
 			String blobName = photoId + ".jpg";
 
-			Storage storage = StorageOptions.getDefaultInstance().getService();
+			Storage storage = StorageGateway.get();
 			BlobId blobId = BlobId.of(bucketName, blobName);
 			Blob blob = storage.get(blobId);
 
@@ -3178,25 +3004,11 @@ public class ExecutionSheetResource {
 	@GET
 	@Path("/photo/{photoId}/thumbnail")
 	@Produces("image/*")
-	public Response servePhotoThumbnail(@PathParam("photoId") String photoId,
-			@HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response servePhotoThumbnail(@PathParam("photoId") String photoId) {
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-
-			if (user == null) {
-				return Response.status(Status.FORBIDDEN).entity("Unauthorized").build();
-			}
-
-			// Get photo metadata from datastore
-			Key photoKey = datastore.newKeyFactory().setKind("ActivityPhoto").newKey(photoId);
-			Entity photo = datastore.get(photoKey);
-
-			// If not found in ActivityPhoto, try ExecutionSheetPhoto
-			if (photo == null) {
-				photoKey = datastore.newKeyFactory().setKind("ExecutionSheetPhoto").newKey(photoId);
-				photo = datastore.get(photoKey);
-			}
+			// Get photo metadata from datastore, looking up both photo kinds in one batch
+			Entity photo = findPhoto(photoId);
 
 			if (photo == null) {
 				return Response.status(Status.NOT_FOUND).entity("Photo not found").build();
@@ -3206,7 +3018,7 @@ public class ExecutionSheetResource {
 			String bucketName = "terra-watch-photos";
 			String blobName = photoId + ".jpg";
 
-			Storage storage = StorageOptions.getDefaultInstance().getService();
+			Storage storage = StorageGateway.get();
 			BlobId blobId = BlobId.of(bucketName, blobName);
 			Blob blob = storage.get(blobId);
 
@@ -3242,25 +3054,12 @@ public class ExecutionSheetResource {
 	@Path("/{executionSheetId}/video")
 	@Consumes(MediaType.MULTIPART_FORM_DATA)
 	@Produces(MediaType.APPLICATION_JSON)
+	@Secured({ Role.PO, Role.PRBO, Role.SYSADMIN, Role.SYSBO, Role.SMBO })
 	public Response uploadExecutionSheetVideo(@PathParam("executionSheetId") String executionSheetId,
-			@HeaderParam("Authorization") String authHeader,
 			@jakarta.ws.rs.core.Context jakarta.servlet.http.HttpServletRequest request) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			List<String> roles = List.of(
-					AccountConstants.PARTNER_OPERATOR,
-					AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE,
-					AccountConstants.SYSTEM_ADMIN_ROLE,
-					AccountConstants.SYSTEM_BACKOFFICE_ROLE,
-					AccountConstants.SHEET_MANAGER_BACKOFFICE);
-
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 			// Verify execution sheet exists
 			Key esKey = datastore.newKeyFactory().setKind(ExecutionSheetConstants.EXEC_SHEET).newKey(executionSheetId);
@@ -3271,7 +3070,7 @@ public class ExecutionSheetResource {
 				return Response.status(Status.NOT_FOUND).entity("Execution sheet not found").build();
 			}
 
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 
 			// Parse the uploaded file and description
 			jakarta.servlet.http.Part filePart = null;
@@ -3307,7 +3106,7 @@ public class ExecutionSheetResource {
 			byte[] videoBytes = filePart.getInputStream().readAllBytes();
 
 			// Upload to GCS
-			Storage storage = StorageOptions.getDefaultInstance().getService();
+			Storage storage = StorageGateway.get();
 			String bucketName = "terra-watch-videos";
 			String videoId = "video_" + executionSheetId + "_" + System.currentTimeMillis();
 			String blobName = videoId + ".mp4";
@@ -3334,6 +3133,7 @@ public class ExecutionSheetResource {
 					.build();
 
 			txn.put(video);
+			SearchIndex.index(txn, video);
 			txn.commit();
 
 			// Create notification for execution sheet video
@@ -3365,22 +3165,10 @@ public class ExecutionSheetResource {
 	@GET
 	@Path("/{executionSheetId}/videos")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getExecutionSheetVideos(@PathParam("executionSheetId") String executionSheetId,
-			@HeaderParam("Authorization") String authHeader) {
+	@Secured({ Role.PO, Role.PRBO, Role.SYSADMIN, Role.SYSBO, Role.SMBO })
+	public Response getExecutionSheetVideos(@PathParam("executionSheetId") String executionSheetId) {
 		try {
-			List<String> roles = List.of(
-					AccountConstants.PARTNER_OPERATOR,
-					AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE,
-					AccountConstants.SYSTEM_ADMIN_ROLE,
-					AccountConstants.SYSTEM_BACKOFFICE_ROLE,
-					AccountConstants.SHEET_MANAGER_BACKOFFICE);
-
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-
-			if (user == null) {
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 			Query<Entity> query = Query.newEntityQueryBuilder()
 					.setKind("ExecutionSheetVideo")
@@ -3390,7 +3178,7 @@ public class ExecutionSheetResource {
 
 					QueryResults<Entity> results = datastore.run(query);
 		ArrayNode videosArray = mapper.createArrayNode();
-		String currentUsername = user.getString(AccountConstants.DS_USERNAME);
+		String currentUsername = user.getUsername();
 
 		while (results.hasNext()) {
 			Entity video = results.next();
@@ -3447,22 +3235,10 @@ public class ExecutionSheetResource {
 	@GET
 	@Path("/recent-videos")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getRecentVideos(@HeaderParam("Authorization") String authHeader,
-			@QueryParam("limit") Integer limitParam) {
+	@Secured({ Role.PO, Role.PRBO, Role.SYSADMIN, Role.SYSBO, Role.SMBO })
+	public Response getRecentVideos(@QueryParam("limit") Integer limitParam) {
 		try {
-			List<String> roles = List.of(
-					AccountConstants.PARTNER_OPERATOR,
-					AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE,
-					AccountConstants.SYSTEM_ADMIN_ROLE,
-					AccountConstants.SYSTEM_BACKOFFICE_ROLE,
-					AccountConstants.SHEET_MANAGER_BACKOFFICE);
-
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-
-			if (user == null) {
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
 			int limit = (limitParam != null && limitParam > 0) ? limitParam : 20;
 
@@ -3499,7 +3275,7 @@ public class ExecutionSheetResource {
 				QueryResults<Entity> likeResults = datastore.run(likeQuery);
 				int likeCount = 0;
 				boolean userLiked = false;
-				String currentUsername = user.getString(AccountConstants.DS_USERNAME);
+				String currentUsername = user.getUsername();
 				
 				while (likeResults.hasNext()) {
 					Entity like = likeResults.next();
@@ -3525,26 +3301,13 @@ public class ExecutionSheetResource {
 	@POST
 	@Path("/video/{videoId}/like")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response toggleVideoLike(@PathParam("videoId") String videoId,
-			@HeaderParam("Authorization") String authHeader) {
+	@Secured({ Role.PO, Role.PRBO, Role.SYSADMIN, Role.SYSBO, Role.SMBO })
+	public Response toggleVideoLike(@PathParam("videoId") String videoId) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			List<String> roles = List.of(
-					AccountConstants.PARTNER_OPERATOR,
-					AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE,
-					AccountConstants.SYSTEM_ADMIN_ROLE,
-					AccountConstants.SYSTEM_BACKOFFICE_ROLE,
-					AccountConstants.SHEET_MANAGER_BACKOFFICE);
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
-
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 
 			// Check if user already liked this video
 			Query<Entity> likeQuery = Query.newEntityQueryBuilder()
@@ -3605,24 +3368,10 @@ public class ExecutionSheetResource {
 	@GET
 	@Path("/video/{videoId}/serve")
 	@Produces("video/*")
-	public Response serveVideo(@PathParam("videoId") String videoId,
-			@HeaderParam("Authorization") String authHeader) {
+	@Secured({ Role.PO, Role.PRBO, Role.SYSADMIN, Role.SYSBO, Role.SMBO })
+	public Response serveVideo(@PathParam("videoId") String videoId) {
 		try {
-			List<String> roles = List.of(
-					AccountConstants.PARTNER_OPERATOR,
-					AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE,
-					AccountConstants.SYSTEM_ADMIN_ROLE,
-					AccountConstants.SYSTEM_BACKOFFICE_ROLE,
-					AccountConstants.SHEET_MANAGER_BACKOFFICE);
-
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-
-			if (user == null) {
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
-
-			Storage storage = StorageOptions.getDefaultInstance().getService();
+			Storage storage = StorageGateway.get();
 			String bucketName = "terra-watch-videos";
 			String blobName = videoId + ".mp4";
 			BlobId blobId = BlobId.of(bucketName, blobName);
@@ -3657,364 +3406,489 @@ public class ExecutionSheetResource {
 	@GET
 	@Path("/social-feed")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getUnifiedSocialFeed(@HeaderParam("Authorization") String authHeader,
-			@QueryParam("executionSheetId") String executionSheetId,
-			@QueryParam("limit") Integer limitParam) {
+	@Secured
+	public Response getUnifiedSocialFeed(@QueryParam("executionSheetId") String executionSheetId,
+			@QueryParam("limit") Integer limitParam, @QueryParam("pageSize") Integer pageSize,
+			@QueryParam("cursor") String cursor) {
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
+
+			String currentUsername = user.getUsername();
+			PageRequest page;
+			try {
+				page = PageRequest.ofComposite(pageSize, cursor);
+			} catch (IllegalArgumentException e) {
+				return Response.status(Status.BAD_REQUEST).entity(MESSAGE_INVALID_CURSOR).build();
+			}
+			int limit = page.paged() ? page.pageSize() : (limitParam != null && limitParam > 0) ? limitParam : 50;
+			int[] shares = feedShares(page, limit);
+			int photoLimit = shares[0];
+			int videoLimit = shares[1];
+			int textPostLimit = shares[2];
+			int activityPostLimit = shares[3];
+			ArrayNode posts = mapper.createArrayNode();
 
-			if (user == null) {
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
+			// The four sources are independent, so they are queried concurrently
+			FeedSource photos;
+			FeedSource videos;
+			FeedSource textPosts;
+			FeedSource activityPosts;
+			try (Fanout fanout = Fanout.open()) {
+				Fanout.Task<FeedSource> photoTask = fanout
+						.fork(() -> loadPhotoPosts(page, photoLimit, executionSheetId, currentUsername));
+				Fanout.Task<FeedSource> videoTask = fanout
+						.fork(() -> loadVideoPosts(page, videoLimit, executionSheetId, currentUsername));
+				Fanout.Task<FeedSource> textPostTask = fanout
+						.fork(() -> loadTextPosts(page, textPostLimit, executionSheetId, currentUsername));
+				Fanout.Task<FeedSource> activityPostTask = fanout
+						.fork(() -> loadActivityPosts(page, activityPostLimit, executionSheetId, currentUsername));
+				fanout.join();
+				photos = photoTask.get();
+				videos = videoTask.get();
+				textPosts = textPostTask.get();
+				activityPosts = activityPostTask.get();
+			}
+			posts.addAll(photos.posts());
+			posts.addAll(videos.posts());
+			posts.addAll(textPosts.posts());
+			posts.addAll(activityPosts.posts());
+
+			if (page.paged()) {
+				Map<String, String> sources = new LinkedHashMap<>();
+				sources.put("photos", feedCursor(page, "photos", photos, photoLimit));
+				sources.put("videos", feedCursor(page, "videos", videos, videoLimit));
+				sources.put("textPosts", feedCursor(page, "textPosts", textPosts, textPostLimit));
+				sources.put("activityPosts", feedCursor(page, "activityPosts", activityPosts, activityPostLimit));
+				String nextCursor = PageRequest.encodeComposite(sources);
+				return Response.ok(mapper.writeValueAsString(page.envelope(posts, nextCursor))).build();
 			}
+			return Response.ok(mapper.writeValueAsString(posts)).build();
 
-			String currentUsername = user.getString(AccountConstants.DS_USERNAME);
-			int limit = (limitParam != null && limitParam > 0) ? limitParam : 50;
-			ArrayNode posts = mapper.createArrayNode();
+		} catch (Exception e) {
+			LOG.severe("Error getting unified social feed: " + e.getMessage());
+			return Response.status(Status.INTERNAL_SERVER_ERROR).entity("Error getting social feed: " + e.getMessage()).build();
+		}
+	}
 
-			// Get photos as posts (excluding those associated with activity posts)
-			Query<Entity> photosQuery = Query.newEntityQueryBuilder()
-					.setKind("ExecutionSheetPhoto")
-					.setOrderBy(OrderBy.desc("uploadTimestamp"))
-					.setLimit(limit / 2)
-					.build();
+	/**
+	 * Splits a social feed page between its sources, photos and videos weighing twice as much as text and activity
+	 * posts, so that the shares add up to the page size. Exhausted sources get no share; what rounding leaves over
+	 * goes to the lightest sources first, so every source has a slot once the page holds one per source.
+	 * @return limits of photos, videos, text posts and activity posts, in that order
+	 */
+	private static int[] feedShares(PageRequest page, int limit) {
+		String[] sources = { "photos", "videos", "textPosts", "activityPosts" };
+		int[] weights = { 2, 2, 1, 1 };
+		int totalWeight = 0;
+		for (int i = 0; i < sources.length; i++) {
+			if (page.isExhausted(sources[i])) {
+				weights[i] = 0;
+			}
+			totalWeight += weights[i];
+		}
+		int[] shares = new int[sources.length];
+		if (totalWeight == 0) {
+			return shares;
+		}
+		int assigned = 0;
+		for (int i = 0; i < sources.length; i++) {
+			shares[i] = limit * weights[i] / totalWeight;
+			assigned += shares[i];
+		}
+		for (int i = sources.length - 1; assigned < limit; i = i == 0 ? sources.length - 1 : i - 1) {
+			if (weights[i] > 0) {
+				shares[i]++;
+				assigned++;
+			}
+		}
+		return shares;
+	}
 
-			QueryResults<Entity> photos = datastore.run(photosQuery);
-			while (photos.hasNext()) {
-				Entity photo = photos.next();
-				
-				// Skip if filtering by execution sheet and doesn't match
-				if (executionSheetId != null && !executionSheetId.equals(photo.getString("executionSheetId"))) {
-					continue;
-				}
-				
-				// Skip photos that are associated with activity posts to avoid duplication
-				if (photo.contains("activityPostId") && photo.getString("activityPostId") != null) {
-					continue;
-				}
-				
-				// Skip photos that are flagged as activity media
-				if (photo.contains("isActivityMedia") && photo.getBoolean("isActivityMedia")) {
-					continue;
-				}
-				
-				ObjectNode post = mapper.createObjectNode();
-				post.put("id", "photo_" + photo.getKey().getName());
-				post.put("type", "photo");
-				post.put("mediaType", "image");
-				post.put("photoId", photo.getKey().getName());
-				post.put("executionSheetId", photo.getString("executionSheetId"));
-				post.put("description", photo.getString("description"));
-				post.put("uploadedBy", photo.getString("uploadedBy"));
-				post.put("timestamp", photo.getTimestamp("uploadTimestamp").toString());
-				post.put("photoUrl", photo.getString("url"));
-				post.put("thumbnailUrl", photo.getString("thumbnailUrl"));
-
-				// Get likes
-				Query<Entity> likesQuery = Query.newEntityQueryBuilder()
-						.setKind("PhotoLike")
-						.setFilter(PropertyFilter.eq("photoId", photo.getKey().getName()))
-						.build();
-				QueryResults<Entity> likes = datastore.run(likesQuery);
-				int likeCount = 0;
-				boolean userLiked = false;
-				while (likes.hasNext()) {
-					Entity like = likes.next();
-					likeCount++;
-					if (currentUsername.equals(like.getString("username"))) {
-						userLiked = true;
-					}
-				}
-				post.put("likes", likeCount);
-				post.put("userLiked", userLiked);
+	/**
+	 * Position of a social feed source after this page; a source left out of the page keeps its position
+	 */
+	private static String feedCursor(PageRequest page, String source, FeedSource feed, int limit) {
+		if (limit == 0) {
+			return page.sourcePosition(source);
+		}
+		return PageRequest.sourceCursor(feed.results(), feed.read(), limit);
+	}
 
-				// Get comments count
-				Query<Entity> commentsQuery = Query.newEntityQueryBuilder()
-						.setKind("SocialComment")
-						.setFilter(PropertyFilter.eq("postId", "photo_" + photo.getKey().getName()))
-						.build();
-				QueryResults<Entity> comments = datastore.run(commentsQuery);
-				int commentCount = 0;
-				while (comments.hasNext()) {
-					comments.next();
-					commentCount++;
-				}
-				post.put("comments", commentCount);
+	/**
+	 * One source of the social feed
+	 * @param posts feed items built from the source
+	 * @param results the source's query results, null if it was already exhausted
+	 * @param read results read from the source, including skipped ones
+	 */
+	private record FeedSource(List<ObjectNode> posts, QueryResults<Entity> results, int read) {
+	}
 
-				posts.add(post);
+	/**
+	 * Photos of the social feed, excluding activity media
+	 */
+	private FeedSource loadPhotoPosts(PageRequest page, int photoLimit, String executionSheetId, String currentUsername) {
+		List<ObjectNode> items = new ArrayList<>();
+		Query<Entity> photosQuery = Query.newEntityQueryBuilder()
+				.setKind("ExecutionSheetPhoto")
+				.setOrderBy(OrderBy.desc("uploadTimestamp"))
+				.setLimit(PageRequest.sourceLimit(photoLimit))
+				.setStartCursor(page.startCursor("photos"))
+				.build();
+
+		QueryResults<Entity> photos = page.isExhausted("photos") || photoLimit == 0 ? null : datastore.run(photosQuery);
+		int photosRead = 0;
+		while (PageRequest.sourceHasNext(photos, photosRead, photoLimit)) {
+			Entity photo = photos.next();
+			photosRead++;
+			
+			// Skip if filtering by execution sheet and doesn't match
+			if (executionSheetId != null && !executionSheetId.equals(photo.getString("executionSheetId"))) {
+				continue;
+			}
+			
+			// Skip photos that are associated with activity posts to avoid duplication
+			if (photo.contains("activityPostId") && photo.getString("activityPostId") != null) {
+				continue;
+			}
+			
+			// Skip photos that are flagged as activity media
+			if (photo.contains("isActivityMedia") && photo.getBoolean("isActivityMedia")) {
+				continue;
 			}
+			
+			ObjectNode post = mapper.createObjectNode();
+			post.put("id", "photo_" + photo.getKey().getName());
+			post.put("type", "photo");
+			post.put("mediaType", "image");
+			post.put("photoId", photo.getKey().getName());
+			post.put("executionSheetId", photo.getString("executionSheetId"));
+			post.put("description", photo.getString("description"));
+			post.put("uploadedBy", photo.getString("uploadedBy"));
+			post.put("timestamp", photo.getTimestamp("uploadTimestamp").toString());
+			post.put("photoUrl", photo.getString("url"));
+			post.put("thumbnailUrl", photo.getString("thumbnailUrl"));
 
-			// Get videos as posts (excluding those associated with activity posts)
-			Query<Entity> videosQuery = Query.newEntityQueryBuilder()
-					.setKind("ExecutionSheetVideo")
-					.setOrderBy(OrderBy.desc("uploadTimestamp"))
-					.setLimit(limit / 2)
+			// Get likes
+			Query<Entity> likesQuery = Query.newEntityQueryBuilder()
+					.setKind("PhotoLike")
+					.setFilter(PropertyFilter.eq("photoId", photo.getKey().getName()))
 					.build();
-
-			QueryResults<Entity> videos = datastore.run(videosQuery);
-			while (videos.hasNext()) {
-				Entity video = videos.next();
-				
-				// Skip if filtering by execution sheet and doesn't match
-				if (executionSheetId != null && !executionSheetId.equals(video.getString("executionSheetId"))) {
-					continue;
-				}
-				
-				// Skip videos that are associated with activity posts to avoid duplication
-				if (video.contains("activityPostId") && video.getString("activityPostId") != null) {
-					continue;
-				}
-				
-				// Skip videos that are flagged as activity media
-				if (video.contains("isActivityMedia") && video.getBoolean("isActivityMedia")) {
-					continue;
-				}
-				
-				ObjectNode post = mapper.createObjectNode();
-				post.put("id", "video_" + video.getKey().getName());
-				post.put("type", "video");
-				post.put("mediaType", "video");
-				post.put("videoId", video.getKey().getName());
-				post.put("executionSheetId", video.getString("executionSheetId"));
-				post.put("description", video.getString("description"));
-				post.put("uploadedBy", video.getString("uploadedBy"));
-				post.put("timestamp", video.getTimestamp("uploadTimestamp").toString());
-				post.put("videoUrl", video.getString("url"));
-				post.put("thumbnailUrl", "https://storage.googleapis.com/terra-watch-photos/video-placeholder.png");
-
-				// Get likes
-				Query<Entity> likesQuery = Query.newEntityQueryBuilder()
-						.setKind("VideoLike")
-						.setFilter(PropertyFilter.eq("videoId", video.getKey().getName()))
-						.build();
-				QueryResults<Entity> likes = datastore.run(likesQuery);
-				int likeCount = 0;
-				boolean userLiked = false;
-				while (likes.hasNext()) {
-					Entity like = likes.next();
-					likeCount++;
-					if (currentUsername.equals(like.getString("username"))) {
-						userLiked = true;
-					}
+			QueryResults<Entity> likes = datastore.run(likesQuery);
+			int likeCount = 0;
+			boolean userLiked = false;
+			while (likes.hasNext()) {
+				Entity like = likes.next();
+				likeCount++;
+				if (currentUsername.equals(like.getString("username"))) {
+					userLiked = true;
 				}
-				post.put("likes", likeCount);
-				post.put("userLiked", userLiked);
+			}
+			post.put("likes", likeCount);
+			post.put("userLiked", userLiked);
 
-				// Get comments count
-				Query<Entity> commentsQuery = Query.newEntityQueryBuilder()
-						.setKind("SocialComment")
-						.setFilter(PropertyFilter.eq("postId", "video_" + video.getKey().getName()))
-						.build();
-				QueryResults<Entity> comments = datastore.run(commentsQuery);
-				int commentCount = 0;
-				while (comments.hasNext()) {
-					comments.next();
-					commentCount++;
-				}
-				post.put("comments", commentCount);
+			// Get comments count
+			Query<Entity> commentsQuery = Query.newEntityQueryBuilder()
+					.setKind("SocialComment")
+					.setFilter(PropertyFilter.eq("postId", "photo_" + photo.getKey().getName()))
+					.build();
+			QueryResults<Entity> comments = datastore.run(commentsQuery);
+			int commentCount = 0;
+			while (comments.hasNext()) {
+				comments.next();
+				commentCount++;
+			}
+			post.put("comments", commentCount);
 
-				posts.add(post);
+			items.add(post);
+		}
+		return new FeedSource(items, photos, photosRead);
+	}
+
+	/**
+	 * Videos of the social feed, excluding activity media
+	 */
+	private FeedSource loadVideoPosts(PageRequest page, int videoLimit, String executionSheetId, String currentUsername) {
+		List<ObjectNode> items = new ArrayList<>();
+		Query<Entity> videosQuery = Query.newEntityQueryBuilder()
+				.setKind("ExecutionSheetVideo")
+				.setOrderBy(OrderBy.desc("uploadTimestamp"))
+				.setLimit(PageRequest.sourceLimit(videoLimit))
+				.setStartCursor(page.startCursor("videos"))
+				.build();
+
+		QueryResults<Entity> videos = page.isExhausted("videos") || videoLimit == 0 ? null : datastore.run(videosQuery);
+		int videosRead = 0;
+		while (PageRequest.sourceHasNext(videos, videosRead, videoLimit)) {
+			Entity video = videos.next();
+			videosRead++;
+			
+			// Skip if filtering by execution sheet and doesn't match
+			if (executionSheetId != null && !executionSheetId.equals(video.getString("executionSheetId"))) {
+				continue;
 			}
+			
+			// Skip videos that are associated with activity posts to avoid duplication
+			if (video.contains("activityPostId") && video.getString("activityPostId") != null) {
+				continue;
+			}
+			
+			// Skip videos that are flagged as activity media
+			if (video.contains("isActivityMedia") && video.getBoolean("isActivityMedia")) {
+				continue;
+			}
+			
+			ObjectNode post = mapper.createObjectNode();
+			post.put("id", "video_" + video.getKey().getName());
+			post.put("type", "video");
+			post.put("mediaType", "video");
+			post.put("videoId", video.getKey().getName());
+			post.put("executionSheetId", video.getString("executionSheetId"));
+			post.put("description", video.getString("description"));
+			post.put("uploadedBy", video.getString("uploadedBy"));
+			post.put("timestamp", video.getTimestamp("uploadTimestamp").toString());
+			post.put("videoUrl", video.getString("url"));
+			post.put("thumbnailUrl", "https://storage.googleapis.com/terra-watch-photos/video-placeholder.png");
 
-			// Get text posts
-			Query<Entity> textPostsQuery = Query.newEntityQueryBuilder()
-					.setKind("SocialPost")
-					.setOrderBy(OrderBy.desc("timestamp"))
-					.setLimit(limit / 4)
+			// Get likes
+			Query<Entity> likesQuery = Query.newEntityQueryBuilder()
+					.setKind("VideoLike")
+					.setFilter(PropertyFilter.eq("videoId", video.getKey().getName()))
 					.build();
-
-			QueryResults<Entity> textPosts = datastore.run(textPostsQuery);
-			while (textPosts.hasNext()) {
-				Entity textPost = textPosts.next();
-				
-				// Skip if filtering by execution sheet and doesn't match
-				if (executionSheetId != null && !executionSheetId.equals(textPost.getString("executionSheetId"))) {
-					continue;
-				}
-				
-				ObjectNode post = mapper.createObjectNode();
-				post.put("id", "post_" + textPost.getKey().getName());
-				post.put("type", "text");
-				post.put("postId", textPost.getKey().getName());
-				post.put("executionSheetId", textPost.getString("executionSheetId"));
-				post.put("description", textPost.getString("content"));
-				post.put("uploadedBy", textPost.getString("author"));
-				post.put("timestamp", textPost.getTimestamp("timestamp").toString());
-
-				// Get likes
-				Query<Entity> likesQuery = Query.newEntityQueryBuilder()
-						.setKind("PostLike")
-						.setFilter(PropertyFilter.eq("postId", textPost.getKey().getName()))
-						.build();
-				QueryResults<Entity> likes = datastore.run(likesQuery);
-				int likeCount = 0;
-				boolean userLiked = false;
-				while (likes.hasNext()) {
-					Entity like = likes.next();
-					likeCount++;
-					if (currentUsername.equals(like.getString("username"))) {
-						userLiked = true;
-					}
+			QueryResults<Entity> likes = datastore.run(likesQuery);
+			int likeCount = 0;
+			boolean userLiked = false;
+			while (likes.hasNext()) {
+				Entity like = likes.next();
+				likeCount++;
+				if (currentUsername.equals(like.getString("username"))) {
+					userLiked = true;
 				}
-				post.put("likes", likeCount);
-				post.put("userLiked", userLiked);
+			}
+			post.put("likes", likeCount);
+			post.put("userLiked", userLiked);
 
-				// Get comments count
-				Query<Entity> commentsQuery = Query.newEntityQueryBuilder()
-						.setKind("SocialComment")
-						.setFilter(PropertyFilter.eq("postId", "post_" + textPost.getKey().getName()))
-						.build();
-				QueryResults<Entity> comments = datastore.run(commentsQuery);
-				int commentCount = 0;
-				while (comments.hasNext()) {
-					comments.next();
-					commentCount++;
-				}
-				post.put("comments", commentCount);
+			// Get comments count
+			Query<Entity> commentsQuery = Query.newEntityQueryBuilder()
+					.setKind("SocialComment")
+					.setFilter(PropertyFilter.eq("postId", "video_" + video.getKey().getName()))
+					.build();
+			QueryResults<Entity> comments = datastore.run(commentsQuery);
+			int commentCount = 0;
+			while (comments.hasNext()) {
+				comments.next();
+				commentCount++;
+			}
+			post.put("comments", commentCount);
+
+			items.add(post);
+		}
+		return new FeedSource(items, videos, videosRead);
+	}
 
-				posts.add(post);
+	/**
+	 * Text posts of the social feed
+	 */
+	private FeedSource loadTextPosts(PageRequest page, int textPostLimit, String executionSheetId, String currentUsername) {
+		List<ObjectNode> items = new ArrayList<>();
+		Query<Entity> textPostsQuery = Query.newEntityQueryBuilder()
+				.setKind("SocialPost")
+				.setOrderBy(OrderBy.desc("timestamp"))
+				.setLimit(PageRequest.sourceLimit(textPostLimit))
+				.setStartCursor(page.startCursor("textPosts"))
+				.build();
+
+		QueryResults<Entity> textPosts = page.isExhausted("textPosts") || textPostLimit == 0 ? null : datastore.run(textPostsQuery);
+		int textPostsRead = 0;
+		while (PageRequest.sourceHasNext(textPosts, textPostsRead, textPostLimit)) {
+			Entity textPost = textPosts.next();
+			textPostsRead++;
+			
+			// Skip if filtering by execution sheet and doesn't match
+			if (executionSheetId != null && !executionSheetId.equals(textPost.getString("executionSheetId"))) {
+				continue;
 			}
+			
+			ObjectNode post = mapper.createObjectNode();
+			post.put("id", "post_" + textPost.getKey().getName());
+			post.put("type", "text");
+			post.put("postId", textPost.getKey().getName());
+			post.put("executionSheetId", textPost.getString("executionSheetId"));
+			post.put("description", textPost.getString("content"));
+			post.put("uploadedBy", textPost.getString("author"));
+			post.put("timestamp", textPost.getTimestamp("timestamp").toString());
 
-			// Get activity posts
-			Query<Entity> activityPostsQuery = Query.newEntityQueryBuilder()
-					.setKind("SocialActivityPost")
-					.setOrderBy(OrderBy.desc("timestamp"))
-					.setLimit(limit / 4)
+			// Get likes
+			Query<Entity> likesQuery = Query.newEntityQueryBuilder()
+					.setKind("PostLike")
+					.setFilter(PropertyFilter.eq("postId", textPost.getKey().getName()))
 					.build();
-
-			QueryResults<Entity> activityPosts = datastore.run(activityPostsQuery);
-			while (activityPosts.hasNext()) {
-				Entity activityPost = activityPosts.next();
-				
-				// Skip if filtering by execution sheet and doesn't match
-				if (executionSheetId != null && !executionSheetId.equals(activityPost.getString("executionSheetId"))) {
-					continue;
-				}
-				
-				ObjectNode post = mapper.createObjectNode();
-				post.put("id", "activity_" + activityPost.getKey().getName());
-				post.put("type", "activity");
-				post.put("postId", activityPost.getKey().getName());
-				post.put("executionSheetId", activityPost.getString("executionSheetId"));
-				post.put("description", activityPost.getString("content"));
-				post.put("uploadedBy", activityPost.getString("author"));
-				post.put("timestamp", activityPost.getTimestamp("timestamp").toString());
-				post.put("operationCode", activityPost.getString("operationCode"));
-				post.put("operationDescription", activityPost.getString("operationDescription"));
-				post.put("progressPercentage", activityPost.contains("progressPercentage") ? 
-					activityPost.getDouble("progressPercentage") : 0.0);
-				post.put("totalProgressPercentage", activityPost.contains("totalProgressPercentage") ? 
-					activityPost.getDouble("totalProgressPercentage") : 
-					(activityPost.contains("progressPercentage") ? activityPost.getDouble("progressPercentage") : 0.0));
-				post.put("areaHa", activityPost.contains("areaHa") ? 
-					activityPost.getDouble("areaHa") : 0.0);
-
-				// Get associated media for this activity post (only media that belongs to this specific post)
-				ArrayNode mediaArray = mapper.createArrayNode();
-				
-				// Check for photos associated with this specific activity post
-				Query<Entity> mediaQuery = Query.newEntityQueryBuilder()
-						.setKind("ExecutionSheetPhoto")
-						.setFilter(PropertyFilter.eq("activityPostId", activityPost.getKey().getName()))
-						.setFilter(PropertyFilter.eq("isActivityMedia", true))
-						.build();
-				QueryResults<Entity> mediaResults = datastore.run(mediaQuery);
-				
-				while (mediaResults.hasNext()) {
-					Entity media = mediaResults.next();
-					// Double check that this media belongs to this specific post
-					if (media.getString("activityPostId").equals(activityPost.getKey().getName())) {
-						ObjectNode mediaNode = mapper.createObjectNode();
-						mediaNode.put("url", media.getString("url"));
-						mediaNode.put("thumbnailUrl", media.getString("thumbnailUrl"));
-						mediaNode.put("description", media.getString("description"));
-						mediaArray.add(mediaNode);
-					}
-				}
-				
-				// Check for videos associated with this specific activity post
-				Query<Entity> videoQuery = Query.newEntityQueryBuilder()
-						.setKind("ExecutionSheetVideo")
-						.setFilter(PropertyFilter.eq("activityPostId", activityPost.getKey().getName()))
-						.setFilter(PropertyFilter.eq("isActivityMedia", true))
-						.build();
-				QueryResults<Entity> videoResults = datastore.run(videoQuery);
-				
-				while (videoResults.hasNext()) {
-					Entity video = videoResults.next();
-					// Double check that this video belongs to this specific post
-					if (video.getString("activityPostId").equals(activityPost.getKey().getName())) {
-						ObjectNode videoNode = mapper.createObjectNode();
-						videoNode.put("url", video.getString("url"));
-						videoNode.put("thumbnailUrl", video.getString("thumbnailUrl"));
-						videoNode.put("description", video.getString("description"));
-						videoNode.put("type", "video");
-						mediaArray.add(videoNode);
-					}
-				}
-				
-				if (mediaArray.size() > 0) {
-					post.set("media", mediaArray);
+			QueryResults<Entity> likes = datastore.run(likesQuery);
+			int likeCount = 0;
+			boolean userLiked = false;
+			while (likes.hasNext()) {
+				Entity like = likes.next();
+				likeCount++;
+				if (currentUsername.equals(like.getString("username"))) {
+					userLiked = true;
 				}
+			}
+			post.put("likes", likeCount);
+			post.put("userLiked", userLiked);
 
-				// Get likes
-				Query<Entity> likesQuery = Query.newEntityQueryBuilder()
-						.setKind("ActivityPostLike")
-						.setFilter(PropertyFilter.eq("postId", activityPost.getKey().getName()))
-						.build();
-				QueryResults<Entity> likes = datastore.run(likesQuery);
-				int likeCount = 0;
-				boolean userLiked = false;
-				while (likes.hasNext()) {
-					Entity like = likes.next();
-					likeCount++;
-					if (currentUsername.equals(like.getString("username"))) {
-						userLiked = true;
-					}
-				}
-				post.put("likes", likeCount);
-				post.put("userLiked", userLiked);
+			// Get comments count
+			Query<Entity> commentsQuery = Query.newEntityQueryBuilder()
+					.setKind("SocialComment")
+					.setFilter(PropertyFilter.eq("postId", "post_" + textPost.getKey().getName()))
+					.build();
+			QueryResults<Entity> comments = datastore.run(commentsQuery);
+			int commentCount = 0;
+			while (comments.hasNext()) {
+				comments.next();
+				commentCount++;
+			}
+			post.put("comments", commentCount);
 
-				// Get comments count
-				Query<Entity> commentsQuery = Query.newEntityQueryBuilder()
-						.setKind("SocialComment")
-						.setFilter(PropertyFilter.eq("postId", "activity_" + activityPost.getKey().getName()))
-						.build();
-				QueryResults<Entity> comments = datastore.run(commentsQuery);
-				int commentCount = 0;
-				while (comments.hasNext()) {
-					comments.next();
-					commentCount++;
+			items.add(post);
+		}
+		return new FeedSource(items, textPosts, textPostsRead);
+	}
+
+	/**
+	 * Activity posts of the social feed, with their media
+	 */
+	private FeedSource loadActivityPosts(PageRequest page, int activityPostLimit, String executionSheetId, String currentUsername) {
+		List<ObjectNode> items = new ArrayList<>();
+		Query<Entity> activityPostsQuery = Query.newEntityQueryBuilder()
+				.setKind("SocialActivityPost")
+				.setOrderBy(OrderBy.desc("timestamp"))
+				.setLimit(PageRequest.sourceLimit(activityPostLimit))
+				.setStartCursor(page.startCursor("activityPosts"))
+				.build();
+
+		QueryResults<Entity> activityPosts = page.isExhausted("activityPosts") || activityPostLimit == 0 ? null : datastore.run(activityPostsQuery);
+		int activityPostsRead = 0;
+		while (PageRequest.sourceHasNext(activityPosts, activityPostsRead, activityPostLimit)) {
+			Entity activityPost = activityPosts.next();
+			activityPostsRead++;
+			
+			// Skip if filtering by execution sheet and doesn't match
+			if (executionSheetId != null && !executionSheetId.equals(activityPost.getString("executionSheetId"))) {
+				continue;
+			}
+			
+			ObjectNode post = mapper.createObjectNode();
+			post.put("id", "activity_" + activityPost.getKey().getName());
+			post.put("type", "activity");
+			post.put("postId", activityPost.getKey().getName());
+			post.put("executionSheetId", activityPost.getString("executionSheetId"));
+			post.put("description", activityPost.getString("content"));
+			post.put("uploadedBy", activityPost.getString("author"));
+			post.put("timestamp", activityPost.getTimestamp("timestamp").toString());
+			post.put("operationCode", activityPost.getString("operationCode"));
+			post.put("operationDescription", activityPost.getString("operationDescription"));
+			post.put("progressPercentage", activityPost.contains("progressPercentage") ? 
+				activityPost.getDouble("progressPercentage") : 0.0);
+			post.put("totalProgressPercentage", activityPost.contains("totalProgressPercentage") ? 
+				activityPost.getDouble("totalProgressPercentage") : 
+				(activityPost.contains("progressPercentage") ? activityPost.getDouble("progressPercentage") : 0.0));
+			post.put("areaHa", activityPost.contains("areaHa") ? 
+				activityPost.getDouble("areaHa") : 0.0);
+
+			// Get associated media for this activity post (only media that belongs to this specific post)
+			ArrayNode mediaArray = mapper.createArrayNode();
+			
+			// Check for photos associated with this specific activity post
+			Query<Entity> mediaQuery = Query.newEntityQueryBuilder()
+					.setKind("ExecutionSheetPhoto")
+					.setFilter(PropertyFilter.eq("activityPostId", activityPost.getKey().getName()))
+					.setFilter(PropertyFilter.eq("isActivityMedia", true))
+					.build();
+			QueryResults<Entity> mediaResults = datastore.run(mediaQuery);
+			
+			while (mediaResults.hasNext()) {
+				Entity media = mediaResults.next();
+				// Double check that this media belongs to this specific post
+				if (media.getString("activityPostId").equals(activityPost.getKey().getName())) {
+					ObjectNode mediaNode = mapper.createObjectNode();
+					mediaNode.put("url", media.getString("url"));
+					mediaNode.put("thumbnailUrl", media.getString("thumbnailUrl"));
+					mediaNode.put("description", media.getString("description"));
+					mediaArray.add(mediaNode);
 				}
-				post.put("comments", commentCount);
+			}
+			
+			// Check for videos associated with this specific activity post
+			Query<Entity> videoQuery = Query.newEntityQueryBuilder()
+					.setKind("ExecutionSheetVideo")
+					.setFilter(PropertyFilter.eq("activityPostId", activityPost.getKey().getName()))
+					.setFilter(PropertyFilter.eq("isActivityMedia", true))
+					.build();
+			QueryResults<Entity> videoResults = datastore.run(videoQuery);
+			
+			while (videoResults.hasNext()) {
+				Entity video = videoResults.next();
+				// Double check that this video belongs to this specific post
+				if (video.getString("activityPostId").equals(activityPost.getKey().getName())) {
+					ObjectNode videoNode = mapper.createObjectNode();
+					videoNode.put("url", video.getString("url"));
+					videoNode.put("thumbnailUrl", video.getString("thumbnailUrl"));
+					videoNode.put("description", video.getString("description"));
+					videoNode.put("type", "video");
+					mediaArray.add(videoNode);
+				}
+			}
+			
+			if (mediaArray.size() > 0) {
+				post.set("media", mediaArray);
+			}
 
-				posts.add(post);
+			// Get likes
+			Query<Entity> likesQuery = Query.newEntityQueryBuilder()
+					.setKind("ActivityPostLike")
+					.setFilter(PropertyFilter.eq("postId", activityPost.getKey().getName()))
+					.build();
+			QueryResults<Entity> likes = datastore.run(likesQuery);
+			int likeCount = 0;
+			boolean userLiked = false;
+			while (likes.hasNext()) {
+				Entity like = likes.next();
+				likeCount++;
+				if (currentUsername.equals(like.getString("username"))) {
+					userLiked = true;
+				}
 			}
+			post.put("likes", likeCount);
+			post.put("userLiked", userLiked);
 
-			return Response.ok(mapper.writeValueAsString(posts)).build();
+			// Get comments count
+			Query<Entity> commentsQuery = Query.newEntityQueryBuilder()
+					.setKind("SocialComment")
+					.setFilter(PropertyFilter.eq("postId", "activity_" + activityPost.getKey().getName()))
+					.build();
+			QueryResults<Entity> comments = datastore.run(commentsQuery);
+			int commentCount = 0;
+			while (comments.hasNext()) {
+				comments.next();
+				commentCount++;
+			}
+			post.put("comments", commentCount);
 
-		} catch (Exception e) {
-			LOG.severe("Error getting unified social feed: " + e.getMessage());
-			return Response.status(Status.INTERNAL_SERVER_ERROR).entity("Error getting social feed: " + e.getMessage()).build();
+			items.add(post);
 		}
+		return new FeedSource(items, activityPosts, activityPostsRead);
 	}
 
 	@POST
 	@Path("/social/comment")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response addComment(@HeaderParam("Authorization") String authHeader, String commentDataJson) {
+	@Secured
+	public Response addComment(String commentDataJson) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
-
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 
 			JsonNode commentData;
 			try {
@@ -4063,16 +3937,12 @@ public class ExecutionSheetResource {
 	@GET
 	@Path("/social/comments/{postId}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getComments(@PathParam("postId") String postId, @HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response getComments(@PathParam("postId") String postId) {
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-
-			if (user == null) {
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-			String currentUsername = user.getString(AccountConstants.DS_USERNAME);
+			String currentUsername = user.getUsername();
 
 			Query<Entity> commentsQuery = Query.newEntityQueryBuilder()
 					.setKind("SocialComment")
@@ -4130,18 +4000,13 @@ public class ExecutionSheetResource {
 	@POST
 	@Path("/social/comment/{commentId}/like")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response toggleCommentLike(@PathParam("commentId") String commentId, @HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response toggleCommentLike(@PathParam("commentId") String commentId) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
-
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 
 			// Check if user already liked this comment
 			Query<Entity> likeQuery = Query.newEntityQueryBuilder()
@@ -4203,18 +4068,13 @@ public class ExecutionSheetResource {
 	@Path("/social/text-post")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response createTextPost(@HeaderParam("Authorization") String authHeader, String postDataJson) {
+	@Secured
+	public Response createTextPost(String postDataJson) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
-
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 
 			JsonNode postData;
 			try {
@@ -4238,6 +4098,7 @@ public class ExecutionSheetResource {
 					.build();
 			
 			txn.put(post);
+			SearchIndex.index(txn, post);
 			txn.commit();
 
 			ObjectNode result = mapper.createObjectNode();
@@ -4258,18 +4119,13 @@ public class ExecutionSheetResource {
 	@POST
 	@Path("/social/text-post/{postId}/like")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response toggleTextPostLike(@PathParam("postId") String postId, @HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response toggleTextPostLike(@PathParam("postId") String postId) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
-
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 
 			// Check if user already liked this text post
 			Query<Entity> likeQuery = Query.newEntityQueryBuilder()
@@ -4330,25 +4186,9 @@ public class ExecutionSheetResource {
 	@GET
 	@Path("/{executionSheetId}/operations")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getWorksheetOperations(@PathParam("executionSheetId") String executionSheetId,
-			@HeaderParam("Authorization") String authHeader) {
+	@Secured({ Role.PRBO, Role.PO, Role.SDVBO, Role.SGVBO, Role.SMBO, Role.SYSADMIN, Role.SYSBO })
+	public Response getWorksheetOperations(@PathParam("executionSheetId") String executionSheetId) {
 		try {
-			List<String> roles = List.of(
-					AccountConstants.PARTNER_REPRESENTATIVE_BACKOFFICE,
-					AccountConstants.PARTNER_OPERATOR,
-					AccountConstants.SHEET_DETAILED_VIEWER_BACKOFFICE,
-					AccountConstants.SHEET_GENERAL_VIEWER_BACKOFFICE,
-					AccountConstants.SHEET_MANAGER_BACKOFFICE,
-					AccountConstants.SYSTEM_ADMIN_ROLE,
-					AccountConstants.SYSTEM_BACKOFFICE_ROLE);
-
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, roles);
-
-			if (user == null) {
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
-
 			// Extract worksheet ID from execution sheet ID
 			String worksheetIdStr = executionSheetId.replace("execution_", "");
 			if (worksheetIdStr.isEmpty()) {
@@ -4372,6 +4212,7 @@ public class ExecutionSheetResource {
 			QueryResults<Entity> operations = datastore.run(operationsQuery);
 
 			ArrayNode operationsArray = mapper.createArrayNode();
+			BatchLoader operationLoader = BatchLoader.create();
 			while (operations.hasNext()) {
 				Entity operation = operations.next();
 				String operationCode = operation.getString(WorkSheetConstants.WS_OP_OPC);
@@ -4379,25 +4220,27 @@ public class ExecutionSheetResource {
 				// Get current progress for this operation in the execution sheet
 				String operationId = executionSheetId + "_" + operationCode;
 				Key opKey = datastore.newKeyFactory().setKind(ExecutionSheetConstants.EXEC_OPERATION).newKey(operationId);
-				Entity execOperation = datastore.get(opKey);
 				
 				ObjectNode operationNode = mapper.createObjectNode();
 				operationNode.put("code", operationCode);
 				operationNode.put("description", operation.getString(WorkSheetConstants.WS_OP_OPD));
 				operationNode.put("areaHa", operation.getDouble(WorkSheetConstants.WS_OP_AHA));
 				
-				// Add current progress if available
-				if (execOperation != null && execOperation.contains(ExecutionSheetConstants.EO_TOTAL_AREA_PERCENT)) {
-					double progress = execOperation.getDouble(ExecutionSheetConstants.EO_TOTAL_AREA_PERCENT);
-					operationNode.put("progressPercentage", progress);
-					operationNode.put("isCompleted", progress >= 100.0);
-				} else {
-					operationNode.put("progressPercentage", 0.0);
-					operationNode.put("isCompleted", false);
-				}
+				// Add current progress if available, execution operations are fetched in one batch below
+				operationLoader.load(opKey).thenAccept(execOperation -> {
+					if (execOperation != null && execOperation.contains(ExecutionSheetConstants.EO_TOTAL_AREA_PERCENT)) {
+						double progress = execOperation.getDouble(ExecutionSheetConstants.EO_TOTAL_AREA_PERCENT);
+						operationNode.put("progressPercentage", progress);
+						operationNode.put("isCompleted", progress >= 100.0);
+					} else {
+						operationNode.put("progressPercentage", 0.0);
+						operationNode.put("isCompleted", false);
+					}
+				});
 				
 				operationsArray.add(operationNode);
 			}
+			operationLoader.dispatch();
 
 			ObjectNode result = mapper.createObjectNode();
 			result.put("executionSheetId", executionSheetId);
@@ -4416,39 +4259,24 @@ public class ExecutionSheetResource {
 	@Path("/social/activity-post")
 	@Consumes(MediaType.MULTIPART_FORM_DATA)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response createActivityPost(@HeaderParam("Authorization") String authHeader,
-			@jakarta.ws.rs.core.Context jakarta.servlet.http.HttpServletRequest request) {
+	@Secured
+	public Response createActivityPost(@jakarta.ws.rs.core.Context jakarta.servlet.http.HttpServletRequest request) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 
 			// Parse multipart form data
 			String content = request.getParameter("content");
 			String executionSheetId = request.getParameter("executionSheetId");
 			String operationCode = request.getParameter("operationCode");
 			String operationDescription = request.getParameter("operationDescription");
-			String progressPercentageStr = request.getParameter("progressPercentage");
 			
 			if (content == null) content = "";
-			if (progressPercentageStr == null) progressPercentageStr = "0.0";
-			
-			double progressPercentage = Double.parseDouble(progressPercentageStr);
 
-			// Validate progress percentage
-			if (progressPercentage < 0 || progressPercentage > 100) {
-				txn.rollback();
-				return Response.status(Status.BAD_REQUEST).entity("Progress percentage must be between 0 and 100").build();
-			}
-
-			// Calculate area in hectares based on progress percentage
+			// Progress is the executed area measured from the GPS tracks, not a figure sent by the client
+			double progressPercentage = 0.0;
 			double areaHa = 0.0;
 			double totalProgress = 0.0;
 			try {
@@ -4465,15 +4293,12 @@ public class ExecutionSheetResource {
 							txn.rollback();
 							return Response.status(Status.BAD_REQUEST).entity("Esta operação já foi concluída (100%). Não é possível adicionar mais atividades.").build();
 						}
-						// Calculate total progress (current + additional)
-						totalProgress = Math.min(100.0, currentProgress + progressPercentage);
-					} else {
-						totalProgress = progressPercentage;
+						totalProgress = currentProgress;
+					}
+					progressPercentage = totalProgress;
+					if (operation.contains(ExecutionSheetConstants.EO_COVERED_AREA_HA)) {
+						areaHa = operation.getDouble(ExecutionSheetConstants.EO_COVERED_AREA_HA);
 					}
-					
-					double totalAreaHa = operation.getDouble(ExecutionSheetConstants.EO_TOTAL_AREA_HA);
-					// Calculate the area covered by this progress percentage
-					areaHa = (totalAreaHa * progressPercentage) / 100.0;
 				}
 			} catch (Exception e) {
 				LOG.warning("Could not calculate area for operation: " + operationCode + " - " + e.getMessage());
@@ -4496,8 +4321,8 @@ public class ExecutionSheetResource {
 			
 			txn.put(post);
 
-			// Update execution sheet progress
-			updateExecutionSheetProgress(txn, executionSheetId, operationCode, progressPercentage);
+			// Update execution sheet activity dates
+			updateExecutionSheetProgress(txn, executionSheetId, operationCode);
 
 			// Handle media uploads if any
 			List<String> mediaUrls = new ArrayList<>();
@@ -4561,7 +4386,7 @@ public class ExecutionSheetResource {
 			String bucketName = "terra-watch-photos";
 			String gcsFileName = "activity-media/" + mediaId + "." + fileExtension;
 			
-			Storage storage = StorageOptions.getDefaultInstance().getService();
+			Storage storage = StorageGateway.get();
 			Bucket bucket = storage.get(bucketName);
 			
 			// Upload the file
@@ -4590,6 +4415,7 @@ public class ExecutionSheetResource {
 					.build();
 			
 			datastore.put(mediaEntity);
+			SearchIndex.index(datastore, mediaEntity);
 			
 			return mediaUrl;
 			
@@ -4611,8 +4437,8 @@ public class ExecutionSheetResource {
 		return "";
 	}
 
-	// Update execution sheet progress based on activity
-	private void updateExecutionSheetProgress(Transaction txn, String executionSheetId, String operationCode, double progressPercentage) {
+	// Update execution sheet activity dates; area progress is maintained by the CoverageEngine
+	private void updateExecutionSheetProgress(Transaction txn, String executionSheetId, String operationCode) {
 		try {
 			// Get execution sheet
 			Key esKey = esKeyFactory.newKey(executionSheetId);
@@ -4641,30 +4467,14 @@ public class ExecutionSheetResource {
 			Entity operation = txn.get(opKey);
 			
 			if (operation != null) {
-				// Get current progress from operation
-				double currentProgress = 0.0;
-				if (operation.contains(ExecutionSheetConstants.EO_TOTAL_AREA_PERCENT)) {
-					currentProgress = operation.getDouble(ExecutionSheetConstants.EO_TOTAL_AREA_PERCENT);
-				}
-				
-				// Calculate new cumulative progress (don't exceed 100%)
-				double newProgress = Math.min(100.0, currentProgress + progressPercentage);
-				
-				// Update operation progress
 				Entity.Builder opBuilder = Entity.newBuilder(operation)
-						.set(ExecutionSheetConstants.EO_LAST_ACTIVITY_DATETIME, Timestamp.now())
-						.set(ExecutionSheetConstants.EO_TOTAL_AREA_PERCENT, newProgress);
+						.set(ExecutionSheetConstants.EO_LAST_ACTIVITY_DATETIME, Timestamp.now());
 				
 				// Set start date if not set
 				if (!operation.contains(ExecutionSheetConstants.EO_START_DATETIME)) {
 					opBuilder.set(ExecutionSheetConstants.EO_START_DATETIME, Timestamp.now());
 				}
 				
-				// Set end date if progress is 100%
-				if (newProgress >= 100.0) {
-					opBuilder.set(ExecutionSheetConstants.EO_END_DATETIME, Timestamp.now());
-				}
-				
 				txn.update(opBuilder.build());
 			}
 
@@ -4676,18 +4486,13 @@ public class ExecutionSheetResource {
 	@POST
 	@Path("/social/activity-post/{postId}/like")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response toggleActivityPostLike(@PathParam("postId") String postId, @HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response toggleActivityPostLike(@PathParam("postId") String postId) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 
 			// Check if user already liked this activity post
 			Query<Entity> likeQuery = Query.newEntityQueryBuilder()
@@ -0,0 +1,57 @@
+package resources;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.cloud.datastore.Entity;
+import com.google.gson.Gson;
+
+import auth.Role;
+import auth.Secured;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+import jobs.Jobs;
+
+/**
+ * State of background {@link Jobs}, as linked from the Location header of the requests that start them.
+ * The total is 0 while it is not known yet.
+ */
+@Path("/jobs")
+public class JobResource {
+
+	private static final String MESSAGE_INVALID_JOB = "Job not found.";
+
+	private final Gson g = new Gson();
+
+	public JobResource() {
+	}
+
+	@GET
+	@Path("/{id}")
+	@Produces(MediaType.APPLICATION_JSON)
+	@Secured({ Role.SMBO, Role.PRBO, Role.SYSADMIN, Role.SYSBO, Role.PO })
+	public Response getJob(@PathParam("id") String id) {
+		Entity job = Jobs.get(id);
+		if (job == null) {
+			return Response.status(Status.NOT_FOUND).entity(MESSAGE_INVALID_JOB).build();
+		}
+		Map<String, Object> status = new LinkedHashMap<>();
+		status.put("id", id);
+		status.put(Jobs.TYPE, job.getString(Jobs.TYPE));
+		status.put(Jobs.STATUS, job.getString(Jobs.STATUS));
+		status.put(Jobs.PROGRESS, job.getLong(Jobs.PROGRESS));
+		status.put(Jobs.TOTAL, job.getLong(Jobs.TOTAL));
+		status.put(Jobs.ATTEMPTS, job.getLong(Jobs.ATTEMPTS));
+		if (job.contains(Jobs.ERROR)) {
+			status.put(Jobs.ERROR, job.getString(Jobs.ERROR));
+		}
+		status.put(Jobs.CREATED_AT, job.getTimestamp(Jobs.CREATED_AT).toString());
+		status.put(Jobs.UPDATED_AT, job.getTimestamp(Jobs.UPDATED_AT).toString());
+		return Response.ok(g.toJson(status)).build();
+	}
+}
@@ -1,5 +1,6 @@
 package resources;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -7,18 +8,24 @@ import java.util.Map;
 import java.util.logging.Logger;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.appengine.repackaged.com.google.protobuf.StringValue;
 import com.google.cloud.datastore.Datastore;
-import com.google.cloud.datastore.DatastoreOptions;
 import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyFactory;
+import com.google.cloud.datastore.LatLng;
 import com.google.cloud.datastore.ListValue;
+import com.google.cloud.datastore.LongValue;
 import com.google.cloud.datastore.Query;
 import com.google.cloud.datastore.QueryResults;
 import com.google.cloud.datastore.StructuredQuery;
+import com.google.cloud.datastore.Value;
 import com.google.gson.Gson;
 
-import auth.AuthTokenUtil;
+import auth.Secured;
+import auth.UserPrincipal;
 import constants.AccountConstants;
 import constants.ExecutionSheetConstants;
 import constants.WorkSheetConstants;
@@ -26,28 +33,45 @@ import dto.ListUsersData;
 import dto.UserDto;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.GET;
-import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.SecurityContext;
+import persistence.DatastoreGateway;
+import persistence.PageRequest;
+import persistence.ParcelGeometry;
+import persistence.SpatialIndex;
 
 @Path("/list")
 public class ListResource {
 
-	private static final String MESSAGE_INVALID_TOKEN = "Invalid or expired token.";
 	private static final String MESSAGE_NO_PERMISSION = "You do not have permission to list users.";
+	private static final String MESSAGE_INVALID_CURSOR = "Invalid cursor.";
+	private static final String MESSAGE_INVALID_BBOX = "Invalid bbox, expected minLon,minLat,maxLon,maxLat.";
+
+	// Zoom from which parcel outlines are returned rather than centroids
+	private static final int DETAIL_ZOOM = 14;
+	private static final int MAX_FEATURES = 2000;
+	// Datastore rejects lookups with more keys than this
+	private static final int MAX_KEYS_PER_LOOKUP = 1000;
 
 	private static final String LOG_MESSAGE_LIST_USERS_ATTEMPT = "List users attempt by: ";
 	private static final String LOG_MESSAGE_LIST_USERS_SUCCESSFUL = "List users attempt successful by: ";
 
 	private static final Logger LOG = Logger.getLogger(ListResource.class.getName());
-	private static final Datastore datastore = DatastoreOptions.getDefaultInstance().getService();
+	private static final Datastore datastore = DatastoreGateway.get();
 
 	private final Gson g = new Gson();
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	@Context
+	private SecurityContext securityContext;
 
 	public ListResource() {
 	}
@@ -67,35 +91,41 @@ public class ListResource {
 	@Path("/users")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response listUsers(@HeaderParam("Authorization") String authHeader, ListUsersData data) {
+	@Secured
+	public Response listUsers(ListUsersData data, @QueryParam("pageSize") Integer pageSize,
+			@QueryParam("cursor") String cursor) {
 		LOG.fine(LOG_MESSAGE_LIST_USERS_ATTEMPT + data.username);
 
-		String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-		Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-		if (user == null) {
-			return Response.status(Status.UNAUTHORIZED).entity(MESSAGE_INVALID_TOKEN).build();
-		}
+		UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-		String requesterRole = user.getString(AccountConstants.DS_ROLE);
+		String requesterRole = user.getRole();
+		PageRequest page = PageRequest.of(pageSize, cursor);
 		Query<Entity> query;
 
-		if (requesterRole.equals(AccountConstants.SYSTEM_ADMIN_ROLE)
-				|| requesterRole.equals(AccountConstants.SYSTEM_BACKOFFICE_ROLE)) {
-			query = Query.newEntityQueryBuilder().setKind(AccountConstants.USER).build();
-		} else {
-			query = Query.newEntityQueryBuilder().setKind(AccountConstants.USER)
-					.setFilter(StructuredQuery.CompositeFilter.and(
-							StructuredQuery.PropertyFilter.eq(AccountConstants.DS_PROFILE,
-									AccountConstants.PUBLIC_PROFILE),
-							StructuredQuery.PropertyFilter.eq(AccountConstants.DS_STATE,
-									AccountConstants.ACTIVE_STATE)))
-					.build();
+		try {
+			if (requesterRole.equals(AccountConstants.SYSTEM_ADMIN_ROLE)
+					|| requesterRole.equals(AccountConstants.SYSTEM_BACKOFFICE_ROLE)) {
+				query = Query.newEntityQueryBuilder().setKind(AccountConstants.USER)
+						.setLimit(page.limit()).setStartCursor(page.startCursor())
+						.build();
+			} else {
+				query = Query.newEntityQueryBuilder().setKind(AccountConstants.USER)
+						.setFilter(StructuredQuery.CompositeFilter.and(
+								StructuredQuery.PropertyFilter.eq(AccountConstants.DS_PROFILE,
+										AccountConstants.PUBLIC_PROFILE),
+								StructuredQuery.PropertyFilter.eq(AccountConstants.DS_STATE,
+										AccountConstants.ACTIVE_STATE)))
+						.setLimit(page.limit()).setStartCursor(page.startCursor())
+						.build();
+			}
+		} catch (IllegalArgumentException e) {
+			return Response.status(Status.BAD_REQUEST).entity(MESSAGE_INVALID_CURSOR).build();
 		}
 
 		QueryResults<Entity> results = datastore.run(query);
 		List<UserDto> usersList = new ArrayList<>();
 
-		while (results.hasNext()) {
+		while (page.hasNext(results, usersList.size())) {
 			Entity userEntity = results.next();
 			UserDto userDto = new UserDto();
 			userDto.username = userEntity.getKey().getName();
@@ -125,6 +155,9 @@ public class ListResource {
 		}
 
 		LOG.info(LOG_MESSAGE_LIST_USERS_SUCCESSFUL + data.username);
+		if (page.paged()) {
+			return Response.ok(g.toJson(page.envelope(usersList, page.nextCursor(results, usersList.size())))).build();
+		}
 		String jsonResponse = g.toJson(usersList);
 		return Response.ok(jsonResponse).build();
 	}
@@ -132,12 +165,8 @@ public class ListResource {
 	@GET
 	@Path("/parcelsList")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getPolygonsList(@HeaderParam("Authorization") String authHeader) {
-		String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-		Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-		if (user == null) {
-			return Response.status(Status.UNAUTHORIZED).entity(MESSAGE_INVALID_TOKEN).build();
-		}
+	@Secured
+	public Response getPolygonsList() {
 		Query<Entity> query = Query.newEntityQueryBuilder().setKind(WorkSheetConstants.WS_PROP).build();
 		QueryResults<Entity> results = datastore.run(query);
 		List<String> polygons = new ArrayList<>();
@@ -145,7 +174,10 @@ public class ListResource {
 			Entity polygonEntity = results.next();
 			ObjectNode parcel = new ObjectMapper().createObjectNode();
 			parcel.put("id", polygonEntity.getKey().getName());
-			parcel.put("geometry", polygonEntity.getString(WorkSheetConstants.WS_P_GEOMETRY));
+			parcel.put("geometry", ParcelGeometry.geometryJson(polygonEntity));
+			if (ParcelGeometry.isMeasured(polygonEntity)) {
+				parcel.put(WorkSheetConstants.WS_P_GEOMETRY_WGS84, ParcelGeometry.wgs84Json(polygonEntity));
+			}
 			parcel.put("worksheets_worked", polygonEntity.getList(WorkSheetConstants.WS_P_WSW).toString());
 			polygons.add(g.toJson(parcel));
 		}
@@ -155,32 +187,132 @@ public class ListResource {
 	@GET
 	@Path("/parcels")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getPolygons(@HeaderParam("Authorization") String authHeader) {
-		String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-		Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-		if (user == null) {
-			return Response.status(Status.UNAUTHORIZED).entity(MESSAGE_INVALID_TOKEN).build();
+	@Secured
+	public Response getPolygons(@QueryParam("pageSize") Integer pageSize, @QueryParam("cursor") String cursor,
+			@QueryParam("bbox") String bbox, @QueryParam("zoom") Integer zoom) {
+		if (bbox != null) {
+			return getPolygonsInBox(bbox, zoom);
+		}
+		PageRequest page = PageRequest.of(pageSize, cursor);
+		Query<Entity> query;
+		try {
+			query = Query.newEntityQueryBuilder().setKind(WorkSheetConstants.WS_PROP)
+					.setLimit(page.limit()).setStartCursor(page.startCursor())
+					.build();
+		} catch (IllegalArgumentException e) {
+			return Response.status(Status.BAD_REQUEST).entity(MESSAGE_INVALID_CURSOR).build();
 		}
-		Query<Entity> query = Query.newEntityQueryBuilder().setKind(WorkSheetConstants.WS_PROP).build();
 		QueryResults<Entity> results = datastore.run(query);
 		Map<Long, String> polygons = new HashMap<>();
-		while(results.hasNext()) {
+		int count = 0;
+		while(page.hasNext(results, count)) {
 			Entity polygonEntity = results.next();
-			polygons.put(polygonEntity.getLong(WorkSheetConstants.WS_P_PID), polygonEntity.getString(WorkSheetConstants.WS_P_GEOMETRY));
+			polygons.put(polygonEntity.getLong(WorkSheetConstants.WS_P_PID), ParcelGeometry.geometryJson(polygonEntity));
+			count++;
+		}
+		if (page.paged()) {
+			// Items keep the id -> geometry map shape of the unpaged response
+			return Response.ok(g.toJson(page.envelope(polygons, page.nextCursor(results, count)))).build();
 		}
 		String jsonResponse = g.toJson(polygons);
 		return Response.ok(jsonResponse).build();
 	}
 	
+	/**
+	 * Parcels whose bounding boxes intersect a viewport, as a GeoJSON FeatureCollection in WGS84.
+	 * Below {@link #DETAIL_ZOOM} parcels are too small to draw, so features carry their centroid instead of their
+	 * outline. At most {@link #MAX_FEATURES} parcels are returned; "truncated" tells the map to zoom in for more.
+	 * @param bbox minLon,minLat,maxLon,maxLat
+	 * @param zoom map zoom level, null for full outlines
+	 */
+	private Response getPolygonsInBox(String bbox, Integer zoom) {
+		double[] box = parseBox(bbox);
+		if (box == null) {
+			return Response.status(Status.BAD_REQUEST).entity(MESSAGE_INVALID_BBOX).build();
+		}
+		List<String> ids = SpatialIndex.get().query(box[0], box[1], box[2], box[3], MAX_FEATURES + 1);
+		boolean truncated = ids.size() > MAX_FEATURES;
+		if (truncated) {
+			ids = ids.subList(0, MAX_FEATURES);
+		}
+		boolean outlines = zoom == null || zoom >= DETAIL_ZOOM;
+
+		ObjectNode collection = mapper.createObjectNode();
+		collection.put("type", "FeatureCollection");
+		collection.put("truncated", truncated);
+		ArrayNode features = collection.putArray("features");
+		KeyFactory parcelKeyFactory = datastore.newKeyFactory().setKind(WorkSheetConstants.WS_PROP);
+		try {
+			for (int from = 0; from < ids.size(); from += MAX_KEYS_PER_LOOKUP) {
+				List<String> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_KEYS_PER_LOOKUP));
+				Key[] keys = chunk.stream().map(parcelKeyFactory::newKey).toArray(Key[]::new);
+				for (Entity parcel : datastore.fetch(keys)) {
+					if (parcel != null && ParcelGeometry.isMeasured(parcel)) {
+						features.add(feature(parcel, outlines));
+					}
+				}
+			}
+			return Response.ok(mapper.writeValueAsString(collection)).build();
+		} catch (IOException e) {
+			LOG.severe("Error serializing parcels: " + e.getMessage());
+			return Response.status(Status.INTERNAL_SERVER_ERROR).entity("Error listing parcels").build();
+		}
+	}
+
+	private ObjectNode feature(Entity parcel, boolean outline) {
+		ObjectNode feature = mapper.createObjectNode();
+		feature.put("type", "Feature");
+		feature.put("id", parcel.getKey().getName());
+		ArrayNode bbox = feature.putArray("bbox");
+		for (double coordinate : ParcelGeometry.bbox(parcel)) {
+			bbox.add(coordinate);
+		}
+		if (outline) {
+			feature.set("geometry", ParcelGeometry.wgs84(parcel).toGeoJson());
+		} else {
+			LatLng centroid = parcel.getLatLng(WorkSheetConstants.WS_P_CENTROID);
+			ObjectNode point = feature.putObject("geometry");
+			point.put("type", "Point");
+			point.putArray("coordinates").add(centroid.getLongitude()).add(centroid.getLatitude());
+		}
+		ObjectNode properties = feature.putObject("properties");
+		properties.put(WorkSheetConstants.WS_P_PID, parcel.getLong(WorkSheetConstants.WS_P_PID));
+		properties.put(WorkSheetConstants.WS_P_AIGP, parcel.getString(WorkSheetConstants.WS_P_AIGP));
+		properties.put(WorkSheetConstants.WS_P_AREA_HA, parcel.getDouble(WorkSheetConstants.WS_P_AREA_HA));
+		// Lets the map open a worksheet from one of its parcels
+		ArrayNode worksheets = properties.putArray(WorkSheetConstants.WS_P_WSW);
+		if (parcel.contains(WorkSheetConstants.WS_P_WSW)) {
+			for (Value<?> worksheet : parcel.getList(WorkSheetConstants.WS_P_WSW)) {
+				worksheets.add(((LongValue) worksheet).get());
+			}
+		}
+		return feature;
+	}
+
+	// minLon,minLat,maxLon,maxLat, or null if malformed
+	private static double[] parseBox(String bbox) {
+		String[] parts = bbox.split(",");
+		if (parts.length != 4) {
+			return null;
+		}
+		double[] box = new double[4];
+		try {
+			for (int i = 0; i < 4; i++) {
+				box[i] = Double.parseDouble(parts[i].trim());
+			}
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		boolean valid = box[0] <= box[2] && box[1] <= box[3] && box[0] >= -180 && box[2] <= 180
+				&& box[1] >= -90 && box[3] <= 90;
+		return valid ? box : null;
+	}
+
 	@GET
 	@Path("/parcelsExec/{id}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getPolygonsExec(@HeaderParam("Authorization") String authHeader, @PathParam("id") String operatorId) {
-		String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-		Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-		if (user == null) {
-			return Response.status(Status.UNAUTHORIZED).entity(MESSAGE_INVALID_TOKEN).build();
-		}
+	@Secured
+	public Response getPolygonsExec(@PathParam("id") String operatorId) {
 		Query<Entity> query = Query.newEntityQueryBuilder().setKind(ExecutionSheetConstants.EXEC_PARCEL)
 				.setFilter(StructuredQuery.PropertyFilter.in(ExecutionSheetConstants.EP_OPERATORS, ListValue.of(operatorId))).build();
 		QueryResults<Entity> results = datastore.run(query);
@@ -197,16 +329,13 @@ public class ListResource {
 	@Path("/usersToRemove")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response listUsersToRemove(@HeaderParam("Authorization") String authHeader, ListUsersData data) {
+	@Secured
+	public Response listUsersToRemove(ListUsersData data) {
 		LOG.fine(LOG_MESSAGE_LIST_USERS_ATTEMPT + data.username);
 
-		String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-		Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-		if (user == null) {
-			return Response.status(Status.UNAUTHORIZED).entity(MESSAGE_INVALID_TOKEN).build();
-		}
+		UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-		String requesterRole = user.getString(AccountConstants.DS_ROLE);
+		String requesterRole = user.getRole();
 		boolean allowed = requesterRole.equals(AccountConstants.SYSTEM_ADMIN_ROLE)
 				|| requesterRole.equals(AccountConstants.SYSTEM_BACKOFFICE_ROLE);
 
@@ -1,21 +1,13 @@
 package resources;
 
-import java.io.IOException;
+import java.net.URI;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.logging.Logger;
 
-import org.apache.commons.codec.digest.DigestUtils;
-import org.locationtech.proj4j.CRSFactory;
-import org.locationtech.proj4j.CoordinateTransform;
-import org.locationtech.proj4j.CoordinateTransformFactory;
-import org.locationtech.proj4j.ProjCoordinate;
-
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.auth0.jwt.interfaces.DecodedJWT;
 import com.google.cloud.datastore.Datastore;
-import com.google.cloud.datastore.DatastoreOptions;
+import com.google.cloud.datastore.DatastoreException;
 import com.google.cloud.datastore.Entity;
 import com.google.cloud.datastore.Key;
 import com.google.cloud.datastore.KeyFactory;
@@ -23,11 +15,17 @@ import com.google.cloud.datastore.Query;
 import com.google.cloud.datastore.QueryResults;
 import com.google.cloud.datastore.StructuredQuery;
 import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+import com.google.cloud.datastore.Transaction;
 
 import auth.AuthTokenUtil;
 import auth.JWTToken;
+import auth.RevokedTokenStore;
+import auth.Role;
+import auth.Secured;
+import auth.TokenVersionStore;
+import auth.UserCache;
+import auth.VerifiedTokenCache;
 import constants.AccountConstants;
-import constants.WorkSheetConstants;
 import dto.ListUsersData;
 import dto.LoginData;
 import jakarta.ws.rs.Consumes;
@@ -36,24 +34,29 @@ import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
-import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
-import net.sf.geographiclib.Geodesic;
-import net.sf.geographiclib.PolygonArea;
-import net.sf.geographiclib.PolygonResult;
+import jobs.Jobs;
+import jobs.StatsJobs;
+import persistence.DatastoreGateway;
+import persistence.DatastoreMetrics;
+import persistence.PageRequest;
+import persistence.StatsAggregate;
+import security.PasswordHasher;
+import security.PasswordHashingService;
 
 @Path("/")
 @Produces(MediaType.APPLICATION_JSON + ";charset=utf-8")
 public class LoginResource {
 
-    private static final Datastore datastore = DatastoreOptions.getDefaultInstance().getService();
+    private static final Datastore datastore = DatastoreGateway.get();
 
     private static final KeyFactory tokenKeyFactory = datastore.newKeyFactory().setKind("AuthToken");
 
     private static final Logger LOG = Logger.getLogger(LoginResource.class.getName());
-	private static final ObjectMapper mapper = new ObjectMapper();
 
     @POST
     @Path("/login")
@@ -93,9 +96,21 @@ public class LoginResource {
             }
 
             String storedHash = user.contains(AccountConstants.DS_PWD) ? user.getString(AccountConstants.DS_PWD) : null;
-            String inputHash = DigestUtils.sha512Hex(data.password);
+            boolean validPassword;
+            try {
+                validPassword = storedHash != null && PasswordHashingService.verify(data.password, storedHash);
+            } catch (PasswordHashingService.OverloadedException e) {
+                LOG.warning("Login rejetado por sobrecarga: " + e.getMessage());
+                Map<String, String> errorMap = new HashMap<>();
+                errorMap.put("message", "Servidor ocupado, tente novamente.");
+                return Response.status(Status.SERVICE_UNAVAILABLE)
+                        .entity(errorMap)
+                        .type(MediaType.APPLICATION_JSON)
+                        .header("Retry-After", "1")
+                        .build();
+            }
 
-            if (storedHash == null || !storedHash.equals(inputHash)) {
+            if (!validPassword) {
                 LOG.warning("Senha incorreta para: " + data.username);
                 Map<String, String> errorMap = new HashMap<>();
                 errorMap.put("message", "Credenciais inválidas");
@@ -105,6 +120,10 @@ public class LoginResource {
                         .build();
             }
 
+            if (PasswordHasher.needsRehash(storedHash)) {
+                rehashPassword(user.getKey(), storedHash, data.password);
+            }
+
             String role = user.contains(AccountConstants.DS_ROLE) ? user.getString(AccountConstants.DS_ROLE) : null;
             if (role == null) {
                 LOG.warning("Role não encontrada para: " + data.username);
@@ -150,6 +169,7 @@ public class LoginResource {
             if (userProfile != null) {
                 fields.put("profile", userProfile);
             }
+            fields.put(AccountConstants.CLAIM_TOKEN_VERSION, TokenVersionStore.readVersion(data.username));
 
             String token = JWTToken.createJWT(data.username, role, fields);
             if (token == null) {
@@ -199,6 +219,37 @@ public class LoginResource {
         }
     }
 
+    // Upgrades a legacy or outdated hash after a successful login, failures are retried on the next login.
+    // Only the hash is written, in a transaction, and only if it is still the one that was verified, so a concurrent
+    // role, state or password change is not overwritten.
+    private void rehashPassword(Key userKey, String verifiedHash, String password) {
+        String newHash;
+        try {
+            newHash = PasswordHashingService.hash(password);
+        } catch (Exception e) {
+            LOG.warning("Falha ao atualizar hash da password: " + e.getMessage());
+            return;
+        }
+        Transaction txn = datastore.newTransaction();
+        try {
+            Entity current = txn.get(userKey);
+            if (current == null || !current.contains(AccountConstants.DS_PWD)
+                    || !current.getString(AccountConstants.DS_PWD).equals(verifiedHash)) {
+                return;
+            }
+            txn.put(Entity.newBuilder(current).set(AccountConstants.DS_PWD, newHash).build());
+            txn.commit();
+            UserCache.invalidate(userKey.getName());
+            LOG.info("Password hash atualizado para: " + userKey.getName());
+        } catch (DatastoreException e) {
+            LOG.warning("Falha ao atualizar hash da password: " + e.getMessage());
+        } finally {
+            if (txn.isActive()) {
+                txn.rollback();
+            }
+        }
+    }
+
     @GET
     @Path("/auth/me")
     public Response getCurrentUser(@HeaderParam("Authorization") String authHeader) {
@@ -294,8 +345,8 @@ public class LoginResource {
                     .build();
         }
 
-        Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-        if (user == null) {
+        DecodedJWT jwt = VerifiedTokenCache.verify(token);
+        if (jwt == null) {
             Map<String, String> errorMap = new HashMap<>();
             errorMap.put("message", "Invalid or expired token");
             return Response.status(Status.UNAUTHORIZED)
@@ -303,7 +354,24 @@ public class LoginResource {
                     .build();
         }
 
-        LOG.info("Logout successful for user: " + user.getKey().getName());
+        try {
+            if (jwt.getId() != null) {
+                RevokedTokenStore.revoke(jwt.getId(), jwt.getExpiresAt().getTime());
+            } else {
+                // Tokens issued before token ids existed can only be revoked with all the user's other tokens
+                TokenVersionStore.bump(jwt.getSubject());
+            }
+        } catch (DatastoreException e) {
+            LOG.severe("Logout failed for user " + jwt.getSubject() + ": " + e.getMessage());
+            Map<String, String> errorMap = new HashMap<>();
+            errorMap.put("message", "Internal server error");
+            return Response.status(Status.INTERNAL_SERVER_ERROR)
+                    .entity(errorMap)
+                    .build();
+        }
+        VerifiedTokenCache.invalidate(token);
+
+        LOG.info("Logout successful for user: " + jwt.getSubject());
         Map<String, String> successMap = new HashMap<>();
         successMap.put("message", "Logged out successfully");
         return Response.ok(successMap).build();
@@ -313,14 +381,13 @@ public class LoginResource {
     @Path("/public/statistics")
     public Response getPublicStatistics() {
         try {
-            // Calculate real total area
-            double totalArea = calculateTotalArea();
-            
+            StatsAggregate.Totals totals = StatsAggregate.current();
+
             Map<String, Object> stats = new HashMap<>();
-            stats.put("terrenos", 150);
-            stats.put("area", totalArea);
+            stats.put("terrenos", totals.parcels());
+            stats.put("area", roundArea(totals.areaHa()));
 
-            return Response.ok(stats).build();
+            return Response.ok(stats).header(HttpHeaders.CACHE_CONTROL, cacheControl("public")).build();
         } catch (Exception e) {
             LOG.severe("Error getting public statistics: " + e.getMessage());
             Map<String, String> errorMap = new HashMap<>();
@@ -374,15 +441,14 @@ public class LoginResource {
     @Path("/statistics/dashboard")
     public Response getDashboardStatistics(@HeaderParam("Authorization") String authHeader) {
         try {
-            // Calculate real total area from worksheets and execution sheets
-            double totalArea = calculateTotalArea();
-            
+            StatsAggregate.Totals totals = StatsAggregate.current();
+
             var stats = new java.util.HashMap<String, Object>();
-            stats.put("terrenos", 1234);
-            stats.put("usuarios", 567);
+            stats.put("terrenos", totals.parcels());
+            stats.put("usuarios", totals.users());
             stats.put("intervencoes", 89);
-            stats.put("area", totalArea);
-            return Response.ok(stats).build();
+            stats.put("area", roundArea(totals.areaHa()));
+            return Response.ok(stats).header(HttpHeaders.CACHE_CONTROL, cacheControl("private")).build();
         } catch (Exception e) {
             LOG.severe("Error calculating dashboard statistics: " + e.getMessage());
             return Response.status(500).entity("Erro ao buscar estatísticas").build();
@@ -393,21 +459,12 @@ public class LoginResource {
     @Path("/statistics/area")
     public Response getTotalAreaStatistics() {
         try {
-            double totalArea = calculateTotalArea();
-            Query<Entity> parcelQuery = Query.newEntityQueryBuilder()
-                    .setKind(WorkSheetConstants.WS_PROP)
-                    .build();
-            QueryResults<Entity> results = datastore.run(parcelQuery);
+            StatsAggregate.Totals totals = StatsAggregate.current();
             Map<String, Object> stats = new HashMap<>();
-            stats.put("area", totalArea);
-            int count = 0;
-            while(results.hasNext()) {
-            	results.next();
-            	count++;
-            }
-            stats.put("terrenos",count); // Keep existing mock data for now
-            
-            return Response.ok(stats).build();
+            stats.put("area", roundArea(totals.areaHa()));
+            stats.put("terrenos", totals.parcels());
+
+            return Response.ok(stats).header(HttpHeaders.CACHE_CONTROL, cacheControl("public")).build();
         } catch (Exception e) {
             LOG.severe("Error calculating total area statistics: " + e.getMessage());
             Map<String, String> errorMap = new HashMap<>();
@@ -418,56 +475,35 @@ public class LoginResource {
         }
     }
 
-    private double calculateTotalArea() {
-        double totalArea = 0.0;
-        
+    /**
+     * Recounts the statistics totals from the entities after drift. The count is taken by a job; the response
+     * points at it, and a call made while it is still running points at the running one.
+     */
+    @POST
+    @Path("/statistics/rebuild")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Secured({ Role.SYSADMIN })
+    public Response rebuildStatistics() {
         try {
-            // Calculate area from worksheets
-            Query<Entity> parcelQuery = Query.newEntityQueryBuilder()
-                    .setKind(WorkSheetConstants.WS_PROP)
-                    .build();
-            QueryResults<Entity> results = datastore.run(parcelQuery);
-            
-            while(results.hasNext()) {
-            	Entity parcel = results.next();
-            	String geometry = parcel.getString(WorkSheetConstants.WS_P_GEOMETRY);
-            	JsonNode node = safeParse(geometry);
-            	
-				// transformar coordenadas para wsg84
-				PolygonArea polygon = new PolygonArea(Geodesic.WGS84, false);
-				Iterator<JsonNode> points = node.path("coordinates").get(0).iterator();
-				JsonNode point;
-				while (points.hasNext()) {
-					point = points.next();
-					ProjCoordinate src = new ProjCoordinate(point.get(0).asDouble(), point.get(1).asDouble());
-					CoordinateTransform transform = new CoordinateTransformFactory().createTransform(
-							new CRSFactory().createFromParameters("PT-TM06",
-									"+proj=tmerc +lat_0=39.66825833333333 +lon_0=-8.13190611111111 +k=1.0 "
-											+ "+x_0=200000 +y_0=300000 +ellps=GRS80 +units=m +no_defs"),
-							new CRSFactory().createFromName("epsg:4326"));
-					ProjCoordinate dst = new ProjCoordinate();
-					transform.transform(src, dst);
-					polygon.AddPoint(dst.y, dst.x);
-				}
-				PolygonResult result = polygon.Compute();
-				double area = Math.abs(result.area) / 10000;
-				totalArea+=area;
-            }
-           
-        } catch (Exception e) {
-            LOG.severe("Error calculating total area: " + e.getMessage());
+            if (Jobs.enqueue(StatsJobs.RECOUNT_JOB_ID, StatsJobs.RECOUNT, "")) {
+                LOG.info("Statistics recount started");
+            }
+        } catch (DatastoreException e) {
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.toString()).build();
         }
-        return Math.round(totalArea * 100.0) / 100.0; // Round to 2 decimal places
+        return Response.accepted().location(URI.create("jobs/" + StatsJobs.RECOUNT_JOB_ID)).build();
+    }
+
+    // Totals change slowly, so caches may keep them for MAX_AGE and serve them while revalidating
+    private static String cacheControl(String scope) {
+        return scope + ", max-age=" + StatsAggregate.MAX_AGE.toSeconds()
+                + ", stale-while-revalidate=" + StatsAggregate.STALE_WHILE_REVALIDATE.toSeconds();
+    }
+
+    private static double roundArea(double areaHa) {
+        return Math.round(areaHa * 100.0) / 100.0; // Round to 2 decimal places
     }
 
-    private JsonNode safeParse(String json) {
-		try {
-			return mapper.readTree(json);
-		} catch (IOException e) {
-			throw new WebApplicationException("Invalid JSON", e, Status.INTERNAL_SERVER_ERROR);
-		}
-	}
-    
     @GET
     @Path("/statistics/admin")
     public Response getAdminStatistics(@HeaderParam("Authorization") String authHeader) {
@@ -476,6 +512,8 @@ public class LoginResource {
             stats.put("totalUsers", 1234);
             stats.put("activeUsers", 567);
             stats.put("loginsToday", 89);
+            stats.put("userCacheHits", UserCache.getHits());
+            stats.put("userCacheMisses", UserCache.getMisses());
             return Response.ok(stats).build();
         } catch (Exception e) {
             return Response.status(500).entity("Erro ao buscar estatísticas").build();
@@ -483,40 +521,29 @@ public class LoginResource {
 
     }
 
+    @GET
+    @Path("/statistics/datastore")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Secured({ Role.SYSADMIN })
+    public Response getDatastoreStatistics() {
+        Map<String, Object> responseMap = new HashMap<>();
+        responseMap.put("calls", DatastoreMetrics.snapshot());
+        return Response.ok(responseMap).build();
+    }
+
     @GET
     @Path("/statistics/userscounter")
     @Produces(MediaType.APPLICATION_JSON)
     public Response getUsersStatistics(@HeaderParam("Authorization") String authHeader) {
         try {
-            Query<Entity> query = Query.newEntityQueryBuilder()
-                    .setKind(AccountConstants.USER)
-                    .build();
-
-            QueryResults<Entity> results = datastore.run(query);
-
-            int total = 0;
-            int active = 0;
-            int inactive = 0;
-
-            while (results.hasNext()) {
-                Entity userEntity = results.next();
-                total++;
-                String state = userEntity.contains(AccountConstants.DS_STATE)
-                        ? userEntity.getString(AccountConstants.DS_STATE)
-                        : "";
-                if (AccountConstants.ACTIVE_STATE.equals(state)) {
-                    active++;
-                } else {
-                    inactive++;
-                }
-            }
+            StatsAggregate.Totals totals = StatsAggregate.current();
 
             Map<String, Object> responseMap = new HashMap<>();
-            responseMap.put("total", total);
-            responseMap.put("active", active);
-            responseMap.put("inactive", inactive);
+            responseMap.put("total", totals.users());
+            responseMap.put("active", totals.activeUsers());
+            responseMap.put("inactive", totals.inactiveUsers());
 
-            return Response.ok(responseMap).build();
+            return Response.ok(responseMap).header(HttpHeaders.CACHE_CONTROL, cacheControl("private")).build();
         } catch (Exception e) {
             LOG.severe("Error getting user statistics: " + e.getMessage());
             Map<String, String> errorMap = new HashMap<>();
@@ -531,40 +558,32 @@ public class LoginResource {
     @Path("/users/list")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response listUsers(@HeaderParam("Authorization") String authHeader, ListUsersData data) {
+    @Secured({ Role.SYSADMIN, Role.SYSBO })
+    public Response listUsers(ListUsersData data, @QueryParam("pageSize") Integer pageSize,
+            @QueryParam("cursor") String cursor) {
         try {
-            String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-            Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-            if (user == null) {
-                Map<String, String> errorMap = new HashMap<>();
-                errorMap.put("message", "Invalid or expired token");
-                return Response.status(Status.UNAUTHORIZED)
-                        .entity(errorMap)
+            // Get all users, one page at a time when paging is requested
+            PageRequest page = PageRequest.of(pageSize, cursor);
+            Query<Entity> query;
+            try {
+                query = Query.newEntityQueryBuilder()
+                        .setKind(AccountConstants.USER)
+                        .setLimit(page.limit())
+                        .setStartCursor(page.startCursor())
                         .build();
-            }
-
-            String requesterRole = user.getString(AccountConstants.DS_ROLE);
-
-            // Only allow admins to list users
-            if (!requesterRole.equals(AccountConstants.SYSTEM_ADMIN_ROLE) &&
-                    !requesterRole.equals(AccountConstants.SYSTEM_BACKOFFICE_ROLE)) {
+            } catch (IllegalArgumentException e) {
                 Map<String, String> errorMap = new HashMap<>();
-                errorMap.put("message", "Insufficient permissions");
-                return Response.status(Status.FORBIDDEN)
+                errorMap.put("message", "Invalid cursor");
+                return Response.status(Status.BAD_REQUEST)
                         .entity(errorMap)
                         .build();
             }
 
-            // Get all users
-            Query<Entity> query = Query.newEntityQueryBuilder()
-                    .setKind(AccountConstants.USER)
-                    .build();
-
             QueryResults<Entity> results = datastore.run(query);
 
             var usersList = new java.util.ArrayList<java.util.Map<String, Object>>();
 
-            while (results.hasNext()) {
+            while (page.hasNext(results, usersList.size())) {
                 Entity userEntity = results.next();
                 var userMap = new java.util.HashMap<String, Object>();
 
@@ -596,6 +615,9 @@ public class LoginResource {
                 usersList.add(userMap);
             }
 
+            if (page.paged()) {
+                return Response.ok(page.envelope(usersList, page.nextCursor(results, usersList.size()))).build();
+            }
             return Response.ok(usersList).build();
 
         } catch (Exception e) {
@@ -9,64 +9,85 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.cloud.Timestamp;
 import com.google.cloud.datastore.Datastore;
-import com.google.cloud.datastore.DatastoreOptions;
 import com.google.cloud.datastore.Entity;
 import com.google.cloud.datastore.Key;
 import com.google.cloud.datastore.Query;
 import com.google.cloud.datastore.QueryResults;
 import com.google.cloud.datastore.StructuredQuery.CompositeFilter;
+import com.google.cloud.datastore.StructuredQuery.OrderBy;
 import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
 import com.google.cloud.datastore.Transaction;
 
-import auth.AuthTokenUtil;
+import auth.Secured;
+import auth.UserPrincipal;
 import constants.AccountConstants;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
-import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.SecurityContext;
+import persistence.DatastoreGateway;
+import persistence.PageRequest;
 
 @Path("/notifications")
 public class NotificationResource {
 
 	private static final Logger LOG = Logger.getLogger(NotificationResource.class.getName());
-	private static final Datastore datastore = DatastoreOptions.getDefaultInstance().getService();
+	private static final Datastore datastore = DatastoreGateway.get();
 	private static final ObjectMapper mapper = new ObjectMapper();
 
+	@Context
+	private SecurityContext securityContext;
+
 	public NotificationResource() {
 	}
 
 	@GET
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getNotifications(@HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response getNotifications(@QueryParam("pageSize") Integer pageSize, @QueryParam("cursor") String cursor) {
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-
-			if (user == null) {
-				return Response.status(Status.FORBIDDEN).entity("Invalid user").build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
+			PageRequest page = PageRequest.of(pageSize, cursor);
 
-			// Get notifications for the user (without complex ordering to avoid index issues)
-			Query<Entity> query = Query.newEntityQueryBuilder()
-					.setKind("Notification")
-					.setFilter(PropertyFilter.eq("targetUser", username))
-					.setLimit(50)
-					.build();
+			Query<Entity> query;
+			if (page.paged()) {
+				// Pages need a stable order across requests, served by the (targetUser, -timestamp) index
+				try {
+					query = Query.newEntityQueryBuilder()
+							.setKind("Notification")
+							.setFilter(PropertyFilter.eq("targetUser", username))
+							.setOrderBy(OrderBy.desc("timestamp"))
+							.setLimit(page.limit())
+							.setStartCursor(page.startCursor())
+							.build();
+				} catch (IllegalArgumentException e) {
+					return Response.status(Status.BAD_REQUEST).entity("Invalid cursor").build();
+				}
+			} else {
+				// Get notifications for the user (without complex ordering to avoid index issues)
+				query = Query.newEntityQueryBuilder()
+						.setKind("Notification")
+						.setFilter(PropertyFilter.eq("targetUser", username))
+						.setLimit(50)
+						.build();
+			}
 
 			QueryResults<Entity> results = datastore.run(query);
 			ArrayNode notifications = mapper.createArrayNode();
 			
 			// Collect all notifications first
 			List<Entity> notificationList = new ArrayList<>();
-			while (results.hasNext()) {
+			while (page.hasNext(results, notificationList.size())) {
 				notificationList.add(results.next());
 			}
 			
@@ -132,6 +153,10 @@ public class NotificationResource {
 				}
 			}
 
+			if (page.paged()) {
+				String nextCursor = page.nextCursor(results, notificationList.size());
+				return Response.ok(mapper.writeValueAsString(page.envelope(notifications, nextCursor))).build();
+			}
 			return Response.ok(mapper.writeValueAsString(notifications)).build();
 
 		} catch (Exception e) {
@@ -144,18 +169,13 @@ public class NotificationResource {
 	@POST
 	@Path("/{id}/read")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response markAsRead(@PathParam("id") String notificationId, @HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response markAsRead(@PathParam("id") String notificationId) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity("Invalid user").build();
-			}
-
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 			
 			Key notificationKey = datastore.newKeyFactory().setKind("Notification").newKey(notificationId);
 			Entity notification = txn.get(notificationKey);
@@ -193,18 +213,13 @@ public class NotificationResource {
 	@POST
 	@Path("/mark-all-read")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response markAllAsRead(@HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response markAllAsRead() {
 		Transaction txn = datastore.newTransaction();
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity("Invalid user").build();
-			}
-
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 
 			// Get all unread notifications for the user
 			Query<Entity> query = Query.newEntityQueryBuilder()
@@ -247,18 +262,13 @@ public class NotificationResource {
 	@DELETE
 	@Path("/{id}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response deleteNotification(@PathParam("id") String notificationId, @HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response deleteNotification(@PathParam("id") String notificationId) {
 		Transaction txn = datastore.newTransaction();
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity("Invalid user").build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 			
 			Key notificationKey = datastore.newKeyFactory().setKind("Notification").newKey(notificationId);
 			Entity notification = txn.get(notificationKey);
@@ -292,18 +302,13 @@ public class NotificationResource {
 	@DELETE
 	@Path("/clear-all")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response clearAllNotifications(@HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response clearAllNotifications() {
 		Transaction txn = datastore.newTransaction();
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity("Invalid user").build();
-			}
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 
 			// Get all notifications for the user
 			Query<Entity> query = Query.newEntityQueryBuilder()
@@ -342,16 +347,12 @@ public class NotificationResource {
 	@GET
 	@Path("/count/unread")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getUnreadCount(@HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response getUnreadCount() {
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
+			UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
 
-			if (user == null) {
-				return Response.status(Status.FORBIDDEN).entity("Invalid user").build();
-			}
-
-			String username = user.getString(AccountConstants.DS_USERNAME);
+			String username = user.getUsername();
 
 			Query<Entity> query = Query.newEntityQueryBuilder()
 					.setKind("Notification")
@@ -413,23 +414,7 @@ public class NotificationResource {
 			}
 			
 			String notificationId = targetUser + "_" + System.currentTimeMillis();
-			Key notificationKey = DatastoreOptions.getDefaultInstance().getService()
-					.newKeyFactory().setKind("Notification").newKey(notificationId);
-
-			Entity.Builder builder = Entity.newBuilder(notificationKey)
-					.set("targetUser", targetUser)
-					.set("fromUser", fromUser)
-					.set("type", type)
-					.set("title", title)
-					.set("message", message)
-					.set("timestamp", Timestamp.now())
-					.set("read", false);
-
-			if (relatedId != null && !relatedId.isEmpty()) {
-				builder.set("relatedId", relatedId);
-			}
-
-			DatastoreOptions.getDefaultInstance().getService().put(builder.build());
+			datastore.put(notification(notificationId, targetUser, fromUser, type, title, message, relatedId));
 			
 			Logger.getLogger(NotificationResource.class.getName()).info("Notification created successfully for user: " + targetUser);
 
@@ -439,6 +424,29 @@ public class NotificationResource {
 		}
 	}
 
+	/**
+	 * Builds a notification without storing it, for callers that write notifications in batches
+	 * @param notificationId key name; callers that may run twice derive it from what they notify about
+	 */
+	public static Entity notification(String notificationId, String targetUser, String fromUser, String type,
+			String title, String message, String relatedId) {
+		Key notificationKey = datastore.newKeyFactory().setKind("Notification").newKey(notificationId);
+
+		Entity.Builder builder = Entity.newBuilder(notificationKey)
+				.set("targetUser", targetUser)
+				.set("fromUser", fromUser)
+				.set("type", type)
+				.set("title", title)
+				.set("message", message)
+				.set("timestamp", Timestamp.now())
+				.set("read", false);
+
+		if (relatedId != null && !relatedId.isEmpty()) {
+			builder.set("relatedId", relatedId);
+		}
+		return builder.build();
+	}
+
 	// Helper method to create broadcast notifications (for system-wide notifications)
 	public static void createBroadcastNotification(String fromUser, String type, String title, String message, String relatedId) {
 		try {
@@ -448,7 +456,7 @@ public class NotificationResource {
 					.setFilter(PropertyFilter.eq(AccountConstants.DS_STATE, AccountConstants.ACTIVE_STATE))
 					.build();
 
-			QueryResults<Entity> results = DatastoreOptions.getDefaultInstance().getService().run(query);
+			QueryResults<Entity> results = datastore.run(query);
 
 			while (results.hasNext()) {
 				Entity user = results.next();
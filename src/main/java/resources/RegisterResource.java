@@ -3,14 +3,11 @@ package resources;
 import java.util.Map;
 import java.util.logging.Logger;
 
-import org.apache.commons.codec.digest.DigestUtils;
-
 import com.google.cloud.datastore.Query;
 import com.google.cloud.datastore.QueryResults;
 import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
 import com.google.cloud.datastore.Datastore;
 import com.google.cloud.datastore.DatastoreException;
-import com.google.cloud.datastore.DatastoreOptions;
 import com.google.cloud.datastore.Entity;
 import com.google.cloud.datastore.Key;
 import com.google.cloud.datastore.KeyFactory;
@@ -25,6 +22,10 @@ import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
+import persistence.DatastoreGateway;
+import persistence.SearchIndex;
+import persistence.StatsAggregate;
+import security.PasswordHashingService;
 
 @Path("/register")
 @Produces(MediaType.APPLICATION_JSON + ";charset=utf-8")
@@ -33,12 +34,13 @@ public class RegisterResource {
 	private static final String MESSAGE_INVALID_REGISTRATION = "Campos do formulário inválidos ou não preenchidos.";
 	private static final String MESSAGE_USERNAME_ALREADY_REGISTERED = "Nome de Utilizador já registado";
 	private static final String MESSAGE_EMAIL_ALREADY_REGISTERED = "Email já registado.";
+	private static final String MESSAGE_SERVER_BUSY = "Servidor ocupado, tente novamente.";
 
 	private static final String LOG_MESSAGE_REGISTER_ATTEMPT = "Register attempt by user: ";
 	private static final String LOG_MESSAGE_REGISTER_SUCCESSFUL = "Register successful by user: ";
 
 	private static final Logger LOG = Logger.getLogger(RegisterResource.class.getName());
-	private static final Datastore datastore = DatastoreOptions.getDefaultInstance().getService();
+	private static final Datastore datastore = DatastoreGateway.get();
 
 	KeyFactory userKeyFactory =  datastore.newKeyFactory().setKind(AccountConstants.USER);
 
@@ -57,6 +59,19 @@ public class RegisterResource {
 					.build();
 		}
 
+		// Hash outside the transaction, the KDF is the slowest step of registration
+		String passwordHash;
+		try {
+			passwordHash = PasswordHashingService.hash(data.password);
+		} catch (PasswordHashingService.OverloadedException e) {
+			LOG.warning(e.getMessage());
+			return Response.status(Status.SERVICE_UNAVAILABLE)
+					.entity(Map.of("message", MESSAGE_SERVER_BUSY))
+					.type(MediaType.APPLICATION_JSON)
+					.header("Retry-After", "1")
+					.build();
+		}
+
 		Transaction txn = datastore.newTransaction();
 		try {
 			Key userKey = userKeyFactory.newKey(data.username);
@@ -95,7 +110,7 @@ public class RegisterResource {
 			Entity.Builder userBuilder = Entity.newBuilder(userKey)
 					.set(AccountConstants.DS_USERNAME, data.username)
 					.set(AccountConstants.DS_EMAIL, data.email)
-					.set(AccountConstants.DS_PWD, DigestUtils.sha512Hex(data.password))
+					.set(AccountConstants.DS_PWD, passwordHash)
 					.set(AccountConstants.DS_ROLE, data.role)
 					.set(AccountConstants.DS_PROFILE, AccountConstants.PUBLIC_PROFILE)
 					.set(AccountConstants.DS_STATE, AccountConstants.INACTIVE_STATE);
@@ -152,6 +167,8 @@ public class RegisterResource {
 
 			Entity user = userBuilder.build();
 			txn.put(user);
+			SearchIndex.index(txn, user);
+			StatsAggregate.add(txn, StatsAggregate.Delta.user(true, AccountConstants.INACTIVE_STATE));
 			txn.commit();
 			LOG.info(LOG_MESSAGE_REGISTER_SUCCESSFUL + data.username);
 			return Response.ok(Map.of("message", "User registered successfully"), MediaType.APPLICATION_JSON).build();
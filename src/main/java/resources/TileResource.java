@@ -0,0 +1,203 @@
+package resources;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyFactory;
+import com.google.cloud.datastore.ListValue;
+import com.google.cloud.datastore.LongValue;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.QueryResults;
+import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+
+import auth.Secured;
+import constants.ExecutionSheetConstants;
+import constants.WorkSheetConstants;
+import geo.VectorTiles;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+import persistence.DatastoreGateway;
+import persistence.Fanout;
+import persistence.ParcelGeometry;
+import persistence.SpatialIndex;
+import persistence.TileCache;
+
+/**
+ * Map tiles of rural properties, as quantized GeoJSON in a {@value VectorTiles#EXTENT}-unit grid per tile (see
+ * {@link VectorTiles}). Each feature carries the parcel's execution status for colouring. Tiles are cached per
+ * instance until a worksheet or an execution status changes, and answer conditional requests by ETag.
+ */
+@Path("/tiles")
+public class TileResource {
+
+	private static final String MESSAGE_INVALID_TILE = "Invalid tile.";
+
+	// Parcels are sub-pixel below this zoom, so lower tiles are empty instead of reading a whole region
+	private static final int MIN_PARCEL_ZOOM = 10;
+	private static final int MAX_FEATURES = 5000;
+	// Datastore rejects lookups with more keys than this
+	private static final int MAX_KEYS_PER_LOOKUP = 1000;
+	// Datastore IN filters take at most this many values
+	private static final int MAX_IN_VALUES = 30;
+	private static final String CACHE_CONTROL = "private, max-age=60";
+
+	private static final Logger LOG = Logger.getLogger(TileResource.class.getName());
+	private static final Datastore datastore = DatastoreGateway.get();
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	public TileResource() {
+	}
+
+	@GET
+	@Path("/{z}/{x}/{y}")
+	@Produces(MediaType.APPLICATION_JSON)
+	@Secured
+	public Response getTile(@PathParam("z") int z, @PathParam("x") int x, @PathParam("y") int y,
+			@Context Request request) {
+		if (!VectorTiles.isValid(z, x, y)) {
+			return Response.status(Status.BAD_REQUEST).entity(MESSAGE_INVALID_TILE).build();
+		}
+		TileCache cache = TileCache.get();
+		long generation = cache.generation();
+		EntityTag etag = new EntityTag(Long.toString(generation));
+		Response.ResponseBuilder notModified = request.evaluatePreconditions(etag);
+		if (notModified != null) {
+			return notModified.header(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL).build();
+		}
+
+		String tileKey = z + "/" + x + "/" + y;
+		String body = cache.get(tileKey, generation);
+		if (body == null) {
+			try {
+				body = mapper.writeValueAsString(buildTile(z, x, y));
+			} catch (IOException e) {
+				LOG.severe("Error building tile " + tileKey + ": " + e.getMessage());
+				return Response.status(Status.INTERNAL_SERVER_ERROR).entity("Error building tile").build();
+			}
+			cache.put(tileKey, generation, body);
+		}
+		return Response.ok(body).tag(etag).header(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL).build();
+	}
+
+	private ObjectNode buildTile(int z, int x, int y) {
+		ObjectNode tile = mapper.createObjectNode();
+		tile.put("type", "FeatureCollection");
+		tile.put("extent", VectorTiles.EXTENT);
+		tile.put("truncated", false);
+		ArrayNode features = tile.putArray("features");
+		if (z < MIN_PARCEL_ZOOM) {
+			return tile;
+		}
+
+		double[] bounds = VectorTiles.bounds(z, x, y);
+		List<String> ids = SpatialIndex.get().query(bounds[0], bounds[1], bounds[2], bounds[3], MAX_FEATURES + 1);
+		if (ids.size() > MAX_FEATURES) {
+			tile.put("truncated", true);
+			ids = ids.subList(0, MAX_FEATURES);
+		}
+
+		List<Entity> parcels = new ArrayList<>();
+		KeyFactory parcelKeyFactory = datastore.newKeyFactory().setKind(WorkSheetConstants.WS_PROP);
+		for (int from = 0; from < ids.size(); from += MAX_KEYS_PER_LOOKUP) {
+			Key[] keys = ids.subList(from, Math.min(ids.size(), from + MAX_KEYS_PER_LOOKUP)).stream()
+					.map(parcelKeyFactory::newKey).toArray(Key[]::new);
+			for (Entity parcel : datastore.fetch(keys)) {
+				if (parcel != null && ParcelGeometry.isMeasured(parcel)) {
+					parcels.add(parcel);
+				}
+			}
+		}
+
+		Map<Long, String> statuses = statuses(parcels);
+		for (Entity parcel : parcels) {
+			ObjectNode tileGeometry = VectorTiles.encode(ParcelGeometry.wgs84(parcel), z, x, y);
+			if (tileGeometry == null) {
+				continue;
+			}
+			long polygonId = parcel.getLong(WorkSheetConstants.WS_P_PID);
+			ObjectNode feature = features.addObject();
+			feature.put("type", "Feature");
+			feature.put("id", parcel.getKey().getName());
+			feature.set("geometry", tileGeometry);
+			ObjectNode properties = feature.putObject("properties");
+			properties.put(WorkSheetConstants.WS_P_PID, polygonId);
+			properties.put(WorkSheetConstants.WS_P_AREA_HA, parcel.getDouble(WorkSheetConstants.WS_P_AREA_HA));
+			properties.put(ExecutionSheetConstants.EP_STATUS, statuses.get(polygonId));
+		}
+		return tile;
+	}
+
+	/**
+	 * Execution status of each parcel over all the operations it is part of: executed once every operation
+	 * executed it, in execution once any operation started on it, otherwise assigned or to be assigned.
+	 * Parcels without an execution sheet have no status.
+	 */
+	private Map<Long, String> statuses(List<Entity> parcels) {
+		List<Long> polygonIds = new ArrayList<>(new HashSet<>(parcels.stream()
+				.map(parcel -> parcel.getLong(WorkSheetConstants.WS_P_PID)).toList()));
+		Map<Long, Set<String>> found = new HashMap<>();
+		// One query per IN-filter chunk, run concurrently
+		try (Fanout fanout = Fanout.open()) {
+			List<Fanout.Task<List<Entity>>> tasks = new ArrayList<>();
+			for (int from = 0; from < polygonIds.size(); from += MAX_IN_VALUES) {
+				ListValue.Builder values = ListValue.newBuilder();
+				polygonIds.subList(from, Math.min(polygonIds.size(), from + MAX_IN_VALUES))
+						.forEach(id -> values.addValue(LongValue.of(id)));
+				Query<Entity> query = Query.newEntityQueryBuilder().setKind(ExecutionSheetConstants.EXEC_PARCEL)
+						.setFilter(PropertyFilter.in(ExecutionSheetConstants.EP_POLYGON_ID, values.build()))
+						.build();
+				tasks.add(fanout.fork(() -> {
+					List<Entity> results = new ArrayList<>();
+					QueryResults<Entity> execParcels = datastore.run(query);
+					execParcels.forEachRemaining(results::add);
+					return results;
+				}));
+			}
+			fanout.join();
+			for (Fanout.Task<List<Entity>> task : tasks) {
+				for (Entity execParcel : task.get()) {
+					found.computeIfAbsent(execParcel.getLong(ExecutionSheetConstants.EP_POLYGON_ID),
+							id -> new HashSet<>()).add(execParcel.getString(ExecutionSheetConstants.EP_STATUS));
+				}
+			}
+		}
+
+		Map<Long, String> statuses = new HashMap<>();
+		found.forEach((polygonId, states) -> {
+			String status;
+			if (states.equals(Set.of(ExecutionSheetConstants.EP_STATUS_E))) {
+				status = ExecutionSheetConstants.EP_STATUS_E;
+			} else if (states.contains(ExecutionSheetConstants.EP_STATUS_EE)
+					|| states.contains(ExecutionSheetConstants.EP_STATUS_E)) {
+				status = ExecutionSheetConstants.EP_STATUS_EE;
+			} else if (states.contains(ExecutionSheetConstants.EP_STATUS_A)) {
+				status = ExecutionSheetConstants.EP_STATUS_A;
+			} else {
+				status = ExecutionSheetConstants.EP_STATUS_PA;
+			}
+			statuses.put(polygonId, status);
+		});
+		return statuses;
+	}
+}
@@ -0,0 +1,195 @@
+package resources;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.DatastoreException;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyFactory;
+import com.google.cloud.datastore.Transaction;
+
+import auth.Role;
+import auth.Secured;
+import auth.UserPrincipal;
+import constants.ExecutionSheetConstants;
+import geo.TrackPoints;
+import geo.TrackPoints.Point;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.SecurityContext;
+import persistence.DatastoreGateway;
+import persistence.TrackStore;
+
+/**
+ * GPS tracks of execution activities, stored in chunks by {@link TrackStore}.
+ * Operators stream points as they record them; the body is parsed token by token and committed one chunk at a
+ * time, so an upload of any length holds at most one chunk in memory. Commits are append-only: if an upload
+ * fails partway, the points committed so far are kept and the response reports how many.
+ */
+@Path("/track")
+public class TrackResource {
+
+	private static final String MESSAGE_INVALID_ACTIVITY = "Error: Activity not found";
+	private static final String MESSAGE_INVALID_PERMISSION = "Error: Permission denied";
+	private static final String MESSAGE_INVALID_TRACK = "Error: Invalid track. ";
+
+	private static final int DEFAULT_MAX_POINTS = 2000;
+	private static final int MAX_POINTS = 20000;
+
+	private static final Logger LOG = Logger.getLogger(TrackResource.class.getName());
+	private static final Datastore datastore = DatastoreGateway.get();
+	private static final ObjectMapper mapper = new ObjectMapper();
+	private static final KeyFactory activityKeyFactory = datastore.newKeyFactory()
+			.setKind(ExecutionSheetConstants.EXEC_ACTIVITY);
+
+	@Context
+	private SecurityContext securityContext;
+
+	public TrackResource() {
+	}
+
+	/**
+	 * Appends points to the track of one of the caller's activities
+	 * @param body JSON array of points, see {@link TrackPoints#parse(JsonNode, long)}
+	 */
+	@POST
+	@Path("/{activityId}")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	@Secured({ Role.PO })
+	public Response appendTrack(@PathParam("activityId") String activityId, InputStream body) {
+		Key activityKey = activityKeyFactory.newKey(activityId);
+		Entity activity = datastore.get(activityKey);
+		if (activity == null) {
+			return Response.status(Status.NOT_FOUND).entity(MESSAGE_INVALID_ACTIVITY).build();
+		}
+		UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
+		if (!activity.getString(ExecutionSheetConstants.EA_OPERATOR_ID).equals(user.getUsername())) {
+			return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_PERMISSION).build();
+		}
+
+		long appended = 0;
+		long total = TrackStore.pointCount(activity);
+		List<Point> chunk = new ArrayList<>(TrackStore.CHUNK_POINTS);
+		try (JsonParser parser = mapper.getFactory().createParser(body)) {
+			if (parser.nextToken() != JsonToken.START_ARRAY) {
+				return Response.status(Status.BAD_REQUEST).entity(MESSAGE_INVALID_TRACK + "Expected an array of points.")
+						.build();
+			}
+			while (parser.nextToken() != JsonToken.END_ARRAY) {
+				JsonNode point = parser.readValueAsTree();
+				if (point == null) {
+					throw new IllegalArgumentException("Unexpected end of track");
+				}
+				chunk.add(TrackPoints.parse(point, System.currentTimeMillis()));
+				if (chunk.size() == TrackStore.CHUNK_POINTS) {
+					total = commit(activityKey, chunk);
+					appended += chunk.size();
+					chunk.clear();
+				}
+			}
+			if (!chunk.isEmpty()) {
+				total = commit(activityKey, chunk);
+				appended += chunk.size();
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			return Response.status(Status.BAD_REQUEST).entity(report(activityId, appended, total, e.getMessage()))
+					.build();
+		} catch (DatastoreException e) {
+			LOG.warning("Track append failed for activity " + activityId + ": " + e.getMessage());
+			return Response.status(Status.INTERNAL_SERVER_ERROR)
+					.entity(report(activityId, appended, total, e.getMessage())).build();
+		}
+		return Response.ok(report(activityId, appended, total, null)).build();
+	}
+
+	/**
+	 * Points of an activity's track as [lon, lat, t] positions, t in milliseconds since the epoch
+	 * @param from first time included, default the start of the track
+	 * @param to last time included, default the end of the track
+	 * @param maxPoints most points returned; longer tracks are downsampled evenly
+	 */
+	@GET
+	@Path("/{activityId}")
+	@Produces(MediaType.APPLICATION_JSON)
+	@Secured({ Role.PRBO, Role.PO, Role.SDVBO, Role.SGVBO, Role.SMBO })
+	public Response getTrack(@PathParam("activityId") String activityId, @QueryParam("from") Long from,
+			@QueryParam("to") Long to, @QueryParam("maxPoints") Integer maxPoints) {
+		Entity activity = datastore.get(activityKeyFactory.newKey(activityId));
+		if (activity == null) {
+			return Response.status(Status.NOT_FOUND).entity(MESSAGE_INVALID_ACTIVITY).build();
+		}
+		int limit = maxPoints == null ? DEFAULT_MAX_POINTS : Math.max(2, Math.min(MAX_POINTS, maxPoints));
+		TrackStore.Track track = TrackStore.read(datastore, activityId, from == null ? Long.MIN_VALUE : from,
+				to == null ? Long.MAX_VALUE : to, limit);
+
+		ObjectNode response = mapper.createObjectNode();
+		response.put(ExecutionSheetConstants.EA_ACTIVITY_ID, activityId);
+		response.put("total", track.total());
+		response.put("downsampled", track.downsampled());
+		ArrayNode points = response.putArray("points");
+		for (Point point : track.points()) {
+			points.addArray().add(point.lon()).add(point.lat()).add(point.t());
+		}
+		// Paths sent before tracks were stored in segments
+		if (activity.contains(ExecutionSheetConstants.EA_GPS_PATH)
+				&& !activity.getString(ExecutionSheetConstants.EA_GPS_PATH).isEmpty()) {
+			response.put(ExecutionSheetConstants.EA_GPS_PATH, activity.getString(ExecutionSheetConstants.EA_GPS_PATH));
+		}
+		try {
+			return Response.ok(mapper.writeValueAsString(response)).build();
+		} catch (IOException e) {
+			LOG.severe("Error serializing track: " + e.getMessage());
+			return Response.status(Status.INTERNAL_SERVER_ERROR).entity("Error reading track").build();
+		}
+	}
+
+	// Appends one chunk in its own transaction; returns the track's new point count
+	private long commit(Key activityKey, List<Point> chunk) {
+		Transaction txn = datastore.newTransaction();
+		try {
+			Entity activity = txn.get(activityKey);
+			Entity.Builder builder = Entity.newBuilder(activity);
+			TrackStore.append(txn, activity, builder, chunk);
+			Entity updated = builder.build();
+			txn.update(updated);
+			txn.commit();
+			return TrackStore.pointCount(updated);
+		} finally {
+			if (txn.isActive()) {
+				txn.rollback();
+			}
+		}
+	}
+
+	private String report(String activityId, long appended, long total, String error) {
+		ObjectNode report = mapper.createObjectNode();
+		report.put(ExecutionSheetConstants.EA_ACTIVITY_ID, activityId);
+		report.put("appended", appended);
+		report.put("total", total);
+		if (error != null) {
+			report.put("error", error);
+		}
+		return report.toString();
+	}
+}
@@ -1,59 +1,90 @@
 package resources;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.cloud.Timestamp;
 import com.google.cloud.datastore.Datastore;
 import com.google.cloud.datastore.DatastoreException;
-import com.google.cloud.datastore.DatastoreOptions;
 import com.google.cloud.datastore.Entity;
 import com.google.cloud.datastore.Key;
 import com.google.cloud.datastore.KeyFactory;
+import com.google.cloud.datastore.KeyQuery;
 import com.google.cloud.datastore.ListValue;
 import com.google.cloud.datastore.LongValue;
 import com.google.cloud.datastore.Query;
 import com.google.cloud.datastore.QueryResults;
 import com.google.cloud.datastore.StringValue;
 import com.google.cloud.datastore.StructuredQuery;
-import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
 import com.google.cloud.datastore.Transaction;
 import com.google.cloud.datastore.Value;
 import com.google.gson.Gson;
 
-import auth.AuthTokenUtil;
-import constants.AccountConstants;
+import auth.Role;
+import auth.Secured;
+import auth.UserPrincipal;
 import constants.WorkSheetConstants;
 import dto.WorkSheetData;
+import geo.Geodesy;
+import geo.PackedGeometry;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
-import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.SecurityContext;
+import jobs.Jobs;
+import jobs.WorkSheetJobs;
+import persistence.DatastoreGateway;
+import persistence.PageRequest;
+import persistence.ParcelGeometry;
+import persistence.SearchIndex;
+import persistence.SpatialIndex;
+import persistence.StatsAggregate;
+import persistence.TileCache;
 
 @Path("/worksheet")
 public class WorkSheetResource {
 
-	private static final String MESSAGE_INVALID_USER = "Incorrect username, please try again.";
-	private static final String MESSAGE_INVALID_PERMISSION = "You are not allowed to create worksheets.";
 	private static final String MESSAGE_INVALID_ID = "WorkSheet already exists.";
 
 	private static final String MESSAGE_INVALID_WORKSHEET = "WorkSheet not found.";
+	private static final String MESSAGE_INVALID_CURSOR = "Invalid cursor.";
+	private static final String MESSAGE_INVALID_GEOMETRY = "Invalid parcel geometry.";
+	private static final String MESSAGE_INVALID_DOCUMENT = "Invalid worksheet: expected a FeatureCollection with metadata.";
+	private static final String MESSAGE_INVALID_IMPORT = "Import not found.";
+	private static final String MESSAGE_IMPORT_FAILED = "WorkSheet import stopped.";
+	private static final String MESSAGE_RESUME_MISMATCH = "The file differs from the one whose import is being resumed.";
+	// Features per import transaction; with the import record and a stats shard they stay within Datastore's
+	// 500 mutations per commit
+	private static final int IMPORT_CHUNK_FEATURES = 200;
+	// Parcels per backfill call, all measured and rewritten in one transaction
+	private static final int BACKFILL_PAGE_SIZE = 100;
 
 	private static final String MESSAGE_WORK_SHEET_CREATION_SUCCESSFUL = "WorkSheet created successfully.";
 	private static final String MESSAGE_WORK_SHEET_DELETION_SUCCESSFUL = "WorkSheet deleted successfully.";
@@ -62,144 +93,483 @@ public class WorkSheetResource {
 	private static final String LOG_MESSAGE_DELETE_WORK_SHEET_ATTEMPT = "Delete WorkSheet attempt.";
 	private static final String LOG_MESSAGE_VIEW_WORK_SHEET_ATTEMPT = "View WorkSheet attempt.";
 	private static final String LOG_MESSAGE_DETAILED_VIEW_WORK_SHEET_ATTEMPT = "DetailedView WorkSheet attempt.";
+	private static final String LOG_MESSAGE_BACKFILL_PARCELS_ATTEMPT = "Backfill parcel geometry attempt.";
 
 	private static final Logger LOG = Logger.getLogger(LoginResource.class.getName());
-	private static final Datastore datastore = DatastoreOptions.getDefaultInstance().getService();
+	private static final Datastore datastore = DatastoreGateway.get();
 	private static final KeyFactory wsKeyFactory = datastore.newKeyFactory().setKind(WorkSheetConstants.WORKSHEET);
+	private static final KeyFactory importKeyFactory = datastore.newKeyFactory().setKind(WorkSheetConstants.WS_IMPORT);
 
 	private final Gson g = new Gson();
 	private static final ObjectMapper mapper = new ObjectMapper();
 
+	@Context
+	private SecurityContext securityContext;
+
 	public WorkSheetResource() {
 	}
 
+	/**
+	 * Imports a worksheet from a GeoJSON FeatureCollection carrying its metadata.
+	 *
+	 * The body is read as a token stream and features are committed in chunks of {@link #IMPORT_CHUNK_FEATURES},
+	 * each in its own transaction with one batched lookup of the chunk's parcels, so memory use and transaction
+	 * size do not grow with the number of features. A {@value WorkSheetConstants#WS_IMPORT} record counts the
+	 * committed features and keeps a fingerprint of them: if an import fails partway, uploading the same file again
+	 * resumes after them, and a file whose first features differ is rejected. The worksheet is hidden from readers
+	 * until its import is done.
+	 * Features are streamed when crs and metadata come before them, as GeoJSON writers put them; otherwise they
+	 * are held until the rest of the document has been read.
+	 */
 	@POST
 	@Path("/create")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response createWorkSheet(@HeaderParam("Authorization") String authHeader, WorkSheetData data) {
+	@Secured({ Role.SMBO })
+	public Response createWorkSheet(InputStream body) {
 		LOG.info(LOG_MESSAGE_CREATE_WORK_SHEET_ATTEMPT);
-		Transaction txn = datastore.newTransaction();
-		try {
-			if (data.metadata.operations.size() > 5) {
-				return Response.status(Status.BAD_REQUEST).entity("Operações acima do máximo (5).").build();
+		UserPrincipal user = (UserPrincipal) securityContext.getUserPrincipal();
+		WorkSheetData.Crs crs = null;
+		boolean crsRead = false;
+		WorkSheetData.Metadata metadata = null;
+		List<WorkSheetData.Feature> held = new ArrayList<>();
+		WorkSheetImport worksheetImport = null;
+		try (JsonParser parser = mapper.getFactory().createParser(body)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return Response.status(Status.BAD_REQUEST).entity(MESSAGE_INVALID_DOCUMENT).build();
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.currentName();
+				JsonToken value = parser.nextToken();
+				if (field.equals("crs")) {
+					crs = parser.readValueAs(WorkSheetData.Crs.class);
+					crsRead = true;
+				} else if (field.equals("metadata")) {
+					metadata = parser.readValueAs(WorkSheetData.Metadata.class);
+				} else if (field.equals("features") && value == JsonToken.START_ARRAY) {
+					if (crsRead && metadata != null) {
+						worksheetImport = beginImport(crs, metadata, user.getUsername());
+						if (worksheetImport == null) {
+							return Response.status(Status.CONFLICT).entity(MESSAGE_INVALID_ID).build();
+						}
+					}
+					while (parser.nextToken() != JsonToken.END_ARRAY) {
+						WorkSheetData.Feature feature = parser.readValueAs(WorkSheetData.Feature.class);
+						if (worksheetImport != null) {
+							worksheetImport.add(feature);
+						} else {
+							held.add(feature);
+						}
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+			if (metadata == null) {
+				return Response.status(Status.BAD_REQUEST).entity(MESSAGE_INVALID_DOCUMENT).build();
+			}
+			if (worksheetImport == null) {
+				worksheetImport = beginImport(crs, metadata, user.getUsername());
+				if (worksheetImport == null) {
+					return Response.status(Status.CONFLICT).entity(MESSAGE_INVALID_ID).build();
+				}
+				for (WorkSheetData.Feature feature : held) {
+					worksheetImport.add(feature);
+				}
 			}
-			List<String> createWorkSheetRoles = new ArrayList<>();
-			createWorkSheetRoles.add(AccountConstants.SHEET_MANAGER_BACKOFFICE);
+			worksheetImport.finish();
+		} catch (IOException | IllegalArgumentException e) {
+			return failImport(worksheetImport, Status.BAD_REQUEST, e.getMessage(), true);
+		} catch (IllegalStateException e) {
+			// The record belongs to the request that is importing, so it is left as it is
+			return failImport(worksheetImport, Status.CONFLICT, e.getMessage(), false);
+		} catch (DatastoreException e) {
+			return failImport(worksheetImport, Status.INTERNAL_SERVER_ERROR, e.toString(), true);
+		}
 
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, createWorkSheetRoles);
+		LOG.info(MESSAGE_WORK_SHEET_CREATION_SUCCESSFUL);
+		TileCache.get().invalidate();
 
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
-			
-			String username = user.getString(AccountConstants.DS_USERNAME);
+		// Notifications go to every manager and administrator, so they are written by a job
+		String jobId = WorkSheetJobs.notifyJobId(metadata.id, worksheetImport.createdAt);
+		try {
+			Jobs.enqueue(jobId, WorkSheetJobs.NOTIFY, WorkSheetJobs.notifyPayload(metadata.id, user.getUsername()));
+		} catch (DatastoreException e) {
+			LOG.warning("Worksheet " + metadata.id + " notifications not queued: " + e.getMessage());
+		}
 
-			long wsId = data.metadata.id;
-			Key wsKey = wsKeyFactory.newKey(wsId);
+		return Response.ok(g.toJson(true)).build();
+	}
+
+	@GET
+	@Path("/import/{id}")
+	@Produces(MediaType.APPLICATION_JSON)
+	@Secured({ Role.SMBO })
+	public Response getImportStatus(@PathParam("id") Long id) {
+		Entity record = datastore.get(importKeyFactory.newKey(id));
+		if (record == null) {
+			return Response.status(Status.NOT_FOUND).entity(MESSAGE_INVALID_IMPORT).build();
+		}
+		Map<String, Object> status = new LinkedHashMap<>();
+		status.put("worksheetId", id);
+		status.put(WorkSheetConstants.WS_I_STATUS, record.getString(WorkSheetConstants.WS_I_STATUS));
+		status.put(WorkSheetConstants.WS_I_FEATURES, record.getLong(WorkSheetConstants.WS_I_FEATURES));
+		status.put(WorkSheetConstants.WS_I_PARCELS, record.getLong(WorkSheetConstants.WS_I_PARCELS));
+		status.put(WorkSheetConstants.WS_I_AREA_HA, record.getDouble(WorkSheetConstants.WS_I_AREA_HA));
+		if (record.contains(WorkSheetConstants.WS_I_ERROR)) {
+			status.put(WorkSheetConstants.WS_I_ERROR, record.getString(WorkSheetConstants.WS_I_ERROR));
+		}
+		status.put(WorkSheetConstants.WS_I_UPDATED_AT, record.getTimestamp(WorkSheetConstants.WS_I_UPDATED_AT).toString());
+		return Response.ok(g.toJson(status)).build();
+	}
+
+	/**
+	 * Creates the worksheet, its operations and its import record, or picks up an import that did not finish
+	 * @return null if the worksheet already exists and is not being imported
+	 * @throws IllegalArgumentException if the metadata or the crs is invalid
+	 */
+	private WorkSheetImport beginImport(WorkSheetData.Crs crs, WorkSheetData.Metadata metadata, String username) {
+		if (metadata.operations != null && metadata.operations.size() > 5) {
+			throw new IllegalArgumentException("Operações acima do máximo (5).");
+		}
+		String crsName = Geodesy.canonicalName(crs == null || crs.properties == null ? null : crs.properties.name);
+
+		long wsId = metadata.id;
+		Key wsKey = wsKeyFactory.newKey(wsId);
+		Key importKey = importKeyFactory.newKey(wsId);
+		Transaction txn = datastore.newTransaction();
+		try {
 			Entity ws = txn.get(wsKey);
+			Entity record = txn.get(importKey);
+			// A worksheet deleted with this id is still being removed from its properties
+			if (ws == null && Jobs.isPending(txn, WorkSheetJobs.deleteJobId(wsId))) {
+				return null;
+			}
 			if (ws != null) {
-				txn.rollback();
-				return Response.status(Status.CONFLICT).entity(MESSAGE_INVALID_ID).build();
+				if (record == null
+						|| record.getString(WorkSheetConstants.WS_I_STATUS).equals(WorkSheetConstants.WS_I_STATUS_DONE)) {
+					return null;
+				}
+				record = Entity.newBuilder(record)
+						.set(WorkSheetConstants.WS_I_STATUS, WorkSheetConstants.WS_I_STATUS_RUNNING)
+						.set(WorkSheetConstants.WS_I_UPDATED_AT, Timestamp.now())
+						.build();
+				txn.put(record);
+				if (!ws.contains(WorkSheetConstants.WS_IMPORTING)) {
+					txn.put(Entity.newBuilder(ws).set(WorkSheetConstants.WS_IMPORTING, true).build());
+				}
+				txn.commit();
+				LOG.info("Resuming import of worksheet " + wsId + " after "
+						+ record.getLong(WorkSheetConstants.WS_I_FEATURES) + " features");
+				return new WorkSheetImport(record, crsName);
 			}
 
 			Entity.Builder worksheetBuilder = Entity.newBuilder(wsKey)
-					.set(WorkSheetConstants.WS_STARTING_DATE, data.metadata.starting_date)
-					.set(WorkSheetConstants.WS_FINISHING_DATE, data.metadata.finishing_date)
-					.set(WorkSheetConstants.WS_ISSUE_DATE, data.metadata.issue_date)
-					.set(WorkSheetConstants.WS_AWARD_DATE, data.metadata.award_date)
-					.set(WorkSheetConstants.WS_SERVICE_PROVIDER_ID, data.metadata.service_provider_id)
-					.set(WorkSheetConstants.WS_ISSUING_USER_ID, data.metadata.issuing_user_id)
-					.set(WorkSheetConstants.WS_POSA_CODE, data.metadata.posa_code)
-					.set(WorkSheetConstants.WS_POSA_DESCRIPTION, data.metadata.posa_description)
-					.set(WorkSheetConstants.WS_POSP_CODE, data.metadata.posp_code)
-					.set(WorkSheetConstants.WS_POSP_DESCRIPTION, data.metadata.posp_description)
-					.set(WorkSheetConstants.WS_CREATED_AT, new Date().toString());
+					.set(WorkSheetConstants.WS_STARTING_DATE, metadata.starting_date)
+					.set(WorkSheetConstants.WS_FINISHING_DATE, metadata.finishing_date)
+					.set(WorkSheetConstants.WS_ISSUE_DATE, metadata.issue_date)
+					.set(WorkSheetConstants.WS_AWARD_DATE, metadata.award_date)
+					.set(WorkSheetConstants.WS_SERVICE_PROVIDER_ID, metadata.service_provider_id)
+					.set(WorkSheetConstants.WS_ISSUING_USER_ID, metadata.issuing_user_id)
+					.set(WorkSheetConstants.WS_POSA_CODE, metadata.posa_code)
+					.set(WorkSheetConstants.WS_POSA_DESCRIPTION, metadata.posa_description)
+					.set(WorkSheetConstants.WS_POSP_CODE, metadata.posp_code)
+					.set(WorkSheetConstants.WS_POSP_DESCRIPTION, metadata.posp_description)
+					.set(WorkSheetConstants.WS_CREATED_AT, new Date().toString())
+					// Removed with the import record set to DONE; readers and the search index skip it until then
+					.set(WorkSheetConstants.WS_IMPORTING, true);
 
 			ListValue.Builder listBuilder = ListValue.newBuilder();
-			data.metadata.aigp.forEach(s -> listBuilder.addValue(StringValue.of(s)));
+			if (metadata.aigp != null) {
+				metadata.aigp.forEach(s -> listBuilder.addValue(StringValue.of(s)));
+			}
 			ListValue aigpList = listBuilder.build();
 			worksheetBuilder.set(WorkSheetConstants.WS_AIGP, aigpList);
 
 			ws = worksheetBuilder.build();
 			txn.put(ws);
 
-			for (WorkSheetData.Operation op : data.metadata.operations) {
-				Key opKey = datastore.newKeyFactory().setKind(WorkSheetConstants.WS_OPERATION)
-						.newKey(wsId + "_" + op.operation_code);
-				Entity opEnt = txn.get(opKey);
-				Entity.Builder opBuilder = Entity.newBuilder(opKey).set(WorkSheetConstants.WS_OP_WSID, wsId)
-						.set(WorkSheetConstants.WS_OP_OPC, op.operation_code)
-						.set(WorkSheetConstants.WS_OP_OPD, op.operation_description)
-						.set(WorkSheetConstants.WS_OP_AHA, op.area_ha);
-
-				opEnt = opBuilder.build();
-				txn.put(opEnt);
-			}
-
-			for (WorkSheetData.Feature f : data.features) {
-				Key featKey = datastore.newKeyFactory().setKind(WorkSheetConstants.WS_PROP)
-						.newKey(f.properties.rural_property_id);
-				Entity featEnt = txn.get(featKey);
-				StringValue geoVal = StringValue.newBuilder(f.geometry.toString())
-						.setExcludeFromIndexes(true)
-						.build();
-				if (featEnt == null) {
-					Entity.Builder featBuilder = Entity.newBuilder(featKey)
-							.set(WorkSheetConstants.WS_P_AIGP, f.properties.aigp)
-							.set(WorkSheetConstants.WS_P_PID, f.properties.polygon_id)
-							.set(WorkSheetConstants.WS_P_UIID, f.properties.UI_id)
-							.set(WorkSheetConstants.WS_P_GEOMETRY, geoVal)
-							.set(WorkSheetConstants.WS_P_WSW, ListValue.of(wsId));
-					featEnt = featBuilder.build();
-					txn.put(featEnt);
-				} else {
-					List<Value<?>> existing = featEnt.getList(WorkSheetConstants.WS_P_WSW);
-					ListValue.Builder lvb = ListValue.newBuilder();
-					existing.forEach(lvb::addValue);
-					lvb.addValue(LongValue.of(wsId));
-					ListValue updatedList = lvb.build();
-					Entity updatedFeat = Entity.newBuilder(featEnt).set(WorkSheetConstants.WS_P_WSW, updatedList)
+			if (metadata.operations != null) {
+				for (WorkSheetData.Operation op : metadata.operations) {
+					Key opKey = datastore.newKeyFactory().setKind(WorkSheetConstants.WS_OPERATION)
+							.newKey(wsId + "_" + op.operation_code);
+					Entity opEnt = Entity.newBuilder(opKey).set(WorkSheetConstants.WS_OP_WSID, wsId)
+							.set(WorkSheetConstants.WS_OP_OPC, op.operation_code)
+							.set(WorkSheetConstants.WS_OP_OPD, op.operation_description)
+							.set(WorkSheetConstants.WS_OP_AHA, op.area_ha)
 							.build();
-					txn.update(updatedFeat);
+					txn.put(opEnt);
 				}
 			}
 
+			Timestamp now = Timestamp.now();
+			record = Entity.newBuilder(importKey)
+					.set(WorkSheetConstants.WS_I_STATUS, WorkSheetConstants.WS_I_STATUS_RUNNING)
+					.set(WorkSheetConstants.WS_I_USER, username)
+					.set(WorkSheetConstants.WS_I_FEATURES, 0L)
+					.set(WorkSheetConstants.WS_I_PARCELS, 0L)
+					.set(WorkSheetConstants.WS_I_AREA_HA, 0.0)
+					.set(WorkSheetConstants.WS_I_CREATED_AT, now)
+					.set(WorkSheetConstants.WS_I_UPDATED_AT, now)
+					.build();
+			txn.put(record);
+			StatsAggregate.add(txn, StatsAggregate.Delta.worksheets(1, 0, 0));
 			txn.commit();
-			LOG.info(MESSAGE_WORK_SHEET_CREATION_SUCCESSFUL);
-			
-			// Create notifications for relevant users
-			createWorksheetNotifications(wsId, username);
-			
-			return Response.ok(g.toJson(true)).build();
-		} catch (DatastoreException e) {
-			return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.toString()).build();
+			return new WorkSheetImport(record, crsName);
 		} finally {
 			if (txn.isActive()) {
 				txn.rollback();
+			}
+		}
+	}
 
+	// Records why an import stopped; the features committed so far are kept for the next attempt
+	private Response failImport(WorkSheetImport worksheetImport, Status status, String error, boolean recordError) {
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("error", MESSAGE_IMPORT_FAILED + " " + error);
+		if (worksheetImport != null) {
+			if (recordError) {
+				worksheetImport.fail(error);
+			}
+			report.put("worksheetId", worksheetImport.worksheetId);
+			report.put(WorkSheetConstants.WS_I_FEATURES, worksheetImport.committed());
+			if (worksheetImport.committed() > 0) {
+				TileCache.get().invalidate();
+			}
+		}
+		LOG.warning(MESSAGE_IMPORT_FAILED + " " + error);
+		return Response.status(status).entity(g.toJson(report)).build();
+	}
+
+	/**
+	 * Features of one import waiting to be committed, and the counts kept in its import record
+	 */
+	private static final class WorkSheetImport {
+		private final long worksheetId;
+		private final Key recordKey;
+		// Tells this import apart from earlier ones of a worksheet deleted with the same id
+		private final Timestamp createdAt;
+		private final String crs;
+		private final int decimals;
+		// Features committed by earlier attempts, skipped when the same file is read again
+		private final long resumeAt;
+		// Fingerprint of those features, null for records written before it was kept
+		private final String resumeFingerprint;
+		private final List<WorkSheetData.Feature> chunk = new ArrayList<>(IMPORT_CHUNK_FEATURES);
+		private final MessageDigest digest;
+		// Chained hash of the features read so far
+		private byte[] fingerprint = new byte[0];
+		private long read;
+		private long committed;
+
+		WorkSheetImport(Entity record, String crs) {
+			this.recordKey = record.getKey();
+			this.worksheetId = recordKey.getId();
+			// Records written before the creation time was kept only have their last update
+			this.createdAt = record.getTimestamp(record.contains(WorkSheetConstants.WS_I_CREATED_AT)
+					? WorkSheetConstants.WS_I_CREATED_AT
+					: WorkSheetConstants.WS_I_UPDATED_AT);
+			this.crs = crs;
+			this.decimals = Geodesy.get().coordinateDecimals(crs);
+			this.resumeAt = record.getLong(WorkSheetConstants.WS_I_FEATURES);
+			this.resumeFingerprint = record.contains(WorkSheetConstants.WS_I_FINGERPRINT)
+					? record.getString(WorkSheetConstants.WS_I_FINGERPRINT)
+					: null;
+			this.committed = resumeAt;
+			try {
+				this.digest = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/**
+		 * @throws IllegalArgumentException if the feature, or one in the chunk it completes, is invalid, or if the
+		 *         features skipped on a resume are not the ones committed before
+		 * @throws IOException if the feature cannot be serialized for the fingerprint
+		 */
+		void add(WorkSheetData.Feature feature) throws IOException {
+			digest.update(fingerprint);
+			fingerprint = digest.digest(mapper.writeValueAsBytes(feature));
+			if (read++ < resumeAt) {
+				if (read == resumeAt) {
+					checkResume();
+				}
+				return;
+			}
+			if (feature == null || feature.properties == null || feature.properties.rural_property_id == null
+					|| feature.geometry == null) {
+				throw new IllegalArgumentException("Feature " + (read - 1) + " has no rural_property_id or geometry");
+			}
+			chunk.add(feature);
+			if (chunk.size() == IMPORT_CHUNK_FEATURES) {
+				flush();
+			}
+		}
+
+		void finish() {
+			if (read < resumeAt) {
+				throw new IllegalArgumentException(MESSAGE_RESUME_MISMATCH);
+			}
+			flush();
+			update(WorkSheetConstants.WS_I_STATUS_DONE, null);
+		}
+
+		// The features skipped are trusted only if they hash to what the earlier attempts committed
+		private void checkResume() {
+			if (resumeFingerprint != null && !resumeFingerprint.equals(HexFormat.of().formatHex(fingerprint))) {
+				throw new IllegalArgumentException(MESSAGE_RESUME_MISMATCH);
+			}
+		}
+
+		void fail(String error) {
+			try {
+				update(WorkSheetConstants.WS_I_STATUS_FAILED, error);
+			} catch (DatastoreException e) {
+				LOG.warning("Import record of worksheet " + worksheetId + " not updated: " + e.getMessage());
+			}
+		}
+
+		long committed() {
+			return committed;
+		}
+
+		private void flush() {
+			if (chunk.isEmpty()) {
+				return;
+			}
+			// Parcels are measured once here, so their area, extent and WGS84 geometry are never recomputed
+			List<Geodesy.Measurement> measurements;
+			List<PackedGeometry> geometries;
+			try {
+				measurements = Geodesy.get().measure(chunk.stream().map(f -> f.geometry).toList(), crs);
+				geometries = chunk.stream().map(f -> PackedGeometry.encode(f.geometry, decimals)).toList();
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException(MESSAGE_INVALID_GEOMETRY + " " + e.getMessage(), e);
+			}
+
+			// A parcel listed twice is imported once, from its first feature
+			Map<Key, Integer> firstIndex = new LinkedHashMap<>();
+			KeyFactory parcelKeyFactory = datastore.newKeyFactory().setKind(WorkSheetConstants.WS_PROP);
+			for (int i = 0; i < chunk.size(); i++) {
+				firstIndex.putIfAbsent(parcelKeyFactory.newKey(chunk.get(i).properties.rural_property_id), i);
+			}
+			Key[] keys = firstIndex.keySet().toArray(Key[]::new);
+
+			long newParcels = 0;
+			double newArea = 0;
+			Map<Key, double[]> parcelBoxes = new LinkedHashMap<>();
+			Transaction txn = datastore.newTransaction();
+			try {
+				Entity record = txn.get(recordKey);
+				if (record == null || record.getLong(WorkSheetConstants.WS_I_FEATURES) != committed) {
+					throw new IllegalStateException("Worksheet " + worksheetId + " is being imported by another request");
+				}
+				List<Entity> existing = txn.fetch(keys);
+				LongValue wsId = LongValue.of(worksheetId);
+				for (int k = 0; k < keys.length; k++) {
+					Key featKey = keys[k];
+					Entity featEnt = existing.get(k);
+					int i = firstIndex.get(featKey);
+					WorkSheetData.Feature f = chunk.get(i);
+					if (featEnt == null) {
+						Entity.Builder featBuilder = Entity.newBuilder(featKey)
+								.set(WorkSheetConstants.WS_P_AIGP, f.properties.aigp)
+								.set(WorkSheetConstants.WS_P_PID, f.properties.polygon_id)
+								.set(WorkSheetConstants.WS_P_UIID, f.properties.UI_id)
+								.set(WorkSheetConstants.WS_P_GEOMETRY, ParcelGeometry.value(geometries.get(i)))
+								.set(WorkSheetConstants.WS_P_WSW, ListValue.of(worksheetId));
+						txn.put(ParcelGeometry.set(featBuilder, measurements.get(i), crs).build());
+						newParcels++;
+						newArea += measurements.get(i).areaHa();
+						parcelBoxes.put(featKey, measurements.get(i).bbox());
+					} else {
+						List<Value<?>> existingWorksheets = featEnt.getList(WorkSheetConstants.WS_P_WSW);
+						boolean listed = existingWorksheets.contains(wsId);
+						if (listed && ParcelGeometry.isMeasured(featEnt) && ParcelGeometry.isPacked(featEnt)) {
+							continue;
+						}
+						Entity.Builder updatedFeat = Entity.newBuilder(featEnt);
+						if (!listed) {
+							ListValue.Builder lvb = ListValue.newBuilder();
+							existingWorksheets.forEach(lvb::addValue);
+							lvb.addValue(wsId);
+							updatedFeat.set(WorkSheetConstants.WS_P_WSW, lvb.build());
+						}
+						if (!ParcelGeometry.isMeasured(featEnt)) {
+							// The stored geometry is kept, so it is the one measured
+							Geodesy.Measurement measurement = ParcelGeometry.measure(featEnt);
+							ParcelGeometry.set(updatedFeat, measurement, ParcelGeometry.crs(featEnt));
+							parcelBoxes.put(featKey, measurement.bbox());
+						}
+						if (!ParcelGeometry.isPacked(featEnt)) {
+							ParcelGeometry.pack(updatedFeat, featEnt);
+						}
+						txn.update(updatedFeat.build());
+					}
+				}
+
+				StatsAggregate.add(txn, StatsAggregate.Delta.worksheets(0, newParcels, newArea));
+				txn.put(Entity.newBuilder(record)
+						.set(WorkSheetConstants.WS_I_FEATURES, committed + chunk.size())
+						.set(WorkSheetConstants.WS_I_FINGERPRINT,
+								StringValue.newBuilder(HexFormat.of().formatHex(fingerprint)).setExcludeFromIndexes(true).build())
+						.set(WorkSheetConstants.WS_I_PARCELS, record.getLong(WorkSheetConstants.WS_I_PARCELS) + newParcels)
+						.set(WorkSheetConstants.WS_I_AREA_HA, record.getDouble(WorkSheetConstants.WS_I_AREA_HA) + newArea)
+						.set(WorkSheetConstants.WS_I_UPDATED_AT, Timestamp.now())
+						.build());
+				txn.commit();
+			} finally {
+				if (txn.isActive()) {
+					txn.rollback();
+				}
+			}
+			committed += chunk.size();
+			chunk.clear();
+			indexParcels(parcelBoxes);
+		}
+
+		private void update(String status, String error) {
+			Transaction txn = datastore.newTransaction();
+			try {
+				Entity record = txn.get(recordKey);
+				if (record == null) {
+					return;
+				}
+				Entity.Builder builder = Entity.newBuilder(record)
+						.set(WorkSheetConstants.WS_I_STATUS, status)
+						.set(WorkSheetConstants.WS_I_UPDATED_AT, Timestamp.now());
+				if (error != null) {
+					builder.set(WorkSheetConstants.WS_I_ERROR,
+							StringValue.newBuilder(error).setExcludeFromIndexes(true).build());
+				} else {
+					builder.remove(WorkSheetConstants.WS_I_ERROR);
+				}
+				txn.put(builder.build());
+				if (status.equals(WorkSheetConstants.WS_I_STATUS_DONE)) {
+					Entity ws = txn.get(wsKeyFactory.newKey(worksheetId));
+					if (ws != null && ws.contains(WorkSheetConstants.WS_IMPORTING)) {
+						ws = Entity.newBuilder(ws).remove(WorkSheetConstants.WS_IMPORTING).build();
+						txn.put(ws);
+						SearchIndex.index(txn, ws);
+					}
+				}
+				txn.commit();
+			} finally {
+				if (txn.isActive()) {
+					txn.rollback();
+				}
 			}
 		}
 	}
 
 	@DELETE
 	@Path("/{id}")
-	public Response deleteWorkSheet(@PathParam("id") Long id, @HeaderParam("Authorization") String authHeader) {
+	@Secured({ Role.SMBO })
+	public Response deleteWorkSheet(@PathParam("id") Long id) {
 		LOG.info(LOG_MESSAGE_DELETE_WORK_SHEET_ATTEMPT);
 		Transaction txn = datastore.newTransaction();
 		try {
-			List<String> deleteWorkSheetRoles = new ArrayList<>();
-			deleteWorkSheetRoles.add(AccountConstants.SHEET_MANAGER_BACKOFFICE);
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, deleteWorkSheetRoles);
-
-			if (user == null) {
-				txn.rollback();
-				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_USER).build();
-			}
-
 			Key worksheetKey = wsKeyFactory.newKey(id);
 			Entity worksheet = txn.get(worksheetKey);
 			if (worksheet == null) {
@@ -208,6 +578,8 @@ public class WorkSheetResource {
 				return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_WORKSHEET).build();
 			}
 			txn.delete(worksheetKey);
+			txn.delete(importKeyFactory.newKey(id));
+			SearchIndex.remove(txn, worksheetKey);
 
 			Query<Entity> query = Query.newEntityQueryBuilder().setKind(WorkSheetConstants.WS_OPERATION)
 					.setFilter(StructuredQuery.PropertyFilter.eq(WorkSheetConstants.WS_OP_WSID, LongValue.of(id)))
@@ -219,27 +591,15 @@ public class WorkSheetResource {
 				txn.delete(operationEntity.getKey());
 			}
 
-			Query<Key> keyQuery = Query.newKeyQueryBuilder().setKind(WorkSheetConstants.WS_PROP)
-					.setFilter(StructuredQuery.PropertyFilter.eq(WorkSheetConstants.WS_P_WSW, LongValue.of(id)))
-					.build();
-			QueryResults<Key> keys = txn.run(keyQuery);
-			while (keys.hasNext()) {
-				Key propKey = keys.next();
-				Entity propEnt = txn.get(propKey);
-				List<Value<?>> existing = propEnt.getList(WorkSheetConstants.WS_P_WSW);
-				ListValue.Builder lvb = ListValue.newBuilder();
-				for (Value<?> val : existing) {
-					if (!(val instanceof LongValue && ((LongValue) val).get() == id)) {
-						lvb.addValue(val);
-					}
-				}
-				ListValue newList = lvb.build();
-				Entity updated = Entity.newBuilder(propEnt).set(WorkSheetConstants.WS_P_WSW, newList).build();
-				txn.update(updated);
-			}
+			// Properties listing the worksheet are as many as its parcels, so a job removes it from them
+			String jobId = WorkSheetJobs.deleteJobId(id);
+			Jobs.add(txn, jobId, WorkSheetJobs.DELETE, String.valueOf(id));
+			StatsAggregate.add(txn, StatsAggregate.Delta.worksheets(-1, 0, 0));
 			txn.commit();
+			Jobs.dispatch(jobId);
+			TileCache.get().invalidate();
 			LOG.info(MESSAGE_WORK_SHEET_DELETION_SUCCESSFUL);
-			return Response.ok().build();
+			return Response.accepted().location(URI.create("jobs/" + jobId)).build();
 		} catch (DatastoreException e) {
 			return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.toString()).build();
 		} finally {
@@ -251,21 +611,13 @@ public class WorkSheetResource {
 	@GET
 	@Path("/{id}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response visualizeWorkSheet(@PathParam("id") Long id, @HeaderParam("Authorization") String authHeader) {
+	@Secured({ Role.SMBO, Role.SGVBO, Role.SDVBO })
+	public Response visualizeWorkSheet(@PathParam("id") Long id) {
 		LOG.info(LOG_MESSAGE_VIEW_WORK_SHEET_ATTEMPT);
-		List<String> visualizeWorkSheetRoles = new ArrayList<>();
-		visualizeWorkSheetRoles.add(AccountConstants.SHEET_MANAGER_BACKOFFICE);
-		visualizeWorkSheetRoles.add(AccountConstants.SHEET_GENERAL_VIEWER_BACKOFFICE);
-		visualizeWorkSheetRoles.add(AccountConstants.SHEET_DETAILED_VIEWER_BACKOFFICE);
-		String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-		Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, visualizeWorkSheetRoles);
-		if (user == null) {
-			return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_PERMISSION).build();
-		}
 		Key worksheetKey = wsKeyFactory.newKey(id);
 
 		Entity worksheet = datastore.get(worksheetKey);
-		if (worksheet == null) {
+		if (worksheet == null || worksheet.contains(WorkSheetConstants.WS_IMPORTING)) {
 			return Response.status(Status.NOT_FOUND).entity(MESSAGE_INVALID_WORKSHEET).build();
 		}
 		ObjectNode response = getGeneralInfo(id, worksheet);
@@ -282,20 +634,12 @@ public class WorkSheetResource {
 	@GET
 	@Path("/{id}/detailed")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response visualizeDetailedWorkSheet(@PathParam("id") Long id,
-			@HeaderParam("Authorization") String authHeader) {
+	@Secured({ Role.SMBO, Role.SDVBO })
+	public Response visualizeDetailedWorkSheet(@PathParam("id") Long id) {
 		LOG.info(LOG_MESSAGE_DETAILED_VIEW_WORK_SHEET_ATTEMPT);
-		List<String> visualizeWorkSheetRoles = new ArrayList<>();
-		visualizeWorkSheetRoles.add(AccountConstants.SHEET_MANAGER_BACKOFFICE);
-		visualizeWorkSheetRoles.add(AccountConstants.SHEET_DETAILED_VIEWER_BACKOFFICE);
-		String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-		Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, visualizeWorkSheetRoles);
-		if (user == null) {
-			return Response.status(Status.FORBIDDEN).entity(MESSAGE_INVALID_PERMISSION).build();
-		}
 		Key worksheetKey = wsKeyFactory.newKey(id);
 		Entity worksheet = datastore.get(worksheetKey);
-		if (worksheet == null) {
+		if (worksheet == null || worksheet.contains(WorkSheetConstants.WS_IMPORTING)) {
 			return Response.status(Status.NOT_FOUND).entity(MESSAGE_INVALID_WORKSHEET).build();
 		}
 		ObjectNode response = getGeneralInfo(id, worksheet);
@@ -325,8 +669,11 @@ public class WorkSheetResource {
 			rurPropNode.put("rural_property_id", rurPropEntity.getKey().getName());
 			rurPropNode.put(WorkSheetConstants.WS_P_UIID, rurPropEntity.getLong(WorkSheetConstants.WS_P_UIID));
 			rurPropNode.put(WorkSheetConstants.WS_P_PID, rurPropEntity.getLong(WorkSheetConstants.WS_P_PID));
-			rurPropNode.set(WorkSheetConstants.WS_P_GEOMETRY,
-					safeParse(rurPropEntity.getString(WorkSheetConstants.WS_P_GEOMETRY)));
+			rurPropNode.set(WorkSheetConstants.WS_P_GEOMETRY, ParcelGeometry.geometry(rurPropEntity).toGeoJson());
+			if (ParcelGeometry.isMeasured(rurPropEntity)) {
+				rurPropNode.put(WorkSheetConstants.WS_P_AREA_HA, rurPropEntity.getDouble(WorkSheetConstants.WS_P_AREA_HA));
+				rurPropNode.set(WorkSheetConstants.WS_P_GEOMETRY_WGS84, ParcelGeometry.wgs84(rurPropEntity).toGeoJson());
+			}
 			rurPropsArray.add(rurPropNode);
 		});
 		String json;
@@ -342,35 +689,38 @@ public class WorkSheetResource {
 	@GET
 	@Path("/list")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response listWorkSheets(@HeaderParam("Authorization") String authHeader) {
+	@Secured
+	public Response listWorkSheets(@QueryParam("pageSize") Integer pageSize, @QueryParam("cursor") String cursor) {
 		LOG.info("List WorkSheets attempt.");
 
+		PageRequest page = PageRequest.of(pageSize, cursor);
 		try {
-			String token = AuthTokenUtil.extractTokenFromHeader(authHeader);
-			Entity user = AuthTokenUtil.validateTokenAndGetUserEntity(token, null);
-
-			if (user == null) {
-				LOG.warning(MESSAGE_INVALID_USER);
-				return Response.status(Status.UNAUTHORIZED)
-						.entity(MESSAGE_INVALID_USER)
-						.build();
-			}
-
-			// Query all worksheets
+			// Worksheets still being imported are left out, so a page can hold fewer ids than its size
 			Query<Entity> query = Query.newEntityQueryBuilder()
 					.setKind(WorkSheetConstants.WORKSHEET)
+					.setLimit(page.limit())
+					.setStartCursor(page.startCursor())
 					.build();
 
 			QueryResults<Entity> results = datastore.run(query);
 
 			List<Long> worksheetIds = new ArrayList<>();
-			while (results.hasNext()) {
-				Entity ws = results.next();
-				worksheetIds.add(ws.getKey().getId());
+			int read = 0;
+			while (page.hasNext(results, read)) {
+				Entity worksheet = results.next();
+				read++;
+				if (!worksheet.contains(WorkSheetConstants.WS_IMPORTING)) {
+					worksheetIds.add(worksheet.getKey().getId());
+				}
 			}
 
+			if (page.paged()) {
+				return Response.ok(page.envelope(worksheetIds, page.nextCursor(results, read))).build();
+			}
 			return Response.ok(worksheetIds).build();
 
+		} catch (IllegalArgumentException e) {
+			return Response.status(Status.BAD_REQUEST).entity(MESSAGE_INVALID_CURSOR).build();
 		} catch (Exception e) {
 			LOG.severe("Error listing worksheets: " + e.getMessage());
 			return Response.status(Status.INTERNAL_SERVER_ERROR)
@@ -379,6 +729,105 @@ public class WorkSheetResource {
 		}
 	}
 
+	/**
+	 * Stores area, bounding box, centroid and WGS84 geometry on parcels imported before they were computed at
+	 * import, repacks GeoJSON string geometries as blobs, and files every parcel of the page in the spatial index.
+	 * Each call processes one page of parcels; repeat it with the returned cursor until it is null. Parcels that
+	 * are already measured and packed are not rewritten, so the backfill can be rerun safely.
+	 */
+	@POST
+	@Path("/parcels/backfill")
+	@Produces(MediaType.APPLICATION_JSON)
+	@Secured({ Role.SYSADMIN })
+	public Response backfillParcelGeometry(@QueryParam("pageSize") Integer pageSize,
+			@QueryParam("cursor") String cursor) {
+		LOG.info(LOG_MESSAGE_BACKFILL_PARCELS_ATTEMPT);
+		PageRequest page = PageRequest.of(Math.min(BACKFILL_PAGE_SIZE, pageSize == null ? BACKFILL_PAGE_SIZE : pageSize),
+				cursor);
+		KeyQuery query;
+		try {
+			query = Query.newKeyQueryBuilder().setKind(WorkSheetConstants.WS_PROP)
+					.setLimit(page.limit()).setStartCursor(page.startCursor())
+					.build();
+		} catch (IllegalArgumentException e) {
+			return Response.status(Status.BAD_REQUEST).entity(MESSAGE_INVALID_CURSOR).build();
+		}
+		QueryResults<Key> results = datastore.run(query);
+		List<Key> keys = new ArrayList<>();
+		while (page.hasNext(results, keys.size())) {
+			keys.add(results.next());
+		}
+
+		int measured = 0;
+		int packed = 0;
+		int failed = 0;
+		Map<Key, double[]> parcelBoxes = new LinkedHashMap<>();
+		Transaction txn = datastore.newTransaction();
+		try {
+			List<Entity> updated = new ArrayList<>();
+			for (Entity parcel : txn.fetch(keys.toArray(new Key[0]))) {
+				if (parcel == null) {
+					continue;
+				}
+				boolean isPacked = ParcelGeometry.isPacked(parcel);
+				if (ParcelGeometry.isMeasured(parcel)) {
+					parcelBoxes.put(parcel.getKey(), ParcelGeometry.bbox(parcel));
+					if (isPacked) {
+						continue;
+					}
+				}
+				try {
+					Entity.Builder builder = Entity.newBuilder(parcel);
+					if (!isPacked) {
+						ParcelGeometry.pack(builder, parcel);
+					}
+					Geodesy.Measurement measurement = null;
+					if (!ParcelGeometry.isMeasured(parcel)) {
+						measurement = ParcelGeometry.measure(parcel);
+						ParcelGeometry.set(builder, measurement, ParcelGeometry.crs(parcel));
+						parcelBoxes.put(parcel.getKey(), measurement.bbox());
+					}
+					updated.add(builder.build());
+					packed += isPacked ? 0 : 1;
+					measured += measurement == null ? 0 : 1;
+				} catch (IllegalArgumentException e) {
+					LOG.warning("Parcel " + parcel.getKey().getName() + " not measured: " + e.getMessage());
+					failed++;
+				}
+			}
+			if (!updated.isEmpty()) {
+				txn.put(updated.toArray(new Entity[0]));
+			}
+			txn.commit();
+			indexParcels(parcelBoxes);
+			if (measured > 0) {
+				TileCache.get().invalidate();
+			}
+		} catch (DatastoreException e) {
+			return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.toString()).build();
+		} finally {
+			if (txn.isActive())
+				txn.rollback();
+		}
+
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("scanned", keys.size());
+		report.put("measured", measured);
+		report.put("packed", packed);
+		report.put("failed", failed);
+		report.put("nextCursor", page.nextCursor(results, keys.size()));
+		return Response.ok(g.toJson(report)).build();
+	}
+
+	// Spatial index entries are derived data written after the parcels commit; the backfill repairs a failure here
+	private static void indexParcels(Map<Key, double[]> parcelBoxes) {
+		try {
+			SpatialIndex.index(datastore, parcelBoxes);
+		} catch (DatastoreException e) {
+			LOG.warning("Spatial index not updated for " + parcelBoxes.size() + " parcels: " + e.getMessage());
+		}
+	}
+
 	private ObjectNode getGeneralInfo(Long id, Entity ws) {
 		ObjectNode node = mapper.createObjectNode();
 		node.put("id", id);
@@ -392,48 +841,4 @@ public class WorkSheetResource {
 		node.put(WorkSheetConstants.WS_POSP_DESCRIPTION, ws.getString(WorkSheetConstants.WS_POSP_DESCRIPTION));
 		return node;
 	}
-
-	private JsonNode safeParse(String json) {
-		try {
-			return mapper.readTree(json);
-		} catch (IOException e) {
-			throw new WebApplicationException("Invalid geometry JSON", e, Status.INTERNAL_SERVER_ERROR);
-		}
-	}
-	
-	// Helper method to create notifications for worksheet creation
-	private void createWorksheetNotifications(long wsId, String createdBy) {
-		try {
-			// Get all users who should be notified about new worksheets
-			Query<Entity> query = Query.newEntityQueryBuilder()
-					.setKind(AccountConstants.USER)
-					.setFilter(PropertyFilter.eq(AccountConstants.DS_STATE, AccountConstants.ACTIVE_STATE))
-					.build();
-			
-			QueryResults<Entity> results = datastore.run(query);
-			
-			while (results.hasNext()) {
-				Entity user = results.next();
-				String username = user.getString(AccountConstants.DS_USERNAME);
-				String role = user.getString(AccountConstants.DS_ROLE);
-				
-				// Notify relevant users (managers, admins, etc.)
-				if (role.equals(AccountConstants.SHEET_MANAGER_BACKOFFICE) || 
-					role.equals(AccountConstants.SYSTEM_ADMIN_ROLE) ||
-					role.equals(AccountConstants.SYSTEM_BACKOFFICE_ROLE)) {
-					
-					NotificationResource.createNotification(
-						username,
-						createdBy,
-						"worksheet_added",
-						"Nova Worksheet Criada",
-						createdBy + " criou uma nova worksheet #" + wsId,
-						String.valueOf(wsId)
-					);
-				}
-			}
-		} catch (Exception e) {
-			LOG.severe("Error creating worksheet notifications: " + e.getMessage());
-		}
-	}
 }
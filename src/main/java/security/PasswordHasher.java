@@ -1,59 +1,98 @@
 package security;
 
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
 import java.util.Base64;
 
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Versioned password hashes.
+ * Current format: pbkdf2-sha256$iterations$salt$hash (salt and hash in Base64).
+ * Legacy format: unsalted SHA-512 hex, still accepted so it can be rehashed on login.
+ */
 public class PasswordHasher {
     private static final SecureRandom RANDOM = new SecureRandom();
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256";
     private static final int SALT_LENGTH = 16;
+    private static final int HASH_LENGTH = 32;
+    public static final int ITERATIONS = 310_000;
 
     public static String hashPassword(String password) {
+        byte[] salt = generateSalt();
+        byte[] hash = pbkdf2(password, salt, ITERATIONS);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return PREFIX + "$" + ITERATIONS + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    public static boolean verifyPassword(String password, String hashedPassword) {
+        if (password == null || hashedPassword == null) {
+            return false;
+        }
+        if (isLegacy(hashedPassword)) {
+            byte[] input = DigestUtils.sha512Hex(password).getBytes(StandardCharsets.US_ASCII);
+            return MessageDigest.isEqual(input, hashedPassword.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        String[] parts = hashedPassword.split("\\$");
+        if (parts.length != 4 || !PREFIX.equals(parts[0])) {
+            return false;
+        }
         try {
-            byte[] salt = generateSalt();
-            byte[] hash = hashWithSalt(password, salt);
-            
-            // Combine salt and hash
-            byte[] combined = new byte[salt.length + hash.length];
-            System.arraycopy(salt, 0, combined, 0, salt.length);
-            System.arraycopy(hash, 0, combined, salt.length, hash.length);
-            
-            return Base64.getEncoder().encodeToString(combined);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Error hashing password", e);
+            int iterations = Integer.parseInt(parts[1]);
+            byte[] salt = Base64.getDecoder().decode(parts[2]);
+            byte[] storedHash = Base64.getDecoder().decode(parts[3]);
+            return MessageDigest.isEqual(storedHash, pbkdf2(password, salt, iterations));
+        } catch (IllegalArgumentException e) {
+            // Malformed stored hash (iterations, Base64 or an empty salt): no password matches it
+            return false;
         }
     }
 
-    public static boolean verifyPassword(String password, String hashedPassword) {
+    /**
+     * Whether a stored hash should be replaced after a successful login
+     * (legacy SHA-512 or fewer iterations than the current setting)
+     */
+    public static boolean needsRehash(String hashedPassword) {
+        if (hashedPassword == null || isLegacy(hashedPassword)) {
+            return true;
+        }
+        String[] parts = hashedPassword.split("\\$");
+        if (parts.length != 4 || !PREFIX.equals(parts[0])) {
+            return true;
+        }
         try {
-            byte[] combined = Base64.getDecoder().decode(hashedPassword);
-            
-            // Extract salt and hash
-            byte[] salt = new byte[SALT_LENGTH];
-            byte[] storedHash = new byte[combined.length - SALT_LENGTH];
-            System.arraycopy(combined, 0, salt, 0, SALT_LENGTH);
-            System.arraycopy(combined, SALT_LENGTH, storedHash, 0, storedHash.length);
-            
-            // Hash the input password with the stored salt
-            byte[] inputHash = hashWithSalt(password, salt);
-            
-            // Compare the hashes
-            return MessageDigest.isEqual(storedHash, inputHash);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Error verifying password", e);
+            return Integer.parseInt(parts[1]) < ITERATIONS;
+        } catch (NumberFormatException e) {
+            return true;
         }
     }
 
+    private static boolean isLegacy(String hashedPassword) {
+        return hashedPassword.length() == 128 && hashedPassword.indexOf('$') < 0;
+    }
+
     private static byte[] generateSalt() {
         byte[] salt = new byte[SALT_LENGTH];
         RANDOM.nextBytes(salt);
         return salt;
     }
 
-    private static byte[] hashWithSalt(String password, byte[] salt) throws NoSuchAlgorithmException {
-        MessageDigest md = MessageDigest.getInstance("SHA-256");
-        md.update(salt);
-        return md.digest(password.getBytes());
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_LENGTH * 8);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new RuntimeException("Error hashing password", e);
+        } finally {
+            spec.clearPassword();
+        }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,80 @@
+package security;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs password hashing on a dedicated, bounded pool so login bursts queue here
+ * instead of occupying every request thread with KDF work.
+ * When the queue is full callers get {@link OverloadedException} right away.
+ */
+public class PasswordHashingService {
+    private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final int QUEUE_CAPACITY = THREADS * 8;
+    private static final long TIMEOUT_MILLIS = 5_000;
+
+    private static final ThreadPoolExecutor executor = createExecutor();
+
+    public static class OverloadedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public OverloadedException(String message) {
+            super(message);
+        }
+    }
+
+    private PasswordHashingService() {
+    }
+
+    public static String hash(String password) throws OverloadedException {
+        return submit(() -> PasswordHasher.hashPassword(password));
+    }
+
+    public static boolean verify(String password, String hashedPassword) throws OverloadedException {
+        return submit(() -> PasswordHasher.verifyPassword(password, hashedPassword));
+    }
+
+    public static int queuedTasks() {
+        return executor.getQueue().size();
+    }
+
+    private static <T> T submit(Callable<T> task) throws OverloadedException {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new OverloadedException("Password hashing queue is full");
+        }
+
+        try {
+            return future.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new OverloadedException("Password hashing timed out");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OverloadedException("Interrupted while hashing password");
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error hashing password", e.getCause());
+        }
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "password-hasher-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
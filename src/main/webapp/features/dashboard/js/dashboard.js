@@ -443,78 +443,101 @@ async function initMapPreview() {
         mapPreviewElement.classList.add('loaded');
         console.log('Map preview created successfully');
 
-        // Load preview data
-        try {
-            console.log('Loading worksheets for preview...');
-            const worksheets = await loadWorksheets();
-            console.log(`Loaded ${worksheets.length} worksheets for preview`);
-            displayWorksheetsPreview(worksheets, terraWatchMapPreview);
-        } catch (error) {
-            console.error('Error loading worksheets for preview:', error);
-        }
+        // Parcels come as map tiles of the visible area, coloured by execution status
+        terraWatchMapPreview.overlayMapTypes.push(createParcelTileOverlay());
 
     } catch (error) {
         console.error('Error initializing map preview:', error);
     }
 }
 
-// Display worksheets on preview map
-function displayWorksheetsPreview(worksheets, map) {
-    const bounds = new google.maps.LatLngBounds();
-    let hasValidPolygons = false;
-
-    // Define CRS constants for coordinate transformation
-    const CRS_SRC = "EPSG:3763", CRS_DST = "EPSG:4326";
-
-    worksheets.forEach(worksheet => {
-        if (worksheet.ruralProperties) {
-            worksheet.ruralProperties.forEach(property => {
-                if (property.geometry) {
-                    try {
-                        const geoJson = typeof property.geometry === 'string'
-                            ? JSON.parse(property.geometry)
-                            : property.geometry;
-
-                        if (geoJson.type === 'Polygon') {
-                            const paths = geoJson.coordinates[0]
-                                .map(raw => {
-                                    // raw = [Easting, Northing] em metros (EPSG:3763)
-                                    const [lng, lat] = proj4(CRS_SRC, CRS_DST, raw);
-                                    return { lat, lng };
-                                })
-                                .map(({ lat, lng }) => {
-                                    const point = new google.maps.LatLng(lat, lng);
-                                    bounds.extend(point);
-                                    return point;
-                                });
-
-                            if (paths.length > 2) {
-                                hasValidPolygons = true;
+// Outer ring of a rural property as { lat, lng } points, or null if it is not a Polygon.
+// Parcels measured at import carry a WGS84 copy of their geometry; older ones are reprojected here.
+function propertyOuterRing(property) {
+    const wgs84 = property.geometry_wgs84;
+    const source = wgs84 || property.geometry;
+    const geoJson = typeof source === 'string' ? JSON.parse(source) : source;
+    if (geoJson.type !== 'Polygon') {
+        return null;
+    }
+    return geoJson.coordinates[0].map(raw => {
+        // raw = [lng, lat] when stored in WGS84, else [Easting, Northing] em metros (EPSG:3763)
+        const [lng, lat] = wgs84 ? raw : proj4(CRS_SRC, CRS_DST, raw);
+        return { lat, lng };
+    });
+}
 
-                                new google.maps.Polygon({
-                                    paths: paths,
-                                    strokeColor: '#9EF5CF',
-                                    strokeOpacity: 0.8,
-                                    strokeWeight: 1,
-                                    fillColor: '#9EF5CF',
-                                    fillOpacity: 0.3,
-                                    map: map
-                                });
-                            }
-                        }
-                    } catch (error) {
-                        console.error('Error displaying property in preview:', error);
-                    }
-                }
-            });
+// Parcel tiles of /rest/tiles: outlines in a grid of PARCEL_TILE_EXTENT units per tile, each feature
+// carrying the execution status of its parcel. The server leaves tiles below PARCEL_TILE_MIN_ZOOM empty.
+const PARCEL_TILE_EXTENT = 4096;
+const PARCEL_TILE_MIN_ZOOM = 10;
+const PARCEL_STATUS_COLORS = {
+    POR_ATRIBUIR: '#f59e0b',
+    ATRIBUIDO: '#3b82f6',
+    EM_EXECUCAO: '#8b5cf6',
+    EXECUTADO: '#22c55e'
+};
+// Parcels of worksheets without an execution sheet
+const PARCEL_NO_STATUS_COLOR = '#9EF5CF';
+
+// Overlay that draws parcel tiles on canvases; Google Maps asks for the tiles of the viewport as it changes
+function createParcelTileOverlay() {
+    const tileSize = new google.maps.Size(256, 256);
+    return {
+        tileSize: tileSize,
+        getTile(coord, zoom, ownerDocument) {
+            const canvas = ownerDocument.createElement('canvas');
+            canvas.width = tileSize.width;
+            canvas.height = tileSize.height;
+            const tiles = 1 << zoom;
+            if (zoom >= PARCEL_TILE_MIN_ZOOM && coord.y >= 0 && coord.y < tiles) {
+                // The world repeats horizontally, so x wraps around
+                const x = ((coord.x % tiles) + tiles) % tiles;
+                drawParcelTile(canvas, zoom, x, coord.y);
+            }
+            return canvas;
+        },
+        releaseTile(tile) {
+            tile.released = true;
         }
-    });
+    };
+}
 
-    if (hasValidPolygons) {
-        map.fitBounds(bounds);
-        setTimeout(() => {
-            if (map.getZoom() > 15) map.setZoom(15);
-        }, 100);
+async function drawParcelTile(canvas, z, x, y) {
+    try {
+        const response = await auth.fetch(`/rest/tiles/${z}/${x}/${y}`);
+        if (!response.ok || canvas.released) return;
+        const tile = await response.json();
+        if (canvas.released) return;
+
+        const context = canvas.getContext('2d');
+        const scale = canvas.width / (tile.extent || PARCEL_TILE_EXTENT);
+        tile.features.forEach(feature => {
+            const geometry = feature.geometry;
+            const polygons = geometry.type === 'MultiPolygon' ? geometry.coordinates : [geometry.coordinates];
+            const color = PARCEL_STATUS_COLORS[feature.properties.status] || PARCEL_NO_STATUS_COLOR;
+
+            context.beginPath();
+            polygons.forEach(rings => rings.forEach(ring => {
+                ring.forEach(([px, py], i) => {
+                    if (i === 0) {
+                        context.moveTo(px * scale, py * scale);
+                    } else {
+                        context.lineTo(px * scale, py * scale);
+                    }
+                });
+                context.closePath();
+            }));
+            context.globalAlpha = 0.35;
+            context.fillStyle = color;
+            context.fill('evenodd');
+            context.globalAlpha = 0.9;
+            context.strokeStyle = color;
+            context.lineWidth = 1;
+            context.stroke();
+        });
+    } catch (error) {
+        console.warn(`Failed to load parcel tile ${z}/${x}/${y}:`, error);
     }
 }
 
@@ -1231,17 +1254,10 @@ function highlightSpecificPropertyOnMap(property, worksheet) {
     }
 
     try {
-        const geoJson = typeof property.geometry === 'string'
-            ? JSON.parse(property.geometry)
-            : property.geometry;
-
-        if (geoJson.type === 'Polygon') {
-            const paths = geoJson.coordinates[0]
-                .map(raw => {
-                    // raw = [Easting, Northing] em metros (EPSG:3763)
-                    const [lng, lat] = proj4(CRS_SRC, CRS_DST, raw);
-                    return { lat, lng };
-                })
+        const ring = propertyOuterRing(property);
+
+        if (ring) {
+            const paths = ring
                 .map(({ lat, lng }) => new google.maps.LatLng(lat, lng));
 
             if (paths.length > 2) {
@@ -1347,17 +1363,10 @@ function highlightWorksheetOnMap(worksheet) {
     worksheet.ruralProperties.forEach(property => {
         if (property.geometry) {
             try {
-                const geoJson = typeof property.geometry === 'string'
-                    ? JSON.parse(property.geometry)
-                    : property.geometry;
-
-                if (geoJson.type === 'Polygon') {
-                    const paths = geoJson.coordinates[0]
-                        .map(raw => {
-                            // raw = [Easting, Northing] em metros (EPSG:3763)
-                            const [lng, lat] = proj4(CRS_SRC, CRS_DST, raw);
-                            return { lat, lng };
-                        })
+                const ring = propertyOuterRing(property);
+
+                if (ring) {
+                    const paths = ring
                         .map(({ lat, lng }) => {
                             const point = new google.maps.LatLng(lat, lng);
                             bounds.extend(point);
@@ -1743,18 +1752,21 @@ function setupGlobalSearch() {
                 return;
             }
             
-            // Debounce search to avoid too many requests
+            // Debounce typeahead to avoid too many requests; the full search only runs on Enter
             searchTimeout = setTimeout(() => {
-                performGlobalSearch(query);
-            }, 300);
+                performTypeahead(query);
+            }, 150);
         });
         
-        // Handle Enter key to select first result
+        // Handle Enter key to run the full search
         globalSearch.addEventListener('keydown', (e) => {
             if (e.key === 'Enter') {
-                const firstResult = document.querySelector('.search-result-item');
-                if (firstResult) {
-                    firstResult.click();
+                const query = e.target.value.trim();
+                if (searchTimeout) {
+                    clearTimeout(searchTimeout);
+                }
+                if (query) {
+                    performGlobalSearch(query);
                 }
             }
         });
@@ -1768,8 +1780,33 @@ function setupGlobalSearch() {
     }
 }
 
+// Latest typeahead request, so slower answers to earlier keystrokes are dropped
+let typeaheadSequence = 0;
+
+// Show suggestions from the server's in-memory typeahead index while the user types
+async function performTypeahead(query) {
+    const sequence = ++typeaheadSequence;
+    try {
+        const response = await auth.fetch(`/rest/utils/search/suggest?q=${encodeURIComponent(query)}&limit=5`);
+        
+        if (!response.ok || sequence !== typeaheadSequence) {
+            return;
+        }
+        
+        const results = await response.json();
+        if (sequence === typeaheadSequence) {
+            displaySearchResults(results, query);
+        }
+        
+    } catch (error) {
+        console.error('Typeahead error:', error);
+    }
+}
+
 // Perform global search
 async function performGlobalSearch(query) {
+    // Suggestions still in flight must not replace the full results
+    typeaheadSequence++;
     try {
         ui.showLoading(true, 'Pesquisando...');
         
@@ -2058,8 +2095,6 @@ function showSection(sectionId) {
 
     // Initialize section-specific functionality
     if (sectionId === 'map') {
-        // Reset map focus when switching to map section
-        window.mapAlreadyFocused = false;
         // Initialize map immediately when switching to map section
         setTimeout(() => {
             ensureMapInitialized();
@@ -2218,14 +2253,8 @@ async function initMap() {
         // Setup worksheet list sidebar
         setupWorksheetListSidebar();
 
-        // Load and display worksheets
-        try {
-            const worksheets = await loadWorksheets();
-            displayWorksheets(worksheets, terraWatchMap);
-        } catch (error) {
-            console.error('Error loading worksheets:', error);
-            ui.showAlert('Erro ao carregar áreas do mapa', 'error');
-        }
+        // Parcels are loaded for the visible area only, again whenever the map settles after a pan or zoom
+        setupViewportParcels(terraWatchMap);
 
     } catch (error) {
         console.error('Error initializing map:', error);
@@ -2269,176 +2298,84 @@ function applyMapFilter(filter) {
     // This would filter the displayed polygons based on the selected filter
 }
 
-// Display worksheets on the map - IMPROVED VERSION
-function displayWorksheets(worksheets, map) {
-    // Clear any existing polygons
-    if (window.currentMapPolygons) {
-        window.currentMapPolygons.forEach(polygon => polygon.setMap(null));
-    }
-    window.currentMapPolygons = [];
-
-    // Define CRS once
-    const CRS_SRC = "EPSG:3763", CRS_DST = "EPSG:4326";
-
-    const bounds = new google.maps.LatLngBounds();
-    let hasValidPolygons = false;
-
-    // Better color scheme for worksheets
-    const getWorksheetColor = (worksheetId) => {
-        const colors = [
-            '#9EF5CF', '#7ad4ae', '#22c55e', '#16a34a',
-            '#3b82f6', '#6366f1', '#8b5cf6', '#d946ef',
-            '#ec4899', '#f43f5e', '#ef4444', '#f97316',
-            '#f59e0b', '#eab308', '#84cc16', '#65a30d'
-        ];
-        return colors[worksheetId % colors.length];
-    };
-
-    worksheets.forEach(worksheet => {
-        const worksheetColor = getWorksheetColor(worksheet.id);
-
-        if (worksheet.ruralProperties) {
-            worksheet.ruralProperties.forEach(property => {
-                if (property.geometry) {
-                    try {
-                        const geoJson = typeof property.geometry === 'string'
-                            ? JSON.parse(property.geometry)
-                            : property.geometry;
-
-                        if (geoJson.type === 'Polygon') {
-                            const paths = geoJson.coordinates[0]
-                                .map(raw => {
-                                    // raw = [Easting, Northing] em metros (EPSG:3763)
-                                    const [lng, lat] = proj4(CRS_SRC, CRS_DST, raw);
-                                    return { lat, lng };
-                                })
-                                .map(({ lat, lng }) => {
-                                    const point = new google.maps.LatLng(lat, lng);
-                                    bounds.extend(point);
-                                    return point;
-                                });
-
-                            if (paths.length > 2) {
-                                hasValidPolygons = true;
-                                console.log('Creating polygon for property:', property.rural_property_id, 'from worksheet:', worksheet.id);
-
-                                const polygon = new google.maps.Polygon({
-                                    paths: paths,
-                                    strokeColor: worksheetColor,
-                                    strokeOpacity: 0.9,
-                                    strokeWeight: 3,
-                                    fillColor: worksheetColor,
-                                    fillOpacity: 0.3,
-                                    map: map,
-                                    zIndex: 1
-                                });
-
-                                // Store polygon reference
-                                if (!window.currentMapPolygons) {
-                                    window.currentMapPolygons = [];
-                                }
-                                window.currentMapPolygons.push(polygon);
-
-                                // Add worksheet info to polygon
-                                polygon.worksheetId = worksheet.id;
-                                polygon.propertyId = property.rural_property_id;
-
-                                polygon.addListener('mouseover', () => {
-                                    polygon.setOptions({
-                                        fillOpacity: 0.5,
-                                        strokeWeight: 4,
-                                        zIndex: 2
-                                    });
-                                });
-
-                                polygon.addListener('mouseout', () => {
-                                    polygon.setOptions({
-                                        fillOpacity: 0.3,
-                                        strokeWeight: 3,
-                                        zIndex: 1
-                                    });
-                                });
-
-                                polygon.addListener('click', (event) => {
-                                    console.log('Polygon clicked:', property.rural_property_id, 'from worksheet:', worksheet.id);
-                                    console.log('Event details:', event);
-
-                                    // Clear any existing highlights first
-                                    if (window.currentHighlights) {
-                                        window.currentHighlights.forEach(poly => {
-                                            if (poly !== polygon) {
-                                                poly.setOptions({
-                                                    fillOpacity: 0.3,
-                                                    strokeWeight: 3,
-                                                    zIndex: 1
-                                                });
-                                            }
-                                        });
-                                    }
+// Parcels of the main map, drawn from /rest/list/parcels for the current viewport.
+// Zoomed out the server sends one point per parcel instead of its outline.
+const VIEWPORT_PARCEL_COLOR = '#22c55e';
+let viewportParcelsRequest = 0;
+
+function setupViewportParcels(map) {
+    const layer = new google.maps.Data({ map: map });
+    layer.setStyle(feature => feature.getGeometry().getType() === 'Point'
+        ? {
+            icon: {
+                path: google.maps.SymbolPath.CIRCLE,
+                scale: 3,
+                fillColor: VIEWPORT_PARCEL_COLOR,
+                fillOpacity: 0.9,
+                strokeWeight: 0
+            }
+        }
+        : {
+            strokeColor: VIEWPORT_PARCEL_COLOR,
+            strokeOpacity: 0.9,
+            strokeWeight: 2,
+            fillColor: VIEWPORT_PARCEL_COLOR,
+            fillOpacity: 0.3,
+            zIndex: 1
+        });
+    layer.addListener('click', (event) => showViewportParcelInfo(event.feature));
 
-                                    // Reset previously selected polygon if it exists
-                                    if (window.currentSelectedPolygon && window.currentSelectedPolygon !== polygon) {
-                                        window.currentSelectedPolygon.setOptions({
-                                            fillOpacity: 0.3,
-                                            strokeWeight: 3,
-                                            zIndex: 1
-                                        });
-                                    }
+    // 'idle' fires once the map stops moving, after pans and zooms alike
+    map.addListener('idle', () => loadViewportParcels(map, layer));
+}
 
-                                    // Highlight the clicked polygon with more prominent styling
-                                    polygon.setOptions({
-                                        fillOpacity: 0.7,
-                                        strokeWeight: 5,
-                                        strokeColor: '#ff0000',
-                                        zIndex: 10
-                                    });
+async function loadViewportParcels(map, layer) {
+    const bounds = map.getBounds();
+    if (!bounds) return;
 
-                                                                // Store the currently selected polygon
-                            window.currentSelectedPolygon = polygon;
+    const sw = bounds.getSouthWest();
+    const ne = bounds.getNorthEast();
+    // Zoomed far out the viewport can wrap around the antimeridian; every longitude is asked for then
+    const wraps = sw.lng() > ne.lng();
+    const bbox = [
+        wraps ? -180 : sw.lng(),
+        Math.max(-90, sw.lat()),
+        wraps ? 180 : ne.lng(),
+        Math.min(90, ne.lat())
+    ].map(value => value.toFixed(6)).join(',');
 
-                            // Show property info with navigation if from property list
-                            if (window.currentPropertyWorksheet) {
-                                showPropertyInfoWithNavigation(property, worksheet, polygon, worksheetColor);
-                            } else {
-                                showPropertyInfo(property, worksheet, polygon, worksheetColor);
-                            }
-                                });
-                            }
-                        }
-                    } catch (error) {
-                        console.error('Error displaying property:', error);
-                    }
-                }
-            });
+    const request = ++viewportParcelsRequest;
+    try {
+        const response = await auth.fetch(`/rest/list/parcels?bbox=${bbox}&zoom=${map.getZoom()}`);
+        if (!response.ok) {
+            console.warn(`Failed to load parcels for the viewport: ${response.status}`);
+            return;
         }
-    });
-
-    // Only fit bounds if we have valid polygons and the map is not already focused
-    if (hasValidPolygons && !window.mapAlreadyFocused) {
-        // Set a reasonable zoom level instead of always fitting bounds
-        const center = bounds.getCenter();
-        map.setCenter(center);
+        const collection = await response.json();
 
-        // Calculate appropriate zoom level
-        const ne = bounds.getNorthEast();
-        const sw = bounds.getSouthWest();
-        const latDiff = Math.abs(ne.lat() - sw.lat());
-        const lngDiff = Math.abs(ne.lng() - sw.lng());
+        // The map moved again while this viewport was loading
+        if (request !== viewportParcelsRequest) return;
 
-        // Set zoom based on the larger dimension
-        const maxDiff = Math.max(latDiff, lngDiff);
-        let zoom = 10; // Default zoom
+        layer.forEach(feature => layer.remove(feature));
+        layer.addGeoJson(collection);
+        if (collection.truncated) {
+            console.log('Too many parcels in view, zoom in to see all of them');
+        }
+    } catch (error) {
+        console.error('Error loading parcels for the viewport:', error);
+    }
+}
 
-        if (maxDiff > 0.1) zoom = 8;
-        else if (maxDiff > 0.05) zoom = 9;
-        else if (maxDiff > 0.02) zoom = 10;
-        else if (maxDiff > 0.01) zoom = 11;
-        else if (maxDiff > 0.005) zoom = 12;
-        else zoom = 13;
+// Opens the property popup of a parcel clicked on the main map
+function showViewportParcelInfo(feature) {
+    const worksheets = feature.getProperty('worksheets_worked') || [];
+    if (worksheets.length === 0) return;
 
-        map.setZoom(zoom);
-        window.mapAlreadyFocused = true;
-    }
+    const property = {
+        rural_property_id: feature.getId(),
+        aigp: feature.getProperty('aigp')
+    };
+    showPropertyInfo(property, { id: worksheets[0] }, null, VIEWPORT_PARCEL_COLOR);
 }
 
 // Show property information in a popup - FIXED VERSION